@@ -0,0 +1,32 @@
+package uk.ac.man.cs.img.dfq.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.man.cs.img.dfq.Application;
+
+/*
+ * Measures loading an application from its properties file: reading the trace, creating
+ * the classes, methods and statements, and finding the queries.  The state only generates
+ * the application's files, so nothing loaded is held while the loads are measured.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ApplicationLoadBenchmark {
+
+	@Benchmark
+	public Application loadApplication(GeneratedApplication generated) throws Exception {
+		return new Application(generated.size.name(), generated.propertiesFilePath);
+	}
+
+}
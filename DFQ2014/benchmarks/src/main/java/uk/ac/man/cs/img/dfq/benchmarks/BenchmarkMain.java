@@ -0,0 +1,29 @@
+package uk.ac.man.cs.img.dfq.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Runs the benchmarks named on the command line (all of them by default), taking any
+ * other JMH options from it as well.  Unless the command line says otherwise, the results
+ * are written as JSON to jmh-result.json, so that runs of different versions can be
+ * compared.
+ */
+public class BenchmarkMain {
+
+	private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+		if (!commandLine.getResultFormat().hasValue())
+			options.resultFormat(ResultFormatType.JSON);
+		if (!commandLine.getResult().hasValue())
+			options.result(DEFAULT_RESULT_FILE);
+		new Runner(options.build()).run();
+	}
+
+}
@@ -0,0 +1,32 @@
+package uk.ac.man.cs.img.dfq.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * The benchmark state holding the files of a synthetic application of each size, without
+ * loading it, for benchmarks that measure the loading itself.  Before each invocation the
+ * heap is collected, so that the garbage left by one load is not collected in the next.
+ */
+@State(Scope.Benchmark)
+public class GeneratedApplication {
+
+	@Param({ "SMALL", "MEDIUM", "HUGE" })
+	public SyntheticApplication.Size size;
+
+	public String propertiesFilePath;
+
+	@Setup(Level.Trial)
+	public void generate() throws Exception {
+		propertiesFilePath = SyntheticApplication.propertiesFileFor(size);
+	}
+
+	@Setup(Level.Invocation)
+	public void collectGarbage() {
+		System.gc();
+	}
+
+}
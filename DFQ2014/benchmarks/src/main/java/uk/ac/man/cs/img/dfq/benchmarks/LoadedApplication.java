@@ -0,0 +1,52 @@
+package uk.ac.man.cs.img.dfq.benchmarks;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import uk.ac.man.cs.img.dfq.Application;
+import uk.ac.man.cs.img.dfq.ApplicationTrace;
+import uk.ac.man.cs.img.dfq.CodeMethod;
+import uk.ac.man.cs.img.dfq.CoverageMatrix;
+import uk.ac.man.cs.img.dfq.TestMethod;
+
+/*
+ * The benchmark state holding a synthetic application of each size, loaded once per trial,
+ * together with a sample of the classes, methods and tests to ask about.
+ */
+@State(Scope.Benchmark)
+public class LoadedApplication {
+
+	@Param({ "SMALL", "MEDIUM", "HUGE" })
+	public SyntheticApplication.Size size;
+
+	public String propertiesFilePath;
+	public Application app;
+	public ApplicationTrace trace;
+	public List<CodeMethod> methods;
+	public CoverageMatrix coverage;
+
+	public String className;
+	public String methodSignature;
+	public TestMethod test;
+
+	@Setup(Level.Trial)
+	public void load() throws Exception {
+		propertiesFilePath = SyntheticApplication.propertiesFileFor(size);
+		app = new Application(size.name(), propertiesFilePath);
+		trace = app.getTrace();
+		methods = app.getAllMethods();
+		coverage = trace.getCoverageMatrix();
+
+		// A class and a test from the middle of the application, so that nothing is found
+		// early by accident of ordering.
+		className = SyntheticApplication.productionClassName(size.classes / 2);
+		methodSignature = "m1()I";
+		test = app.getTestMethodByName(SyntheticApplication.testName(size, size.tests / 2));
+	}
+
+}
@@ -0,0 +1,67 @@
+package uk.ac.man.cs.img.dfq.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.man.cs.img.dfq.DFQException;
+import uk.ac.man.cs.img.dfq.Query;
+import uk.ac.man.cs.img.dfq.QueryCoverage;
+import uk.ac.man.cs.img.dfq.SuspiciousnessEngine;
+import uk.ac.man.cs.img.dfq.SuspiciousnessMetrics;
+import uk.ac.man.cs.img.dfq.TestMethod;
+
+/*
+ * Measures indexing the queries of a loaded application against its tests, identifying
+ * the candidate queries of the failing tests, and scoring and ranking the queries.  The
+ * indexes and engine are built afresh in each invocation, except where a benchmark is
+ * about answering from them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryScoringBenchmark {
+
+	@Benchmark
+	public QueryCoverage indexQueries(LoadedApplication loaded) throws DFQException {
+		return new QueryCoverage(loaded.methods, loaded.coverage);
+	}
+
+	@Benchmark
+	public Map<String, List<Query>> candidateQueriesOfFailingTests(LoadedApplication loaded) throws DFQException {
+		return loaded.app.getQueryCoverage().getQueriesExecutedByFailingTests();
+	}
+
+	@Benchmark
+	public Map<TestMethod, List<Query>> identifyAllCandidateQueries(LoadedApplication loaded) throws DFQException {
+		return loaded.trace.identifyAllCandidateQueries();
+	}
+
+	@Benchmark
+	public List<Query> executedQueriesOfTest(LoadedApplication loaded) throws DFQException {
+		return loaded.test.getExecutedQueries();
+	}
+
+	@Benchmark
+	public List<double[]> scoreAllMetrics(LoadedApplication loaded) throws DFQException {
+		SuspiciousnessEngine engine = new SuspiciousnessEngine(loaded.app.getQueryCoverage());
+		return engine.getScores(SuspiciousnessMetrics.getAvailableMetrics());
+	}
+
+	@Benchmark
+	public List<Query> rankTopQueries(LoadedApplication loaded) throws DFQException {
+		SuspiciousnessEngine engine = new SuspiciousnessEngine(loaded.app.getQueryCoverage());
+		return engine.rank(SuspiciousnessMetrics.OCHIAI, Double.NEGATIVE_INFINITY, 50);
+	}
+
+}
@@ -0,0 +1,75 @@
+package uk.ac.man.cs.img.dfq.benchmarks;
+
+import java.io.File;
+
+import uk.ac.man.cs.img.dfq.DFQException;
+import uk.ac.man.cs.img.dfq.SyntheticApplicationGenerator;
+
+/*
+ * The applications the benchmarks run on, generated by SyntheticApplicationGenerator from
+ * its fixed default seed, so that every run of the benchmarks sees the same ones.  They
+ * are kept under target/benchmark-data so that they are generated only once.
+ *
+ * The huge application has a million statements, the scale the performance work is aimed
+ * at.
+ */
+public class SyntheticApplication {
+
+	public enum Size {
+		SMALL(10, 5, 3, 20, 10, 0.06),
+		MEDIUM(200, 10, 3, 500, 25, 0.0075),
+		HUGE(10000, 20, 5, 5000, 50, 0.0005);
+
+		final int classes;
+		final int methodsPerClass;
+		final int statementsPerMethod;
+		final int tests;
+		final int testsPerClass;
+		final double coverageDensity;
+
+		Size(int classes, int methodsPerClass, int statementsPerMethod, int tests, int testsPerClass, double coverageDensity) {
+			this.classes = classes;
+			this.methodsPerClass = methodsPerClass;
+			this.statementsPerMethod = statementsPerMethod;
+			this.tests = tests;
+			this.testsPerClass = testsPerClass;
+			this.coverageDensity = coverageDensity;
+		}
+	}
+
+	private static final String DATA_DIRECTORY = "target" + File.separator + "benchmark-data";
+	private static final double FAILURE_RATE = 0.1;
+
+	private SyntheticApplication() {
+	}
+
+	/*
+	 * Returns the path of the properties file of the application of the given size,
+	 * generating the application if it does not already exist.
+	 */
+	public static synchronized String propertiesFileFor(Size size) throws DFQException {
+		SyntheticApplicationGenerator generator = new SyntheticApplicationGenerator(new File(DATA_DIRECTORY, size.name().toLowerCase()));
+		generator.setClassCount(size.classes);
+		generator.setMethodsPerClass(size.methodsPerClass);
+		generator.setStatementsPerMethod(size.statementsPerMethod);
+		generator.setQueriesPerClass(size.methodsPerClass / 2);
+		generator.setTestCount(size.tests);
+		generator.setTestsPerClass(size.testsPerClass);
+		generator.setFailureRate(FAILURE_RATE);
+		generator.setCoverageDensity(size.coverageDensity);
+
+		File propertiesFile = generator.getPropertiesFile();
+		if (!propertiesFile.isFile())
+			generator.generate();
+		return propertiesFile.getPath();
+	}
+
+	public static String productionClassName(int classNumber) {
+		return SyntheticApplicationGenerator.productionClassName(classNumber);
+	}
+
+	public static String testName(Size size, int testNumber) {
+		return SyntheticApplicationGenerator.testName(testNumber, size.testsPerClass);
+	}
+
+}
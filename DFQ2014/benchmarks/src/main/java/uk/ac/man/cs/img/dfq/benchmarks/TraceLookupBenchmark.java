@@ -0,0 +1,56 @@
+package uk.ac.man.cs.img.dfq.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.man.cs.img.dfq.DFQException;
+import uk.ac.man.cs.img.dfq.MethodLineRange;
+import uk.ac.man.cs.img.dfq.Statement;
+
+/*
+ * Measures the questions asked of a loaded trace: method line ranges, test results, and
+ * the statements executed by a test, both as raw trace lines and resolved to statements
+ * of the application.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TraceLookupBenchmark {
+
+	@Benchmark
+	public MethodLineRange methodLineRange(LoadedApplication loaded) throws DFQException {
+		return loaded.trace.getMethodLineRange(loaded.methodSignature);
+	}
+
+	@Benchmark
+	public Map<String, MethodLineRange> methodLineRangesOfClass(LoadedApplication loaded) throws DFQException {
+		return loaded.trace.getProductionMethodLineRanges(loaded.className);
+	}
+
+	@Benchmark
+	public boolean testResult(LoadedApplication loaded) throws DFQException {
+		return loaded.test.testPassed();
+	}
+
+	@Benchmark
+	public List<Statement> executedStatements(LoadedApplication loaded) throws DFQException {
+		return loaded.test.getExecutedStatements();
+	}
+
+	@Benchmark
+	public List<Statement> traceOfExecution(LoadedApplication loaded) throws DFQException {
+		return loaded.test.getTraceOfExecution();
+	}
+
+}
@@ -0,0 +1,19 @@
+package demo;
+
+public class Game {
+
+	private Player[] playerList;
+
+	public Game(Player[] playerList) {
+		setPlayerList(playerList);
+	}
+
+	public Player[] getPlayerList() {
+		return playerList;
+	}
+
+	public void setPlayerList(Player[] playerList) {
+		this.playerList = playerList;
+		String q = session.createQuery("from Player").list();
+	}
+}
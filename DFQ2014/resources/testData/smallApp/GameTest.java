@@ -0,0 +1,14 @@
+package demo;
+
+public class GameTest {
+
+	public void testNewGame() {
+		Game g = new Game(new Player[0]);
+		assertNotNull(g.getPlayerList());
+	}
+
+	public void testGameResigned() {
+		Game g = new Game(null);
+		assertNull(g.getPlayerList());
+	}
+}
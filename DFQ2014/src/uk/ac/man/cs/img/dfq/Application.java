@@ -1,20 +1,38 @@
 package uk.ac.man.cs.img.dfq;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /*
  * @author Javid Akhter
  * @author Suzanne M. Embury
  * 
- * The instance of this class represents the application being diagnosed. (There should be
- * only one instance created for each run of the application.)
+ * The instances of this class represent the applications being diagnosed.  Independent
+ * instances may coexist in one process, each loaded from its own properties file.
  */
 public class Application {
 
@@ -23,58 +41,306 @@ public class Application {
 	private static final String TRACE_FILE_PROPERTY = "edu.gatech.cc.aristotle.tarantula.data.tarantula_xml";
 	private static final String SOURCE_FILES_PROPERTY = "edu.gatech.cc.aristotle.tarantula.data.source_files";
 	private static final String TEST_SOURCE_FILES_PROPERTY = "edu.gatech.cc.aristotle.tarantula.data.junit.source_files";
+	private static final String LOAD_TRACE_INTO_MEMORY_PROPERTY = "dfq.trace.load_into_memory";
+	private static final String MAX_TRACE_TREE_BYTES_PROPERTY = "dfq.trace.max_tree_bytes";
+	private static final String CLASS_LOADING_THREADS_PROPERTY = "dfq.class_loading.threads";
+	private static final String SNAPSHOT_FILE_PROPERTY = "dfq.snapshot.file";
 	
 	
-	// Static Members
-	
-	private static Application currentApplication;
-
-	
 	// Instance Members
 	
 	private String appName;
 	private String propertiesFilePath;
-	private Properties tarantulaProps;
-	private ApplicationTrace applicationTrace;
-	
-	private List<ProductionClass> productionClasses = new ArrayList<ProductionClass>();
-	private List<TestClass> testClasses = new ArrayList<TestClass>();
+	private DiagnosisMetrics metrics = new DiagnosisMetrics();
+
+	// Everything loaded from the application's files, which reload() replaces as a whole.
+	private volatile Model model;
+
+	// Whether the snapshot could not be written when last tried, so that the next reload
+	// writes it even if no file has changed.  Guarded by the application's lock.
+	private boolean snapshotOutOfDate;
 
 	
-	// Static Methods
-	
-	public static Application currentApplication() {
-		return currentApplication;
-	}
-	
-	
-	// Constructor
+	// Constructors
 	public Application(String appName, String propFilePath) throws Exception {
+		this(appName, propFilePath, null);
+	}
 
-		currentApplication = this;
-		
+	/*
+	 * The classes of the application are created by tasks run on the given executor, which
+	 * is left running for the caller to shut down.  When the executor is null, one is made
+	 * for the purpose with the number of threads given by the dfq.class_loading.threads
+	 * property (by default, one per available processor), and a value of 1 creates the
+	 * classes in the calling thread.  Either way, the classes are listed in the order in
+	 * which their source files are given in the properties file.
+	 *
+	 * Each application holds its own trace and classes, which refer back to it rather than
+	 * to any shared state, so several applications can be loaded and diagnosed at once on
+	 * separate threads.
+	 *
+	 * The work done in loading and diagnosing the application is counted and timed by its
+	 * DiagnosisMetrics, which are published over JMX under the application's name once it
+	 * has loaded, and withdrawn by close().  An application that fails to load publishes
+	 * nothing.
+	 *
+	 * When the dfq.snapshot.file property names a file, the trace and the execution counts
+	 * of the queries are restored from the ModelSnapshot held there, provided none of the
+	 * files the application is loaded from has changed since it was written.  Otherwise
+	 * the application is loaded and its queries counted as usual, and a new snapshot is
+	 * written to that file.  The snapshot only saves time on later loads, so a failure to
+	 * write it is counted in the metrics, and the application is kept as loaded.
+	 *
+	 * The modification time and digest of each of those files is recorded before it is
+	 * loaded, so that reload() can tell which of them have changed since.
+	 */
+	public Application(String appName, String propFilePath, ExecutorService classLoadingExecutor) throws Exception {
 		this.appName = appName;
 		this.propertiesFilePath = propFilePath;	
 
-		this.tarantulaProps = new Properties();
+		Properties properties = loadProperties();
+		String traceFilePath = fetchTraceFilePath(properties);
+		long start = metrics.startTimer();
+		Map<String, FileState> fileStates = fetchFileStates(properties, traceFilePath,
+				Collections.<String, FileState>emptyMap(), new ArrayList<String>());
+		metrics.record(DiagnosisPhase.FILE_DIGESTING, start);
+
+		String snapshotFilePath = properties.getProperty(SNAPSHOT_FILE_PROPERTY);
+		ModelSnapshot snapshot = null;
+		if (snapshotFilePath != null) {
+			start = metrics.startTimer();
+			snapshot = ModelSnapshot.open(snapshotFilePath, fetchSnapshotKey(fileStates));
+			metrics.record(DiagnosisPhase.SNAPSHOT_LOADING, start);
+		}
+		ApplicationTrace trace;
+		if (snapshot != null)
+			trace = new ApplicationTrace(this, traceFilePath, snapshot.getTraceReader());
+		else
+			trace = createTrace(properties, traceFilePath);
+	
+		List<ProductionClass> productionClasses = new ArrayList<ProductionClass>();
+		List<TestClass> testClasses = new ArrayList<TestClass>();
+		createClasses(properties, trace, classLoadingExecutor, productionClasses, testClasses);
+
+		SuspiciousnessEngine restoredEngine = null;
+		if (snapshot != null) {
+			start = metrics.startTimer();
+			restoredEngine = snapshot.restoreEngine(methodsOf(productionClasses, testClasses));
+			metrics.record(DiagnosisPhase.SNAPSHOT_LOADING, start);
+		}
+		model = new Model(properties, trace, productionClasses, testClasses, fileStates, null, restoredEngine);
+		if (snapshotFilePath != null && restoredEngine == null)
+			writeSnapshot(snapshotFilePath);
+		metrics.register(appName);
+	}
+
+	/*
+	 * Withdraws the application's metrics from JMX.  The application can still be diagnosed
+	 * afterwards, and its metrics are still counted, but are no longer published.
+	 */
+	public void close() {
+		metrics.unregister();
+	}
+
+	private Properties loadProperties() throws DFQException {
+		long start = metrics.startTimer();
+		Properties properties = new Properties();
 		try {
 			InputStream	propFile = new FileInputStream(new File(getPropertiesFilePath()));
-			tarantulaProps.load(propFile);
-			if (!readPropertiesFile(tarantulaProps)) {
+			try {
+				properties.load(propFile);
+			} finally {
+				propFile.close();
+			}
+			if (!readPropertiesFile(properties)) {
 				throw new CouldNotReadPropertiesFileException();
-			} else if(!requiredPropertiesExist(tarantulaProps)) { 				
+			} else if(!requiredPropertiesExist(properties)) { 				
 				throw new RequiredPropertiesNotFoundException();
 			}
 		} catch (FileNotFoundException e) {
 			throw new CouldNotFindPropertiesFileException();
+		} catch (IOException e) {
+			throw new CouldNotReadPropertiesFileException();
 		}
+		metrics.readBytes(new File(getPropertiesFilePath()).length());
+		metrics.record(DiagnosisPhase.PROPERTIES_PARSING, start);
+		return properties;
+	}
 
-		String traceFilePath = tarantulaProps.getProperty(TRACE_FILE_PROPERTY);
+	private String fetchTraceFilePath(Properties properties) throws DFQException {
+		String traceFilePath = properties.getProperty(TRACE_FILE_PROPERTY);
 		if (!traceFileExists(traceFilePath)) 
 			throw new TraceFileNotFoundException(); 
-		applicationTrace = new ApplicationTrace(traceFilePath);
-	
-		createClasses();
+		return traceFilePath;
+	}
+
+	private ApplicationTrace createTrace(Properties properties, String traceFilePath) throws DFQException {
+		boolean loadTraceIntoMemory = Boolean.parseBoolean(properties.getProperty(LOAD_TRACE_INTO_MEMORY_PROPERTY, "true"));
+		String maxTreeSize = properties.getProperty(MAX_TRACE_TREE_BYTES_PROPERTY, String.valueOf(XQueryTraceReader.NO_TREE_SIZE_LIMIT));
+		long maxTraceTreeBytes;
+		try {
+			maxTraceTreeBytes = Long.parseLong(maxTreeSize.trim());
+		} catch (NumberFormatException e) {
+			throw new InvalidPropertyValueException(MAX_TRACE_TREE_BYTES_PROPERTY + " is not a number of bytes: " + maxTreeSize);
+		}
+		return new ApplicationTrace(this, traceFilePath, loadTraceIntoMemory, maxTraceTreeBytes);
+	}
+
+	/*
+	 * Writes a snapshot of the current model, making its suspiciousness engine first if it
+	 * has not been made (ModelSnapshot.write() asks for it).  A failure to write the file
+	 * is counted rather than thrown, and leaves the snapshot to be written by the next reload.
+	 */
+	private void writeSnapshot(String snapshotFilePath) throws DFQException {
+		long start = metrics.startTimer();
+		try {
+			ModelSnapshot.write(this, snapshotFilePath, fetchSnapshotKey(model.fileStates));
+			metrics.record(DiagnosisPhase.SNAPSHOT_WRITING, start);
+			snapshotOutOfDate = false;
+		} catch (CouldNotWriteToFileException e) {
+			metrics.failedToWriteSnapshot();
+			snapshotOutOfDate = true;
+		}
+	}
+
+
+	// Reloading
+
+	/*
+	 * Brings the application up to date with the files it was loaded from, and returns the
+	 * paths of those whose content has changed, or which have been added or removed, since
+	 * it was loaded or last reloaded.
+	 *
+	 * Only the classes whose source files have changed, or which are new, are created
+	 * again.  The other classes are kept, with their methods and queries, unless a changed
+	 * trace gives their methods different line ranges.  When the trace is unchanged, the
+	 * query coverage and suspiciousness engine are made from the old ones, so that only the
+	 * queries of the new classes are looked up in the trace and scored (see QueryCoverage
+	 * and SuspiciousnessEngine).  When the trace has changed, they are built afresh the next
+	 * time they are needed.
+	 *
+	 * The new model is built to one side and then published in a single step, so threads
+	 * diagnosing the application meanwhile go on using the old model and are not held up.
+	 * Only reloads take the application's lock.  If a reload fails, the application is
+	 * left exactly as it was, and the next reload tries again.
+	 *
+	 * A snapshot, if there is one, is written again once the new model is published.  As
+	 * when the application is loaded, a failure to write it is only counted in the metrics;
+	 * the next reload tries again, even if no file has changed by then.
+	 */
+	public synchronized List<String> reload() throws DFQException {
+		long start = metrics.startTimer();
+		Model previous = model;
+		FileState propertiesState = previous.fileStates.get(propertiesFilePath);
+		Properties properties = previous.properties;
+		if (!propertiesState.hasSameContentAs(propertiesState.current()))
+			properties = loadProperties();
+
+		List<String> changedPaths = new ArrayList<String>();
+		String traceFilePath = fetchTraceFilePath(properties);
+		Map<String, FileState> fileStates = fetchFileStates(properties, traceFilePath, previous.fileStates, changedPaths);
+		for (String path : previous.fileStates.keySet()) {
+			if (!fileStates.containsKey(path))
+				changedPaths.add(path);
+		}
+		String snapshotFilePath = properties.getProperty(SNAPSHOT_FILE_PROPERTY);
+		if (changedPaths.isEmpty()) {
+			// The digests were only looked up again where a file had been touched.
+			model = previous.withFileStates(fileStates);
+		} else {
+			Model reloaded = reloadChangedClasses(previous, properties, traceFilePath, fileStates, new HashSet<String>(changedPaths));
+			// The snapshot needs the engine.  Making it before the model is published means a
+			// failure to count the queries fails the reload, leaving the old model in place,
+			// rather than being thrown by writeSnapshot() once the new model is in use.
+			if (snapshotFilePath != null)
+				reloaded.getSuspiciousnessEngine();
+			model = reloaded;
+		}
+
+		if (snapshotFilePath != null && (!changedPaths.isEmpty() || snapshotOutOfDate))
+			writeSnapshot(snapshotFilePath);
+		metrics.record(DiagnosisPhase.RELOADING, start);
+		return changedPaths;
+	}
+
+	private Model reloadChangedClasses(Model previous, Properties properties, String traceFilePath,
+			Map<String, FileState> fileStates, Set<String> changedPaths) throws DFQException {
+		boolean traceChanged = !traceFilePath.equals(previous.trace.getTraceFilePath()) || changedPaths.contains(traceFilePath);
+		ApplicationTrace trace = traceChanged ? createTrace(properties, traceFilePath) : previous.trace;
+
+		Map<String, CodeClass> classesByPath = new HashMap<String, CodeClass>();
+		for (CodeClass codeClass : previous.getClasses()) {
+			if (!classesByPath.containsKey(codeClass.getFilePath()))
+				classesByPath.put(codeClass.getFilePath(), codeClass);
+		}
+		List<ProductionClass> productionClasses = new ArrayList<ProductionClass>();
+		for (String sourceFilePath : fetchJavaSourceFilePaths(properties, SOURCE_FILES_PROPERTY)) {
+			CodeClass codeClass = classesByPath.get(sourceFilePath);
+			if (codeClass instanceof ProductionClass && isUnchanged(codeClass, changedPaths, traceChanged, trace))
+				productionClasses.add((ProductionClass) codeClass);
+			else
+				productionClasses.add(createProductionClass(trace, sourceFilePath));
+		}
+		List<TestClass> testClasses = new ArrayList<TestClass>();
+		for (String sourceFilePath : fetchJavaSourceFilePaths(properties, TEST_SOURCE_FILES_PROPERTY)) {
+			CodeClass codeClass = classesByPath.get(sourceFilePath);
+			if (codeClass instanceof TestClass && isUnchanged(codeClass, changedPaths, traceChanged, trace))
+				testClasses.add((TestClass) codeClass);
+			else
+				testClasses.add(createTestClass(trace, sourceFilePath));
+		}
+
+		QueryCoverage queryCoverage = null;
+		SuspiciousnessEngine suspiciousnessEngine = null;
+		QueryCoverage previousCoverage = previous.peekQueryCoverage();
+		SuspiciousnessEngine previousEngine = previous.peekSuspiciousnessEngine();
+		if (!traceChanged && (previousCoverage != null || previousEngine != null)) {
+			List<CodeMethod> methods = methodsOf(productionClasses, testClasses);
+			long start = metrics.startTimer();
+			if (previousCoverage != null)
+				queryCoverage = new QueryCoverage(previousCoverage, methods);
+			else
+				queryCoverage = new QueryCoverage(methods, trace.getCoverageMatrix());
+			metrics.record(DiagnosisPhase.QUERY_INDEXING, start);
+			if (previousEngine != null) {
+				start = metrics.startTimer();
+				suspiciousnessEngine = new SuspiciousnessEngine(previousEngine, queryCoverage);
+				metrics.record(DiagnosisPhase.SCORING, start);
+			}
+		}
+		return new Model(properties, trace, productionClasses, testClasses, fileStates, queryCoverage, suspiciousnessEngine);
+	}
+
+	private static boolean isUnchanged(CodeClass codeClass, Set<String> changedPaths, boolean traceChanged,
+			ApplicationTrace trace) throws DFQException {
+		return !changedPaths.contains(codeClass.getFilePath()) && (!traceChanged || codeClass.hasSameMethodsIn(trace));
+	}
+
+	/*
+	 * Returns the current state of the properties file, the given trace file and the source
+	 * files, reusing the given states of files that have not changed, and adds the paths of
+	 * those that have changed or were not in the given states to changedPaths.
+	 */
+	private Map<String, FileState> fetchFileStates(Properties properties, String traceFilePath,
+			Map<String, FileState> previousStates, List<String> changedPaths) throws DFQException {
+		List<String> paths = new ArrayList<String>();
+		paths.add(getPropertiesFilePath());
+		paths.add(traceFilePath);
+		paths.addAll(fetchJavaSourceFilePaths(properties, SOURCE_FILES_PROPERTY));
+		paths.addAll(fetchJavaSourceFilePaths(properties, TEST_SOURCE_FILES_PROPERTY));
+
+		Map<String, FileState> states = new LinkedHashMap<String, FileState>();
+		for (String path : paths) {
+			if (states.containsKey(path))
+				continue;
+			FileState previousState = previousStates.get(path);
+			FileState state = previousState == null ? FileState.of(path) : previousState.current();
+			if (state != previousState)
+				metrics.readBytes(state.getDigest().getLength());
+			if (previousState == null || !previousState.hasSameContentAs(state))
+				changedPaths.add(path);
+			states.put(path, state);
+		}
+		return states;
 	}
 
 	
@@ -88,40 +354,86 @@ public class Application {
 		return this.propertiesFilePath;
 	}
 
+	public DiagnosisMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/*
+	 * Returns the counts and timings of the work done so far in loading and diagnosing the
+	 * application.
+	 */
+	public MetricsSnapshot getMetricsSnapshot() {
+		return this.metrics.getSnapshot();
+	}
+
+	/*
+	 * Returns the total length, in bytes, of the files the application was loaded or last
+	 * reloaded from: its properties file, its trace and its source files.
+	 */
+	public long getFootprint() {
+		long footprint = 0;
+		for (FileState state : model.fileStates.values())
+			footprint += state.getDigest().getLength();
+		return footprint;
+	}
+
 	public ApplicationTrace getTrace() {
-		return applicationTrace;
+		return model.trace;
 	}
 
 	public List<CodeClass> getClasses() {
-		List<CodeClass> combinedClasses = new ArrayList<CodeClass>(productionClasses);
-		combinedClasses.addAll(testClasses);
-		return combinedClasses; 
+		return model.getClasses();
 	}
 
 	public CodeClass getClassByName(String name) throws ClassWithGivenNameNotFoundException {
+		CodeClass codeClass = model.classesByName.get(name);
+		if (codeClass == null)
+			throw new ClassWithGivenNameNotFoundException();
+		return codeClass;
+	}
+
+	/*
+	 * Returns the classes whose names match the given regular expression, production
+	 * classes first.
+	 */
+	public List<CodeClass> findClassesMatching(String classNamePattern) {
+		List<CodeClass> matchingClasses = new ArrayList<CodeClass>();
 		for (CodeClass codeClass: this.getClasses()) {
-			if (codeClass.getName().matches(name)){
-				return codeClass;	
-			}
+			if (PatternCache.matches(classNamePattern, codeClass.getName()))
+				matchingClasses.add(codeClass);
 		}
-		throw new ClassWithGivenNameNotFoundException();
+		return matchingClasses;
+	}
+
+	public CodeMethod getMethodBySignature(String className, String methodSignature) throws DFQException {
+		return getClassByName(className).getMethodBySignature(methodSignature);
 	}
 
 	public List<ProductionClass> getProductionClasses() {
-		return this.productionClasses;
+		return model.productionClasses;
 	}
 
 	public List<TestClass> getTestClasses() {
-		return this.testClasses;
+		return model.testClasses;
 	}
 	
 
 	public TestMethod getTestMethodByName(String methodName) throws DFQException {	
-		for (TestClass testClass:this.testClasses) {
-			TestMethod testMethod = (TestMethod) testClass.getMethodByName(methodName);
-			return testMethod;
-		}
-		throw new MethodWithGivenNameNotFoundException();
+		return model.getTestMethodByName(methodName);
+	}
+
+	/*
+	 * Returns the queries executed by each failing test, which are the candidates for the
+	 * cause of its failure.  Failing tests that executed no queries are left out.  The tests
+	 * and queries all come from the same model, even if the application is reloaded meanwhile.
+	 */
+	public Map<TestMethod, List<Query>> identifyAllCandidateQueries() throws DFQException {
+		Model model = this.model;
+		Map<String, List<Query>> queriesByTestName = model.getQueryCoverage().getQueriesExecutedByFailingTests();
+		Map<TestMethod, List<Query>> candidateQueries = new LinkedHashMap<TestMethod, List<Query>>();
+		for (Map.Entry<String, List<Query>> testQueries : queriesByTestName.entrySet())
+			candidateQueries.put(model.getTestMethodByName(testQueries.getKey()), testQueries.getValue());
+		return candidateQueries;
 	}
 
 
@@ -129,38 +441,193 @@ public class Application {
 	
 	// Utility methods
 	
-	private void createClasses() throws DFQException {
-		populateProductionClasses();
-		populateTestClasses();
+	/*
+	 * Creates the classes whose source files the given properties name, against the given
+	 * trace, and adds them to the given lists.
+	 */
+	private void createClasses(Properties properties, ApplicationTrace trace, ExecutorService classLoadingExecutor,
+			List<ProductionClass> productionClasses, List<TestClass> testClasses) throws DFQException {
+		if (classLoadingExecutor != null) {
+			createClassesUsing(properties, trace, classLoadingExecutor, productionClasses, testClasses);
+			return;
+		}
+
+		String threadCount = properties.getProperty(CLASS_LOADING_THREADS_PROPERTY,
+				String.valueOf(Runtime.getRuntime().availableProcessors()));
+		int threads;
+		try {
+			threads = Integer.parseInt(threadCount.trim());
+		} catch (NumberFormatException e) {
+			throw new InvalidPropertyValueException(CLASS_LOADING_THREADS_PROPERTY + " is not a number of threads: " + threadCount);
+		}
+		if (threads <= 1) {
+			createClassesUsing(properties, trace, null, productionClasses, testClasses);
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			createClassesUsing(properties, trace, executor, productionClasses, testClasses);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	
+	/*
+	 * Each class is created by its own task.  The tasks for the test classes are submitted
+	 * along with those for the production classes, since neither depends on the other.
+	 */
+	private void createClassesUsing(Properties properties, final ApplicationTrace trace, ExecutorService executor,
+			List<ProductionClass> productionClasses, List<TestClass> testClasses) throws DFQException {
+		List<Callable<ProductionClass>> productionClassTasks = new ArrayList<Callable<ProductionClass>>();
+		for (final String sourceFilePath : fetchJavaSourceFilePaths(properties, SOURCE_FILES_PROPERTY)) {
+			productionClassTasks.add(new Callable<ProductionClass>() {
+				public ProductionClass call() throws DFQException {
+					return createProductionClass(trace, sourceFilePath);
+				}
+			});
+		}
+
+		List<Callable<TestClass>> testClassTasks = new ArrayList<Callable<TestClass>>();
+		for (final String sourceFilePath : fetchJavaSourceFilePaths(properties, TEST_SOURCE_FILES_PROPERTY)) {
+			testClassTasks.add(new Callable<TestClass>() {
+				public TestClass call() throws DFQException {
+					return createTestClass(trace, sourceFilePath);
+				}
+			});
+		}
+
+		if (executor == null) {
+			productionClasses.addAll(callInOrder(productionClassTasks));
+			testClasses.addAll(callInOrder(testClassTasks));
+		} else {
+			List<Future<ProductionClass>> productionClassFutures = submitAll(executor, productionClassTasks);
+			List<Future<TestClass>> testClassFutures = submitAll(executor, testClassTasks);
+			try {
+				productionClasses.addAll(getInOrder(productionClassFutures));
+				testClasses.addAll(getInOrder(testClassFutures));
+			} finally {
+				cancelAll(productionClassFutures);
+				cancelAll(testClassFutures);
+			}
+		}
+	}
+
+
+	private ProductionClass createProductionClass(ApplicationTrace trace, String sourceFilePath) throws DFQException {
+		ClassConstructionEvent event = new ClassConstructionEvent();
+		event.begin();
+		long start = metrics.startTimer();
+		ProductionClass productionClass = new ProductionClass(this, trace, sourceFilePath);
+		recordClassCreated(productionClass, start, event);
+		return productionClass;
+	}
+
+
+	private TestClass createTestClass(ApplicationTrace trace, String sourceFilePath) throws DFQException {
+		ClassConstructionEvent event = new ClassConstructionEvent();
+		event.begin();
+		long start = metrics.startTimer();
+		TestClass testClass = new TestClass(this, trace, sourceFilePath);
+		recordClassCreated(testClass, start, event);
+		return testClass;
+	}
+
+
+	private void recordClassCreated(CodeClass codeClass, long start, ClassConstructionEvent event) {
+		metrics.createdClass();
+		metrics.record(DiagnosisPhase.CLASS_CONSTRUCTION, start);
+		if (event.shouldCommit()) {
+			event.className = codeClass.getName();
+			event.testClass = codeClass instanceof TestClass;
+			event.methods = codeClass.getMethods().size();
+			event.commit();
+		}
+	}
+
+	
+	private static <T> List<T> callInOrder(List<Callable<T>> tasks) throws DFQException {
+		List<T> results = new ArrayList<T>(tasks.size());
+		for (Callable<T> task : tasks) {
+			try {
+				results.add(task.call());
+			} catch (Exception e) {
+				throw classCreationFailure(e);
+			}
+		}
+		return results;
 	}
 
 	
-	private void populateProductionClasses() throws DFQException  {
-		String[] sourceFilePaths = fetchSourceFilePathsFromPropertyFile(SOURCE_FILES_PROPERTY);
+	private static <T> List<Future<T>> submitAll(ExecutorService executor, List<Callable<T>> tasks) {
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		for (Callable<T> task : tasks)
+			futures.add(executor.submit(task));
+		return futures;
+	}
 
-		for (int i = 0; i < sourceFilePaths.length; i++) {
-			if (isAJavaClassSourceFile(sourceFilePaths[i])) {
-				ProductionClass prodClass = new ProductionClass(sourceFilePaths[i]);
-				productionClasses.add(prodClass);
+	
+	/*
+	 * Waits for each task in turn, so that the results are in the order of the tasks and
+	 * the failure reported is that of the first failing task in that order.
+	 */
+	private static <T> List<T> getInOrder(List<Future<T>> futures) throws DFQException {
+		List<T> results = new ArrayList<T>(futures.size());
+		for (Future<T> future : futures) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				throw classCreationFailure(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ClassLoadingInterruptedException();
 			}
 		}
+		return results;
 	}
 
 	
-	private void populateTestClasses() throws DFQException {
-		String[] sourceFilePaths = fetchSourceFilePathsFromPropertyFile(TEST_SOURCE_FILES_PROPERTY);
-		
-		for (int i = 0; i < sourceFilePaths.length; i++) {
-			if (isAJavaClassSourceFile(sourceFilePaths[i])) {
-					TestClass testClass = new TestClass(sourceFilePaths[i]);
-					testClasses.add(testClass);
-				}
+	private static <T> void cancelAll(List<Future<T>> futures) {
+		for (Future<T> future : futures)
+			future.cancel(true);
+	}
+
+	
+	private static DFQException classCreationFailure(Throwable cause) {
+		if (cause instanceof DFQException)
+			return (DFQException) cause;
+		if (cause instanceof RuntimeException)
+			throw (RuntimeException) cause;
+		if (cause instanceof Error)
+			throw (Error) cause;
+		return new DFQException(cause.toString());
+	}
+	
+	
+	/*
+	 * Returns the digests of the files the application is loaded from, which key its
+	 * snapshot: the properties file, the trace file, and the source files in the order
+	 * they are given.
+	 */
+	private static List<FileDigest> fetchSnapshotKey(Map<String, FileState> fileStates) {
+		List<FileDigest> key = new ArrayList<FileDigest>(fileStates.size());
+		for (FileState state : fileStates.values())
+			key.add(state.getDigest());
+		return key;
+	}
+
+	private List<String> fetchJavaSourceFilePaths(Properties properties, String property) {
+		List<String> javaSourceFilePaths = new ArrayList<String>();
+		for (String sourceFilePath : fetchSourceFilePathsFromPropertyFile(properties, property)) {
+			if (isAJavaClassSourceFile(sourceFilePath))
+				javaSourceFilePaths.add(sourceFilePath);
 		}
+		return javaSourceFilePaths;
 	}
 	
 	
-	private String[] fetchSourceFilePathsFromPropertyFile(String property) {
-		return tarantulaProps.getProperty(property).split(File.pathSeparator);
+	private String[] fetchSourceFilePathsFromPropertyFile(Properties properties, String property) {
+		return properties.getProperty(property).split(File.pathSeparator);
 	}
 	
 	
@@ -191,24 +658,249 @@ public class Application {
 
 
 	public List<CodeMethod> getAllMethods() {
+		return model.getAllMethods();
+	}
+
+	private static List<CodeMethod> methodsOf(List<? extends CodeClass> productionClasses, List<? extends CodeClass> testClasses) {
 		List<CodeMethod> methods = new ArrayList<CodeMethod>();
-		
-		for (CodeClass codeClass : this.getClasses())
+		for (CodeClass codeClass : productionClasses)
+			methods.addAll(codeClass.getMethods());
+		for (CodeClass codeClass : testClasses)
 			methods.addAll(codeClass.getMethods());
-		
 		return methods;
 	}
 
 
-	public List<Query> getSuspiciousQueries() {
-		// TODO Auto-generated method stub
-		return null;
+	/*
+	 * Returns the index relating the application's queries to the tests executing them,
+	 * which is built the first time it is asked for.
+	 */
+	public QueryCoverage getQueryCoverage() throws DFQException {
+		return model.getQueryCoverage();
+	}
+
+	/*
+	 * Returns the engine that scores the suspiciousness of the application's queries, which
+	 * counts the executions of every query the first time it is asked for.
+	 */
+	public SuspiciousnessEngine getSuspiciousnessEngine() throws DFQException {
+		return model.getSuspiciousnessEngine();
+	}
+
+
+	public List<Query> getSuspiciousQueries() throws DFQException {
+		return getSuspiciousQueries(SuspiciousnessMetrics.TARANTULA, 0);
+	}
+
+	public List<Query> getSuspiciousQueries(double threshold) throws DFQException {
+		return getSuspiciousQueries(SuspiciousnessMetrics.TARANTULA, threshold);
+	}
+
+	/*
+	 * Returns the queries executed by at least one failing test whose score under the given
+	 * metric is at least the given threshold, most suspicious first (see
+	 * SuspiciousnessEngine.rank() for the order of queries with equal scores).
+	 */
+	public List<Query> getSuspiciousQueries(SuspiciousnessMetric metric, double threshold) throws DFQException {
+		return rank(getSuspiciousnessEngine(), metric, threshold, Integer.MAX_VALUE);
+	}
+
+	/*
+	 * Returns the k most suspicious queries under the given metric, as getSuspiciousQueries()
+	 * would order them, without ranking the rest.
+	 */
+	public List<Query> getTopSuspiciousQueries(SuspiciousnessMetric metric, int k) throws DFQException {
+		return rank(getSuspiciousnessEngine(), metric, Double.NEGATIVE_INFINITY, k);
+	}
+
+	public List<Query> getTopSuspiciousQueries(SuspiciousnessMetric metric, int k, double threshold) throws DFQException {
+		return rank(getSuspiciousnessEngine(), metric, threshold, k);
+	}
+
+	private List<Query> rank(SuspiciousnessEngine engine, SuspiciousnessMetric metric, double threshold, int limit) {
+		ScoringEvent event = new ScoringEvent();
+		event.begin();
+		long start = metrics.startTimer();
+		List<Query> ranking = engine.rank(metric, threshold, limit);
+		metrics.record(DiagnosisPhase.SCORING, start);
+		if (event.shouldCommit()) {
+			event.application = appName;
+			event.metric = metric.getName();
+			event.queries = engine.getQueries().size();
+			event.ranked = ranking.size();
+			event.commit();
+		}
+		return ranking;
+	}
+
+
+	/*
+	 * Returns the plain text report of the application's suspicious queries under Tarantula.
+	 * For large applications, writeDiagnosticReport() avoids holding the report in memory.
+	 */
+	public String getDiagnosticReport() throws DFQException {
+		StringWriter report = new StringWriter();
+		writeDiagnosticReport(report, ReportFormat.TEXT);
+		return report.toString();
+	}
+
+	public void writeDiagnosticReport(Writer out, ReportFormat format) throws DFQException {
+		writeDiagnosticReport(out, format, SuspiciousnessMetrics.TARANTULA, 0);
 	}
 
+	/*
+	 * Writes the report as UTF-8 text.  The stream is flushed but left open.
+	 */
+	public void writeDiagnosticReport(OutputStream out, ReportFormat format, SuspiciousnessMetric metric, double threshold) throws DFQException {
+		try {
+			writeDiagnosticReport(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")), format, metric, threshold);
+		} catch (UnsupportedEncodingException e) {
+			throw new CouldNotWriteReportException("for application " + appName + ": " + e.getMessage());
+		}
+	}
 
-	public String getDiagnosticReport() {
-		// TODO Auto-generated method stub
-		return null;
+	/*
+	 * Writes a report of the queries that getSuspiciousQueries() returns for the given metric
+	 * and threshold, in the given format.  The ranking is computed first, as a list of the
+	 * queries the application already holds; each query is then written as soon as it is
+	 * reached, so the text of the report is never built up in memory.  The writer is flushed
+	 * but left open.
+	 */
+	public void writeDiagnosticReport(Writer out, ReportFormat format, SuspiciousnessMetric metric, double threshold) throws DFQException {
+		try {
+			writeDiagnosticReport(format.createWriter(out), metric, threshold, Integer.MAX_VALUE);
+			out.flush();
+		} catch (IOException e) {
+			throw new CouldNotWriteReportException("for application " + appName + ": " + e.getMessage());
+		}
+	}
+
+	/*
+	 * Writes the at most limit most suspicious queries under the given metric, whose scores
+	 * are at least the given threshold, to the given report.  The queries are ranked and
+	 * scored by the same engine, even if the application is reloaded meanwhile.
+	 */
+	public void writeDiagnosticReport(DiagnosticReportWriter report, SuspiciousnessMetric metric, double threshold, int limit)
+			throws IOException, DFQException {
+		SuspiciousnessEngine engine = getSuspiciousnessEngine();
+		List<Query> suspiciousQueries = rank(engine, metric, threshold, limit);
+		report.startReport(appName, metric, suspiciousQueries.size());
+		for (Query query : suspiciousQueries)
+			report.writeQuery(query, engine.getScore(query, metric));
+		report.endReport();
+	}
+
+
+	/*
+	 * Everything the application loads from its files: its properties, trace and classes,
+	 * the indexes of its classes and test methods, and the state of each file as it was
+	 * loaded.  A model does not change once it is published, except that its query coverage
+	 * and suspiciousness engine are made the first time they are needed, under its own lock.
+	 * A reader that takes the model once sees a consistent application, however many times
+	 * it is reloaded meanwhile.
+	 *
+	 * The classes refer back to the application rather than to the model, so a class asked
+	 * about after a reload (whether its tests passed, say) answers from the current model.
+	 */
+	private class Model {
+
+		final Properties properties;
+		final ApplicationTrace trace;
+		final List<ProductionClass> productionClasses;
+		final List<TestClass> testClasses;
+		final Map<String, CodeClass> classesByName = new HashMap<String, CodeClass>();
+		final Map<String, TestMethod> testMethodsByName = new HashMap<String, TestMethod>();
+
+		// The state of each file the model was loaded from, keyed by path: the properties
+		// file, the trace file and then the source files, in the order they are given.
+		final Map<String, FileState> fileStates;
+
+		private QueryCoverage queryCoverage;
+		private SuspiciousnessEngine suspiciousnessEngine;
+
+		Model(Properties properties, ApplicationTrace trace, List<ProductionClass> productionClasses, List<TestClass> testClasses,
+				Map<String, FileState> fileStates, QueryCoverage queryCoverage, SuspiciousnessEngine suspiciousnessEngine) {
+			this.properties = properties;
+			this.trace = trace;
+			this.productionClasses = Collections.unmodifiableList(productionClasses);
+			this.testClasses = Collections.unmodifiableList(testClasses);
+			this.fileStates = Collections.unmodifiableMap(fileStates);
+			this.queryCoverage = queryCoverage;
+			this.suspiciousnessEngine = suspiciousnessEngine;
+			indexClasses();
+		}
+
+		/*
+		 * Indexes the classes by name, and the test methods of the test classes by name.
+		 * Where names are shared, the class or test method that comes first is the one
+		 * indexed.
+		 */
+		private void indexClasses() {
+			for (CodeClass codeClass: getClasses()) {
+				if (!classesByName.containsKey(codeClass.getName()))
+					classesByName.put(codeClass.getName(), codeClass);
+			}
+			for (TestClass testClass: testClasses) {
+				for (CodeMethod method: testClass.getMethods()) {
+					if (method instanceof TestMethod && !testMethodsByName.containsKey(method.getName()))
+						testMethodsByName.put(method.getName(), (TestMethod) method);
+				}
+			}
+		}
+
+		/*
+		 * Returns a model that differs from this one only in the recorded states of its files,
+		 * which must have the same content, sharing its coverage and engine once made.
+		 */
+		synchronized Model withFileStates(Map<String, FileState> fileStates) {
+			return new Model(properties, trace, productionClasses, testClasses, fileStates, queryCoverage, suspiciousnessEngine);
+		}
+
+		List<CodeClass> getClasses() {
+			List<CodeClass> combinedClasses = new ArrayList<CodeClass>(productionClasses);
+			combinedClasses.addAll(testClasses);
+			return combinedClasses; 
+		}
+
+		List<CodeMethod> getAllMethods() {
+			return methodsOf(productionClasses, testClasses);
+		}
+
+		TestMethod getTestMethodByName(String methodName) throws DFQException {	
+			TestMethod testMethod = testMethodsByName.get(methodName);
+			if (testMethod == null)
+				throw new MethodWithGivenNameNotFoundException();
+			return testMethod;
+		}
+
+		synchronized QueryCoverage getQueryCoverage() throws DFQException {
+			if (queryCoverage == null) {
+				CoverageMatrix coverage = trace.getCoverageMatrix();
+				long start = metrics.startTimer();
+				queryCoverage = new QueryCoverage(getAllMethods(), coverage);
+				metrics.record(DiagnosisPhase.QUERY_INDEXING, start);
+			}
+			return queryCoverage;
+		}
+
+		synchronized SuspiciousnessEngine getSuspiciousnessEngine() throws DFQException {
+			if (suspiciousnessEngine == null) {
+				QueryCoverage coverage = getQueryCoverage();
+				long start = metrics.startTimer();
+				suspiciousnessEngine = new SuspiciousnessEngine(coverage);
+				metrics.record(DiagnosisPhase.SCORING, start);
+			}
+			return suspiciousnessEngine;
+		}
+
+		// The coverage and engine as they are, without making them.
+		synchronized QueryCoverage peekQueryCoverage() {
+			return queryCoverage;
+		}
+
+		synchronized SuspiciousnessEngine peekSuspiciousnessEngine() {
+			return suspiciousnessEngine;
+		}
 	}
 
-}
\ No newline at end of file
+}
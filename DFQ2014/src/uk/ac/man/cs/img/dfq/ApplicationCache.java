@@ -0,0 +1,262 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/*
+ * The instances of this class keep the most recently used applications loaded, keyed by
+ * the canonical path of their properties files, so that a long-running process such as a
+ * DiagnosisDaemon can answer repeated questions about an application without loading it
+ * again each time.  Each application is named after that canonical path, so applications
+ * whose properties files share a name are still reported, and their metrics published,
+ * apart.
+ *
+ * The cache holds at most maxApplications applications, whose footprints together come to
+ * at most memoryBudget bytes, evicting the least recently used to make room.  The footprint
+ * of an application is taken to be the total length of the files it was loaded from (see
+ * Application.getFootprint()), which grows with its trace and source files.  The
+ * application just loaded or reloaded is never evicted, so one larger than the budget is
+ * still kept until the next.  Applications leaving the cache withdraw their metrics from
+ * JMX, including those invalidated or cleared while they were still being loaded.
+ *
+ * An application is loaded, and its queries counted, by the first thread to ask for it.
+ * Other threads asking for it in the meantime wait for that load rather than starting
+ * their own, while those asking for other applications are not held up.  A load that
+ * fails is not cached, so the next request tries again.
+ *
+ * An application found in the cache is first brought up to date with the files it was
+ * loaded from (see Application.reload()), so that answers follow edits to its sources and
+ * new runs of its tests without the whole application being loaded again.  Its footprint
+ * is then taken again.
+ */
+public class ApplicationCache {
+
+	public static final int DEFAULT_MAX_APPLICATIONS = 8;
+	public static final long NO_MEMORY_BUDGET = Long.MAX_VALUE;
+
+	private int maxApplications;
+	private long memoryBudget;
+
+	// The cached applications, least recently used first, guarded by the instance's lock.
+	private LinkedHashMap<String, CachedApplication> applications = new LinkedHashMap<String, CachedApplication>(16, 0.75f, true);
+	private long footprint;
+
+	// Constructors
+	public ApplicationCache() {
+		this(DEFAULT_MAX_APPLICATIONS, NO_MEMORY_BUDGET);
+	}
+
+	public ApplicationCache(int maxApplications, long memoryBudget) {
+		if (maxApplications < 1)
+			throw new IllegalArgumentException("The cache must hold at least one application, not " + maxApplications);
+		if (memoryBudget < 0)
+			throw new IllegalArgumentException("Negative memory budget " + memoryBudget);
+		this.maxApplications = maxApplications;
+		this.memoryBudget = memoryBudget;
+	}
+
+
+	// Getters
+	public int getMaxApplications() {
+		return this.maxApplications;
+	}
+
+	public long getMemoryBudget() {
+		return this.memoryBudget;
+	}
+
+	/*
+	 * Returns the total footprint of the applications loaded into the cache.
+	 */
+	public synchronized long getFootprint() {
+		return this.footprint;
+	}
+
+	/*
+	 * Returns the canonical paths of the properties files of the applications in the cache,
+	 * least recently used first, including those still being loaded.
+	 */
+	public synchronized List<String> getCachedPaths() {
+		return new ArrayList<String>(applications.keySet());
+	}
+
+
+	// Looking up applications
+
+	/*
+	 * Returns the application loaded from the given properties file, loading it if it is not
+	 * already in the cache, and otherwise reloading whatever has changed.
+	 */
+	public Application get(String propertiesFilePath) throws DFQException {
+		final String key = canonicalPathOf(propertiesFilePath);
+		CachedApplication cached;
+		boolean loadHere = false;
+		synchronized (this) {
+			cached = applications.get(key);
+			if (cached == null) {
+				cached = new CachedApplication(key);
+				applications.put(key, cached);
+				loadHere = true;
+			}
+		}
+
+		if (loadHere) {
+			cached.loading.run();
+			synchronized (this) {
+				if (applications.get(key) == cached)
+					resized(cached);
+				else if (cached.isLoaded())
+					// Invalidated or cleared while it was being loaded, so evicted() could not close it.
+					cached.getApplication().close();
+			}
+		}
+
+		try {
+			Application application = cached.loading.get();
+			if (!loadHere && !application.reload().isEmpty()) {
+				synchronized (this) {
+					if (applications.get(key) == cached)
+						resized(cached);
+				}
+			}
+			return application;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ClassLoadingInterruptedException();
+		} catch (ExecutionException e) {
+			synchronized (this) {
+				if (applications.get(key) == cached)
+					applications.remove(key);
+			}
+			throw loadingFailure(e.getCause());
+		}
+	}
+
+	/*
+	 * Removes the application loaded from the given properties file from the cache, if it is
+	 * there, so that the next request for it loads it afresh.  Returns whether it was there.
+	 */
+	public boolean invalidate(String propertiesFilePath) throws DFQException {
+		String key = canonicalPathOf(propertiesFilePath);
+		synchronized (this) {
+			CachedApplication cached = applications.remove(key);
+			if (cached == null)
+				return false;
+			evicted(cached);
+			return true;
+		}
+	}
+
+	/*
+	 * Removes every application from the cache.
+	 */
+	public synchronized void clear() {
+		for (CachedApplication cached : applications.values())
+			evicted(cached);
+		applications.clear();
+	}
+
+
+	// Utility methods
+
+	// Takes the footprint of an application in the cache again, and makes room for it.
+	private void resized(CachedApplication cached) {
+		if (!cached.isLoaded())
+			return;
+		footprint -= cached.footprint;
+		cached.footprint = cached.getApplication().getFootprint();
+		footprint += cached.footprint;
+		evictBeyondLimits(cached);
+	}
+
+	private void evictBeyondLimits(CachedApplication keep) {
+		Iterator<CachedApplication> leastRecentlyUsed = applications.values().iterator();
+		while ((applications.size() > maxApplications || footprint > memoryBudget) && leastRecentlyUsed.hasNext()) {
+			CachedApplication cached = leastRecentlyUsed.next();
+			if (cached != keep && cached.isLoaded()) {
+				leastRecentlyUsed.remove();
+				evicted(cached);
+			}
+		}
+	}
+
+	// Threads that already hold an evicted application can go on using it.
+	private void evicted(CachedApplication cached) {
+		footprint -= cached.footprint;
+		cached.footprint = 0;
+		if (cached.isLoaded())
+			cached.getApplication().close();
+	}
+
+	private static String canonicalPathOf(String propertiesFilePath) throws DFQException {
+		try {
+			return new File(propertiesFilePath).getCanonicalPath();
+		} catch (IOException e) {
+			throw new CouldNotFindPropertiesFileException();
+		}
+	}
+
+	private static DFQException loadingFailure(Throwable cause) {
+		if (cause instanceof DFQException)
+			return (DFQException) cause;
+		if (cause instanceof RuntimeException)
+			throw (RuntimeException) cause;
+		if (cause instanceof Error)
+			throw (Error) cause;
+		return new DFQException(cause.toString());
+	}
+
+	/*
+	 * Loads the application from the properties file at the given canonical path, and counts
+	 * its queries.
+	 */
+	protected Application load(String propertiesFilePath) throws Exception {
+		Application application = new Application(propertiesFilePath, propertiesFilePath);
+		application.getSuspiciousnessEngine();
+		return application;
+	}
+
+	/*
+	 * An application in the cache, which may still be being loaded.
+	 */
+	private class CachedApplication {
+
+		private FutureTask<Application> loading;
+		private long footprint;
+
+		CachedApplication(final String propertiesFilePath) {
+			this.loading = new FutureTask<Application>(new Callable<Application>() {
+				public Application call() throws Exception {
+					return load(propertiesFilePath);
+				}
+			});
+		}
+
+		boolean isLoaded() {
+			if (!loading.isDone())
+				return false;
+			try {
+				loading.get();
+				return true;
+			} catch (Exception e) {
+				return false;
+			}
+		}
+
+		Application getApplication() {
+			try {
+				return loading.get();
+			} catch (Exception e) {
+				throw new IllegalStateException("The application has not been loaded");
+			}
+		}
+	}
+
+}
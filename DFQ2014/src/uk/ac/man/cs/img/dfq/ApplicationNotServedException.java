@@ -0,0 +1,11 @@
+package uk.ac.man.cs.img.dfq;
+
+public class ApplicationNotServedException extends DFQException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ApplicationNotServedException(String query) {
+		super(query);
+	}
+
+}
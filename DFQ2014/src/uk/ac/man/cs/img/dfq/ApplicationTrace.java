@@ -2,25 +2,10 @@ package uk.ac.man.cs.img.dfq;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.xml.transform.sax.SAXSource;
-
-import net.sf.saxon.s9api.Axis;
-import net.sf.saxon.s9api.Processor;
-import net.sf.saxon.s9api.QName;
-import net.sf.saxon.s9api.SaxonApiException;
-import net.sf.saxon.s9api.XQueryCompiler;
-import net.sf.saxon.s9api.XQueryEvaluator;
-import net.sf.saxon.s9api.XQueryExecutable;
-import net.sf.saxon.s9api.XdmItem;
-import net.sf.saxon.s9api.XdmNode;
-import net.sf.saxon.s9api.XdmSequenceIterator;
-import net.sf.saxon.s9api.XdmValue;
-
-import org.xml.sax.InputSource;
-
 /*
  * @author Javid Akhter
  * @author Suzanne Embury
@@ -32,21 +17,83 @@ import org.xml.sax.InputSource;
 public class ApplicationTrace {
 
 	public static final String CONSTRUCTOR_NAME_IN_TRACE_FILE = "<init>";
-	private static final String NAMESPACE_DECLARATION = "declare namespace ns0=\"http://www.cc.gatech.edu/aristotle/2008/tarantula\"; ";
+	public static final String TARANTULA_NAMESPACE = "http://www.cc.gatech.edu/aristotle/2008/tarantula";
 	private static final String SIGNATURE_SUFFIX_OF_VOID_METHODS = ")V";
 	
+	private Application application;
 	private String traceFilePath;
+	private TraceReader traceReader;
+	private Map<String, Map<String, MethodLineRange>> productionMethodLineRanges;
+	private Map<String, Map<String, MethodLineRange>> testMethodLineRanges;
+	private CoverageMatrix coverageMatrix;
+
+	// Constructors
+	public ApplicationTrace(Application application, String xmlFilePath) throws DFQException {
+		this(application, xmlFilePath, true);
+	}
 
-	// Constructor
-	public ApplicationTrace(String xmlFilePath) throws DFQException {
+	/*
+	 * When loadIntoMemory is true, the trace file is read once and every question about the
+	 * trace is answered from the resulting TraceModel.  Otherwise each question is answered
+	 * by evaluating an XQuery against the trace file itself.  A trace file in the binary
+	 * format written by BinaryTraceWriter is always memory-mapped instead.
+	 */
+	public ApplicationTrace(Application application, String xmlFilePath, boolean loadIntoMemory) throws DFQException {
+		this(application, xmlFilePath, loadIntoMemory, XQueryTraceReader.NO_TREE_SIZE_LIMIT);
+	}
+
+	/*
+	 * When the trace is not loaded into memory, maxTreeBytes limits the size of trace file that
+	 * will be kept as a parsed document tree between queries (see XQueryTraceReader).
+	 */
+	public ApplicationTrace(Application application, String xmlFilePath, boolean loadIntoMemory, long maxTreeBytes) throws DFQException {
+		this.application = application;
 		this.traceFilePath = xmlFilePath;
+		DiagnosisMetrics metrics = application.getMetrics();
+		TraceLoadEvent event = new TraceLoadEvent();
+		event.begin();
+		long start = metrics.startTimer();
+		if (MappedTraceReader.isBinaryTrace(xmlFilePath)) {
+			this.traceReader = new MappedTraceReader(xmlFilePath);
+			metrics.readBytes(new File(xmlFilePath).length());
+		} else if (loadIntoMemory) {
+			this.traceReader = TraceModelLoader.load(xmlFilePath);
+			metrics.parsedDocument(new File(xmlFilePath).length());
+		} else {
+			this.traceReader = new XQueryTraceReader(xmlFilePath, maxTreeBytes, metrics);
+		}
+		metrics.record(DiagnosisPhase.TRACE_LOADING, start);
+		if (event.shouldCommit()) {
+			event.path = xmlFilePath;
+			event.reader = traceReader.getClass().getSimpleName();
+			event.bytes = new File(xmlFilePath).length();
+			event.commit();
+		}
+	}
+
+	/*
+	 * Creates the trace of the given application from a reader that has already been
+	 * opened, for example on a ModelSnapshot.
+	 */
+	ApplicationTrace(Application application, String xmlFilePath, TraceReader traceReader) {
+		this.application = application;
+		this.traceFilePath = xmlFilePath;
+		this.traceReader = traceReader;
 	}
 
 	// Getters and Setters
 
+	public Application getApplication() {
+		return this.application;
+	}
+
 	public String getTraceFilePath() {
 		return this.traceFilePath;
 	}
+
+	TraceReader getTraceReader() {
+		return this.traceReader;
+	}
 	
 	public static boolean isSignatureOfVoidMethod(String methodSignature) {
 		return methodSignature.endsWith(SIGNATURE_SUFFIX_OF_VOID_METHODS);
@@ -72,12 +119,7 @@ public class ApplicationTrace {
 	}
 
 	private TestMethod convertNameToTestMethod(String methodName) throws DFQException { 
-		List<TestClass> testClasses = Application.currentApplication().getTestClasses();		
-		for (TestClass  testClass: testClasses) {
-			CodeMethod codeMethod = testClass.getMethodByName(methodName);
-			return (TestMethod) codeMethod;
-		}
-		throw new MethodWithGivenNameNotFoundException();
+		return this.application.getTestMethodByName(methodName);
 	}
 
 	public List<TestMethod> getPassedTests() throws DFQException {
@@ -100,16 +142,34 @@ public class ApplicationTrace {
 		return failedTestMethods;		
 	}
 
-	public Map<TestMethod, List<Query>> identifyAllCandidateQueries() {
-		// TODO Auto-generated method stub
-		return null;
+	/*
+	 * Returns the queries executed by each failing test, which are the candidates for the
+	 * cause of its failure, as the application identifies them.
+	 */
+	public Map<TestMethod, List<Query>> identifyAllCandidateQueries() throws DFQException {
+		return this.application.identifyAllCandidateQueries();
 	}
 	
+	/*
+	 * Returns the statements executed by the named test, in execution order (so a statement
+	 * executed more than once appears more than once).
+	 */
 	public List<Statement> getExecutedStatementsByMethod(String methodName) throws DFQException {
-		List<LineNumClassPair<String>> execStmts = this.getExecutedStatementsFromTrace(methodName);
-		List<Statement> statements = new ArrayList<Statement>();
+		return convToStatements(this.getExecutedStatementsFromTrace(methodName));
+	}
+
+	/*
+	 * Returns the set of statements executed by the named test, each appearing once.
+	 */
+	public List<Statement> getDistinctExecutedStatementsByMethod(String methodName) throws DFQException {
+		return convToStatements(this.getDistinctExecutedStatementsFromTrace(methodName));
+	}
+
+	private List<Statement> convToStatements(List<LineNumClassPair<String>> execStmts) throws DFQException {
+		List<Statement> statements = new ArrayList<Statement>(execStmts.size());
 		for (LineNumClassPair<String> stmt:execStmts) {
-			Statement stmts = convToStatement(stmt);
+			CodeClass codeClass = this.application.getClassByName(stmt.getClassName());
+			Statement stmts = convToStatement(stmt, codeClass);
 			if (stmts != null) {
 				statements.add(stmts);
 			}
@@ -117,17 +177,11 @@ public class ApplicationTrace {
 		return statements;
 	}
 	
-	private Statement convToStatement(LineNumClassPair<String> stmt) throws DFQException {		
-		Application app = Application.currentApplication();
-		CodeClass className = app.getClassByName(stmt.getClassName());
-		List<CodeMethod> methods = className.getMethods();
-		Statement statement = null;
-		for (CodeMethod method:methods) {
-			if(stmt.getLineNum() >= method.getStartLineNumber() && stmt.getLineNum() <= method.getEndLineNumber()) {
-				statement = className.getStatementByLineNumber(stmt.getLineNum());
-			}
-		}
-		return statement;		
+	private Statement convToStatement(LineNumClassPair<String> stmt, CodeClass codeClass) throws DFQException {		
+		CodeMethod method = codeClass.getMethodContainingLine(stmt.getLineNum());
+		if (method == null)
+			return null;
+		return method.getStatementByLineNumber(stmt.getLineNum());
 	}
 	
 //	public List<Query> getAllExecutedQueriesFromTrace(String methodName) throws DFQException {
@@ -143,7 +197,7 @@ public class ApplicationTrace {
 //	}
 //
 //	private Query convToQuery(Statement statement) throws DFQException {
-//		Application app = Application.currentApplication();
+//		Application app = this.application;
 //		CodeClass parentClass = statement.getCodeMethod().getParentClass();
 //		CodeClass className = app.getClassByName(parentClass.getName());
 //		List<CodeMethod> methods = className.getMethods();
@@ -163,183 +217,96 @@ public class ApplicationTrace {
 
 	// Utility Methods for Extracting Data from the XML Trace File
 
-	public int getMethodStartLine(String methodSignature) throws DFQException {				
-		String startLine = NAMESPACE_DECLARATION +
-				"for $class in .//ns0:file/ns0:class " +
-				"  for $method in $class/ns0:method " +
-				"    for $line in $method/ns0:line[@type='start'] " +
-				"where $method/ns0:signature = \"" + methodSignature + "\" " + 
-				"return <line>{$line/text()}</line> ";
-		List<String> origStartLine = processXQuery(startLine);	
-		if (origStartLine.size() > 0) {
-			String convStartLine = origStartLine.get(0);
-			int startLineNumber = Integer.parseInt(convStartLine);
-			return startLineNumber;
-		}
-		throw new CouldNotFindStartLineNumberForGivenMethodException();
-	}
-
-	public int getMethodEndLine(String methodSignature) throws DFQException {				 
-		String endLine = NAMESPACE_DECLARATION +
-				"for $class in .//ns0:file/ns0:class " +
-				"  for $method in $class/ns0:method " +
-				"    for $line in $method/ns0:line[@type='end'] " +
-				"where $method/ns0:signature = \"" + methodSignature + "\" " + 
-				"return <line>{$line/text()}</line> ";
-		List<String> origEndLine = processXQuery(endLine);		
-		if (origEndLine.size() > 0) {
-			String convEndLine = origEndLine.get(0);
-			int endLineNumber = Integer.parseInt(convEndLine);
-			return endLineNumber;
-		}
-		throw new CouldNotFindEndLineNumberForGivenMethodException();
+	public MethodLineRange getMethodLineRange(String methodSignature) throws DFQException {
+		return new MethodLineRange(getMethodStartLine(methodSignature), getMethodEndLine(methodSignature));
 	}
 
-	private List<String> getExecutedTestsFromTrace() throws DFQException {
-		String query = NAMESPACE_DECLARATION + 
-				"for $tc in .//ns0:test_case " + 
-				"return <x>{data($tc/@name)}</x>";
+	/*
+	 * Returns the line ranges of the methods of every production class, read from the trace
+	 * in a single pass the first time they are asked for.
+	 */
+	public synchronized Map<String, Map<String, MethodLineRange>> getProductionMethodLineRanges() throws DFQException {
+		if (productionMethodLineRanges == null)
+			productionMethodLineRanges = traceReader.getProductionMethodLineRanges();
+		return productionMethodLineRanges;
+	}
+
+	/*
+	 * Returns the line ranges of the methods of every test class, read from the trace in a
+	 * single pass the first time they are asked for.
+	 */
+	public synchronized Map<String, Map<String, MethodLineRange>> getTestMethodLineRanges() throws DFQException {
+		if (testMethodLineRanges == null)
+			testMethodLineRanges = traceReader.getTestMethodLineRanges();
+		return testMethodLineRanges;
+	}
+
+	/*
+	 * Returns the statements executed by every test, built from the trace the first time
+	 * it is asked for.
+	 */
+	public synchronized CoverageMatrix getCoverageMatrix() throws DFQException {
+		if (coverageMatrix == null)
+			coverageMatrix = traceReader.getCoverageMatrix();
+		return coverageMatrix;
+	}
+
+	public Map<String, MethodLineRange> getProductionMethodLineRanges(String className) throws DFQException {
+		return lineRangesForClass(getProductionMethodLineRanges(), className);
+	}
+
+	public Map<String, MethodLineRange> getTestMethodLineRanges(String className) throws DFQException {
+		return lineRangesForClass(getTestMethodLineRanges(), className);
+	}
+
+	private static Map<String, MethodLineRange> lineRangesForClass(Map<String, Map<String, MethodLineRange>> lineRanges, String className) {
+		Map<String, MethodLineRange> classLineRanges = lineRanges.get(className);
+		if (classLineRanges == null)
+			return new HashMap<String, MethodLineRange>();
+		return classLineRanges;
+	}
+
+	public int getMethodStartLine(String methodSignature) throws DFQException {
+		return traceReader.getMethodStartLine(methodSignature);
+	}
+
+	public int getMethodEndLine(String methodSignature) throws DFQException {
+		return traceReader.getMethodEndLine(methodSignature);
+	}
 
-		return processXQuery(query);		
+	private List<String> getExecutedTestsFromTrace() throws DFQException {
+		return traceReader.getExecutedTestNames();
 	}	
 
 	public List<String> getProductionMethodSignaturesFromTrace(String className) throws DFQException {				
-		String query = NAMESPACE_DECLARATION +
-				"for $class in .//ns0:program/ns0:file/ns0:class " +
-				"  for $method in $class/ns0:method " +
-				"where $class/ns0:name = \"" + className + "\" " +
-				"return $method/ns0:signature/text() ";
-		return processXQuery(query);
+		return traceReader.getProductionMethodSignatures(className);
 	}
 	
 	public List<String> getTestMethodSignaturesFromTrace(String className) throws DFQException {				
-		String query = NAMESPACE_DECLARATION +
-				"for $class in .//ns0:test_suite/ns0:file/ns0:class " +
-				"  for $method in $class/ns0:method " +
-				"where $class/ns0:name = \"" + className + "\" " +
-				"return $method/ns0:signature/text() ";
-		return processXQuery(query);
+		return traceReader.getTestMethodSignatures(className);
 	}
 	
 
 	private List<String> getTestResultFromTrace(String testName) throws DFQException {
-		String query = NAMESPACE_DECLARATION +
-				"for $tc in .//ns0:test_case[@name=\"" + testName + "\"] " +
-				"return <x>{data($tc/@passing)}</x> ";
-		return processXQuery(query);
+		return traceReader.getTestResults(testName);
 	}
 
 
 	private List<String> getPassingTestsFromTraceFile() throws DFQException {
-		String query = NAMESPACE_DECLARATION +
-				"for $tc in .//ns0:test_case[@passing=\"true\"] " +
-				"return <x>{data($tc/@name)}</x> ";
-		return processXQuery(query);
+		return traceReader.getPassingTestNames();
 	}
 
 	private List<String> getFailingTestsFromTraceFile() throws DFQException {
-		String query = NAMESPACE_DECLARATION +
-				"for $tc in .//ns0:test_case[@passing=\"false\"] " + 
-				"return <x>{data($tc/@name)}</x> ";
-		return processXQuery(query);
+		return traceReader.getFailingTestNames();
 	}
 
 	
 	private List<LineNumClassPair<String>> getExecutedStatementsFromTrace(String methodName) throws DFQException {
-		String query = NAMESPACE_DECLARATION +		 
-				" for $tc in .//ns0:test_case " +
-				" for $stm in $tc/ns0:statement " +
-				" for $fstmt in .//ns0:file/ns0:statement " +
-					"where $tc/@name = \"" + methodName + "\" and $stm/ns0:id/text() = $fstmt/@id " +
-				"return <res><ln>{$fstmt/ns0:line/text()}</ln> "+ 
-					"<cn>{$fstmt/../ns0:class/ns0:name/text()}</cn></res> "; 
-		return processXQueryForLineNumAndClass(query);
+		return traceReader.getExecutedStatements(methodName);
 	}
-	
-	
-	// Utility Methods for Evaluating XQueries
-	
-	private List<LineNumClassPair<String>> processXQueryForLineNumAndClass(String query) throws DFQException {
-		Processor processor = new Processor(false);
-		XQueryCompiler xqc = processor.newXQueryCompiler();
-		XQueryExecutable xqex;
-		try {
-			xqex = xqc.compile(query);
-		} catch (SaxonApiException e) {
-			throw new CouldNotCompileXQueryExpression(e.getMessage() + " with query \"" + query + "\"");
-		}
-
-		XQueryEvaluator xqev = xqex.load();
-		InputSource is = new InputSource((new File(traceFilePath).toURI().toString()));
-		SAXSource source = new SAXSource(is);
-		try {
-			xqev.setSource(source);
-		} catch (SaxonApiException e) {
-			throw new CouldNotSetSourceForXQueryEvaluator(e.getMessage() + " with path \"" + traceFilePath + "\"");
-		}
 
-		XdmValue queryResult;
-		try {
-			queryResult = xqev.evaluate();
-		} catch (SaxonApiException e) {
-			throw new CouldNotEvaluateXQueryExpression(e.getMessage() + " with query \"" + query + "\"");
-		}
-
-		List<LineNumClassPair<String>> stmtsPair = new ArrayList<LineNumClassPair<String>>(); 
-		for (XdmItem item : queryResult) {
-			XdmNode res = (XdmNode) item;
-			XdmNode lnNode = getChild(res, "ln");
-			String ln = lnNode.getStringValue();
-			int lnNum = Integer.parseInt(ln);
-			XdmNode cnNode = getChild(res, "cn");            
-			String cn = cnNode.getStringValue();
-			stmtsPair.add(new LineNumClassPair<String>(lnNum, cn));
-		}
-		return stmtsPair;
-	}
-		
-	private static XdmNode getChild(XdmNode parent, String childName) {
-		XdmSequenceIterator iter = parent.axisIterator(Axis.CHILD, new QName(childName));
-		if (iter.hasNext()) {
-			return (XdmNode)iter.next();
-		} else {
-			return null;
-		}
-	}
-	
-
-	private List<String> processXQuery(String query) throws DFQException {
-		Processor processor = new Processor(false);
-		XQueryCompiler xqc = processor.newXQueryCompiler();
-		XQueryExecutable xqex;
-		try {
-			xqex = xqc.compile(query);
-		} catch (SaxonApiException e) {
-			throw new CouldNotCompileXQueryExpression(e.getMessage() + " with query \"" + query + "\"");
-		}
-
-		XQueryEvaluator xqev = xqex.load();
-		InputSource is = new InputSource((new File(traceFilePath).toURI().toString()));
-		SAXSource source = new SAXSource(is);
-		try {
-			xqev.setSource(source);
-		} catch (SaxonApiException e) {
-			throw new CouldNotSetSourceForXQueryEvaluator(e.getMessage() + " with path \"" + traceFilePath + "\"");
-		}
-
-		XdmValue queryResult;
-		try {
-			queryResult = xqev.evaluate();
-		} catch (SaxonApiException e) {
-			throw new CouldNotEvaluateXQueryExpression(e.getMessage() + " with query \"" + query + "\"");
-		}
-
-		List<String> resultList = new ArrayList<String>();
-		for (XdmItem item : queryResult) {
-			resultList.add(item.getStringValue());
-			
-		}
-		return resultList;
+	private List<LineNumClassPair<String>> getDistinctExecutedStatementsFromTrace(String methodName) throws DFQException {
+		return traceReader.getDistinctExecutedStatements(methodName);
 	}
 
-}
\ No newline at end of file
+}
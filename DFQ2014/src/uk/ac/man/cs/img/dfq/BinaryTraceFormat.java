@@ -0,0 +1,61 @@
+package uk.ac.man.cs.img.dfq;
+
+/*
+ * This class defines the layout of the DFQ binary trace format, which holds the same
+ * information as a Tarantula trace file in a form that can be memory-mapped and queried
+ * in place.  Binary traces are written by BinaryTraceWriter and read by MappedTraceReader.
+ *
+ * Every value is a big-endian 4-byte int.  The file starts with a header:
+ *
+ *   magic, version, and the byte offset of each of the following sections (in order)
+ *
+ * Each section starts with a count of its entries, followed by the entries themselves:
+ *
+ *   strings      count+1 byte offsets into the UTF-8 bytes that follow them.  The strings
+ *                are distinct and sorted, so a string can be found by binary search, and
+ *                every other section refers to strings by their position in this table.
+ *   methods      (class, signature, kind, start line, end line) for every method of a
+ *                production or test class, in trace file order
+ *   signatures   (signature, start line, end line) for every method signature in the
+ *                trace, sorted by signature
+ *   statements   (line, class) for each statement, indexed by statement index
+ *   test cases   (test name, passing) for every test case, in trace file order
+ *   coverage     (test name, trace offset, trace length, set offset, set length) for each
+ *                distinct test name, sorted by test name.  The offsets are positions in
+ *                the statement list section.
+ *   statement list  the statement indexes referred to by the coverage section
+ *
+ * Missing line numbers are recorded as MethodLineRange.UNDEFINED_LINE_NUMBER, and a
+ * missing string as NO_STRING.  Offsets are ints, so a binary trace cannot exceed 2GB.
+ */
+public final class BinaryTraceFormat {
+
+	public static final int MAGIC = 0x44465154;	// "DFQT"
+	public static final int VERSION = 1;
+
+	public static final int NO_STRING = -1;
+
+	public static final int PRODUCTION_METHOD = 0;
+	public static final int TEST_METHOD = 1;
+
+	static final int MAGIC_POSITION = 0;
+	static final int VERSION_POSITION = 4;
+	static final int STRINGS_OFFSET_POSITION = 8;
+	static final int METHODS_OFFSET_POSITION = 12;
+	static final int SIGNATURES_OFFSET_POSITION = 16;
+	static final int STATEMENTS_OFFSET_POSITION = 20;
+	static final int TEST_CASES_OFFSET_POSITION = 24;
+	static final int COVERAGE_OFFSET_POSITION = 28;
+	static final int STATEMENT_LIST_OFFSET_POSITION = 32;
+	static final int HEADER_SIZE = 36;
+
+	static final int METHOD_RECORD_INTS = 5;
+	static final int SIGNATURE_RECORD_INTS = 3;
+	static final int STATEMENT_RECORD_INTS = 2;
+	static final int TEST_CASE_RECORD_INTS = 2;
+	static final int COVERAGE_RECORD_INTS = 5;
+
+	private BinaryTraceFormat() {
+	}
+
+}
@@ -0,0 +1,257 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ * This class converts a Tarantula trace file into the DFQ binary trace format described
+ * in BinaryTraceFormat.  It can be run from the command line, given the path of the
+ * Tarantula trace file and the path of the binary trace file to create.
+ */
+public class BinaryTraceWriter {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private TraceModel model;
+	private String binaryTraceFilePath;
+	private DataOutputStream out;
+
+	private Map<String, Integer> stringIds = new HashMap<String, Integer>();
+	private int[] sectionOffsets = new int[7];
+
+
+	// Static Methods
+
+	public static void main(String[] args) throws DFQException {
+		if (args.length != 2) {
+			System.err.println("usage: BinaryTraceWriter <tarantula trace file> <binary trace file>");
+			System.exit(1);
+		}
+		convert(args[0], args[1]);
+	}
+
+	public static void convert(String xmlTraceFilePath, String binaryTraceFilePath) throws DFQException {
+		write(TraceModelLoader.load(xmlTraceFilePath), binaryTraceFilePath);
+	}
+
+	public static void write(TraceModel model, String binaryTraceFilePath) throws DFQException {
+		new BinaryTraceWriter(model, binaryTraceFilePath).write();
+	}
+
+
+	// Constructor
+	private BinaryTraceWriter(TraceModel model, String binaryTraceFilePath) {
+		this.model = model;
+		this.binaryTraceFilePath = binaryTraceFilePath;
+	}
+
+	private void write() throws DFQException {
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(binaryTraceFilePath)));
+			try {
+				writeHeader();
+				sectionOffsets[0] = out.size();
+				writeStrings();
+				sectionOffsets[1] = out.size();
+				writeMethods();
+				sectionOffsets[2] = out.size();
+				writeSignatures();
+				sectionOffsets[3] = out.size();
+				writeStatements();
+				sectionOffsets[4] = out.size();
+				writeTestCases();
+				writeCoverage();
+			} finally {
+				out.close();
+			}
+			writeSectionOffsets();
+		} catch (IOException e) {
+			throw new CouldNotWriteToFileException("file " + binaryTraceFilePath + ": " + e.getMessage());
+		}
+	}
+
+
+	// Utility Methods for Writing Each Section
+
+	private void writeHeader() throws IOException {
+		out.writeInt(BinaryTraceFormat.MAGIC);
+		out.writeInt(BinaryTraceFormat.VERSION);
+		for (int i = 0; i < sectionOffsets.length; i++)
+			out.writeInt(0);
+	}
+
+	private void writeSectionOffsets() throws IOException {
+		RandomAccessFile file = new RandomAccessFile(binaryTraceFilePath, "rw");
+		try {
+			file.seek(BinaryTraceFormat.STRINGS_OFFSET_POSITION);
+			for (int i = 0; i < sectionOffsets.length; i++)
+				file.writeInt(sectionOffsets[i]);
+		} finally {
+			file.close();
+		}
+	}
+
+	private void writeStrings() throws IOException {
+		Set<String> strings = new TreeSet<String>();
+		for (Map<String, MethodLineRange> classLineRanges : model.getProductionMethodLineRanges().values())
+			strings.addAll(classLineRanges.keySet());
+		for (Map<String, MethodLineRange> classLineRanges : model.getTestMethodLineRanges().values())
+			strings.addAll(classLineRanges.keySet());
+		strings.addAll(model.getProductionMethodLineRanges().keySet());
+		strings.addAll(model.getTestMethodLineRanges().keySet());
+		strings.addAll(model.getMethodStartLines().keySet());
+		strings.addAll(model.getMethodEndLines().keySet());
+
+		StatementIndex statementIndex = model.getStatementIndex();
+		for (int i = 0; i < statementIndex.size(); i++) {
+			if (statementIndex.isDefined(i))
+				strings.add(statementIndex.getClassName(i));
+		}
+
+		for (String testName : model.getExecutedTestNames()) {
+			strings.add(testName);
+			strings.addAll(model.getTestResults(testName));
+		}
+
+		List<byte[]> encodedStrings = new ArrayList<byte[]>(strings.size());
+		for (String string : strings) {
+			stringIds.put(string, stringIds.size());
+			encodedStrings.add(string.getBytes(UTF8));
+		}
+
+		out.writeInt(encodedStrings.size());
+		int offset = 0;
+		out.writeInt(offset);
+		for (byte[] encodedString : encodedStrings) {
+			offset += encodedString.length;
+			out.writeInt(offset);
+		}
+		for (byte[] encodedString : encodedStrings)
+			out.write(encodedString);
+	}
+
+	private void writeMethods() throws IOException {
+		Map<String, Map<String, MethodLineRange>> productionMethods = model.getProductionMethodLineRanges();
+		Map<String, Map<String, MethodLineRange>> testMethods = model.getTestMethodLineRanges();
+
+		out.writeInt(countMethods(productionMethods) + countMethods(testMethods));
+		writeMethods(productionMethods, BinaryTraceFormat.PRODUCTION_METHOD);
+		writeMethods(testMethods, BinaryTraceFormat.TEST_METHOD);
+	}
+
+	private void writeMethods(Map<String, Map<String, MethodLineRange>> methods, int kind) throws IOException {
+		for (Map.Entry<String, Map<String, MethodLineRange>> classMethods : methods.entrySet()) {
+			for (Map.Entry<String, MethodLineRange> method : classMethods.getValue().entrySet()) {
+				out.writeInt(stringId(classMethods.getKey()));
+				out.writeInt(stringId(method.getKey()));
+				out.writeInt(kind);
+				out.writeInt(method.getValue().startLineOrUndefined());
+				out.writeInt(method.getValue().endLineOrUndefined());
+			}
+		}
+	}
+
+	private void writeSignatures() throws IOException {
+		Map<String, Integer> startLines = model.getMethodStartLines();
+		Map<String, Integer> endLines = model.getMethodEndLines();
+		Set<String> signatures = new TreeSet<String>(startLines.keySet());
+		signatures.addAll(endLines.keySet());
+
+		out.writeInt(signatures.size());
+		for (String signature : signatures) {
+			out.writeInt(stringId(signature));
+			out.writeInt(valueOrUndefined(startLines.get(signature)));
+			out.writeInt(valueOrUndefined(endLines.get(signature)));
+		}
+	}
+
+	private void writeStatements() throws IOException {
+		StatementIndex statementIndex = model.getStatementIndex();
+		out.writeInt(statementIndex.size());
+		for (int i = 0; i < statementIndex.size(); i++) {
+			if (statementIndex.isDefined(i)) {
+				out.writeInt(statementIndex.getLineNumber(i));
+				out.writeInt(stringId(statementIndex.getClassName(i)));
+			} else {
+				out.writeInt(StatementIndex.UNDEFINED_LINE_NUMBER);
+				out.writeInt(BinaryTraceFormat.NO_STRING);
+			}
+		}
+	}
+
+	/*
+	 * The model holds the results of all test cases with the same name together, so the
+	 * result of each test case is recovered by taking the results for its name in order.
+	 */
+	private void writeTestCases() throws IOException {
+		List<String> testNames = model.getExecutedTestNames();
+		Map<String, Integer> resultsUsed = new HashMap<String, Integer>();
+
+		out.writeInt(testNames.size());
+		for (String testName : testNames) {
+			Integer used = resultsUsed.get(testName);
+			int resultNumber = used == null ? 0 : used;
+			resultsUsed.put(testName, resultNumber + 1);
+
+			out.writeInt(stringId(testName));
+			out.writeInt(stringId(model.getTestResults(testName).get(resultNumber)));
+		}
+	}
+
+	private void writeCoverage() throws IOException {
+		Set<String> testNames = new TreeSet<String>(model.getExecutedTestNames());
+		List<int[]> statementLists = new ArrayList<int[]>();
+
+		sectionOffsets[5] = out.size();
+		out.writeInt(testNames.size());
+		int offset = 0;
+		for (String testName : testNames) {
+			int[] statementTrace = model.getExecutedStatementTrace(testName);
+			int[] statementSet = model.getExecutedStatementSet(testName);
+			out.writeInt(stringId(testName));
+			out.writeInt(offset);
+			out.writeInt(statementTrace.length);
+			out.writeInt(offset + statementTrace.length);
+			out.writeInt(statementSet.length);
+			offset += statementTrace.length + statementSet.length;
+			statementLists.add(statementTrace);
+			statementLists.add(statementSet);
+		}
+
+		sectionOffsets[6] = out.size();
+		out.writeInt(offset);
+		for (int[] statementList : statementLists) {
+			for (int statement : statementList)
+				out.writeInt(statement);
+		}
+	}
+
+
+	// Other Utility Methods
+
+	private int stringId(String string) {
+		return string == null ? BinaryTraceFormat.NO_STRING : stringIds.get(string);
+	}
+
+	private static int countMethods(Map<String, Map<String, MethodLineRange>> methods) {
+		int count = 0;
+		for (Map<String, MethodLineRange> classMethods : methods.values())
+			count += classMethods.size();
+		return count;
+	}
+
+	private static int valueOrUndefined(Integer lineNumber) {
+		return lineNumber == null ? MethodLineRange.UNDEFINED_LINE_NUMBER : lineNumber;
+	}
+
+}
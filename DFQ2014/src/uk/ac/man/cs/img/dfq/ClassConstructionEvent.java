@@ -0,0 +1,25 @@
+package uk.ac.man.cs.img.dfq;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * The Java Flight Recorder event for the creation of one of an application's classes,
+ * which includes reading its source file and creating its methods.
+ */
+@Name("uk.ac.man.cs.img.dfq.ClassConstruction")
+@Label("Class Construction")
+@Category({ "DFQ", "Model" })
+class ClassConstructionEvent extends jdk.jfr.Event {
+
+	@Label("Class Name")
+	String className;
+
+	@Label("Test Class")
+	boolean testClass;
+
+	@Label("Methods")
+	int methods;
+
+}
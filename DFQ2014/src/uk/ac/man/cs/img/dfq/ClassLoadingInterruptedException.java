@@ -0,0 +1,7 @@
+package uk.ac.man.cs.img.dfq;
+
+public class ClassLoadingInterruptedException extends DFQException {
+
+	private static final long serialVersionUID = 1L;
+
+}
@@ -2,7 +2,10 @@ package uk.ac.man.cs.img.dfq;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /*
  * @author Javid Akhter
@@ -15,17 +18,32 @@ public class CodeClass {
 	public static final String JAVA_CLASS_FILE_SUFFIX = ".java";
 	public static final String CONSTRUCTOR_NAME_IN_TRACE_FILE = "<init>";
 
+	private Application application;
 	private String name;
 	private String sourceFilePath;
+	private SourceFile sourceFile;
 
 	private List<CodeMethod> codeMethods = new ArrayList<CodeMethod>();
+	private Map<String, CodeMethod> methodsByName = new HashMap<String, CodeMethod>();
+	private Map<String, CodeMethod> methodsBySignature = new HashMap<String, CodeMethod>();
+	private MethodLineIndex methodLineIndex;
+	private Map<String, MethodLineRange> methodLineRanges;
+
+	// Constructors
+	public CodeClass(Application application, String sourceClassPath) throws DFQException {
+		this(application, application.getTrace(), sourceClassPath);
+	}
 
-	// Constructor
-	public CodeClass(String sourceClassPath) throws DFQException {
+	/*
+	 * Creates the class with the methods the given trace records, which may be a trace the
+	 * application is about to take up, rather than the one it has.
+	 */
+	public CodeClass(Application application, ApplicationTrace trace, String sourceClassPath) throws DFQException {
+		this.application = application;
 		this.sourceFilePath = sourceClassPath;
 		this.name = extractClassNameFromSourceFilePath();
 
-		createMethods();
+		createMethods(trace);
 	}
 
 	private String extractClassNameFromSourceFilePath() {
@@ -34,21 +52,38 @@ public class CodeClass {
 				CodeClass.JAVA_CLASS_FILE_SUFFIX.length());
 	}
 
-	private void createMethods() throws DFQException {
-		ApplicationTrace trace = Application.currentApplication().getTrace();			
-		List<String> methodSignatures = trace.getProductionMethodSignaturesFromTrace(this.name);
-		for (String methodSignature: methodSignatures) {
+	private void createMethods(ApplicationTrace trace) throws DFQException {
+		methodLineRanges = trace.getProductionMethodLineRanges(this.name);
+		for (Map.Entry<String, MethodLineRange> method: methodLineRanges.entrySet()) {
+			String methodSignature = method.getKey();
 			String methodName = methodSignature.substring(0, methodSignature.indexOf('('));
 			if(methodName.equals(CONSTRUCTOR_NAME_IN_TRACE_FILE)) {
 				methodName = methodName.replace(CONSTRUCTOR_NAME_IN_TRACE_FILE, this.name);
 			}
-			CodeMethod codeMethod = new CodeMethod(methodName, methodSignature, this);	
-			codeMethods.add(codeMethod);	
+			CodeMethod codeMethod = new CodeMethod(methodName, methodSignature, this, method.getValue());	
+			addMethod(codeMethod);	
 		}		
 	}
 
+	/*
+	 * Adds a method to the class and to the indexes used to find its methods by name and by
+	 * signature.  Where several methods share a name, the first added is found by name.
+	 */
+	protected synchronized void addMethod(CodeMethod codeMethod) {
+		codeMethods.add(codeMethod);
+		methodLineIndex = null;
+		if (!methodsByName.containsKey(codeMethod.getName()))
+			methodsByName.put(codeMethod.getName(), codeMethod);
+		if (!methodsBySignature.containsKey(codeMethod.getSignature()))
+			methodsBySignature.put(codeMethod.getSignature(), codeMethod);
+	}
+
 
 	// Getters and setters
+	public Application getApplication() {
+		return this.application;
+	}
+
 	public String getName() {
 		return this.name;
 	}
@@ -57,35 +92,90 @@ public class CodeClass {
 		return this.sourceFilePath;
 	}
 
+	/*
+	 * Returns the text of the class's source file, which is read the first time it is asked
+	 * for and then shared by all the methods of the class.
+	 */
+	public synchronized SourceFile getSourceFile() throws DFQException {
+		if (this.sourceFile == null) {
+			DiagnosisMetrics metrics = this.application.getMetrics();
+			SourceFileLoadEvent event = new SourceFileLoadEvent();
+			event.begin();
+			long start = metrics.startTimer();
+			this.sourceFile = new SourceFile(this.sourceFilePath);
+			long bytes = new File(this.sourceFilePath).length();
+			metrics.readBytes(bytes);
+			metrics.record(DiagnosisPhase.SOURCE_READING, start);
+			if (event.shouldCommit()) {
+				event.className = this.name;
+				event.path = this.sourceFilePath;
+				event.bytes = bytes;
+				event.lines = this.sourceFile.getLineCount();
+				event.commit();
+			}
+		}
+		return this.sourceFile;
+	}
+
 	public List<CodeMethod> getMethods() {
-		return this.codeMethods;                             
+		return Collections.unmodifiableList(this.codeMethods);                             
 	}
 
 	public CodeMethod getMethodByName(String methodName) throws MethodWithGivenNameNotFoundException {
-		for (CodeMethod codeMethod: this.codeMethods) {
-			if (codeMethod.getName().matches(methodName)){
-				return codeMethod;
-			}
-		}
-		throw new MethodWithGivenNameNotFoundException();
+		CodeMethod codeMethod = this.methodsByName.get(methodName);
+		if (codeMethod == null)
+			throw new MethodWithGivenNameNotFoundException();
+		return codeMethod;
 	}
 
 	public CodeMethod getMethodBySignature(String expectedSignature)  throws MethodWithGivenSignatureNotFoundException {
+		CodeMethod codeMethod = this.methodsBySignature.get(expectedSignature);
+		if (codeMethod == null)
+			throw new MethodWithGivenSignatureNotFoundException();
+		return codeMethod;
+	}
 
-		for (CodeMethod methodSignature: this.codeMethods) {
-			if (methodSignature.getSignature().equals(expectedSignature)) {
-				return methodSignature;
-			}
+	/*
+	 * Returns the methods whose names match the given regular expression, in the order in
+	 * which they were added to the class.
+	 */
+	public List<CodeMethod> findMethodsMatching(String methodNamePattern) {
+		List<CodeMethod> matchingMethods = new ArrayList<CodeMethod>();
+		for (CodeMethod codeMethod: this.codeMethods) {
+			if (PatternCache.matches(methodNamePattern, codeMethod.getName()))
+				matchingMethods.add(codeMethod);
 		}
-		throw new MethodWithGivenSignatureNotFoundException();
+		return matchingMethods;
+	}
+
+	/*
+	 * Returns whether the given trace gives the methods of the class the line ranges it was
+	 * created with, in which case creating the class again from the same source file would
+	 * give the same methods.
+	 */
+	public boolean hasSameMethodsIn(ApplicationTrace trace) throws DFQException {
+		return trace.getProductionMethodLineRanges(this.name).equals(this.methodLineRanges);
 	}
 
 	public Statement getStatementByLineNumber(int lineNumber) throws DFQException {
-		for (CodeMethod codeMethod: this.codeMethods) {
-			if (lineNumber >= codeMethod.getStartLineNumber() && lineNumber <= codeMethod.getEndLineNumber())
-				return codeMethod.getStatementByLineNumber(lineNumber);
-		}
-		throw new StatementWithGivenClassAndLineNumberNotFoundException();		
+		CodeMethod codeMethod = getMethodContainingLine(lineNumber);
+		if (codeMethod == null)
+			throw new StatementWithGivenClassAndLineNumberNotFoundException();		
+		return codeMethod.getStatementByLineNumber(lineNumber);
+	}
+
+	/*
+	 * Returns the first method whose line range contains the given line, or null if there is
+	 * none.
+	 */
+	public CodeMethod getMethodContainingLine(int lineNumber) {
+		return getMethodLineIndex().getMethodContainingLine(lineNumber);
+	}
+
+	private synchronized MethodLineIndex getMethodLineIndex() {
+		if (methodLineIndex == null)
+			methodLineIndex = new MethodLineIndex(this.codeMethods);
+		return methodLineIndex;
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,15 +1,13 @@
 package uk.ac.man.cs.img.dfq;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.LineNumberReader;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 
 /*
@@ -25,78 +23,87 @@ public class CodeMethod {
 	private String methodSignature;
 	private CodeClass parentClass;
 	
-	private Map<Integer, Statement> statements = new HashMap<Integer, Statement>(); 
+	// The statements of the method, indexed by line number less the start line number.  An
+	// entry is null for a line that is past the end of the source file.
+	private Statement[] statementsByLine;
+	private int statementCount;
 	private List<Query> queries = new ArrayList<Query>();
 
 	private int startLineNumber;
 	private int endLineNumber;
 	
 		
-	// Constructor 
+	// Constructors 
 	public CodeMethod(String name, String methodSignature, CodeClass parentClass) throws DFQException {
+		this(name, methodSignature, parentClass, 
+				parentClass.getApplication().getTrace().getMethodLineRange(methodSignature));
+	}
+
+	/*
+	 * Creates a method whose line range has already been read from the trace file (see
+	 * ApplicationTrace.getProductionMethodLineRanges()), avoiding a lookup per method.
+	 */
+	public CodeMethod(String name, String methodSignature, CodeClass parentClass, MethodLineRange lineRange) throws DFQException {
 		this.name = name;
 		this.methodSignature = methodSignature;
 		this.parentClass = parentClass;
-		this.startLineNumber = getStartLineNumberFromTraceFile();
-		this.endLineNumber = getEndLineNumberFromTraceFile();	
+		this.startLineNumber = startLineNumberFrom(lineRange);
+		this.endLineNumber = endLineNumberFrom(lineRange);	
 		
 		createStatements();		
 	}
 
-	private int getStartLineNumberFromTraceFile() throws DFQException {
-		int startLine = Application.currentApplication().getTrace().getMethodStartLine(this.methodSignature);
+	private int startLineNumberFrom(MethodLineRange lineRange) throws DFQException {
+		int startLine = lineRange.getStartLine();
 		
 		if (this.isConstructor())
 			startLine++;
 		return startLine;
 	}
 	
-	private int getEndLineNumberFromTraceFile() throws DFQException {
-		int endLine = Application.currentApplication().getTrace().getMethodEndLine(this.methodSignature);
+	private int endLineNumberFrom(MethodLineRange lineRange) throws DFQException {
+		int endLine = lineRange.getEndLine();
 		if (ApplicationTrace.isSignatureOfVoidMethod(this.methodSignature))
 			endLine--;
 		return endLine;
 	}
 		
 	private void createStatements() throws DFQException {
-		String classSourcePath = this.parentClass.getFilePath();
-		File sourceCodeFile = new File(classSourcePath);
-		BufferedReader br;
-		try {
-			br = new BufferedReader(new FileReader(sourceCodeFile));
-		} catch (FileNotFoundException e) {
-			throw new ClassFileNotFoundException(classSourcePath);
-		}
-		
-		extractedStatements(classSourcePath, br);
+		SourceFile sourceFile = this.parentClass.getSourceFile();
+		DiagnosisMetrics metrics = getApplication().getMetrics();
+		MethodConstructionEvent event = new MethodConstructionEvent();
+		event.begin();
+		long start = metrics.startTimer();
+		extractStatements(sourceFile);
 		extractQueries();
+		metrics.createdStatements(statementCount);
+		metrics.record(DiagnosisPhase.STATEMENT_CONSTRUCTION, start);
+		if (event.shouldCommit()) {
+			event.className = this.parentClass.getName();
+			event.methodSignature = this.methodSignature;
+			event.statements = statementCount;
+			event.queries = queries.size();
+			event.commit();
+		}
 	}
 
-
-	private void extractedStatements(String classSourcePath, BufferedReader br) throws DFQException {
-		LineNumberReader lnr = new LineNumberReader(br);
-		int lineNumber = 0;
-		String currentLine = tryToReadNextLine(lnr, classSourcePath, lineNumber);
-		while (currentLine != null) {
-			if (lineNumber >= this.startLineNumber && lineNumber <= this.endLineNumber) {
-				Statement statement = new Statement(this, lineNumber, currentLine);
-				statements.put(lineNumber, statement);
-			}
-			currentLine = tryToReadNextLine(lnr, classSourcePath, lineNumber++);
-		}		
-	}
-
-	private String tryToReadNextLine(LineNumberReader lnr, String classSourcePath, int lineNumber) throws CouldNotReadFromFileException {
-		try {
-			return lnr.readLine();
-		} catch (IOException e) {
-			throw new CouldNotReadFromFileException("file " + classSourcePath + " at line " + lineNumber);
+	/*
+	 * The source file is read once by the parent class, and each method takes the slice of
+	 * its lines that falls within the method's line range.
+	 */
+	private void extractStatements(SourceFile sourceFile) {
+		statementsByLine = new Statement[Math.max(this.endLineNumber - this.startLineNumber + 1, 0)];
+		int firstLine = Math.max(this.startLineNumber, 0);
+		int lastLine = Math.min(this.endLineNumber, sourceFile.getLineCount() - 1);
+		for (int lineNumber = firstLine; lineNumber <= lastLine; lineNumber++) {
+			statementsByLine[lineNumber - this.startLineNumber] = new Statement(this, lineNumber, sourceFile);
+			statementCount++;
 		}
 	}
 	
 	private void extractQueries() throws DFQException {
-		for (Statement stmt : statements.values()) {
-			if (isTheStatementAQuery(stmt)) {
+		for (Statement stmt : statementsByLine) {
+			if (stmt != null && isTheStatementAQuery(stmt)) {
 				List<Statement> queryStmts = new ArrayList<Statement>();
 				queryStmts.add(stmt);
 				Query query = new Query(this, queryStmts);
@@ -107,12 +114,13 @@ public class CodeMethod {
 
 
 	private boolean isTheStatementAQuery(Statement stmt) {
-		if(stmt.getStatementText().contains("whereClause = \"forename")
-				|| stmt.getStatementText().contains("whereClause += \"and surname")
-				|| stmt.getStatementText().contains("list()")){
+		String statementText = stmt.getStatementText();
+		if(statementText.contains("whereClause = \"forename")
+				|| statementText.contains("whereClause += \"and surname")
+				|| statementText.contains("list()")){
 			return true;
-		} else if (stmt.getStatementText().contains("list()")
-				|| stmt.getStatementText().contains("(mobileMatches)")) {
+		} else if (statementText.contains("list()")
+				|| statementText.contains("(mobileMatches)")) {
 			return true;
 		} 
 		return false;
@@ -128,6 +136,10 @@ public class CodeMethod {
 		return this.parentClass;
 	}
 
+	public Application getApplication() {
+		return this.parentClass.getApplication();
+	}
+
 	public String getSignature() {
 		return this.methodSignature;
 	}
@@ -149,44 +161,48 @@ public class CodeMethod {
 		if (lineNumber < this.startLineNumber || lineNumber > this.endLineNumber ) 
 			throw new AttemptToAccessStatementOutwithGivenMethodException();
 
-		for (Map.Entry<Integer, Statement> singleKeyValuePair : statements.entrySet()) {
-			Statement statementText = singleKeyValuePair.getValue();
-			if (singleKeyValuePair.getKey() == lineNumber) {
-				return statementText;		
-			}
-		}
-		throw new StatementWithGivenLineNumberNotFoundException();
+		Statement statement = statementsByLine[lineNumber - this.startLineNumber];
+		if (statement == null)
+			throw new StatementWithGivenLineNumberNotFoundException();
+		return statement;
 	}
 	
+	/*
+	 * Returns a read-only view of the statements of the method, keyed by line number in
+	 * ascending order.
+	 */
 	public Map<Integer, Statement> getStatements() throws DFQException { 
-		return this.statements;
+		return new StatementMap();
 	}
 
 	public List<Statement> getExecutedStatements() throws DFQException {
-		ApplicationTrace trace = Application.currentApplication().getTrace();
-		List<Statement> execStmts = trace.getExecutedStatementsByMethod(name);  
+		ApplicationTrace trace = getApplication().getTrace();
+		List<Statement> execStmts = trace.getDistinctExecutedStatementsByMethod(name);  
 		return execStmts;
 	}
 
 	public List<Statement> getTraceOfExecution() throws DFQException {
-		ApplicationTrace trace = Application.currentApplication().getTrace();
+		ApplicationTrace trace = getApplication().getTrace();
 		List<Statement> execStmts = trace.getExecutedStatementsByMethod(name);  
 		return execStmts;
 	}
 
+	/*
+	 * Returns the queries executed when this method was run as a test, in the order of the
+	 * application's methods, or none if the trace holds no test of this name.
+	 */
 	public List<Query> getExecutedQueries() throws DFQException {
-		//TO DO: This method needs to be revisited 
-		return null;
+		return getApplication().getQueryCoverage().getQueriesExecutedBy(this.name);
 	}
 
 	
+	/*
+	 * Returns the query of this method whose first statement is at the given line.
+	 */
 	public Query getQueryByStartingLineNumber(int lineNum) throws DFQException {
-		for(Query query:queries) {
-			Statement queryLine = query.getMethod().getStatementByLineNumber(lineNum);
-			List<Statement> queryStmts = new ArrayList<Statement>();
-			queryStmts.add(queryLine);
-			Query queryByLineNum = new Query(this, queryStmts);
-			return queryByLineNum;
+		for (Query query : queries) {
+			if (query.getStatements().get(0).getLineNumber() == lineNum)
+				return query;
 		}
 		throw new QueryWithGivenLineNumberNotFoundException();		
 	}
@@ -194,5 +210,71 @@ public class CodeMethod {
 	public List<Query> getQueries() throws DFQException {
 		return this.queries;
 	}
+
+
+	/*
+	 * A map view of the statement array, keyed by line number.
+	 */
+	private class StatementMap extends AbstractMap<Integer, Statement> {
+
+		@Override
+		public Statement get(Object key) {
+			if (!(key instanceof Integer))
+				return null;
+			int index = (Integer) key - startLineNumber;
+			if (index < 0 || index >= statementsByLine.length)
+				return null;
+			return statementsByLine[index];
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public int size() {
+			return statementCount;
+		}
+
+		@Override
+		public Set<Map.Entry<Integer, Statement>> entrySet() {
+			return new AbstractSet<Map.Entry<Integer, Statement>>() {
+				@Override
+				public int size() {
+					return statementCount;
+				}
+
+				@Override
+				public Iterator<Map.Entry<Integer, Statement>> iterator() {
+					return new Iterator<Map.Entry<Integer, Statement>>() {
+						private int next = nextStatement(0);
+
+						public boolean hasNext() {
+							return next < statementsByLine.length;
+						}
+
+						public Map.Entry<Integer, Statement> next() {
+							if (!hasNext())
+								throw new NoSuchElementException();
+							Statement statement = statementsByLine[next];
+							next = nextStatement(next + 1);
+							return new SimpleImmutableEntry<Integer, Statement>(statement.getLineNumber(), statement);
+						}
+
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+			};
+		}
+
+		private int nextStatement(int index) {
+			while (index < statementsByLine.length && statementsByLine[index] == null)
+				index++;
+			return index;
+		}
+	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,503 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.util.Arrays;
+
+/*
+ * The instances of this class are compressed sets of non-negative ints, in the style of
+ * roaring bitmaps.  The values are split into chunks of 65536 by their high 16 bits, and
+ * the low 16 bits of the values in each chunk are held in a container: a sorted array when
+ * the chunk holds few values, and a 65536-bit bitmap once it holds more than
+ * ARRAY_CONTAINER_MAX_SIZE.  Sparse sets therefore cost two bytes per value, dense sets
+ * one bit per possible value, and intersections and unions work a chunk at a time.
+ *
+ * Values are added fastest in ascending order.
+ */
+public class CompressedBitSet {
+
+	static final int ARRAY_CONTAINER_MAX_SIZE = 4096;
+
+	private char[] keys = new char[4];
+	private Container[] containers = new Container[4];
+	private int size;
+
+	// Constructors
+	public CompressedBitSet() {
+	}
+
+	/*
+	 * Returns a set holding the first length values of the given array, which must be in
+	 * ascending order.
+	 */
+	public static CompressedBitSet of(int[] sortedValues, int length) {
+		CompressedBitSet set = new CompressedBitSet();
+		for (int i = 0; i < length; i++)
+			set.add(sortedValues[i]);
+		return set;
+	}
+
+
+	// Updates
+
+	public void add(int value) {
+		if (value < 0)
+			throw new IllegalArgumentException("negative value " + value);
+		char key = highBits(value);
+		int position;
+		if (size > 0 && keys[size - 1] == key)
+			position = size - 1;
+		else if (size == 0 || keys[size - 1] < key)
+			position = -size - 1;
+		else
+			position = Arrays.binarySearch(keys, 0, size, key);
+
+		if (position < 0) {
+			position = -position - 1;
+			insertContainer(position, key, new ArrayContainer());
+		}
+		containers[position] = containers[position].add(lowBits(value));
+	}
+
+
+	// Queries
+
+	public boolean contains(int value) {
+		if (value < 0)
+			return false;
+		int position = Arrays.binarySearch(keys, 0, size, highBits(value));
+		return position >= 0 && containers[position].contains(lowBits(value));
+	}
+
+	public int cardinality() {
+		int cardinality = 0;
+		for (int i = 0; i < size; i++)
+			cardinality += containers[i].cardinality();
+		return cardinality;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/*
+	 * Returns the values in the set in ascending order.
+	 */
+	public int[] toArray() {
+		int[] values = new int[cardinality()];
+		int position = 0;
+		for (int i = 0; i < size; i++)
+			position = containers[i].toArray(keys[i] << 16, values, position);
+		return values;
+	}
+
+
+	// Set operations.  None of these modify either operand.
+
+	public CompressedBitSet and(CompressedBitSet other) {
+		CompressedBitSet result = new CompressedBitSet();
+		int i = 0;
+		int j = 0;
+		while (i < size && j < other.size) {
+			if (keys[i] < other.keys[j])
+				i++;
+			else if (keys[i] > other.keys[j])
+				j++;
+			else {
+				result.appendIfNotEmpty(keys[i], containers[i].and(other.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Returns the size of the intersection of this set and the given set, without building
+	 * the intersection itself.
+	 */
+	public int andCardinality(CompressedBitSet other) {
+		int cardinality = 0;
+		int i = 0;
+		int j = 0;
+		while (i < size && j < other.size) {
+			if (keys[i] < other.keys[j])
+				i++;
+			else if (keys[i] > other.keys[j])
+				j++;
+			else {
+				cardinality += containers[i].andCardinality(other.containers[j]);
+				i++;
+				j++;
+			}
+		}
+		return cardinality;
+	}
+
+	public CompressedBitSet or(CompressedBitSet other) {
+		CompressedBitSet result = new CompressedBitSet();
+		int i = 0;
+		int j = 0;
+		while (i < size || j < other.size) {
+			if (j == other.size || (i < size && keys[i] < other.keys[j]))
+				result.appendIfNotEmpty(keys[i], containers[i++].copy());
+			else if (i == size || keys[i] > other.keys[j])
+				result.appendIfNotEmpty(other.keys[j], other.containers[j++].copy());
+			else
+				result.appendIfNotEmpty(keys[i], containers[i++].or(other.containers[j++]));
+		}
+		return result;
+	}
+
+	/*
+	 * Returns the values in this set that are not in the given set.
+	 */
+	public CompressedBitSet andNot(CompressedBitSet other) {
+		CompressedBitSet result = new CompressedBitSet();
+		int j = 0;
+		for (int i = 0; i < size; i++) {
+			while (j < other.size && other.keys[j] < keys[i])
+				j++;
+			if (j < other.size && other.keys[j] == keys[i])
+				result.appendIfNotEmpty(keys[i], containers[i].andNot(other.containers[j]));
+			else
+				result.appendIfNotEmpty(keys[i], containers[i].copy());
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof CompressedBitSet))
+			return false;
+		return Arrays.equals(toArray(), ((CompressedBitSet) other).toArray());
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(toArray());
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+
+	// Utility Methods for Managing the Containers
+
+	private static char highBits(int value) {
+		return (char) (value >>> 16);
+	}
+
+	private static char lowBits(int value) {
+		return (char) value;
+	}
+
+	private void insertContainer(int position, char key, Container container) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			containers = Arrays.copyOf(containers, size * 2);
+		}
+		System.arraycopy(keys, position, keys, position + 1, size - position);
+		System.arraycopy(containers, position, containers, position + 1, size - position);
+		keys[position] = key;
+		containers[position] = container;
+		size++;
+	}
+
+	private void appendIfNotEmpty(char key, Container container) {
+		if (container.cardinality() > 0)
+			insertContainer(size, key, container);
+	}
+
+
+	/*
+	 * A container holds the low 16 bits of the values in one chunk of the set.  The methods
+	 * that may change the kind of container needed return the container to use from then on.
+	 */
+	private static abstract class Container {
+		abstract Container add(char value);
+		abstract boolean contains(char value);
+		abstract int cardinality();
+		abstract Container copy();
+		abstract Container and(Container other);
+		abstract int andCardinality(Container other);
+		abstract Container or(Container other);
+		abstract Container andNot(Container other);
+		abstract int toArray(int highBits, int[] values, int position);
+	}
+
+	private static class ArrayContainer extends Container {
+		private char[] values;
+		private int size;
+
+		ArrayContainer() {
+			this(new char[4], 0);
+		}
+
+		ArrayContainer(char[] values, int size) {
+			this.values = values;
+			this.size = size;
+		}
+
+		Container add(char value) {
+			int position = size > 0 && values[size - 1] < value ? -size - 1 : Arrays.binarySearch(values, 0, size, value);
+			if (position >= 0)
+				return this;
+			if (size == ARRAY_CONTAINER_MAX_SIZE)
+				return toBitmap().add(value);
+			position = -position - 1;
+			if (size == values.length)
+				values = Arrays.copyOf(values, Math.min(ARRAY_CONTAINER_MAX_SIZE, Math.max(4, size * 2)));
+			System.arraycopy(values, position, values, position + 1, size - position);
+			values[position] = value;
+			size++;
+			return this;
+		}
+
+		boolean contains(char value) {
+			return Arrays.binarySearch(values, 0, size, value) >= 0;
+		}
+
+		int cardinality() {
+			return size;
+		}
+
+		Container copy() {
+			return new ArrayContainer(Arrays.copyOf(values, size), size);
+		}
+
+		Container and(Container other) {
+			if (other instanceof BitmapContainer) {
+				BitmapContainer bitmap = (BitmapContainer) other;
+				char[] result = new char[size];
+				int count = 0;
+				for (int i = 0; i < size; i++) {
+					if (bitmap.contains(values[i]))
+						result[count++] = values[i];
+				}
+				return new ArrayContainer(result, count);
+			}
+			ArrayContainer array = (ArrayContainer) other;
+			char[] result = new char[Math.min(size, array.size)];
+			int count = 0;
+			int i = 0;
+			int j = 0;
+			while (i < size && j < array.size) {
+				if (values[i] < array.values[j])
+					i++;
+				else if (values[i] > array.values[j])
+					j++;
+				else {
+					result[count++] = values[i];
+					i++;
+					j++;
+				}
+			}
+			return new ArrayContainer(result, count);
+		}
+
+		int andCardinality(Container other) {
+			int count = 0;
+			if (other instanceof BitmapContainer) {
+				BitmapContainer bitmap = (BitmapContainer) other;
+				for (int i = 0; i < size; i++) {
+					if (bitmap.contains(values[i]))
+						count++;
+				}
+				return count;
+			}
+			ArrayContainer array = (ArrayContainer) other;
+			int i = 0;
+			int j = 0;
+			while (i < size && j < array.size) {
+				if (values[i] < array.values[j])
+					i++;
+				else if (values[i] > array.values[j])
+					j++;
+				else {
+					count++;
+					i++;
+					j++;
+				}
+			}
+			return count;
+		}
+
+		Container or(Container other) {
+			if (other instanceof BitmapContainer)
+				return other.or(this);
+			ArrayContainer array = (ArrayContainer) other;
+			if (size + array.size > ARRAY_CONTAINER_MAX_SIZE) {
+				Container result = toBitmap();
+				for (int j = 0; j < array.size; j++)
+					result = result.add(array.values[j]);
+				return ((BitmapContainer) result).toSmallestContainer();
+			}
+			char[] result = new char[size + array.size];
+			int count = 0;
+			int i = 0;
+			int j = 0;
+			while (i < size || j < array.size) {
+				if (j == array.size || (i < size && values[i] < array.values[j]))
+					result[count++] = values[i++];
+				else if (i == size || values[i] > array.values[j])
+					result[count++] = array.values[j++];
+				else {
+					result[count++] = values[i++];
+					j++;
+				}
+			}
+			return new ArrayContainer(result, count);
+		}
+
+		Container andNot(Container other) {
+			char[] result = new char[size];
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				if (!other.contains(values[i]))
+					result[count++] = values[i];
+			}
+			return new ArrayContainer(result, count);
+		}
+
+		int toArray(int highBits, int[] result, int position) {
+			for (int i = 0; i < size; i++)
+				result[position++] = highBits | values[i];
+			return position;
+		}
+
+		private BitmapContainer toBitmap() {
+			BitmapContainer bitmap = new BitmapContainer();
+			for (int i = 0; i < size; i++)
+				bitmap.add(values[i]);
+			return bitmap;
+		}
+	}
+
+	private static class BitmapContainer extends Container {
+		private long[] words;
+		private int cardinality;
+
+		BitmapContainer() {
+			this(new long[1024], 0);
+		}
+
+		BitmapContainer(long[] words, int cardinality) {
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+
+		Container add(char value) {
+			long bit = 1L << value;
+			if ((words[value >>> 6] & bit) == 0) {
+				words[value >>> 6] |= bit;
+				cardinality++;
+			}
+			return this;
+		}
+
+		boolean contains(char value) {
+			return (words[value >>> 6] & (1L << value)) != 0;
+		}
+
+		int cardinality() {
+			return cardinality;
+		}
+
+		Container copy() {
+			return new BitmapContainer(words.clone(), cardinality);
+		}
+
+		Container and(Container other) {
+			if (other instanceof ArrayContainer)
+				return other.and(this);
+			long[] otherWords = ((BitmapContainer) other).words;
+			long[] result = new long[words.length];
+			int count = 0;
+			for (int i = 0; i < words.length; i++) {
+				result[i] = words[i] & otherWords[i];
+				count += Long.bitCount(result[i]);
+			}
+			return new BitmapContainer(result, count).toSmallestContainer();
+		}
+
+		int andCardinality(Container other) {
+			if (other instanceof ArrayContainer)
+				return other.andCardinality(this);
+			long[] otherWords = ((BitmapContainer) other).words;
+			int count = 0;
+			for (int i = 0; i < words.length; i++)
+				count += Long.bitCount(words[i] & otherWords[i]);
+			return count;
+		}
+
+		Container or(Container other) {
+			if (other instanceof ArrayContainer) {
+				ArrayContainer array = (ArrayContainer) other;
+				Container result = copy();
+				for (int i = 0; i < array.size; i++)
+					result.add(array.values[i]);
+				return result;
+			}
+			long[] otherWords = ((BitmapContainer) other).words;
+			long[] result = new long[words.length];
+			int count = 0;
+			for (int i = 0; i < words.length; i++) {
+				result[i] = words[i] | otherWords[i];
+				count += Long.bitCount(result[i]);
+			}
+			return new BitmapContainer(result, count);
+		}
+
+		Container andNot(Container other) {
+			long[] result = words.clone();
+			int count = cardinality;
+			if (other instanceof ArrayContainer) {
+				ArrayContainer array = (ArrayContainer) other;
+				for (int i = 0; i < array.size; i++) {
+					char value = array.values[i];
+					long bit = 1L << value;
+					if ((result[value >>> 6] & bit) != 0) {
+						result[value >>> 6] &= ~bit;
+						count--;
+					}
+				}
+			} else {
+				long[] otherWords = ((BitmapContainer) other).words;
+				count = 0;
+				for (int i = 0; i < result.length; i++) {
+					result[i] &= ~otherWords[i];
+					count += Long.bitCount(result[i]);
+				}
+			}
+			return new BitmapContainer(result, count).toSmallestContainer();
+		}
+
+		int toArray(int highBits, int[] result, int position) {
+			for (int i = 0; i < words.length; i++) {
+				long word = words[i];
+				while (word != 0) {
+					result[position++] = highBits | (i << 6) | Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+				}
+			}
+			return position;
+		}
+
+		private Container toSmallestContainer() {
+			if (cardinality > ARRAY_CONTAINER_MAX_SIZE)
+				return this;
+			char[] values = new char[cardinality];
+			int count = 0;
+			for (int i = 0; i < words.length; i++) {
+				long word = words[i];
+				while (word != 0) {
+					values[count++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return new ArrayContainer(values, count);
+		}
+	}
+
+}
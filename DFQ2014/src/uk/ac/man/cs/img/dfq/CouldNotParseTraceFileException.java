@@ -0,0 +1,11 @@
+package uk.ac.man.cs.img.dfq;
+
+public class CouldNotParseTraceFileException extends DFQException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CouldNotParseTraceFileException(String query) {
+		super(query);
+	}
+
+}
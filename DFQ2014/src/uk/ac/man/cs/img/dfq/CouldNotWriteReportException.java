@@ -0,0 +1,11 @@
+package uk.ac.man.cs.img.dfq;
+
+public class CouldNotWriteReportException extends DFQException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CouldNotWriteReportException(String query) {
+		super(query);
+	}
+
+}
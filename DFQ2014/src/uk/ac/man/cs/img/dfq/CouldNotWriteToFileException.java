@@ -0,0 +1,11 @@
+package uk.ac.man.cs.img.dfq;
+
+public class CouldNotWriteToFileException extends DFQException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CouldNotWriteToFileException(String query) {
+		super(query);
+	}
+
+}
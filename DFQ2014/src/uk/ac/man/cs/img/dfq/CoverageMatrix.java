@@ -0,0 +1,131 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The instances of this class record which statements each test executed, as a matrix of
+ * tests by statements held as CompressedBitSets in both directions: the statements executed
+ * by each test, and the tests that executed each statement.  Tests and statements are both
+ * identified by dense ints.  Statement numbers are the statement indexes used by the trace
+ * reader that built the matrix; test numbers follow the order in which each test name first
+ * appears in the trace.
+ *
+ * Instances are populated by the TraceReader implementations.  The sets returned are shared
+ * with the matrix and must not be modified.
+ */
+public class CoverageMatrix {
+
+	private int[] statementLineNumbers;
+	private String[] statementClassNames;
+
+	private List<String> testNames = new ArrayList<String>();
+	private Map<String, Integer> testNumbers = new HashMap<String, Integer>();
+	private List<CompressedBitSet> statementsByTest = new ArrayList<CompressedBitSet>();
+	private CompressedBitSet[] testsByStatement;
+	private CompressedBitSet passingTests = new CompressedBitSet();
+	private CompressedBitSet failingTests = new CompressedBitSet();
+
+	// Constructor
+	CoverageMatrix(int statementCount) {
+		this.statementLineNumbers = new int[statementCount];
+		this.statementClassNames = new String[statementCount];
+		Arrays.fill(statementLineNumbers, StatementIndex.UNDEFINED_LINE_NUMBER);
+	}
+
+
+	// Methods for populating the matrix (used by the TraceReader implementations)
+
+	void defineStatement(int statement, int lineNumber, String className) {
+		statementLineNumbers[statement] = lineNumber;
+		statementClassNames[statement] = className;
+	}
+
+	/*
+	 * Adds a test to the matrix, given the result recorded for its first test case and the
+	 * indexes of the statements it executed in ascending order.  Only the first test with
+	 * each name is added.
+	 */
+	void addTest(String testName, String passing, int[] sortedStatements) {
+		if (testNumbers.containsKey(testName))
+			return;
+		int test = testNames.size();
+		testNames.add(testName);
+		testNumbers.put(testName, test);
+		statementsByTest.add(CompressedBitSet.of(sortedStatements, sortedStatements.length));
+		if ("true".equals(passing))
+			passingTests.add(test);
+		else if ("false".equals(passing))
+			failingTests.add(test);
+	}
+
+	/*
+	 * Called once every test has been added, to build the set of tests for each statement.
+	 * Tests are visited in ascending order, so each statement's set is built by appending.
+	 */
+	void finishLoading() {
+		testsByStatement = new CompressedBitSet[statementLineNumbers.length];
+		for (int statement = 0; statement < testsByStatement.length; statement++)
+			testsByStatement[statement] = new CompressedBitSet();
+		for (int test = 0; test < statementsByTest.size(); test++) {
+			for (int statement : statementsByTest.get(test).toArray())
+				testsByStatement[statement].add(test);
+		}
+	}
+
+
+	// Queries over the matrix
+
+	public int getTestCount() {
+		return testNames.size();
+	}
+
+	public int getStatementCount() {
+		return statementLineNumbers.length;
+	}
+
+	public List<String> getTestNames() {
+		return Collections.unmodifiableList(testNames);
+	}
+
+	public String getTestName(int test) {
+		return testNames.get(test);
+	}
+
+	/*
+	 * Returns the number of the named test, or -1 if the trace has no such test.
+	 */
+	public int getTestNumber(String testName) {
+		Integer test = testNumbers.get(testName);
+		return test == null ? -1 : test;
+	}
+
+	public LineNumClassPair<String> getStatement(int statement) {
+		return new LineNumClassPair<String>(statementLineNumbers[statement], statementClassNames[statement]);
+	}
+
+	public boolean isDefinedStatement(int statement) {
+		return statementLineNumbers[statement] != StatementIndex.UNDEFINED_LINE_NUMBER;
+	}
+
+	public CompressedBitSet getStatementsExecutedBy(int test) {
+		return statementsByTest.get(test);
+	}
+
+	public CompressedBitSet getTestsExecuting(int statement) {
+		return testsByStatement[statement];
+	}
+
+	public CompressedBitSet getPassingTests() {
+		return passingTests;
+	}
+
+	public CompressedBitSet getFailingTests() {
+		return failingTests;
+	}
+
+}
@@ -0,0 +1,181 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+
+/*
+ * The instances of this class put questions to a DiagnosisDaemon running on the local
+ * machine, returning its answers as they are sent.  A daemon that cannot be reached within
+ * the connect timeout, or that stops sending an answer for longer than the read timeout,
+ * fails the request rather than holding the caller indefinitely.  The read timeout allows
+ * for the daemon loading a large application before it answers.  The client can also be
+ * run from the command line, writing the answer to standard output:
+ *
+ *   java uk.ac.man.cs.img.dfq.DiagnosisClient [-port n] rank|candidates|report|invalidate properties-file [metric]
+ *   java uk.ac.man.cs.img.dfq.DiagnosisClient [-port n] status
+ */
+public class DiagnosisClient {
+
+	public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5 * 1000;
+	public static final int DEFAULT_READ_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private String baseUrl;
+	private int connectTimeoutMillis;
+	private int readTimeoutMillis;
+
+	// Constructors
+	public DiagnosisClient() {
+		this(DiagnosisDaemon.DEFAULT_PORT);
+	}
+
+	public DiagnosisClient(int port) {
+		this(port, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+	}
+
+	public DiagnosisClient(int port, int connectTimeoutMillis, int readTimeoutMillis) {
+		if (connectTimeoutMillis < 0 || readTimeoutMillis < 0)
+			throw new IllegalArgumentException("Negative timeout");
+		this.baseUrl = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + port;
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+
+	// Requests
+
+	/*
+	 * Returns the limit most suspicious queries of the application under the named metric,
+	 * as a JSON report.
+	 */
+	public String rank(String propertiesFilePath, String metricName, int limit) throws DFQException {
+		return request("GET", "/rank?app=" + encode(propertiesFilePath) + "&metric=" + encode(metricName) + "&limit=" + limit);
+	}
+
+	/*
+	 * Returns the queries executed by each failing test of the application, as JSON.
+	 */
+	public String candidates(String propertiesFilePath) throws DFQException {
+		return request("GET", "/candidates?app=" + encode(propertiesFilePath));
+	}
+
+	/*
+	 * Writes the diagnostic report of the application to the given stream as it arrives.
+	 * The stream is left open.
+	 */
+	public void report(String propertiesFilePath, ReportFormat format, String metricName, double threshold, OutputStream out) throws DFQException {
+		request("GET", "/report?app=" + encode(propertiesFilePath) + "&format=" + format.name().toLowerCase()
+				+ "&metric=" + encode(metricName) + "&threshold=" + threshold, out);
+	}
+
+	/*
+	 * Asks the daemon to load the application afresh when it is next asked about.
+	 */
+	public String invalidate(String propertiesFilePath) throws DFQException {
+		return request("POST", "/invalidate?app=" + encode(propertiesFilePath));
+	}
+
+	public String status() throws DFQException {
+		return request("GET", "/status");
+	}
+
+
+	// Utility methods
+
+	private String request(String method, String pathAndQuery) throws DFQException {
+		ByteArrayOutputStream answer = new ByteArrayOutputStream();
+		request(method, pathAndQuery, answer);
+		try {
+			return answer.toString("UTF-8");
+		} catch (IOException e) {
+			throw new DiagnosisRequestFailedException(0, e.getMessage());
+		}
+	}
+
+	private void request(String method, String pathAndQuery, OutputStream out) throws DFQException {
+		HttpURLConnection connection = null;
+		try {
+			connection = (HttpURLConnection) new URL(baseUrl + pathAndQuery).openConnection();
+			connection.setConnectTimeout(connectTimeoutMillis);
+			connection.setReadTimeout(readTimeoutMillis);
+			connection.setRequestMethod(method);
+			if (method.equals("POST")) {
+				// The parameters are in the query, so the body is empty.
+				connection.setDoOutput(true);
+				connection.getOutputStream().close();
+			}
+			int status = connection.getResponseCode();
+			if (status != HttpURLConnection.HTTP_OK) {
+				ByteArrayOutputStream message = new ByteArrayOutputStream();
+				InputStream error = connection.getErrorStream();
+				if (error != null)
+					copy(error, message);
+				throw new DiagnosisRequestFailedException(status, message.toString("UTF-8").trim());
+			}
+			copy(connection.getInputStream(), out);
+		} catch (IOException e) {
+			throw new DiagnosisRequestFailedException(0, "Could not reach the daemon at " + baseUrl + ": " + e.getMessage());
+		} finally {
+			if (connection != null)
+				connection.disconnect();
+		}
+	}
+
+	private static void copy(InputStream in, OutputStream out) throws IOException {
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+			out.flush();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static String encode(String value) {
+		try {
+			return URLEncoder.encode(value, "UTF-8");
+		} catch (IOException e) {
+			throw new IllegalStateException("UTF-8 is not supported");
+		}
+	}
+
+
+	public static void main(String[] args) throws DFQException {
+		int port = DiagnosisDaemon.DEFAULT_PORT;
+		int first = 0;
+		if (args.length >= 2 && args[0].equals("-port")) {
+			port = Integer.parseInt(args[1]);
+			first = 2;
+		}
+		if (args.length <= first || (!args[first].equals("status") && args.length < first + 2)) {
+			System.err.println("Usage: DiagnosisClient [-port n] rank|candidates|report|invalidate properties-file [metric]\n"
+					+ "       DiagnosisClient [-port n] status");
+			System.exit(2);
+		}
+		DiagnosisClient client = new DiagnosisClient(port);
+		String command = args[first];
+		String metric = args.length > first + 2 ? args[first + 2] : SuspiciousnessMetrics.TARANTULA.getName();
+		if (command.equals("rank"))
+			System.out.print(client.rank(args[first + 1], metric, DiagnosisDaemon.DEFAULT_RANK_LIMIT));
+		else if (command.equals("candidates"))
+			System.out.print(client.candidates(args[first + 1]));
+		else if (command.equals("report"))
+			client.report(args[first + 1], ReportFormat.TEXT, metric, 0, System.out);
+		else if (command.equals("invalidate"))
+			System.out.print(client.invalidate(args[first + 1]));
+		else if (command.equals("status"))
+			System.out.print(client.status());
+		else
+			throw new IllegalArgumentException("Unknown command " + command);
+	}
+
+}
@@ -0,0 +1,443 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * The instances of this class answer questions about applications over HTTP on the local
+ * machine, keeping the applications asked about loaded in an ApplicationCache so that only
+ * the first question about each pays for loading it.  Requests are answered concurrently,
+ * each on a thread of the daemon's pool.
+ *
+ * Every request names the application by the path of its properties file, in the app
+ * parameter, and answers are JSON unless a report is asked for in another format:
+ *
+ *   GET /rank?app=path[&metric=name][&limit=n][&threshold=t]
+ *       the limit (by default 10) most suspicious queries, as a JSON report
+ *   GET /candidates?app=path
+ *       the queries executed by each failing test
+ *   GET /report?app=path[&format=text|xml|json|html][&metric=name][&threshold=t]
+ *       the diagnostic report, streamed in the given format (by default text) with its MIME type
+ *   POST /invalidate?app=path
+ *       drops the application from the cache, so that it is loaded afresh next time
+ *   GET /status
+ *       the applications in the cache and their total footprint
+ *
+ * The parameters are checked before the application is loaded.  Bad parameters are
+ * answered with status 400, applications whose files cannot be found with 404, and other
+ * failures with 500, each with a plain text message.  Requests made with the wrong method
+ * are answered with 405.
+ *
+ * The daemon only listens on the loopback address, and only answers requests whose Host
+ * header names it as localhost or 127.0.0.1 (with any port), so that a web page that gets
+ * its own host name resolved to the loopback address cannot put questions to it.  Requests
+ * from elsewhere, and, if the daemon is given root directories, requests about
+ * applications whose properties files lie outside them, are answered with 403.  It can be
+ * started from the command line, with the root directories separated as in a class path:
+ *
+ *   java uk.ac.man.cs.img.dfq.DiagnosisDaemon [-port n] [-threads n] [-applications n] [-memory-budget bytes] [-roots dirs]
+ *
+ * and queried with DiagnosisClient.
+ */
+public class DiagnosisDaemon {
+
+	public static final int DEFAULT_PORT = 7345;
+	public static final int DEFAULT_RANK_LIMIT = 10;
+
+	private static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+	private static final String TEXT_CONTENT_TYPE = "text/plain; charset=UTF-8";
+
+	private ApplicationCache cache;
+	private List<File> roots = new ArrayList<File>();
+	private HttpServer server;
+	private ExecutorService executor;
+
+	// Constructors
+	public DiagnosisDaemon(ApplicationCache cache) {
+		this(cache, Collections.<String>emptyList());
+	}
+
+	/*
+	 * Creates a daemon answering only about applications whose properties files lie within
+	 * one of the given directories, or about any application if none are given.
+	 */
+	public DiagnosisDaemon(ApplicationCache cache, List<String> rootDirectories) {
+		this.cache = cache;
+		for (String rootDirectory : rootDirectories) {
+			try {
+				roots.add(new File(rootDirectory).getCanonicalFile());
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Cannot resolve root directory " + rootDirectory);
+			}
+		}
+	}
+
+	public ApplicationCache getCache() {
+		return this.cache;
+	}
+
+
+	// Starting and stopping
+
+	/*
+	 * Starts listening on the given port of the loopback address, or on any free port if
+	 * the port is 0, answering requests on the given number of threads.
+	 */
+	public synchronized void start(int port, int threads) throws IOException {
+		if (server != null)
+			throw new IllegalStateException("The daemon is already running on port " + getPort());
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/rank", new RequestHandler("GET") {
+			void answer(HttpExchange exchange, Map<String, String> parameters) throws IOException, DFQException {
+				rank(exchange, parameters);
+			}
+		});
+		server.createContext("/candidates", new RequestHandler("GET") {
+			void answer(HttpExchange exchange, Map<String, String> parameters) throws IOException, DFQException {
+				candidates(exchange, parameters);
+			}
+		});
+		server.createContext("/report", new RequestHandler("GET") {
+			void answer(HttpExchange exchange, Map<String, String> parameters) throws IOException, DFQException {
+				report(exchange, parameters);
+			}
+		});
+		server.createContext("/invalidate", new RequestHandler("POST") {
+			void answer(HttpExchange exchange, Map<String, String> parameters) throws IOException, DFQException {
+				invalidate(exchange, parameters);
+			}
+		});
+		server.createContext("/status", new RequestHandler("GET") {
+			void answer(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+				status(exchange);
+			}
+		});
+		executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	public synchronized int getPort() {
+		if (server == null)
+			throw new IllegalStateException("The daemon is not running");
+		return server.getAddress().getPort();
+	}
+
+	/*
+	 * Stops listening, waiting for at most the given number of seconds for the requests
+	 * being answered to finish, and empties the cache.
+	 */
+	public synchronized void stop(int delaySeconds) {
+		if (server == null)
+			return;
+		server.stop(delaySeconds);
+		executor.shutdownNow();
+		server = null;
+		executor = null;
+		cache.clear();
+	}
+
+
+	// Answering requests
+
+	private void rank(HttpExchange exchange, Map<String, String> parameters) throws IOException, DFQException {
+		SuspiciousnessMetric metric = metricOf(parameters);
+		int limit = intParameter(parameters, "limit", DEFAULT_RANK_LIMIT);
+		double threshold = doubleParameter(parameters, "threshold", Double.NEGATIVE_INFINITY);
+		if (limit < 0)
+			throw new IllegalArgumentException("Negative limit " + limit);
+		Application application = cache.get(applicationPathOf(parameters));
+
+		// Scores are counted before the response starts, so that a failure is reported as one.
+		application.getSuspiciousnessEngine();
+		Writer out = startResponse(exchange, JSON_CONTENT_TYPE);
+		try {
+			application.writeDiagnosticReport(ReportFormat.JSON.createWriter(out), metric, threshold, limit);
+		} finally {
+			out.close();
+		}
+	}
+
+	private void candidates(HttpExchange exchange, Map<String, String> parameters) throws IOException, DFQException {
+		Application application = cache.get(applicationPathOf(parameters));
+		Map<TestMethod, List<Query>> candidateQueries = application.identifyAllCandidateQueries();
+		Writer out = startResponse(exchange, JSON_CONTENT_TYPE);
+		try {
+			out.write("{\"application\": ");
+			JsonReportWriter.writeString(out, application.getName());
+			out.write(", \"failingTests\": [");
+			boolean firstTest = true;
+			for (Map.Entry<TestMethod, List<Query>> test : candidateQueries.entrySet()) {
+				out.write(firstTest ? "\n" : ",\n");
+				firstTest = false;
+				out.write(" {\"test\": ");
+				JsonReportWriter.writeString(out, test.getKey().getName());
+				out.write(", \"queries\": [");
+				boolean firstQuery = true;
+				for (Query query : test.getValue()) {
+					if (!firstQuery)
+						out.write(", ");
+					firstQuery = false;
+					out.write("{\"class\": ");
+					JsonReportWriter.writeString(out, query.getClassName());
+					out.write(", \"method\": ");
+					JsonReportWriter.writeString(out, query.getMethodName());
+					out.write(", \"line\": " + DiagnosticReportWriter.startLineOf(query) + "}");
+				}
+				out.write("]}");
+			}
+			out.write(firstTest ? "]}\n" : "\n]}\n");
+		} finally {
+			out.close();
+		}
+	}
+
+	private void report(HttpExchange exchange, Map<String, String> parameters) throws IOException, DFQException {
+		SuspiciousnessMetric metric = metricOf(parameters);
+		double threshold = doubleParameter(parameters, "threshold", 0);
+		ReportFormat format;
+		try {
+			format = ReportFormat.valueOf(parameters.containsKey("format") ? parameters.get("format").toUpperCase() : "TEXT");
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown report format " + parameters.get("format"));
+		}
+		Application application = cache.get(applicationPathOf(parameters));
+		Writer out = startResponse(exchange, format.getMimeType() + "; charset=UTF-8");
+		try {
+			application.writeDiagnosticReport(out, format, metric, threshold);
+		} finally {
+			out.close();
+		}
+	}
+
+	private void invalidate(HttpExchange exchange, Map<String, String> parameters) throws IOException, DFQException {
+		boolean cached = cache.invalidate(applicationPathOf(parameters));
+		Writer out = startResponse(exchange, JSON_CONTENT_TYPE);
+		try {
+			out.write("{\"invalidated\": " + cached + "}\n");
+		} finally {
+			out.close();
+		}
+	}
+
+	private void status(HttpExchange exchange) throws IOException {
+		List<String> paths = cache.getCachedPaths();
+		Writer out = startResponse(exchange, JSON_CONTENT_TYPE);
+		try {
+			out.write("{\"footprint\": " + cache.getFootprint() + ", \"memoryBudget\": " + cache.getMemoryBudget()
+					+ ", \"maxApplications\": " + cache.getMaxApplications() + ", \"applications\": [");
+			for (int i = 0; i < paths.size(); i++) {
+				if (i > 0)
+					out.write(", ");
+				JsonReportWriter.writeString(out, paths.get(i));
+			}
+			out.write("]}\n");
+		} finally {
+			out.close();
+		}
+	}
+
+
+	// Utility methods
+
+	private static Writer startResponse(HttpExchange exchange, String contentType) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(200, 0);
+		return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), "UTF-8"));
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] body = (message + "\n").getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", TEXT_CONTENT_TYPE);
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(body);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static Map<String, String> parametersOf(HttpExchange exchange) throws UnsupportedEncodingException {
+		Map<String, String> parameters = new HashMap<String, String>();
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query == null)
+			return parameters;
+		for (String parameter : query.split("&")) {
+			int equals = parameter.indexOf('=');
+			if (equals > 0)
+				parameters.put(URLDecoder.decode(parameter.substring(0, equals), "UTF-8"),
+						URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+		}
+		return parameters;
+	}
+
+	private static String required(Map<String, String> parameters, String name) {
+		String value = parameters.get(name);
+		if (value == null || value.isEmpty())
+			throw new IllegalArgumentException("Missing parameter " + name);
+		return value;
+	}
+
+	/*
+	 * Returns the path of the properties file named by the app parameter, provided it lies
+	 * within one of the daemon's root directories, if it has any.
+	 */
+	private String applicationPathOf(Map<String, String> parameters) throws DFQException {
+		String propertiesFilePath = required(parameters, "app");
+		if (roots.isEmpty())
+			return propertiesFilePath;
+		File directory;
+		try {
+			directory = new File(propertiesFilePath).getCanonicalFile().getParentFile();
+		} catch (IOException e) {
+			throw new CouldNotFindPropertiesFileException();
+		}
+		for (; directory != null; directory = directory.getParentFile()) {
+			if (roots.contains(directory))
+				return propertiesFilePath;
+		}
+		throw new ApplicationNotServedException("The properties file " + propertiesFilePath + " is outside the daemon's root directories");
+	}
+
+	private static SuspiciousnessMetric metricOf(Map<String, String> parameters) throws SuspiciousnessMetricNotFoundException {
+		String name = parameters.get("metric");
+		return name == null ? SuspiciousnessMetrics.TARANTULA : SuspiciousnessMetrics.forName(name);
+	}
+
+	private static int intParameter(Map<String, String> parameters, String name, int defaultValue) {
+		String value = parameters.get(name);
+		try {
+			return value == null ? defaultValue : Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Parameter " + name + " is not an integer: " + value);
+		}
+	}
+
+	private static double doubleParameter(Map<String, String> parameters, String name, double defaultValue) {
+		String value = parameters.get(name);
+		try {
+			return value == null ? defaultValue : Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Parameter " + name + " is not a number: " + value);
+		}
+	}
+
+	private static int statusOf(DFQException e) {
+		if (e instanceof SuspiciousnessMetricNotFoundException)
+			return 400;
+		if (e instanceof ApplicationNotServedException)
+			return 403;
+		if (e instanceof CouldNotFindPropertiesFileException || e instanceof TraceFileNotFoundException)
+			return 404;
+		return 500;
+	}
+
+	private static String messageOf(Exception e) {
+		return e.getMessage() != null ? e.getClass().getSimpleName() + ": " + e.getMessage() : e.getClass().getSimpleName();
+	}
+
+	/*
+	 * Returns whether the Host header of the request names the loopback address, with or
+	 * without a port.
+	 */
+	private static boolean isAddressedToLocalHost(HttpExchange exchange) {
+		String host = exchange.getRequestHeaders().getFirst("Host");
+		if (host == null)
+			return false;
+		int port = host.lastIndexOf(':');
+		if (port >= 0 && host.indexOf(']', port) < 0)
+			host = host.substring(0, port);
+		return host.equalsIgnoreCase("localhost") || host.equals("127.0.0.1") || host.equals("[::1]");
+	}
+
+	/*
+	 * Answers the requests made with the given method on one path, turning failures into
+	 * error responses.  Once an answer has been started a failure can only close the
+	 * connection.
+	 */
+	private abstract static class RequestHandler implements HttpHandler {
+
+		private String method;
+
+		RequestHandler(String method) {
+			this.method = method;
+		}
+
+		abstract void answer(HttpExchange exchange, Map<String, String> parameters) throws IOException, DFQException;
+
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				if (!isAddressedToLocalHost(exchange)) {
+					sendError(exchange, 403, "Only requests addressed to localhost are answered");
+				} else if (!exchange.getRequestMethod().equals(method)) {
+					exchange.getResponseHeaders().set("Allow", method);
+					sendError(exchange, 405, "Only " + method + " requests are answered here");
+				} else {
+					answer(exchange, parametersOf(exchange));
+				}
+			} catch (DFQException e) {
+				sendError(exchange, statusOf(e), messageOf(e));
+			} catch (IllegalArgumentException e) {
+				sendError(exchange, 400, e.getMessage());
+			} catch (RuntimeException e) {
+				sendError(exchange, 500, messageOf(e));
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+
+	public static void main(String[] args) throws IOException {
+		int port = DEFAULT_PORT;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int applications = ApplicationCache.DEFAULT_MAX_APPLICATIONS;
+		long memoryBudget = ApplicationCache.NO_MEMORY_BUDGET;
+		List<String> roots = new ArrayList<String>();
+		if (args.length % 2 != 0) {
+			System.err.println("Usage: DiagnosisDaemon [-port n] [-threads n] [-applications n] [-memory-budget bytes] [-roots dirs]");
+			System.exit(2);
+		}
+		for (int i = 0; i < args.length; i += 2) {
+			String option = args[i];
+			String value = args[i + 1];
+			if (option.equals("-port"))
+				port = Integer.parseInt(value);
+			else if (option.equals("-threads"))
+				threads = Integer.parseInt(value);
+			else if (option.equals("-applications"))
+				applications = Integer.parseInt(value);
+			else if (option.equals("-memory-budget"))
+				memoryBudget = Long.parseLong(value);
+			else if (option.equals("-roots"))
+				roots.addAll(Arrays.asList(value.split(File.pathSeparator)));
+			else
+				throw new IllegalArgumentException("Unknown option " + option);
+		}
+		DiagnosisDaemon daemon = new DiagnosisDaemon(new ApplicationCache(applications, memoryBudget), roots);
+		daemon.start(port, threads);
+		System.out.println("DFQ daemon listening on port " + daemon.getPort());
+	}
+
+}
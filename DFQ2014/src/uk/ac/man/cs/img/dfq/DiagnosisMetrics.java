@@ -0,0 +1,204 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+ * The instances of this class count the work done in loading and diagnosing an application,
+ * and time each DiagnosisPhase of it.  Each Application has its own, which is published
+ * over JMX under the application's name, and whose current values can be taken at any time
+ * as a MetricsSnapshot.
+ *
+ * A phase is timed by taking startTimer() before it and passing the result to record()
+ * after it.  Counting and timing are lock-free, so the classes of an application can be
+ * created on several threads without contending for the metrics.
+ */
+public class DiagnosisMetrics implements DiagnosisMetricsMBean {
+
+	public static final String JMX_DOMAIN = "uk.ac.man.cs.img.dfq";
+
+	private AtomicLong queriesCompiled = new AtomicLong();
+	private AtomicLong documentsParsed = new AtomicLong();
+	private AtomicLong bytesRead = new AtomicLong();
+	private AtomicLong classesCreated = new AtomicLong();
+	private AtomicLong statementsCreated = new AtomicLong();
+	private AtomicLong snapshotWriteFailures = new AtomicLong();
+	private Map<DiagnosisPhase, LatencyHistogram> latencies = new EnumMap<DiagnosisPhase, LatencyHistogram>(DiagnosisPhase.class);
+
+	// The MBeans published by all instances, by name, guarded by the class's lock.
+	private static Map<ObjectName, Object> publishedMBeans = new HashMap<ObjectName, Object>();
+	private List<ObjectName> registeredNames = new ArrayList<ObjectName>();
+
+	// Constructor
+	public DiagnosisMetrics() {
+		for (DiagnosisPhase phase : DiagnosisPhase.values())
+			latencies.put(phase, new LatencyHistogram());
+	}
+
+
+	// Counting and timing
+	public void compiledQuery() {
+		queriesCompiled.incrementAndGet();
+	}
+
+	public void parsedDocument(long bytes) {
+		documentsParsed.incrementAndGet();
+		bytesRead.addAndGet(bytes);
+	}
+
+	public void readBytes(long bytes) {
+		bytesRead.addAndGet(bytes);
+	}
+
+	public void createdClass() {
+		classesCreated.incrementAndGet();
+	}
+
+	public void createdStatements(int statements) {
+		statementsCreated.addAndGet(statements);
+	}
+
+	public void failedToWriteSnapshot() {
+		snapshotWriteFailures.incrementAndGet();
+	}
+
+	public long startTimer() {
+		return System.nanoTime();
+	}
+
+	/*
+	 * Records the time since the given start, which was returned by startTimer(), as one
+	 * latency of the given phase.
+	 */
+	public void record(DiagnosisPhase phase, long startNanos) {
+		latencies.get(phase).record(System.nanoTime() - startNanos);
+	}
+
+
+	// Getters
+	public long getQueriesCompiled() {
+		return queriesCompiled.get();
+	}
+
+	public long getDocumentsParsed() {
+		return documentsParsed.get();
+	}
+
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	public long getClassesCreated() {
+		return classesCreated.get();
+	}
+
+	public long getStatementsCreated() {
+		return statementsCreated.get();
+	}
+
+	public long getSnapshotWriteFailures() {
+		return snapshotWriteFailures.get();
+	}
+
+	public LatencyHistogram getLatencies(DiagnosisPhase phase) {
+		return latencies.get(phase);
+	}
+
+	public MetricsSnapshot getSnapshot() {
+		Map<DiagnosisPhase, LatencyStatistics> statistics = new EnumMap<DiagnosisPhase, LatencyStatistics>(DiagnosisPhase.class);
+		for (DiagnosisPhase phase : DiagnosisPhase.values())
+			statistics.put(phase, latencies.get(phase).getStatistics());
+		return new MetricsSnapshot(getQueriesCompiled(), getDocumentsParsed(), getBytesRead(), getClassesCreated(),
+				getStatementsCreated(), getSnapshotWriteFailures(), statistics);
+	}
+
+	public void reset() {
+		queriesCompiled.set(0);
+		documentsParsed.set(0);
+		bytesRead.set(0);
+		classesCreated.set(0);
+		statementsCreated.set(0);
+		snapshotWriteFailures.set(0);
+		for (LatencyHistogram histogram : latencies.values())
+			histogram.reset();
+	}
+
+
+	// Publication over JMX
+
+	public static ObjectName objectNameFor(String applicationName) throws JMException {
+		return new ObjectName(JMX_DOMAIN + ":type=DiagnosisMetrics,application=" + ObjectName.quote(applicationName));
+	}
+
+	public static ObjectName objectNameFor(String applicationName, DiagnosisPhase phase) throws JMException {
+		return new ObjectName(JMX_DOMAIN + ":type=DiagnosisMetrics,application=" + ObjectName.quote(applicationName) +
+				",phase=" + phase.name());
+	}
+
+	/*
+	 * Publishes the metrics in the platform MBean server under the given application name,
+	 * replacing any published there before, so that only the latest application of each name
+	 * is kept alive by the server.  Metrics that cannot be published (for example, when a
+	 * security manager forbids it) are still counted, and remain available through
+	 * getSnapshot().
+	 */
+	public void register(String applicationName) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		synchronized (DiagnosisMetrics.class) {
+			try {
+				registerReplacing(server, objectNameFor(applicationName), this);
+				for (DiagnosisPhase phase : DiagnosisPhase.values())
+					registerReplacing(server, objectNameFor(applicationName, phase), latencies.get(phase));
+			} catch (JMException e) {
+				unregister();
+			} catch (SecurityException e) {
+				unregister();
+			}
+		}
+	}
+
+	private void registerReplacing(MBeanServer server, ObjectName name, Object mbean) throws JMException {
+		if (server.isRegistered(name))
+			server.unregisterMBean(name);
+		server.registerMBean(mbean, name);
+		publishedMBeans.put(name, mbean);
+		registeredNames.add(name);
+	}
+
+	/*
+	 * Withdraws the metrics from the platform MBean server, unless another application of
+	 * the same name has since replaced them.
+	 */
+	public void unregister() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		synchronized (DiagnosisMetrics.class) {
+			for (ObjectName name : registeredNames) {
+				if (publishedMBeans.get(name) != mbeanNamed(name))
+					continue;
+				publishedMBeans.remove(name);
+				try {
+					server.unregisterMBean(name);
+				} catch (JMException e) {
+					// Already withdrawn
+				}
+			}
+			registeredNames.clear();
+		}
+	}
+
+	// Returns this instance or one of its histograms, whichever the name was given to.
+	private Object mbeanNamed(ObjectName name) {
+		String phase = name.getKeyProperty("phase");
+		return phase == null ? this : latencies.get(DiagnosisPhase.valueOf(phase));
+	}
+
+}
@@ -0,0 +1,23 @@
+package uk.ac.man.cs.img.dfq;
+
+/*
+ * The management interface through which the counters of a DiagnosisMetrics are published
+ * over JMX.  The latencies of each phase are published separately, by LatencyHistogramMBean.
+ */
+public interface DiagnosisMetricsMBean {
+
+	public long getQueriesCompiled();
+
+	public long getDocumentsParsed();
+
+	public long getBytesRead();
+
+	public long getClassesCreated();
+
+	public long getStatementsCreated();
+
+	public long getSnapshotWriteFailures();
+
+	public void reset();
+
+}
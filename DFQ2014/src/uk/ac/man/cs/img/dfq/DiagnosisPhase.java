@@ -0,0 +1,25 @@
+package uk.ac.man.cs.img.dfq;
+
+/*
+ * The phases of loading and diagnosing an application that DiagnosisMetrics times.  The
+ * phases nest: constructing a class includes reading its source file and creating the
+ * statements of its methods, and loading the trace through XQuery includes compiling the
+ * queries that are first needed then.  Writing a ModelSnapshot includes converting the
+ * trace to the binary format, and reloading an application includes the phases of any
+ * work it has to do again.
+ */
+public enum DiagnosisPhase {
+	PROPERTIES_PARSING,
+	FILE_DIGESTING,
+	TRACE_LOADING,
+	XQUERY_COMPILATION,
+	XQUERY_EVALUATION,
+	SOURCE_READING,
+	CLASS_CONSTRUCTION,
+	STATEMENT_CONSTRUCTION,
+	QUERY_INDEXING,
+	SCORING,
+	SNAPSHOT_LOADING,
+	SNAPSHOT_WRITING,
+	RELOADING
+}
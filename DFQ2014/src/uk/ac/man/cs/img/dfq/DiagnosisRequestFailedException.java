@@ -0,0 +1,21 @@
+package uk.ac.man.cs.img.dfq;
+
+public class DiagnosisRequestFailedException extends DFQException {
+
+	private static final long serialVersionUID = 1L;
+
+	private int status;
+
+	/*
+	 * The status is the HTTP status of the daemon's answer, or 0 if there was none.
+	 */
+	public DiagnosisRequestFailedException(int status, String message) {
+		super(message);
+		this.status = status;
+	}
+
+	public int getStatus() {
+		return this.status;
+	}
+
+}
@@ -0,0 +1,81 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/*
+ * The subclasses of this class write a diagnostic report in a particular format.  A report
+ * is written as it is produced: startReport() is called once, then writeQuery() once for
+ * each suspicious query, most suspicious first, and then endReport().  The writers hold
+ * nothing back between calls, so the text of the report is never built up in memory; the
+ * caller does hold the ranking of the queries, since their number starts the report.
+ */
+public abstract class DiagnosticReportWriter {
+
+	private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+
+	protected Writer out;
+
+	// Constructor
+	protected DiagnosticReportWriter(Writer out) {
+		this.out = out;
+	}
+
+	public abstract void startReport(String appName, SuspiciousnessMetric metric, int queryCount) throws IOException;
+
+	public abstract void writeQuery(Query query, double score) throws IOException, DFQException;
+
+	public abstract void endReport() throws IOException;
+
+
+	// Utility Methods
+
+	protected static int startLineOf(Query query) throws DFQException {
+		return query.getStatements().get(0).getLineNumber();
+	}
+
+	/*
+	 * Writes the text with the characters that are special in XML and HTML replaced by
+	 * character references.  Characters that XML 1.0 does not allow at all, such as most
+	 * control characters and unpaired surrogates, cannot be referenced either, and are
+	 * replaced by U+FFFD.
+	 */
+	protected void writeEscapedForMarkup(String text) throws IOException {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+				out.write(c);
+				out.write(text.charAt(++i));
+				continue;
+			}
+			if (!isAllowedInXml(c)) {
+				out.write(REPLACEMENT_CHARACTER);
+				continue;
+			}
+			switch (c) {
+			case '&':
+				out.write("&amp;");
+				break;
+			case '<':
+				out.write("&lt;");
+				break;
+			case '>':
+				out.write("&gt;");
+				break;
+			case '"':
+				out.write("&quot;");
+				break;
+			default:
+				out.write(c);
+			}
+		}
+	}
+
+	// Whether the character, if not part of a surrogate pair, may appear in an XML 1.0 document.
+	private static boolean isAllowedInXml(char c) {
+		if (c < 0x20)
+			return c == '\t' || c == '\n' || c == '\r';
+		return !Character.isSurrogate(c) && c != 0xFFFE && c != 0xFFFF;
+	}
+
+}
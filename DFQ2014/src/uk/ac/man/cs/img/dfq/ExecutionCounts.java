@@ -0,0 +1,68 @@
+package uk.ac.man.cs.img.dfq;
+
+/*
+ * The instances of this class record how many passing and failing tests executed a
+ * query, together with the total numbers of passing and failing tests in the trace.  These
+ * are the figures from which the suspiciousness of the query is computed.
+ */
+public class ExecutionCounts {
+
+	private int passed;
+	private int failed;
+	private int totalPassed;
+	private int totalFailed;
+
+	// Constructor
+	public ExecutionCounts(int passed, int failed, int totalPassed, int totalFailed) {
+		this.passed = passed;
+		this.failed = failed;
+		this.totalPassed = totalPassed;
+		this.totalFailed = totalFailed;
+	}
+
+	// Getters
+	public int getPassed() {
+		return this.passed;
+	}
+
+	public int getFailed() {
+		return this.failed;
+	}
+
+	public int getTotalPassed() {
+		return this.totalPassed;
+	}
+
+	public int getTotalFailed() {
+		return this.totalFailed;
+	}
+
+	public int getPassedNotExecuting() {
+		return this.totalPassed - this.passed;
+	}
+
+	public int getFailedNotExecuting() {
+		return this.totalFailed - this.failed;
+	}
+
+	public double getScore(SuspiciousnessMetric metric) {
+		return metric.score(this);
+	}
+
+	/*
+	 * Returns the Tarantula suspiciousness score:
+	 *
+	 *   (failed / totalFailed) / ((passed / totalPassed) + (failed / totalFailed))
+	 *
+	 * where a ratio with a zero total is taken to be 0, and the score of a query that no test
+	 * executed is 0.
+	 */
+	public double getTarantulaScore() {
+		return SuspiciousnessMetrics.TARANTULA.score(this);
+	}
+
+	public String toString() {
+		return "passed " + passed + "/" + totalPassed + ", failed " + failed + "/" + totalFailed;
+	}
+
+}
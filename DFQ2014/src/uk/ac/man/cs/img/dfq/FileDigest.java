@@ -0,0 +1,104 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/*
+ * The instances of this class record the content of a file at one moment, as its length
+ * and the SHA-256 digest of its bytes, so that a later digest of the same path tells
+ * whether the file has changed since.
+ */
+public class FileDigest {
+
+	public static final String ALGORITHM = "SHA-256";
+	public static final int DIGEST_LENGTH = 32;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private String path;
+	private long length;
+	private byte[] digest;
+
+	// Constructor
+	public FileDigest(String path, long length, byte[] digest) {
+		this.path = path;
+		this.length = length;
+		this.digest = digest.clone();
+	}
+
+	/*
+	 * Reads the whole of the file at the given path and returns its digest.
+	 */
+	public static FileDigest of(String path) throws DFQException {
+		MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new DFQException(ALGORITHM + " is not available: " + e.getMessage());
+		}
+
+		long length = 0;
+		try {
+			FileInputStream in = new FileInputStream(new File(path));
+			try {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					length += read;
+					messageDigest.update(buffer, 0, read);
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new CouldNotReadFromFileException("file " + path);
+		}
+		return new FileDigest(path, length, messageDigest.digest());
+	}
+
+
+	// Getters
+	public String getPath() {
+		return this.path;
+	}
+
+	public long getLength() {
+		return this.length;
+	}
+
+	public byte[] getDigest() {
+		return this.digest.clone();
+	}
+
+	/*
+	 * Two digests are equal if they are of the same path and record the same content.
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (!(other instanceof FileDigest))
+			return false;
+		FileDigest otherDigest = (FileDigest) other;
+		return this.path.equals(otherDigest.path) && this.length == otherDigest.length
+				&& Arrays.equals(this.digest, otherDigest.digest);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * path.hashCode() + Arrays.hashCode(digest);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest)
+			hex.append(String.format("%02x", b & 0xff));
+		return path + " (" + length + " bytes, " + ALGORITHM + " " + hex + ")";
+	}
+
+}
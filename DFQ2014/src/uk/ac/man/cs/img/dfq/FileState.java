@@ -0,0 +1,67 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.File;
+
+/*
+ * The instances of this class record the state of one of the files an application was
+ * loaded from, as its modification time and its FileDigest, so that the application can
+ * tell which of its files have changed when it is reloaded (see Application.reload()).
+ *
+ * A file whose modification time and length are both unchanged is taken to be unchanged
+ * without being read again.  Otherwise it is digested afresh, and only counts as changed
+ * if its content differs, so touching a file does not make it changed.
+ */
+public class FileState {
+
+	private long lastModified;
+	private FileDigest digest;
+
+	// Constructor
+	public FileState(long lastModified, FileDigest digest) {
+		this.lastModified = lastModified;
+		this.digest = digest;
+	}
+
+	/*
+	 * Returns the state of the file at the given path.  The modification time is taken
+	 * before the file is read, so that a change made while it is being read is seen by the
+	 * next call to current().
+	 */
+	public static FileState of(String path) throws DFQException {
+		long lastModified = new File(path).lastModified();
+		return new FileState(lastModified, FileDigest.of(path));
+	}
+
+
+	// Getters
+	public String getPath() {
+		return this.digest.getPath();
+	}
+
+	public long getLastModified() {
+		return this.lastModified;
+	}
+
+	public FileDigest getDigest() {
+		return this.digest;
+	}
+
+	/*
+	 * Returns the state of the file now: this state if the file's modification time and
+	 * length are unchanged, and otherwise a new state, read from the file.
+	 */
+	public FileState current() throws DFQException {
+		File file = new File(getPath());
+		if (file.lastModified() == lastModified && file.length() == digest.getLength())
+			return this;
+		return of(getPath());
+	}
+
+	/*
+	 * Returns whether the given state of the same file records the same content as this.
+	 */
+	public boolean hasSameContentAs(FileState other) {
+		return this.digest.equals(other.digest);
+	}
+
+}
@@ -0,0 +1,58 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/*
+ * Writes a diagnostic report as an HTML page holding a table of the suspicious queries,
+ * with the source text of their statements.
+ */
+public class HtmlReportWriter extends DiagnosticReportWriter {
+
+	private int rank;
+
+	// Constructor
+	public HtmlReportWriter(Writer out) {
+		super(out);
+	}
+
+	public void startReport(String appName, SuspiciousnessMetric metric, int queryCount) throws IOException {
+		out.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\">\n<title>Suspicious queries of ");
+		writeEscapedForMarkup(appName);
+		out.write("</title>\n</head>\n<body>\n<h1>Suspicious queries of ");
+		writeEscapedForMarkup(appName);
+		out.write("</h1>\n");
+		if (queryCount == 0) {
+			out.write("<p>There are no suspicious queries on this application at present.</p>\n");
+			return;
+		}
+		out.write("<p>" + queryCount + " suspicious queries, ranked by ");
+		writeEscapedForMarkup(metric.getName());
+		out.write(" score.</p>\n<table>\n");
+		out.write("<tr><th>Rank</th><th>Class</th><th>Method</th><th>Line</th><th>Score</th><th>Source</th></tr>\n");
+	}
+
+	public void writeQuery(Query query, double score) throws IOException, DFQException {
+		rank++;
+		out.write("<tr><td>" + rank + "</td><td>");
+		writeEscapedForMarkup(query.getClassName());
+		out.write("</td><td>");
+		writeEscapedForMarkup(query.getMethodName());
+		out.write("</td><td>" + startLineOf(query) + "</td><td>" + score + "</td><td><pre>");
+		boolean first = true;
+		for (Statement statement : query.getStatements()) {
+			if (!first)
+				out.write("\n");
+			writeEscapedForMarkup(statement.getStatementText());
+			first = false;
+		}
+		out.write("</pre></td></tr>\n");
+	}
+
+	public void endReport() throws IOException {
+		if (rank > 0)
+			out.write("</table>\n");
+		out.write("</body>\n</html>\n");
+	}
+
+}
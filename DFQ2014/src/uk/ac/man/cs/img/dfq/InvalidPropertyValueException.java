@@ -0,0 +1,11 @@
+package uk.ac.man.cs.img.dfq;
+
+public class InvalidPropertyValueException extends DFQException {
+
+	private static final long serialVersionUID = 1L;
+
+	public InvalidPropertyValueException(String query) {
+		super(query);
+	}
+
+}
@@ -0,0 +1,93 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/*
+ * Writes a diagnostic report as a JSON object, giving the source text of the statements of
+ * each query.  Scores that are not finite (such as a DStar score with no denominator) are
+ * written as strings, since JSON numbers cannot represent them.
+ */
+public class JsonReportWriter extends DiagnosticReportWriter {
+
+	private boolean firstQuery = true;
+
+	// Constructor
+	public JsonReportWriter(Writer out) {
+		super(out);
+	}
+
+	public void startReport(String appName, SuspiciousnessMetric metric, int queryCount) throws IOException {
+		out.write("{\"application\": ");
+		writeString(appName);
+		out.write(", \"metric\": ");
+		writeString(metric.getName());
+		out.write(", \"queryCount\": " + queryCount + ", \"queries\": [");
+	}
+
+	public void writeQuery(Query query, double score) throws IOException, DFQException {
+		out.write(firstQuery ? "\n" : ",\n");
+		firstQuery = false;
+		out.write(" {\"class\": ");
+		writeString(query.getClassName());
+		out.write(", \"method\": ");
+		writeString(query.getMethodName());
+		out.write(", \"line\": " + startLineOf(query) + ", \"score\": ");
+		if (Double.isNaN(score) || Double.isInfinite(score))
+			writeString(String.valueOf(score));
+		else
+			out.write(String.valueOf(score));
+		out.write(", \"statements\": [");
+		boolean firstStatement = true;
+		for (Statement statement : query.getStatements()) {
+			if (!firstStatement)
+				out.write(", ");
+			writeString(statement.getStatementText());
+			firstStatement = false;
+		}
+		out.write("]}");
+	}
+
+	public void endReport() throws IOException {
+		out.write(firstQuery ? "]}\n" : "\n]}\n");
+	}
+
+	private void writeString(String text) throws IOException {
+		writeString(out, text);
+	}
+
+	/*
+	 * Writes the text as a JSON string, quoted and with the characters JSON does not allow
+	 * in strings escaped.
+	 */
+	static void writeString(Writer out, String text) throws IOException {
+		out.write('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			default:
+				if (c < ' ')
+					out.write(String.format("\\u%04x", (int) c));
+				else
+					out.write(c);
+			}
+		}
+		out.write('"');
+	}
+
+}
@@ -0,0 +1,77 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * The instances of this class count the latencies of one DiagnosisPhase in buckets whose
+ * bounds are powers of two (see LatencyStatistics).  Recording a latency takes a few atomic
+ * additions and no locks or allocation, so it is cheap enough to do for every statement
+ * lookup, and may be done from any number of threads at once.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+
+	private AtomicLong count = new AtomicLong();
+	private AtomicLong totalNanos = new AtomicLong();
+	private AtomicLong maxNanos = new AtomicLong();
+	private AtomicLongArray bucketCounts = new AtomicLongArray(LatencyStatistics.BUCKET_COUNT);
+
+	public void record(long nanos) {
+		bucketCounts.incrementAndGet(LatencyStatistics.bucketOf(nanos));
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+			max = maxNanos.get();
+	}
+
+	/*
+	 * Returns the latencies recorded so far.  Latencies recorded while the statistics are
+	 * being taken may be counted in some of the totals and not others.
+	 */
+	public LatencyStatistics getStatistics() {
+		long[] buckets = new long[LatencyStatistics.BUCKET_COUNT];
+		for (int bucket = 0; bucket < buckets.length; bucket++)
+			buckets[bucket] = bucketCounts.get(bucket);
+		return new LatencyStatistics(count.get(), totalNanos.get(), maxNanos.get(), buckets);
+	}
+
+
+	// Management interface
+	public long getCount() {
+		return count.get();
+	}
+
+	public double getTotalMillis() {
+		return getStatistics().getTotalMillis();
+	}
+
+	public double getMeanMillis() {
+		return getStatistics().getMeanMillis();
+	}
+
+	public double getMaxMillis() {
+		return getStatistics().getMaxMillis();
+	}
+
+	public double getMedianMillis() {
+		return getStatistics().getPercentileMillis(0.5);
+	}
+
+	public double getPercentile90Millis() {
+		return getStatistics().getPercentileMillis(0.9);
+	}
+
+	public double getPercentile99Millis() {
+		return getStatistics().getPercentileMillis(0.99);
+	}
+
+	public void reset() {
+		for (int bucket = 0; bucket < LatencyStatistics.BUCKET_COUNT; bucket++)
+			bucketCounts.set(bucket, 0);
+		count.set(0);
+		totalNanos.set(0);
+		maxNanos.set(0);
+	}
+
+}
@@ -0,0 +1,26 @@
+package uk.ac.man.cs.img.dfq;
+
+/*
+ * The management interface through which each LatencyHistogram of a DiagnosisMetrics is
+ * published over JMX.  Percentiles are the upper bounds of the histogram buckets they fall
+ * in, so they are accurate to within a factor of two.
+ */
+public interface LatencyHistogramMBean {
+
+	public long getCount();
+
+	public double getTotalMillis();
+
+	public double getMeanMillis();
+
+	public double getMaxMillis();
+
+	public double getMedianMillis();
+
+	public double getPercentile90Millis();
+
+	public double getPercentile99Millis();
+
+	public void reset();
+
+}
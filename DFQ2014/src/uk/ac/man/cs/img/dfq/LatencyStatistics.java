@@ -0,0 +1,92 @@
+package uk.ac.man.cs.img.dfq;
+
+/*
+ * The instances of this class hold the latencies recorded by a LatencyHistogram at one
+ * moment, and do not change after they are made.  The latencies are counted in buckets
+ * whose bounds are powers of two of nanoseconds: bucket i holds the latencies of at least
+ * 2^(i-1) and less than 2^i nanoseconds, and bucket 0 those of no time at all.
+ */
+public class LatencyStatistics {
+
+	public static final int BUCKET_COUNT = 64;
+
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private long count;
+	private long totalNanos;
+	private long maxNanos;
+	private long[] bucketCounts;
+
+	// Constructor
+	public LatencyStatistics(long count, long totalNanos, long maxNanos, long[] bucketCounts) {
+		this.count = count;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+		this.bucketCounts = bucketCounts.clone();
+	}
+
+	public static int bucketOf(long nanos) {
+		return nanos <= 0 ? 0 : Math.min(BUCKET_COUNT - Long.numberOfLeadingZeros(nanos), BUCKET_COUNT - 1);
+	}
+
+
+	// Getters
+	public long getCount() {
+		return this.count;
+	}
+
+	public long getTotalNanos() {
+		return this.totalNanos;
+	}
+
+	public long getMaxNanos() {
+		return this.maxNanos;
+	}
+
+	public long getBucketCount(int bucket) {
+		return this.bucketCounts[bucket];
+	}
+
+	public double getTotalMillis() {
+		return totalNanos / NANOS_PER_MILLI;
+	}
+
+	public double getMeanMillis() {
+		return count == 0 ? 0 : totalNanos / NANOS_PER_MILLI / count;
+	}
+
+	public double getMaxMillis() {
+		return maxNanos / NANOS_PER_MILLI;
+	}
+
+	/*
+	 * Returns the latency within which the given fraction of the recorded latencies fell,
+	 * taken as the upper bound of the bucket that latency is in (but never more than the
+	 * longest latency recorded).
+	 */
+	public double getPercentileMillis(double fraction) {
+		if (fraction < 0 || fraction > 1)
+			throw new IllegalArgumentException("Percentile fraction " + fraction + " is not between 0 and 1");
+		if (count == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(fraction * count));
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+			seen += bucketCounts[bucket];
+			if (seen >= rank)
+				return Math.min(upperBoundOf(bucket), maxNanos) / NANOS_PER_MILLI;
+		}
+		return getMaxMillis();
+	}
+
+	private static long upperBoundOf(int bucket) {
+		return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d total=%.3fms mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms", count,
+				getTotalMillis(), getMeanMillis(), getPercentileMillis(0.5), getPercentileMillis(0.99), getMaxMillis());
+	}
+
+}
@@ -0,0 +1,395 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The instances of this class answer questions about a trace held in the DFQ binary trace
+ * format (see BinaryTraceFormat).  The file is memory-mapped when the reader is created,
+ * and each question is answered by reading the mapped sections in place, so the operating
+ * system rather than the Java heap holds the trace.
+ */
+public class MappedTraceReader implements TraceReader {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private String traceFilePath;
+	private ByteBuffer buffer;
+
+	private int stringCount;
+	private int stringOffsetsStart;
+	private int stringBytesStart;
+	private int methodCount;
+	private int methodsStart;
+	private int signatureCount;
+	private int signaturesStart;
+	private int statementCount;
+	private int statementsStart;
+	private int testCaseCount;
+	private int testCasesStart;
+	private int coverageCount;
+	private int coverageStart;
+	private int statementListStart;
+
+	// Constructor
+	public MappedTraceReader(String traceFilePath) throws DFQException {
+		this(traceFilePath, map(traceFilePath));
+	}
+
+	/*
+	 * Creates a reader of a binary trace that has already been mapped, as part of a larger
+	 * file such as a ModelSnapshot.  The buffer's position 0 must be the start of the trace.
+	 */
+	MappedTraceReader(String traceFilePath, ByteBuffer buffer) throws DFQException {
+		this.traceFilePath = traceFilePath;
+		this.buffer = buffer;
+		readHeader();
+	}
+
+	/*
+	 * Returns true if the given file starts with the magic number of the binary trace
+	 * format, and false if it does not (or cannot be read).
+	 */
+	public static boolean isBinaryTrace(String traceFilePath) {
+		File traceFile = new File(traceFilePath);
+		if (!traceFile.isFile() || traceFile.length() < BinaryTraceFormat.HEADER_SIZE)
+			return false;
+		try {
+			DataInputStream in = new DataInputStream(new FileInputStream(traceFile));
+			try {
+				return in.readInt() == BinaryTraceFormat.MAGIC;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static ByteBuffer map(String traceFilePath) throws DFQException {
+		if (!new File(traceFilePath).isFile())
+			throw new TraceFileNotFoundException();
+		try {
+			RandomAccessFile file = new RandomAccessFile(traceFilePath, "r");
+			try {
+				FileChannel channel = file.getChannel();
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			} finally {
+				file.close();
+			}
+		} catch (IOException e) {
+			throw new CouldNotParseTraceFileException(e.getMessage() + " with path \"" + traceFilePath + "\"");
+		}
+	}
+
+	private void readHeader() throws DFQException {
+		if (buffer.limit() < BinaryTraceFormat.HEADER_SIZE
+				|| buffer.getInt(BinaryTraceFormat.MAGIC_POSITION) != BinaryTraceFormat.MAGIC)
+			throw new CouldNotParseTraceFileException("Not a binary trace file with path \"" + traceFilePath + "\"");
+		if (buffer.getInt(BinaryTraceFormat.VERSION_POSITION) != BinaryTraceFormat.VERSION)
+			throw new CouldNotParseTraceFileException("Unsupported binary trace version "
+					+ buffer.getInt(BinaryTraceFormat.VERSION_POSITION) + " with path \"" + traceFilePath + "\"");
+
+		try {
+			int stringsOffset = buffer.getInt(BinaryTraceFormat.STRINGS_OFFSET_POSITION);
+			stringCount = buffer.getInt(stringsOffset);
+			stringOffsetsStart = stringsOffset + 4;
+			stringBytesStart = stringOffsetsStart + 4 * (stringCount + 1);
+
+			int methodsOffset = buffer.getInt(BinaryTraceFormat.METHODS_OFFSET_POSITION);
+			methodCount = buffer.getInt(methodsOffset);
+			methodsStart = methodsOffset + 4;
+
+			int signaturesOffset = buffer.getInt(BinaryTraceFormat.SIGNATURES_OFFSET_POSITION);
+			signatureCount = buffer.getInt(signaturesOffset);
+			signaturesStart = signaturesOffset + 4;
+
+			int statementsOffset = buffer.getInt(BinaryTraceFormat.STATEMENTS_OFFSET_POSITION);
+			statementCount = buffer.getInt(statementsOffset);
+			statementsStart = statementsOffset + 4;
+
+			int testCasesOffset = buffer.getInt(BinaryTraceFormat.TEST_CASES_OFFSET_POSITION);
+			testCaseCount = buffer.getInt(testCasesOffset);
+			testCasesStart = testCasesOffset + 4;
+
+			int coverageOffset = buffer.getInt(BinaryTraceFormat.COVERAGE_OFFSET_POSITION);
+			coverageCount = buffer.getInt(coverageOffset);
+			coverageStart = coverageOffset + 4;
+
+			statementListStart = buffer.getInt(BinaryTraceFormat.STATEMENT_LIST_OFFSET_POSITION) + 4;
+		} catch (IndexOutOfBoundsException e) {
+			throw new CouldNotParseTraceFileException("Truncated binary trace file with path \"" + traceFilePath + "\"");
+		}
+	}
+
+
+	/*
+	 * Returns the whole of the binary trace, positioned at its start.
+	 */
+	ByteBuffer getTraceBytes() {
+		ByteBuffer traceBytes = buffer.duplicate();
+		traceBytes.clear();
+		return traceBytes;
+	}
+
+
+	// Queries over the mapped trace
+
+	public List<String> getProductionMethodSignatures(String className) {
+		return getMethodSignatures(className, BinaryTraceFormat.PRODUCTION_METHOD);
+	}
+
+	public List<String> getTestMethodSignatures(String className) {
+		return getMethodSignatures(className, BinaryTraceFormat.TEST_METHOD);
+	}
+
+	public int getMethodStartLine(String methodSignature) throws DFQException {
+		int startLine = getSignatureField(methodSignature, 1);
+		if (startLine == MethodLineRange.UNDEFINED_LINE_NUMBER)
+			throw new CouldNotFindStartLineNumberForGivenMethodException();
+		return startLine;
+	}
+
+	public int getMethodEndLine(String methodSignature) throws DFQException {
+		int endLine = getSignatureField(methodSignature, 2);
+		if (endLine == MethodLineRange.UNDEFINED_LINE_NUMBER)
+			throw new CouldNotFindEndLineNumberForGivenMethodException();
+		return endLine;
+	}
+
+	public Map<String, Map<String, MethodLineRange>> getProductionMethodLineRanges() {
+		return getMethodLineRanges(BinaryTraceFormat.PRODUCTION_METHOD);
+	}
+
+	public Map<String, Map<String, MethodLineRange>> getTestMethodLineRanges() {
+		return getMethodLineRanges(BinaryTraceFormat.TEST_METHOD);
+	}
+
+	public List<String> getExecutedTestNames() {
+		List<String> testNames = new ArrayList<String>(testCaseCount);
+		for (int i = 0; i < testCaseCount; i++)
+			testNames.add(getString(testCaseField(i, 0)));
+		return testNames;
+	}
+
+	public List<String> getPassingTestNames() {
+		return getTestNamesWithResult("true");
+	}
+
+	public List<String> getFailingTestNames() {
+		return getTestNamesWithResult("false");
+	}
+
+	public List<String> getTestResults(String testName) {
+		List<String> results = new ArrayList<String>();
+		int testNameId = findString(testName);
+		if (testNameId == BinaryTraceFormat.NO_STRING)
+			return results;
+		for (int i = 0; i < testCaseCount; i++) {
+			if (testCaseField(i, 0) == testNameId)
+				results.add(getString(testCaseField(i, 1)));
+		}
+		return results;
+	}
+
+	public List<LineNumClassPair<String>> getExecutedStatements(String testName) {
+		return getCoveredStatements(testName, 1);
+	}
+
+	public List<LineNumClassPair<String>> getDistinctExecutedStatements(String testName) {
+		return getCoveredStatements(testName, 3);
+	}
+
+
+	public CoverageMatrix getCoverageMatrix() {
+		CoverageMatrix coverage = new CoverageMatrix(statementCount);
+		String[] classNames = new String[stringCount];
+		for (int statement = 0; statement < statementCount; statement++) {
+			int classId = recordField(statementsStart, BinaryTraceFormat.STATEMENT_RECORD_INTS, statement, 1);
+			if (classId == BinaryTraceFormat.NO_STRING)
+				continue;
+			if (classNames[classId] == null)
+				classNames[classId] = getString(classId);
+			coverage.defineStatement(statement,
+					recordField(statementsStart, BinaryTraceFormat.STATEMENT_RECORD_INTS, statement, 0), classNames[classId]);
+		}
+		for (int i = 0; i < testCaseCount; i++) {
+			int testNameId = testCaseField(i, 0);
+			int entry = binarySearch(coverageStart, coverageCount, BinaryTraceFormat.COVERAGE_RECORD_INTS, testNameId);
+			coverage.addTest(getString(testNameId), getString(testCaseField(i, 1)), getCoveredStatementIndexes(entry, 3));
+		}
+		coverage.finishLoading();
+		return coverage;
+	}
+
+
+	// Utility Methods for Reading Each Section
+
+	private List<String> getMethodSignatures(String className, int kind) {
+		List<String> signatures = new ArrayList<String>();
+		int classId = findString(className);
+		if (classId == BinaryTraceFormat.NO_STRING)
+			return signatures;
+		for (int i = 0; i < methodCount; i++) {
+			if (methodField(i, 0) == classId && methodField(i, 2) == kind)
+				signatures.add(getString(methodField(i, 1)));
+		}
+		return signatures;
+	}
+
+	private Map<String, Map<String, MethodLineRange>> getMethodLineRanges(int kind) {
+		Map<String, Map<String, MethodLineRange>> lineRanges = new LinkedHashMap<String, Map<String, MethodLineRange>>();
+		for (int i = 0; i < methodCount; i++) {
+			if (methodField(i, 2) != kind)
+				continue;
+			String className = getString(methodField(i, 0));
+			Map<String, MethodLineRange> classLineRanges = lineRanges.get(className);
+			if (classLineRanges == null) {
+				classLineRanges = new LinkedHashMap<String, MethodLineRange>();
+				lineRanges.put(className, classLineRanges);
+			}
+			classLineRanges.put(getString(methodField(i, 1)), new MethodLineRange(methodField(i, 3), methodField(i, 4)));
+		}
+		return lineRanges;
+	}
+
+	/*
+	 * Returns the given field of the signature table entry for the given method signature,
+	 * or UNDEFINED_LINE_NUMBER if the signature is not in the table.
+	 */
+	private int getSignatureField(String methodSignature, int field) {
+		int signatureId = findString(methodSignature);
+		if (signatureId == BinaryTraceFormat.NO_STRING)
+			return MethodLineRange.UNDEFINED_LINE_NUMBER;
+		int entry = binarySearch(signaturesStart, signatureCount, BinaryTraceFormat.SIGNATURE_RECORD_INTS, signatureId);
+		if (entry < 0)
+			return MethodLineRange.UNDEFINED_LINE_NUMBER;
+		return recordField(signaturesStart, BinaryTraceFormat.SIGNATURE_RECORD_INTS, entry, field);
+	}
+
+	private List<String> getTestNamesWithResult(String result) {
+		List<String> testNames = new ArrayList<String>();
+		int resultId = findString(result);
+		if (resultId == BinaryTraceFormat.NO_STRING)
+			return testNames;
+		for (int i = 0; i < testCaseCount; i++) {
+			if (testCaseField(i, 1) == resultId)
+				testNames.add(getString(testCaseField(i, 0)));
+		}
+		return testNames;
+	}
+
+	/*
+	 * Returns the statements in the list referred to by the given offset field of the
+	 * coverage entry for the named test; the length of the list is in the following field.
+	 */
+	private List<LineNumClassPair<String>> getCoveredStatements(String testName, int offsetField) {
+		List<LineNumClassPair<String>> statements = new ArrayList<LineNumClassPair<String>>();
+		int testNameId = findString(testName);
+		if (testNameId == BinaryTraceFormat.NO_STRING)
+			return statements;
+		int entry = binarySearch(coverageStart, coverageCount, BinaryTraceFormat.COVERAGE_RECORD_INTS, testNameId);
+		if (entry < 0)
+			return statements;
+
+		String[] classNames = new String[stringCount];
+		for (int statement : getCoveredStatementIndexes(entry, offsetField)) {
+			int classId = recordField(statementsStart, BinaryTraceFormat.STATEMENT_RECORD_INTS, statement, 1);
+			if (classNames[classId] == null)
+				classNames[classId] = getString(classId);
+			int lineNumber = recordField(statementsStart, BinaryTraceFormat.STATEMENT_RECORD_INTS, statement, 0);
+			statements.add(new LineNumClassPair<String>(lineNumber, classNames[classId]));
+		}
+		return statements;
+	}
+
+	private int[] getCoveredStatementIndexes(int coverageEntry, int offsetField) {
+		int listOffset = recordField(coverageStart, BinaryTraceFormat.COVERAGE_RECORD_INTS, coverageEntry, offsetField);
+		int listLength = recordField(coverageStart, BinaryTraceFormat.COVERAGE_RECORD_INTS, coverageEntry, offsetField + 1);
+		int[] statements = new int[listLength];
+		for (int i = 0; i < listLength; i++)
+			statements[i] = buffer.getInt(statementListStart + 4 * (listOffset + i));
+		return statements;
+	}
+
+	private int methodField(int method, int field) {
+		return recordField(methodsStart, BinaryTraceFormat.METHOD_RECORD_INTS, method, field);
+	}
+
+	private int testCaseField(int testCase, int field) {
+		return recordField(testCasesStart, BinaryTraceFormat.TEST_CASE_RECORD_INTS, testCase, field);
+	}
+
+	private int recordField(int sectionStart, int recordInts, int record, int field) {
+		return buffer.getInt(sectionStart + 4 * (record * recordInts + field));
+	}
+
+	/*
+	 * Finds the record whose first field is the given key in a section sorted on that field,
+	 * returning its position or -1 if there is none.  String ids follow the sorted order of
+	 * the strings, so sections sorted by string are also sorted by string id.
+	 */
+	private int binarySearch(int sectionStart, int recordCount, int recordInts, int key) {
+		int low = 0;
+		int high = recordCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int middleKey = recordField(sectionStart, recordInts, middle, 0);
+			if (middleKey < key)
+				low = middle + 1;
+			else if (middleKey > key)
+				high = middle - 1;
+			else
+				return middle;
+		}
+		return -1;
+	}
+
+
+	// Access to the string table
+
+	private String getString(int stringId) {
+		if (stringId == BinaryTraceFormat.NO_STRING)
+			return null;
+		int start = buffer.getInt(stringOffsetsStart + 4 * stringId);
+		int end = buffer.getInt(stringOffsetsStart + 4 * (stringId + 1));
+		byte[] bytes = new byte[end - start];
+		ByteBuffer string = buffer.duplicate();
+		string.position(stringBytesStart + start);
+		string.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/*
+	 * Returns the id of the given string, or NO_STRING if it is not in the trace.  The
+	 * strings were sorted with String.compareTo when the file was written.
+	 */
+	private int findString(String value) {
+		if (value == null)
+			return BinaryTraceFormat.NO_STRING;
+		int low = 0;
+		int high = stringCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = getString(middle).compareTo(value);
+			if (comparison < 0)
+				low = middle + 1;
+			else if (comparison > 0)
+				high = middle - 1;
+			else
+				return middle;
+		}
+		return BinaryTraceFormat.NO_STRING;
+	}
+
+}
@@ -0,0 +1,28 @@
+package uk.ac.man.cs.img.dfq;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * The Java Flight Recorder event for the creation of the statements and queries of one
+ * method from its class's source file.
+ */
+@Name("uk.ac.man.cs.img.dfq.MethodConstruction")
+@Label("Method Construction")
+@Category({ "DFQ", "Model" })
+class MethodConstructionEvent extends jdk.jfr.Event {
+
+	@Label("Class Name")
+	String className;
+
+	@Label("Method Signature")
+	String methodSignature;
+
+	@Label("Statements")
+	int statements;
+
+	@Label("Queries")
+	int queries;
+
+}
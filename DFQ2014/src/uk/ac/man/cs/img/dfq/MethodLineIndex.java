@@ -0,0 +1,48 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.util.List;
+
+/*
+ * The instances of this class map each line of a class's source file to the method whose
+ * line range contains it, using an array with one entry per line between the first and
+ * last lines of the class's methods.  Where the ranges of several methods contain a line,
+ * the line is mapped to the first of them in the order given.
+ */
+public class MethodLineIndex {
+
+	private int firstLine;
+	private CodeMethod[] methodsByLine;
+
+	// Constructor
+	public MethodLineIndex(List<CodeMethod> methods) {
+		int lastLine = Integer.MIN_VALUE;
+		firstLine = Integer.MAX_VALUE;
+		for (CodeMethod method : methods) {
+			if (method.getStartLineNumber() <= method.getEndLineNumber()) {
+				firstLine = Math.min(firstLine, method.getStartLineNumber());
+				lastLine = Math.max(lastLine, method.getEndLineNumber());
+			}
+		}
+
+		if (firstLine > lastLine) {
+			methodsByLine = new CodeMethod[0];
+			return;
+		}
+		methodsByLine = new CodeMethod[lastLine - firstLine + 1];
+		for (int i = methods.size() - 1; i >= 0; i--) {
+			CodeMethod method = methods.get(i);
+			for (int line = method.getStartLineNumber(); line <= method.getEndLineNumber(); line++)
+				methodsByLine[line - firstLine] = method;
+		}
+	}
+
+	/*
+	 * Returns the method containing the given line, or null if no method contains it.
+	 */
+	public CodeMethod getMethodContainingLine(int lineNumber) {
+		if (methodsByLine.length == 0 || lineNumber < firstLine || lineNumber - firstLine >= methodsByLine.length)
+			return null;
+		return methodsByLine[lineNumber - firstLine];
+	}
+
+}
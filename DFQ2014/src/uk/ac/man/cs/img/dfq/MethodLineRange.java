@@ -0,0 +1,57 @@
+package uk.ac.man.cs.img.dfq;
+
+/*
+ * The instances of this class hold the start and end line numbers recorded for a method
+ * in the trace file.  Either line number may be missing from the trace, in which case it
+ * is UNDEFINED_LINE_NUMBER.
+ */
+public class MethodLineRange {
+
+	public static final int UNDEFINED_LINE_NUMBER = -1;
+
+	private int startLine;
+	private int endLine;
+
+	// Constructor
+	public MethodLineRange(int startLine, int endLine) {
+		this.startLine = startLine;
+		this.endLine = endLine;
+	}
+
+	// Getters
+	public int getStartLine() throws CouldNotFindStartLineNumberForGivenMethodException {
+		if (startLine == UNDEFINED_LINE_NUMBER)
+			throw new CouldNotFindStartLineNumberForGivenMethodException();
+		return startLine;
+	}
+
+	public int getEndLine() throws CouldNotFindEndLineNumberForGivenMethodException {
+		if (endLine == UNDEFINED_LINE_NUMBER)
+			throw new CouldNotFindEndLineNumberForGivenMethodException();
+		return endLine;
+	}
+
+	int startLineOrUndefined() {
+		return startLine;
+	}
+
+	int endLineOrUndefined() {
+		return endLine;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (!(other instanceof MethodLineRange))
+			return false;
+		MethodLineRange otherRange = (MethodLineRange) other;
+		return this.startLine == otherRange.startLine && this.endLine == otherRange.endLine;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * startLine + endLine;
+	}
+
+}
@@ -0,0 +1,87 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/*
+ * The instances of this class hold the values of a DiagnosisMetrics at one moment, and do
+ * not change after they are made, so that the metrics of one run can be kept and compared
+ * with those of the next.
+ */
+public class MetricsSnapshot {
+
+	private long queriesCompiled;
+	private long documentsParsed;
+	private long bytesRead;
+	private long classesCreated;
+	private long statementsCreated;
+	private long snapshotWriteFailures;
+	private Map<DiagnosisPhase, LatencyStatistics> latencies;
+
+	// Constructor
+	public MetricsSnapshot(long queriesCompiled, long documentsParsed, long bytesRead, long classesCreated,
+			long statementsCreated, long snapshotWriteFailures, Map<DiagnosisPhase, LatencyStatistics> latencies) {
+		this.queriesCompiled = queriesCompiled;
+		this.documentsParsed = documentsParsed;
+		this.bytesRead = bytesRead;
+		this.classesCreated = classesCreated;
+		this.statementsCreated = statementsCreated;
+		this.snapshotWriteFailures = snapshotWriteFailures;
+		this.latencies = Collections.unmodifiableMap(new EnumMap<DiagnosisPhase, LatencyStatistics>(latencies));
+	}
+
+
+	// Getters
+	public long getQueriesCompiled() {
+		return this.queriesCompiled;
+	}
+
+	public long getDocumentsParsed() {
+		return this.documentsParsed;
+	}
+
+	public long getBytesRead() {
+		return this.bytesRead;
+	}
+
+	public long getClassesCreated() {
+		return this.classesCreated;
+	}
+
+	public long getStatementsCreated() {
+		return this.statementsCreated;
+	}
+
+	public long getSnapshotWriteFailures() {
+		return this.snapshotWriteFailures;
+	}
+
+	public LatencyStatistics getLatencies(DiagnosisPhase phase) {
+		return this.latencies.get(phase);
+	}
+
+	public Map<DiagnosisPhase, LatencyStatistics> getAllLatencies() {
+		return this.latencies;
+	}
+
+	/*
+	 * Returns the counters, and the latencies of each phase that took place, one per line.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		text.append("queries compiled: ").append(queriesCompiled).append('\n');
+		text.append("documents parsed: ").append(documentsParsed).append('\n');
+		text.append("bytes read: ").append(bytesRead).append('\n');
+		text.append("classes created: ").append(classesCreated).append('\n');
+		text.append("statements created: ").append(statementsCreated).append('\n');
+		text.append("snapshot write failures: ").append(snapshotWriteFailures).append('\n');
+		for (Map.Entry<DiagnosisPhase, LatencyStatistics> phase : latencies.entrySet()) {
+			if (phase.getValue().getCount() > 0)
+				text.append(phase.getKey().name().toLowerCase()).append(": ").append(phase.getValue()).append('\n');
+		}
+		return text.toString();
+	}
+
+}
@@ -0,0 +1,266 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * The instances of this class hold a snapshot of an application's model, written once the
+ * application has been loaded and its queries counted, so that a later load of the same
+ * application can skip parsing the trace and counting the executions of its queries.
+ *
+ * A snapshot is keyed by the FileDigest of each file the application was loaded from (its
+ * properties file, trace file and source files), and is only opened if every one of them
+ * is unchanged.  The file is memory-mapped, and holds, in order:
+ *
+ *   header    magic and version, as big-endian 4-byte ints
+ *   key       the number of files, then for each its path (as by DataOutput.writeUTF),
+ *             length (8 bytes) and SHA-256 digest (32 bytes)
+ *   counts    the numbers of passing and failing tests and of queries, then for each query,
+ *             in the order of SuspiciousnessEngine.getQueries(), its starting line and the
+ *             numbers of passing and failing tests that executed it
+ *   trace     the length of the trace (8 bytes), then the trace in the binary trace format
+ *             (see BinaryTraceFormat), which is queried in place
+ *
+ * The classes, methods and statements of the application are still created from its source
+ * files, which have to be read to check their digests anyway.
+ */
+public class ModelSnapshot {
+
+	public static final int MAGIC = 0x44465153;	// "DFQS"
+	public static final int VERSION = 1;
+
+	private static final int COUNT_RECORD_INTS = 3;
+
+	private String snapshotFilePath;
+	private int totalPassed;
+	private int totalFailed;
+	private int[] counts;
+	private MappedTraceReader traceReader;
+
+	// Constructor
+	private ModelSnapshot(String snapshotFilePath) {
+		this.snapshotFilePath = snapshotFilePath;
+	}
+
+	public String getSnapshotFilePath() {
+		return this.snapshotFilePath;
+	}
+
+
+	// Opening a snapshot
+
+	/*
+	 * Returns the snapshot held in the given file if it was written under the given key,
+	 * or null if there is no such file, or it was written under another key or by another
+	 * version of DFQ, or it cannot be read.
+	 */
+	public static ModelSnapshot open(String snapshotFilePath, List<FileDigest> key) throws DFQException {
+		File snapshotFile = new File(snapshotFilePath);
+		if (!snapshotFile.isFile())
+			return null;
+
+		ModelSnapshot snapshot = new ModelSnapshot(snapshotFilePath);
+		try {
+			ByteBuffer buffer = map(snapshotFile);
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || !readKey(buffer).equals(key))
+				return null;
+			snapshot.readCounts(buffer);
+			snapshot.readTrace(buffer);
+		} catch (IOException e) {
+			return null;
+		} catch (BufferUnderflowException e) {
+			return null;
+		} catch (IndexOutOfBoundsException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		} catch (CouldNotParseTraceFileException e) {
+			return null;
+		}
+		return snapshot;
+	}
+
+	private static ByteBuffer map(File snapshotFile) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(snapshotFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			file.close();
+		}
+	}
+
+	private static List<FileDigest> readKey(ByteBuffer buffer) throws IOException {
+		int fileCount = buffer.getInt();
+		List<FileDigest> key = new ArrayList<FileDigest>(Math.max(0, Math.min(fileCount, buffer.remaining())));
+		for (int i = 0; i < fileCount; i++) {
+			String path = readUTF(buffer);
+			long length = buffer.getLong();
+			byte[] digest = new byte[FileDigest.DIGEST_LENGTH];
+			buffer.get(digest);
+			key.add(new FileDigest(path, length, digest));
+		}
+		return key;
+	}
+
+	// Reads a path written by DataOutput.writeUTF(), which is preceded by its length in bytes.
+	private static String readUTF(ByteBuffer buffer) throws IOException {
+		byte[] bytes = new byte[2 + (buffer.getShort(buffer.position()) & 0xffff)];
+		buffer.get(bytes);
+		return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+	}
+
+	private void readCounts(ByteBuffer buffer) {
+		totalPassed = buffer.getInt();
+		totalFailed = buffer.getInt();
+		int queryCount = buffer.getInt();
+		if (queryCount < 0 || (long) queryCount * COUNT_RECORD_INTS * 4 > buffer.remaining())
+			throw new IllegalArgumentException("Bad query count " + queryCount);
+		counts = new int[queryCount * COUNT_RECORD_INTS];
+		buffer.asIntBuffer().get(counts);
+		buffer.position(buffer.position() + counts.length * 4);
+	}
+
+	private void readTrace(ByteBuffer buffer) throws DFQException {
+		long traceLength = buffer.getLong();
+		if (traceLength < 0 || traceLength > buffer.remaining())
+			throw new IllegalArgumentException("Bad trace length " + traceLength);
+		ByteBuffer trace = buffer.slice();
+		trace.limit((int) traceLength);
+		traceReader = new MappedTraceReader(snapshotFilePath, trace);
+	}
+
+
+	// Restoring the model
+
+	public TraceReader getTraceReader() {
+		return this.traceReader;
+	}
+
+	public int getQueryCount() {
+		return counts.length / COUNT_RECORD_INTS;
+	}
+
+	/*
+	 * Returns an engine holding the counts kept in the snapshot for the queries of the given
+	 * methods, or null if those queries are not the ones the snapshot was written for.
+	 */
+	public SuspiciousnessEngine restoreEngine(List<CodeMethod> methods) throws DFQException {
+		Set<Query> queries = new LinkedHashSet<Query>();
+		for (CodeMethod method : methods)
+			queries.addAll(method.getQueries());
+		if (queries.size() != getQueryCount())
+			return null;
+
+		int[] passedCounts = new int[queries.size()];
+		int[] failedCounts = new int[queries.size()];
+		int index = 0;
+		for (Query query : queries) {
+			if (query.getStatements().get(0).getLineNumber() != counts[index * COUNT_RECORD_INTS])
+				return null;
+			passedCounts[index] = counts[index * COUNT_RECORD_INTS + 1];
+			failedCounts[index] = counts[index * COUNT_RECORD_INTS + 2];
+			index++;
+		}
+		return new SuspiciousnessEngine(new ArrayList<Query>(queries), passedCounts, failedCounts, totalPassed, totalFailed);
+	}
+
+
+	// Writing a snapshot
+
+	/*
+	 * Writes a snapshot of the given application under the given key, counting its queries
+	 * if that has not already been done.  The snapshot is written alongside the given file
+	 * and then moved into place, so that a snapshot that is only partly written is never
+	 * opened.
+	 */
+	public static void write(Application application, String snapshotFilePath, List<FileDigest> key) throws DFQException {
+		SuspiciousnessEngine engine = application.getSuspiciousnessEngine();
+		File snapshotFile = new File(snapshotFilePath);
+		File partialFile = new File(snapshotFilePath + ".partial");
+		File binaryTraceFile = null;
+		try {
+			ByteBuffer trace;
+			TraceReader reader = application.getTrace().getTraceReader();
+			if (reader instanceof MappedTraceReader) {
+				trace = ((MappedTraceReader) reader).getTraceBytes();
+			} else {
+				TraceModel model = reader instanceof TraceModel ? (TraceModel) reader
+						: TraceModelLoader.load(application.getTrace().getTraceFilePath());
+				binaryTraceFile = new File(snapshotFilePath + ".trace");
+				BinaryTraceWriter.write(model, binaryTraceFile.getPath());
+				trace = map(binaryTraceFile);
+			}
+
+			FileOutputStream file = new FileOutputStream(partialFile);
+			try {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeKey(out, key);
+				writeCounts(out, engine);
+				out.writeLong(trace.remaining());
+				out.flush();
+				FileChannel channel = file.getChannel();
+				while (trace.hasRemaining())
+					channel.write(trace);
+			} finally {
+				file.close();
+			}
+			moveIntoPlace(partialFile, snapshotFile);
+		} catch (IOException e) {
+			throw new CouldNotWriteToFileException("file " + snapshotFilePath + ": " + e.getMessage());
+		} finally {
+			partialFile.delete();
+			if (binaryTraceFile != null)
+				binaryTraceFile.delete();
+		}
+	}
+
+	private static void writeKey(DataOutputStream out, List<FileDigest> key) throws IOException {
+		out.writeInt(key.size());
+		for (FileDigest file : key) {
+			out.writeUTF(file.getPath());
+			out.writeLong(file.getLength());
+			out.write(file.getDigest());
+		}
+	}
+
+	private static void writeCounts(DataOutputStream out, SuspiciousnessEngine engine) throws IOException, DFQException {
+		out.writeInt(engine.getTotalPassed());
+		out.writeInt(engine.getTotalFailed());
+		out.writeInt(engine.getQueries().size());
+		for (Query query : engine.getQueries()) {
+			ExecutionCounts counts = engine.getExecutionCounts(query);
+			out.writeInt(query.getStatements().get(0).getLineNumber());
+			out.writeInt(counts.getPassed());
+			out.writeInt(counts.getFailed());
+		}
+	}
+
+	private static void moveIntoPlace(File partialFile, File snapshotFile) throws IOException {
+		try {
+			Files.move(partialFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(partialFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+}
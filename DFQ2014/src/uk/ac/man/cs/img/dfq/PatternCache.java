@@ -0,0 +1,43 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/*
+ * This class holds the regular expressions most recently used to look up classes and
+ * methods by pattern, compiled, so that repeating a lookup does not compile its pattern
+ * again.  The least recently used pattern is dropped once MAX_PATTERNS are held.
+ */
+public final class PatternCache {
+
+	public static final int MAX_PATTERNS = 256;
+
+	private static final Map<String, Pattern> patterns = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+			return size() > MAX_PATTERNS;
+		}
+	};
+
+	private PatternCache() {
+	}
+
+	public static Pattern compile(String regex) {
+		synchronized (patterns) {
+			Pattern pattern = patterns.get(regex);
+			if (pattern == null) {
+				pattern = Pattern.compile(regex);
+				patterns.put(regex, pattern);
+			}
+			return pattern;
+		}
+	}
+
+	public static boolean matches(String regex, String input) {
+		return compile(regex).matcher(input).matches();
+	}
+
+}
@@ -8,7 +8,11 @@ package uk.ac.man.cs.img.dfq;
  */
 
 public class ProductionClass extends CodeClass {
-	public ProductionClass(String sourceClassPath) throws DFQException {
-		super(sourceClassPath);
+	public ProductionClass(Application application, String sourceClassPath) throws DFQException {
+		super(application, sourceClassPath);
 	}	
+
+	public ProductionClass(Application application, ApplicationTrace trace, String sourceClassPath) throws DFQException {
+		super(application, trace, sourceClassPath);
+	}
 }
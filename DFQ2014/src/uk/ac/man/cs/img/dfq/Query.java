@@ -37,9 +37,48 @@ public class Query {
 		return this.statements;
 	}
 
-	public Query getSuspiciousnessScore() {
-		// TODO Auto-generated method stub
-		return null;
+	/*
+	 * Returns the Tarantula suspiciousness score of the query, computed from the counts of
+	 * passing and failing tests that executed it (see SuspiciousnessEngine).
+	 */
+	public double getSuspiciousnessScore() throws DFQException {
+		return getSuspiciousnessScore(SuspiciousnessMetrics.TARANTULA);
+	}
+
+	public double getSuspiciousnessScore(SuspiciousnessMetric metric) throws DFQException {
+		return getMethod().getApplication().getSuspiciousnessEngine().getScore(this, metric);
+	}
+
+	public ExecutionCounts getExecutionCounts() throws DFQException {
+		return getMethod().getApplication().getSuspiciousnessEngine().getExecutionCounts(this);
+	}
+
+	/*
+	 * Two queries are equal if they belong to the same method and are made up of statements
+	 * at the same lines.
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (!(other instanceof Query))
+			return false;
+		Query otherQuery = (Query) other;
+		if (this.codeMethod != otherQuery.codeMethod || this.statements.size() != otherQuery.statements.size())
+			return false;
+		for (int i = 0; i < statements.size(); i++) {
+			if (this.statements.get(i).getLineNumber() != otherQuery.statements.get(i).getLineNumber())
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = System.identityHashCode(codeMethod);
+		for (Statement statement : statements)
+			hash = 31 * hash + statement.getLineNumber();
+		return hash;
 	}
 
 }
@@ -0,0 +1,251 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The instances of this class relate the queries of an application to the tests of its
+ * trace's CoverageMatrix.  A query is taken to have been executed by a test if the test
+ * executed any of its statements.
+ *
+ * Two indexes are built when the instance is created, by visiting each query statement
+ * once: from each trace statement to the queries containing it, and from each query to the
+ * set of tests executing it.  The queries executed by a single test are then found from
+ * the statements it executed, and the queries executed by each failing test from one
+ * intersection per query, without scanning every query for every test.
+ *
+ * Queries are numbered by their position in getQueries(), which follows the order of the
+ * methods the instance was created with.
+ *
+ * When some of an application's classes are created again, the coverage of its new set
+ * of queries can be made from the old, reusing the index of trace statements by line and
+ * the tests found for every query the two share, so that only the queries of the new
+ * classes are looked up in the trace.
+ */
+public class QueryCoverage {
+
+	private static final int[] NO_QUERIES = new int[0];
+
+	private CoverageMatrix coverage;
+	private List<Query> queries = new ArrayList<Query>();
+	private Map<Query, Integer> queryIndexes = new HashMap<Query, Integer>();
+
+	// The trace statements at each source line, keyed by class name and then line number.
+	private Map<String, Map<Integer, List<Integer>>> statementsByLine = new HashMap<String, Map<Integer, List<Integer>>>();
+	private int[][] statementsByQuery;
+	private int[][] queriesByStatement;
+	private CompressedBitSet[] testsByQuery;
+
+	// Constructor
+	public QueryCoverage(List<CodeMethod> methods, CoverageMatrix coverage) throws DFQException {
+		this.coverage = coverage;
+		addQueriesOf(methods);
+		indexStatementsByLine();
+		indexQueries(null);
+	}
+
+	/*
+	 * Creates the coverage of the queries of the given methods over the same trace as the
+	 * given coverage.  The queries the given coverage already holds keep the tests it found
+	 * for them, and only the others are looked up in the trace.
+	 */
+	public QueryCoverage(QueryCoverage previous, List<CodeMethod> methods) throws DFQException {
+		this.coverage = previous.coverage;
+		this.statementsByLine = previous.statementsByLine;
+		addQueriesOf(methods);
+		indexQueries(previous);
+	}
+
+	private void addQueriesOf(List<CodeMethod> methods) throws DFQException {
+		for (CodeMethod method : methods) {
+			for (Query query : method.getQueries()) {
+				if (!queryIndexes.containsKey(query)) {
+					queryIndexes.put(query, queries.size());
+					queries.add(query);
+				}
+			}
+		}
+	}
+
+	private void indexStatementsByLine() {
+		for (int statement = 0; statement < coverage.getStatementCount(); statement++) {
+			if (!coverage.isDefinedStatement(statement))
+				continue;
+			LineNumClassPair<String> location = coverage.getStatement(statement);
+			Map<Integer, List<Integer>> classLines = statementsByLine.get(location.getClassName());
+			if (classLines == null) {
+				classLines = new HashMap<Integer, List<Integer>>();
+				statementsByLine.put(location.getClassName(), classLines);
+			}
+			List<Integer> lineStatements = classLines.get(location.getLineNum());
+			if (lineStatements == null) {
+				lineStatements = new ArrayList<Integer>(1);
+				classLines.put(location.getLineNum(), lineStatements);
+			}
+			lineStatements.add(statement);
+		}
+	}
+
+	// Queries held by the previous coverage, if there is one, are not looked up again.
+	private void indexQueries(QueryCoverage previous) throws DFQException {
+		int[] queryCounts = new int[coverage.getStatementCount()];
+		statementsByQuery = new int[queries.size()][];
+		testsByQuery = new CompressedBitSet[queries.size()];
+		for (int query = 0; query < queries.size(); query++) {
+			int previousIndex = previous == null ? -1 : previous.indexOf(queries.get(query));
+			if (previousIndex != -1) {
+				statementsByQuery[query] = previous.statementsByQuery[previousIndex];
+				testsByQuery[query] = previous.testsByQuery[previousIndex];
+			} else {
+				statementsByQuery[query] = toArray(traceStatementsOf(queries.get(query)));
+				CompressedBitSet tests = new CompressedBitSet();
+				for (int statement : statementsByQuery[query])
+					tests = tests.or(coverage.getTestsExecuting(statement));
+				testsByQuery[query] = tests;
+			}
+			for (int statement : statementsByQuery[query])
+				queryCounts[statement]++;
+		}
+
+		queriesByStatement = new int[coverage.getStatementCount()][];
+		for (int statement = 0; statement < queriesByStatement.length; statement++)
+			queriesByStatement[statement] = queryCounts[statement] == 0 ? NO_QUERIES : new int[queryCounts[statement]];
+		int[] filled = new int[coverage.getStatementCount()];
+		for (int query = 0; query < queries.size(); query++) {
+			for (int statement : statementsByQuery[query])
+				queriesByStatement[statement][filled[statement]++] = query;
+		}
+	}
+
+	// Returns the trace statements at the lines of the given query, each appearing once.
+	private List<Integer> traceStatementsOf(Query query) throws DFQException {
+		List<Integer> traceStatements = new ArrayList<Integer>();
+		Map<Integer, List<Integer>> classLines = statementsByLine.get(query.getClassName());
+		if (classLines == null)
+			return traceStatements;
+		for (Statement statement : query.getStatements()) {
+			List<Integer> lineStatements = classLines.get(statement.getLineNumber());
+			if (lineStatements == null)
+				continue;
+			for (int traceStatement : lineStatements) {
+				if (!traceStatements.contains(traceStatement))
+					traceStatements.add(traceStatement);
+			}
+		}
+		return traceStatements;
+	}
+
+
+	// Getters
+	public CoverageMatrix getCoverage() {
+		return this.coverage;
+	}
+
+	public List<Query> getQueries() {
+		return Collections.unmodifiableList(queries);
+	}
+
+	public int getQueryCount() {
+		return queries.size();
+	}
+
+	/*
+	 * Returns the number of the given query, or -1 if it is not among the queries of the
+	 * methods the instance was created with.
+	 */
+	public int indexOf(Query query) {
+		Integer index = queryIndexes.get(query);
+		return index == null ? -1 : index;
+	}
+
+
+	// Queries
+
+	/*
+	 * Returns the tests executing the query with the given number.  The set is shared, and
+	 * must not be changed.
+	 */
+	public CompressedBitSet getTestsExecuting(int query) {
+		return testsByQuery[query];
+	}
+
+	/*
+	 * Returns the tests executing the given query, which is looked up afresh in the
+	 * coverage if it is not among the queries of the methods the instance was created with.
+	 */
+	public CompressedBitSet getTestsExecuting(Query query) throws DFQException {
+		int index = indexOf(query);
+		if (index != -1)
+			return testsByQuery[index];
+		CompressedBitSet tests = new CompressedBitSet();
+		for (int statement : traceStatementsOf(query))
+			tests = tests.or(coverage.getTestsExecuting(statement));
+		return tests;
+	}
+
+	/*
+	 * Returns the queries executed by the named test, in query order, or none if the trace
+	 * holds no test of that name.
+	 */
+	public List<Query> getQueriesExecutedBy(String testName) {
+		int test = coverage.getTestNumber(testName);
+		if (test == -1)
+			return new ArrayList<Query>();
+
+		CompressedBitSet executedQueries = new CompressedBitSet();
+		for (int statement : coverage.getStatementsExecutedBy(test).toArray()) {
+			for (int query : queriesByStatement[statement])
+				executedQueries.add(query);
+		}
+		return toQueries(executedQueries.toArray());
+	}
+
+	/*
+	 * Returns the queries executed by each failing test that executed any, keyed by test
+	 * name in trace order.  The queries of each test are in query order.
+	 */
+	public Map<String, List<Query>> getQueriesExecutedByFailingTests() {
+		CompressedBitSet failingTests = coverage.getFailingTests();
+		Map<Integer, List<Query>> queriesByTest = new HashMap<Integer, List<Query>>();
+		for (int query = 0; query < queries.size(); query++) {
+			for (int test : testsByQuery[query].and(failingTests).toArray()) {
+				List<Query> testQueries = queriesByTest.get(test);
+				if (testQueries == null) {
+					testQueries = new ArrayList<Query>();
+					queriesByTest.put(test, testQueries);
+				}
+				testQueries.add(queries.get(query));
+			}
+		}
+
+		Map<String, List<Query>> queriesByTestName = new LinkedHashMap<String, List<Query>>();
+		for (int test : failingTests.toArray()) {
+			List<Query> testQueries = queriesByTest.get(test);
+			if (testQueries != null)
+				queriesByTestName.put(coverage.getTestName(test), testQueries);
+		}
+		return queriesByTestName;
+	}
+
+
+	// Utility Methods
+
+	private static int[] toArray(List<Integer> numbers) {
+		int[] array = new int[numbers.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = numbers.get(i);
+		return array;
+	}
+
+	private List<Query> toQueries(int[] queryNumbers) {
+		List<Query> result = new ArrayList<Query>(queryNumbers.length);
+		for (int query : queryNumbers)
+			result.add(queries.get(query));
+		return result;
+	}
+
+}
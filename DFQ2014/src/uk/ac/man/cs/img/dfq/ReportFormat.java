@@ -0,0 +1,44 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.Writer;
+
+/*
+ * The formats in which a diagnostic report can be written (see
+ * Application.writeDiagnosticReport()), each with the MIME type of the reports it writes.
+ */
+public enum ReportFormat {
+
+	TEXT("text/plain") {
+		public DiagnosticReportWriter createWriter(Writer out) {
+			return new TextReportWriter(out);
+		}
+	},
+	XML("application/xml") {
+		public DiagnosticReportWriter createWriter(Writer out) {
+			return new XmlReportWriter(out);
+		}
+	},
+	JSON("application/json") {
+		public DiagnosticReportWriter createWriter(Writer out) {
+			return new JsonReportWriter(out);
+		}
+	},
+	HTML("text/html") {
+		public DiagnosticReportWriter createWriter(Writer out) {
+			return new HtmlReportWriter(out);
+		}
+	};
+
+	private String mimeType;
+
+	private ReportFormat(String mimeType) {
+		this.mimeType = mimeType;
+	}
+
+	public String getMimeType() {
+		return this.mimeType;
+	}
+
+	public abstract DiagnosticReportWriter createWriter(Writer out);
+
+}
@@ -1,6 +1,6 @@
 package uk.ac.man.cs.img.dfq;
 
-public class RequiredPropertiesNotFoundException extends Exception {
+public class RequiredPropertiesNotFoundException extends DFQException {
 
 	/**
 	 * 
@@ -0,0 +1,29 @@
+package uk.ac.man.cs.img.dfq;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * The Java Flight Recorder event for one ranking of an application's queries by a
+ * suspiciousness metric.  The first ranking of an application also counts the executions
+ * of every query, and the first under each metric scores every query.
+ */
+@Name("uk.ac.man.cs.img.dfq.Scoring")
+@Label("Scoring Pass")
+@Category({ "DFQ", "Diagnosis" })
+class ScoringEvent extends jdk.jfr.Event {
+
+	@Label("Application")
+	String application;
+
+	@Label("Metric")
+	String metric;
+
+	@Label("Queries")
+	int queries;
+
+	@Label("Queries Ranked")
+	int ranked;
+
+}
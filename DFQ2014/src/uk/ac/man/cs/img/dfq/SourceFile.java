@@ -0,0 +1,116 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+
+/*
+ * The instances of this class hold the text of a source file, read once, together with
+ * the offset at which each of its lines starts and ends.  Lines are numbered from 0 and
+ * are split in the same way as BufferedReader.readLine() splits them, at "\n", "\r" or
+ * "\r\n", so that each line can be taken as a slice of the text without reading the file
+ * again.
+ */
+public class SourceFile {
+
+	private String filePath;
+	private String text;
+	private int[] lineStarts;
+	private int[] lineEnds;
+	private int lineCount;
+
+	// Constructor
+	public SourceFile(String filePath) throws DFQException {
+		this.filePath = filePath;
+		this.text = readText();
+		indexLines();
+	}
+
+	private String readText() throws DFQException {
+		Reader reader;
+		try {
+			reader = new InputStreamReader(new FileInputStream(new File(filePath)));
+		} catch (FileNotFoundException e) {
+			throw new ClassFileNotFoundException(filePath);
+		}
+
+		try {
+			try {
+				StringBuilder text = new StringBuilder();
+				char[] buffer = new char[8192];
+				int read;
+				while ((read = reader.read(buffer)) != -1)
+					text.append(buffer, 0, read);
+				return text.toString();
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			throw new CouldNotReadFromFileException("file " + filePath);
+		}
+	}
+
+	private void indexLines() {
+		lineStarts = new int[64];
+		lineEnds = new int[64];
+		int start = 0;
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c == '\n' || c == '\r') {
+				addLine(start, i);
+				if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n')
+					i++;
+				start = i + 1;
+			}
+		}
+		if (start < length)
+			addLine(start, length);
+	}
+
+	private void addLine(int start, int end) {
+		if (lineCount == lineStarts.length) {
+			lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+			lineEnds = Arrays.copyOf(lineEnds, lineCount * 2);
+		}
+		lineStarts[lineCount] = start;
+		lineEnds[lineCount] = end;
+		lineCount++;
+	}
+
+
+	// Getters
+	public String getFilePath() {
+		return this.filePath;
+	}
+
+	public int getLineCount() {
+		return this.lineCount;
+	}
+
+	/*
+	 * Returns the text of the given line, without its line terminator.
+	 */
+	public String getLine(int lineIndex) {
+		return text.substring(lineStarts[lineIndex], lineEnds[lineIndex]);
+	}
+
+	/*
+	 * Returns the text of the given line with leading and trailing white space removed, as
+	 * String.trim() would, but without first copying the whole line.
+	 */
+	public String getTrimmedLine(int lineIndex) {
+		int start = lineStarts[lineIndex];
+		int end = lineEnds[lineIndex];
+		while (start < end && text.charAt(start) <= ' ')
+			start++;
+		while (end > start && text.charAt(end - 1) <= ' ')
+			end--;
+		return text.substring(start, end);
+	}
+
+}
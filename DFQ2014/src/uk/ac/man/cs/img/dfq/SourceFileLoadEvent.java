@@ -0,0 +1,29 @@
+package uk.ac.man.cs.img.dfq;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * The Java Flight Recorder event for the reading of a class's source file.
+ */
+@Name("uk.ac.man.cs.img.dfq.SourceFileLoad")
+@Label("Source File Load")
+@Category({ "DFQ", "Model" })
+class SourceFileLoadEvent extends jdk.jfr.Event {
+
+	@Label("Class Name")
+	String className;
+
+	@Label("Source File")
+	String path;
+
+	@Label("File Size")
+	@DataAmount
+	long bytes;
+
+	@Label("Lines")
+	int lines;
+
+}
@@ -12,13 +12,24 @@ public class Statement {
 	private CodeMethod codeMethod;
 	private int lineNumber;
 	private String statementText;
+	private SourceFile sourceFile;
 
-	// Constructor
+	// Constructors
 	public Statement(CodeMethod codeMethod, int lineNumber, String statementText) throws LineNumberNotFoundException {
 		this.codeMethod = codeMethod;
 		this.lineNumber = lineNumber;
 		this.statementText = statementText.trim();
 	}
+
+	/*
+	 * Creates a statement whose text is not copied, but is taken from the given source file
+	 * (at the line with index lineNumber) each time it is asked for.
+	 */
+	public Statement(CodeMethod codeMethod, int lineNumber, SourceFile sourceFile) {
+		this.codeMethod = codeMethod;
+		this.lineNumber = lineNumber;
+		this.sourceFile = sourceFile;
+	}
 	
 	// Getters
 
@@ -31,6 +42,8 @@ public class Statement {
 	}
 
 	public String getStatementText() {
+		if (this.statementText == null)
+			return this.sourceFile.getTrimmedLine(this.lineNumber);
 		return this.statementText;
 	}
 	
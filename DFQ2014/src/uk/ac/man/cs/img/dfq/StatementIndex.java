@@ -0,0 +1,110 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * The instances of this class map the statement ids used in a Tarantula trace file to
+ * dense integer indexes, and record the line number and class name of each statement
+ * against its index.  An index is handed out the first time an id is seen, which may be
+ * before the statement itself has been defined (for example, when a test case that
+ * executes the statement appears earlier in the trace file than the statement).
+ */
+public class StatementIndex {
+
+	public static final int UNDEFINED_LINE_NUMBER = -1;
+
+	private Map<String, Integer> indexesById = new HashMap<String, Integer>();
+	private Map<String, String> classNames = new HashMap<String, String>();
+
+	private int[] statementLineNumbers = new int[64];
+	private String[] statementClassNames = new String[64];
+	private int size;
+
+
+	public int indexOf(String statementId) {
+		Integer index = indexesById.get(statementId);
+		if (index == null) {
+			index = size;
+			ensureCapacity(size + 1);
+			statementLineNumbers[size] = UNDEFINED_LINE_NUMBER;
+			size++;
+			indexesById.put(statementId, index);
+		}
+		return index;
+	}
+
+	/*
+	 * Returns the index of the given statement id, or -1 if it has not been seen.
+	 */
+	public int lookup(String statementId) {
+		Integer index = indexesById.get(statementId);
+		return index == null ? -1 : index;
+	}
+
+	/*
+	 * Records the line number and class of the given statement.  Only the first definition
+	 * of each statement id is kept.
+	 */
+	public void define(String statementId, int lineNumber, String className) {
+		int index = indexOf(statementId);
+		if (!isDefined(index)) {
+			statementLineNumbers[index] = lineNumber;
+			statementClassNames[index] = internClassName(className);
+		}
+	}
+
+	public boolean isDefined(int index) {
+		return statementLineNumbers[index] != UNDEFINED_LINE_NUMBER;
+	}
+
+	public int getLineNumber(int index) {
+		return statementLineNumbers[index];
+	}
+
+	public String getClassName(int index) {
+		return statementClassNames[index];
+	}
+
+	public LineNumClassPair<String> getStatement(int index) {
+		return new LineNumClassPair<String>(statementLineNumbers[index], statementClassNames[index]);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * Returns the distinct indexes from the first length entries of the given array, in
+	 * ascending order.
+	 */
+	public static int[] sortedDistinct(int[] indexes, int length) {
+		int[] sorted = Arrays.copyOf(indexes, length);
+		Arrays.sort(sorted);
+		int distinct = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (distinct == 0 || sorted[i] != sorted[distinct - 1])
+				sorted[distinct++] = sorted[i];
+		}
+		return Arrays.copyOf(sorted, distinct);
+	}
+
+	private String internClassName(String className) {
+		String interned = classNames.get(className);
+		if (interned == null) {
+			classNames.put(className, className);
+			interned = className;
+		}
+		return interned;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > statementLineNumbers.length) {
+			int newCapacity = Math.max(capacity, statementLineNumbers.length * 2);
+			statementLineNumbers = Arrays.copyOf(statementLineNumbers, newCapacity);
+			statementClassNames = Arrays.copyOf(statementClassNames, newCapacity);
+		}
+	}
+
+}
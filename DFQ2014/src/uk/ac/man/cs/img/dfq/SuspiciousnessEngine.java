@@ -0,0 +1,297 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * The instances of this class compute the suspiciousness of the queries of an application
+ * from the tests executing each query, as recorded by a QueryCoverage.  The passed and failed
+ * counts of a query are the sizes of the intersections of its tests with the passing and
+ * failing tests.
+ *
+ * The counts for every query of the application are computed together when the engine is
+ * created, and are kept for the life of the engine in two arrays, ef (failed) and ep
+ * (passed), indexed by the query's position in getQueries(); nf and np follow from the
+ * totals.  Scores for any number of metrics are then computed together in one sweep over
+ * those arrays, without visiting the coverage again, and the scores of each metric are kept
+ * once computed.
+ *
+ * When some of an application's classes are created again over the same trace, a new
+ * engine can be made from the old one, which counts and scores only the queries that are
+ * new, and copies the counts and scores of the rest.
+ */
+public class SuspiciousnessEngine {
+
+	private QueryCoverage queryCoverage;
+	private int totalPassed;
+	private int totalFailed;
+
+	private List<Query> queries;
+	private Map<Query, Integer> queryIndexes = new HashMap<Query, Integer>();
+	private int[] passedCounts;
+	private int[] failedCounts;
+	private int[] startLines;
+	private Map<SuspiciousnessMetric, double[]> scoresByMetric = new ConcurrentHashMap<SuspiciousnessMetric, double[]>();
+
+	// Constructors
+	public SuspiciousnessEngine(List<CodeMethod> methods, CoverageMatrix coverage) throws DFQException {
+		this(new QueryCoverage(methods, coverage));
+	}
+
+	public SuspiciousnessEngine(QueryCoverage queryCoverage) throws DFQException {
+		this.queryCoverage = queryCoverage;
+		CoverageMatrix coverage = queryCoverage.getCoverage();
+		this.totalPassed = coverage.getPassingTests().cardinality();
+		this.totalFailed = coverage.getFailingTests().cardinality();
+		this.queries = queryCoverage.getQueries();
+
+		this.passedCounts = new int[queries.size()];
+		this.failedCounts = new int[queries.size()];
+		for (int i = 0; i < queries.size(); i++) {
+			CompressedBitSet tests = queryCoverage.getTestsExecuting(i);
+			passedCounts[i] = tests.andCardinality(coverage.getPassingTests());
+			failedCounts[i] = tests.andCardinality(coverage.getFailingTests());
+		}
+		indexQueries();
+	}
+
+	/*
+	 * Creates an engine for the queries of the given coverage, which must be over the same
+	 * trace as the given engine's.  Queries the given engine already holds keep their
+	 * counts and the scores it has computed, and only the others are counted and scored.
+	 */
+	public SuspiciousnessEngine(SuspiciousnessEngine previous, QueryCoverage queryCoverage) throws DFQException {
+		this.queryCoverage = queryCoverage;
+		CoverageMatrix coverage = queryCoverage.getCoverage();
+		this.totalPassed = previous.totalPassed;
+		this.totalFailed = previous.totalFailed;
+		this.queries = queryCoverage.getQueries();
+
+		this.passedCounts = new int[queries.size()];
+		this.failedCounts = new int[queries.size()];
+		int[] previousIndexes = new int[queries.size()];
+		for (int i = 0; i < queries.size(); i++) {
+			previousIndexes[i] = previous.indexOf(queries.get(i));
+			if (previousIndexes[i] != -1) {
+				passedCounts[i] = previous.passedCounts[previousIndexes[i]];
+				failedCounts[i] = previous.failedCounts[previousIndexes[i]];
+			} else {
+				CompressedBitSet tests = queryCoverage.getTestsExecuting(i);
+				passedCounts[i] = tests.andCardinality(coverage.getPassingTests());
+				failedCounts[i] = tests.andCardinality(coverage.getFailingTests());
+			}
+		}
+		indexQueries();
+
+		for (Map.Entry<SuspiciousnessMetric, double[]> previousScores : previous.scoresByMetric.entrySet()) {
+			SuspiciousnessMetric metric = previousScores.getKey();
+			double[] scores = new double[queries.size()];
+			for (int i = 0; i < queries.size(); i++)
+				scores[i] = previousIndexes[i] != -1 ? previousScores.getValue()[previousIndexes[i]] : metric.score(countsAt(i));
+			scoresByMetric.put(metric, scores);
+		}
+	}
+
+	/*
+	 * Creates an engine from counts computed earlier, for example by an engine whose counts
+	 * were kept in a ModelSnapshot, without visiting the coverage.  The coverage is only
+	 * consulted, through the application of the queries, for queries other than the given
+	 * ones.
+	 */
+	SuspiciousnessEngine(List<Query> queries, int[] passedCounts, int[] failedCounts, int totalPassed, int totalFailed) throws DFQException {
+		this.queries = Collections.unmodifiableList(new ArrayList<Query>(queries));
+		this.passedCounts = passedCounts;
+		this.failedCounts = failedCounts;
+		this.totalPassed = totalPassed;
+		this.totalFailed = totalFailed;
+		indexQueries();
+	}
+
+	private void indexQueries() throws DFQException {
+		this.startLines = new int[queries.size()];
+		for (int i = 0; i < queries.size(); i++) {
+			startLines[i] = queries.get(i).getStatements().get(0).getLineNumber();
+			if (!queryIndexes.containsKey(queries.get(i)))
+				queryIndexes.put(queries.get(i), i);
+		}
+	}
+
+
+	// Queries
+
+	/*
+	 * Returns the queries of the methods the engine was created with, in the order in which
+	 * their counts and scores are held.
+	 */
+	public List<Query> getQueries() {
+		return this.queries;
+	}
+
+	/*
+	 * Returns the execution counts of the given query.  Queries that are not among those of
+	 * the methods the engine was created with are counted afresh each time.
+	 */
+	public ExecutionCounts getExecutionCounts(Query query) throws DFQException {
+		int index = indexOf(query);
+		if (index == -1) {
+			QueryCoverage otherCoverage = queryCoverage != null ? queryCoverage : query.getMethod().getApplication().getQueryCoverage();
+			CoverageMatrix matrix = otherCoverage.getCoverage();
+			CompressedBitSet tests = otherCoverage.getTestsExecuting(query);
+			return new ExecutionCounts(tests.andCardinality(matrix.getPassingTests()),
+					tests.andCardinality(matrix.getFailingTests()), totalPassed, totalFailed);
+		}
+		return countsAt(index);
+	}
+
+	/*
+	 * Returns the position of the given query in getQueries(), or -1 if it is not among
+	 * them.
+	 */
+	public int indexOf(Query query) {
+		Integer index = queryIndexes.get(query);
+		return index == null ? -1 : index;
+	}
+
+	public double getTarantulaScore(Query query) throws DFQException {
+		return getScore(query, SuspiciousnessMetrics.TARANTULA);
+	}
+
+	public double getScore(Query query, SuspiciousnessMetric metric) throws DFQException {
+		int index = indexOf(query);
+		if (index == -1)
+			return metric.score(getExecutionCounts(query));
+		return getScores(metric)[index];
+	}
+
+	/*
+	 * Returns the score of every query under the given metric, indexed as in getQueries().
+	 * The array is shared, and must not be changed.
+	 */
+	public double[] getScores(SuspiciousnessMetric metric) {
+		return getScores(Collections.singletonList(metric)).get(0);
+	}
+
+	/*
+	 * Returns the score of every query under each of the given metrics, in the order of the
+	 * metrics.  The scores of all the metrics not already computed are computed in a single
+	 * sweep over the counts.  The arrays are shared, and must not be changed.
+	 */
+	public List<double[]> getScores(List<SuspiciousnessMetric> metrics) {
+		List<SuspiciousnessMetric> missing = new ArrayList<SuspiciousnessMetric>();
+		for (SuspiciousnessMetric metric : metrics) {
+			if (!scoresByMetric.containsKey(metric) && !missing.contains(metric))
+				missing.add(metric);
+		}
+		if (!missing.isEmpty())
+			computeScores(missing);
+
+		List<double[]> scores = new ArrayList<double[]>(metrics.size());
+		for (SuspiciousnessMetric metric : metrics)
+			scores.add(scoresByMetric.get(metric));
+		return scores;
+	}
+
+	/*
+	 * Returns at most limit of the queries executed by at least one failing test whose score
+	 * under the given metric is at least the given threshold, most suspicious first.  Queries
+	 * with equal scores are ordered by class name, method name and starting line, so that
+	 * the ranking does not depend on the order in which classes were loaded.
+	 *
+	 * Only the best limit queries seen so far are kept, in a heap whose head is the least
+	 * suspicious of them, so ranking n queries takes O(n log limit) time and O(limit) space
+	 * rather than scoring, collecting and sorting all n.
+	 */
+	public List<Query> rank(SuspiciousnessMetric metric, double threshold, int limit) {
+		if (limit < 0)
+			throw new IllegalArgumentException("Negative limit " + limit);
+		if (limit == 0)
+			return Collections.emptyList();
+
+		double[] scores = getScores(metric);
+		Comparator<Integer> moreSuspiciousFirst = new SuspicionOrder(scores);
+		PriorityQueue<Integer> best = new PriorityQueue<Integer>(Math.min(limit, queries.size()) + 1,
+				Collections.reverseOrder(moreSuspiciousFirst));
+		for (int i = 0; i < queries.size(); i++) {
+			if (failedCounts[i] == 0 || scores[i] < threshold)
+				continue;
+			if (best.size() < limit)
+				best.add(i);
+			else if (moreSuspiciousFirst.compare(i, best.peek()) < 0) {
+				best.poll();
+				best.add(i);
+			}
+		}
+
+		Query[] ranked = new Query[best.size()];
+		for (int position = ranked.length - 1; position >= 0; position--)
+			ranked[position] = queries.get(best.poll());
+		return Arrays.asList(ranked);
+	}
+
+	public int getTotalPassed() {
+		return this.totalPassed;
+	}
+
+	public int getTotalFailed() {
+		return this.totalFailed;
+	}
+
+
+	// Utility Methods
+
+	private void computeScores(List<SuspiciousnessMetric> metrics) {
+		double[][] scores = new double[metrics.size()][queries.size()];
+		for (int i = 0; i < queries.size(); i++) {
+			ExecutionCounts counts = countsAt(i);
+			for (int m = 0; m < scores.length; m++)
+				scores[m][i] = metrics.get(m).score(counts);
+		}
+		for (int m = 0; m < scores.length; m++)
+			scoresByMetric.put(metrics.get(m), scores[m]);
+	}
+
+	private ExecutionCounts countsAt(int index) {
+		return new ExecutionCounts(passedCounts[index], failedCounts[index], totalPassed, totalFailed);
+	}
+
+	/*
+	 * Orders query indexes from the most to the least suspicious, breaking ties by class
+	 * name, method name, starting line and finally position.
+	 */
+	private class SuspicionOrder implements Comparator<Integer> {
+
+		private double[] scores;
+
+		SuspicionOrder(double[] scores) {
+			this.scores = scores;
+		}
+
+		public int compare(Integer first, Integer second) {
+			int order = Double.compare(scores[second], scores[first]);
+			if (order != 0)
+				return order;
+			Query firstQuery = queries.get(first);
+			Query secondQuery = queries.get(second);
+			order = firstQuery.getClassName().compareTo(secondQuery.getClassName());
+			if (order != 0)
+				return order;
+			order = firstQuery.getMethodName().compareTo(secondQuery.getMethodName());
+			if (order != 0)
+				return order;
+			order = compareInts(startLines[first], startLines[second]);
+			return order != 0 ? order : compareInts(first, second);
+		}
+
+		private int compareInts(int first, int second) {
+			return first < second ? -1 : (first == second ? 0 : 1);
+		}
+	}
+
+}
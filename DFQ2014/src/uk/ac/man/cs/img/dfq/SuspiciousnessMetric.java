@@ -0,0 +1,22 @@
+package uk.ac.man.cs.img.dfq;
+
+/*
+ * Implementations of this interface compute a suspiciousness score for a query from its
+ * ExecutionCounts, in which
+ *
+ *   ef, ep   are the numbers of failing and passing tests that executed the query
+ *   nf, np   are the numbers of failing and passing tests that did not
+ *
+ * A higher score means the query is more suspicious.  The metrics supplied with the system
+ * are the constants of SuspiciousnessMetrics; others can be made available to
+ * SuspiciousnessMetrics.forName() by listing them in a
+ * META-INF/services/uk.ac.man.cs.img.dfq.SuspiciousnessMetric file on the class path.
+ * Implementations must be stateless, as one instance is shared by every caller.
+ */
+public interface SuspiciousnessMetric {
+
+	public String getName();
+
+	public double score(ExecutionCounts counts);
+
+}
@@ -0,0 +1,11 @@
+package uk.ac.man.cs.img.dfq;
+
+public class SuspiciousnessMetricNotFoundException extends DFQException {
+
+	private static final long serialVersionUID = 1L;
+
+	public SuspiciousnessMetricNotFoundException(String query) {
+		super(query);
+	}
+
+}
@@ -0,0 +1,137 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * This class holds the suspiciousness metrics supplied with the system, and finds metrics
+ * by name.  Where a formula would divide by zero, the metric scores 0, except that DStar
+ * scores a query executed by failing tests and by no passing test as infinitely
+ * suspicious (when every failing test executed it).
+ */
+public final class SuspiciousnessMetrics {
+
+	private static final ConcurrentMap<Integer, SuspiciousnessMetric> DSTARS = new ConcurrentHashMap<Integer, SuspiciousnessMetric>();
+
+	public static final SuspiciousnessMetric TARANTULA = new SuspiciousnessMetric() {
+		public String getName() {
+			return "Tarantula";
+		}
+
+		public double score(ExecutionCounts counts) {
+			double failedRatio = ratio(counts.getFailed(), counts.getTotalFailed());
+			double passedRatio = ratio(counts.getPassed(), counts.getTotalPassed());
+			return ratio(failedRatio, passedRatio + failedRatio);
+		}
+	};
+
+	public static final SuspiciousnessMetric OCHIAI = new SuspiciousnessMetric() {
+		public String getName() {
+			return "Ochiai";
+		}
+
+		public double score(ExecutionCounts counts) {
+			double ef = counts.getFailed();
+			return ratio(ef, Math.sqrt((double) counts.getTotalFailed() * (ef + counts.getPassed())));
+		}
+	};
+
+	public static final SuspiciousnessMetric DSTAR = dstar(2);
+
+	public static final SuspiciousnessMetric JACCARD = new SuspiciousnessMetric() {
+		public String getName() {
+			return "Jaccard";
+		}
+
+		public double score(ExecutionCounts counts) {
+			return ratio(counts.getFailed(), counts.getTotalFailed() + counts.getPassed());
+		}
+	};
+
+	public static final SuspiciousnessMetric OP2 = new SuspiciousnessMetric() {
+		public String getName() {
+			return "Op2";
+		}
+
+		public double score(ExecutionCounts counts) {
+			return counts.getFailed() - counts.getPassed() / (counts.getTotalPassed() + 1.0);
+		}
+	};
+
+	private static final List<SuspiciousnessMetric> SUPPLIED_METRICS = Arrays.asList(TARANTULA, OCHIAI, DSTAR, JACCARD, OP2);
+
+	// The service providers are looked up once, so that each metric found by name is always
+	// the same instance: engines cache scores by metric, and would otherwise keep the scores
+	// of a new instance for every request naming it.
+	private static final List<SuspiciousnessMetric> AVAILABLE_METRICS = loadAvailableMetrics();
+
+	private SuspiciousnessMetrics() {
+	}
+
+	/*
+	 * Returns the DStar metric with the given exponent: ef^star / (ep + nf).  The same
+	 * instance is returned for each exponent, since engines cache scores by metric.
+	 */
+	public static SuspiciousnessMetric dstar(int star) {
+		SuspiciousnessMetric metric = DSTARS.get(star);
+		if (metric == null) {
+			SuspiciousnessMetric created = createDStar(star);
+			metric = DSTARS.putIfAbsent(star, created);
+			if (metric == null)
+				metric = created;
+		}
+		return metric;
+	}
+
+	private static SuspiciousnessMetric createDStar(final int star) {
+		return new SuspiciousnessMetric() {
+			public String getName() {
+				return star == 2 ? "DStar" : "DStar" + star;
+			}
+
+			public double score(ExecutionCounts counts) {
+				double numerator = Math.pow(counts.getFailed(), star);
+				double denominator = counts.getPassed() + counts.getFailedNotExecuting();
+				if (denominator == 0)
+					return counts.getFailed() == 0 ? 0 : Double.POSITIVE_INFINITY;
+				return numerator / denominator;
+			}
+		};
+	}
+
+	/*
+	 * Returns the supplied metrics, followed by any made available as services when this
+	 * class was loaded.  The list cannot be changed.
+	 */
+	public static List<SuspiciousnessMetric> getAvailableMetrics() {
+		return AVAILABLE_METRICS;
+	}
+
+	private static List<SuspiciousnessMetric> loadAvailableMetrics() {
+		List<SuspiciousnessMetric> metrics = new ArrayList<SuspiciousnessMetric>(SUPPLIED_METRICS);
+		for (SuspiciousnessMetric metric : ServiceLoader.load(SuspiciousnessMetric.class))
+			metrics.add(metric);
+		return Collections.unmodifiableList(metrics);
+	}
+
+	/*
+	 * Returns the available metric with the given name, ignoring case.
+	 */
+	public static SuspiciousnessMetric forName(String name) throws SuspiciousnessMetricNotFoundException {
+		for (SuspiciousnessMetric metric : getAvailableMetrics()) {
+			if (metric.getName().equalsIgnoreCase(name))
+				return metric;
+		}
+		throw new SuspiciousnessMetricNotFoundException(name);
+	}
+
+	private static double ratio(double numerator, double denominator) {
+		return denominator == 0 ? 0 : numerator / denominator;
+	}
+
+}
@@ -0,0 +1,426 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Properties;
+import java.util.Random;
+
+/*
+ * The instances of this class generate an application for DFQ to diagnose: the Java
+ * sources of its production and test classes, a Tarantula trace of running its tests, and
+ * a properties file naming them, all consistent with one another.  The size and shape of
+ * the application are set before calling generate(), and the same settings and seed always
+ * give the same application.
+ *
+ * Each production method is made up of statementsPerMethod statements, one of which is a
+ * query in queriesPerClass of the methods of each class.  Each test calls a random
+ * selection of production methods whose size is the coverage density times the number of
+ * production methods, and fails with probability failureRate.  The trace records each test
+ * executing every statement of exactly the methods its source calls.
+ *
+ * The files are written as they are generated, so applications with millions of statements
+ * can be generated in little memory.  The generator can also be run from the command line:
+ *
+ *   java uk.ac.man.cs.img.dfq.SyntheticApplicationGenerator directory [-option value ...]
+ *
+ * with the options -classes, -methods, -statements, -queries, -tests, -failure-rate,
+ * -coverage and -seed.
+ */
+public class SyntheticApplicationGenerator {
+
+	public static final String PROPERTIES_FILE_NAME = "application.properties";
+	public static final String TRACE_FILE_NAME = "trace.xml";
+	public static final String PACKAGE_NAME = "synthetic";
+
+	private static final String TRACE_FILE_PROPERTY = "edu.gatech.cc.aristotle.tarantula.data.tarantula_xml";
+	private static final String SOURCE_FILES_PROPERTY = "edu.gatech.cc.aristotle.tarantula.data.source_files";
+	private static final String TEST_SOURCE_FILES_PROPERTY = "edu.gatech.cc.aristotle.tarantula.data.junit.source_files";
+
+	// The layout of the generated sources, which fixes the line numbers given in the trace.
+	private static final int HEADER_LINES = 4;
+	private static final int LINES_PER_TEST = 5;
+	private static final int STATEMENTS_PER_TEST = 2;
+	private static final int MIN_STATEMENTS_PER_METHOD = 3;
+
+	private File directory;
+	private int classCount = 10;
+	private int methodsPerClass = 10;
+	private int statementsPerMethod = 3;
+	private int queriesPerClass = 5;
+	private int testCount = 100;
+	private int testsPerClass = 50;
+	private double failureRate = 0.1;
+	private double coverageDensity = 0.05;
+	private long seed = 20140601L;
+
+	// Constructor
+	public SyntheticApplicationGenerator(File directory) {
+		this.directory = directory;
+	}
+
+	// Getters and setters
+	public File getDirectory() {
+		return this.directory;
+	}
+
+	public File getPropertiesFile() {
+		return new File(directory, PROPERTIES_FILE_NAME);
+	}
+
+	public void setClassCount(int classCount) {
+		this.classCount = classCount;
+	}
+
+	public void setMethodsPerClass(int methodsPerClass) {
+		this.methodsPerClass = methodsPerClass;
+	}
+
+	public void setStatementsPerMethod(int statementsPerMethod) {
+		this.statementsPerMethod = statementsPerMethod;
+	}
+
+	public void setQueriesPerClass(int queriesPerClass) {
+		this.queriesPerClass = queriesPerClass;
+	}
+
+	public void setTestCount(int testCount) {
+		this.testCount = testCount;
+	}
+
+	public void setTestsPerClass(int testsPerClass) {
+		this.testsPerClass = testsPerClass;
+	}
+
+	public void setFailureRate(double failureRate) {
+		this.failureRate = failureRate;
+	}
+
+	/*
+	 * Sets the proportion of the production methods executed by each test.  Every test
+	 * executes at least one method.
+	 */
+	public void setCoverageDensity(double coverageDensity) {
+		this.coverageDensity = coverageDensity;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public int getStatementCount() {
+		return classCount * methodsPerClass * statementsPerMethod + testCount * STATEMENTS_PER_TEST;
+	}
+
+	public static String productionClassName(int classNumber) {
+		return "C" + classNumber;
+	}
+
+	public static String testClassName(int testClassNumber) {
+		return "CT" + testClassNumber;
+	}
+
+	public static String testName(int testNumber, int testsPerClass) {
+		return "test_" + testNumber / testsPerClass + "_" + testNumber % testsPerClass;
+	}
+
+	public static String methodName(int methodNumber) {
+		return "m" + methodNumber;
+	}
+
+
+	/*
+	 * Writes the application into the directory, replacing any generated there before, and
+	 * returns the properties file.
+	 */
+	public File generate() throws DFQException {
+		checkSettings();
+		File sourceDirectory = new File(directory, "src" + File.separator + PACKAGE_NAME);
+		File testDirectory = new File(directory, "test" + File.separator + PACKAGE_NAME);
+		makeDirectory(sourceDirectory);
+		makeDirectory(testDirectory);
+
+		StringBuilder sourceFiles = new StringBuilder();
+		for (int c = 0; c < classCount; c++)
+			appendPath(sourceFiles, writeProductionClass(sourceDirectory, c));
+
+		File traceFile = new File(directory, TRACE_FILE_NAME);
+		StringBuilder testSourceFiles = new StringBuilder();
+		writeTraceAndTests(traceFile, testDirectory, testSourceFiles);
+
+		Properties properties = new Properties();
+		properties.setProperty(TRACE_FILE_PROPERTY, traceFile.getAbsolutePath());
+		properties.setProperty(SOURCE_FILES_PROPERTY, sourceFiles.toString());
+		properties.setProperty(TEST_SOURCE_FILES_PROPERTY, testSourceFiles.toString());
+		File propertiesFile = getPropertiesFile();
+		try {
+			OutputStream out = new FileOutputStream(propertiesFile);
+			try {
+				properties.store(out, "Synthetic application of " + getStatementCount() + " statements");
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			throw new CouldNotWriteToFileException("file " + propertiesFile + ": " + e.getMessage());
+		}
+		return propertiesFile;
+	}
+
+	private void checkSettings() {
+		if (classCount < 1 || methodsPerClass < 1 || testCount < 1 || testsPerClass < 1)
+			throw new IllegalArgumentException("There must be at least one class, method and test");
+		if (statementsPerMethod < MIN_STATEMENTS_PER_METHOD)
+			throw new IllegalArgumentException("Methods must have at least " + MIN_STATEMENTS_PER_METHOD + " statements");
+		if (queriesPerClass < 0 || queriesPerClass > methodsPerClass)
+			throw new IllegalArgumentException("There can be at most one query per method");
+		if (failureRate < 0 || failureRate > 1 || coverageDensity < 0 || coverageDensity > 1)
+			throw new IllegalArgumentException("The failure rate and coverage density must be between 0 and 1");
+	}
+
+	private static void makeDirectory(File directory) throws DFQException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new CouldNotWriteToFileException("directory " + directory);
+	}
+
+	private int testClassCount() {
+		return (testCount + testsPerClass - 1) / testsPerClass;
+	}
+
+
+	// Sources
+
+	private String writeProductionClass(File sourceDirectory, int classNumber) throws DFQException {
+		String className = productionClassName(classNumber);
+		File sourceFile = new File(sourceDirectory, className + CodeClass.JAVA_CLASS_FILE_SUFFIX);
+		Writer out = openWriter(sourceFile);
+		try {
+			writeClassHeader(out, className);
+			for (int m = 0; m < methodsPerClass; m++) {
+				out.write("\tpublic int " + methodName(m) + "() {\n");
+				out.write("\t\tint result = " + m + ";\n");
+				for (int s = 1; s < statementsPerMethod - 1; s++) {
+					if (s == 1 && isQueryMethod(m))
+						out.write("\t\tresult += session.createQuery(\"from " + className + " where id = \" + result).list().size();\n");
+					else
+						out.write("\t\tresult += " + s + ";\n");
+				}
+				out.write("\t\treturn result;\n");
+				out.write("\t}\n\n");
+			}
+			out.write("}\n");
+			out.close();
+		} catch (IOException e) {
+			throw new CouldNotWriteToFileException("file " + sourceFile + ": " + e.getMessage());
+		}
+		return sourceFile.getAbsolutePath();
+	}
+
+	/*
+	 * Writes a test that calls the given production methods, numbered across the whole
+	 * application, all on the first line of its body, so that every test takes the same
+	 * number of lines.
+	 */
+	private void writeTest(Writer out, int test, int[] methods, int methodCount) throws IOException {
+		out.write("\tpublic void " + testName(test, testsPerClass) + "() {\n");
+		out.write("\t\tint result = 0");
+		for (int i = 0; i < methodCount; i++)
+			out.write(" + new " + productionClassName(methods[i] / methodsPerClass) + "()." + methodName(methods[i] % methodsPerClass) + "()");
+		out.write(";\n");
+		out.write("\t\tassertEquals(" + test + ", result);\n");
+		out.write("\t}\n\n");
+	}
+
+	private static void writeClassHeader(Writer out, String className) throws IOException {
+		out.write("package " + PACKAGE_NAME + ";\n\npublic class " + className + " {\n\n");
+	}
+
+	/*
+	 * Spreads the query methods of each class evenly among its methods.
+	 */
+	private boolean isQueryMethod(int methodNumber) {
+		return (long) methodNumber * queriesPerClass % methodsPerClass < queriesPerClass;
+	}
+
+
+	// Trace and tests
+
+	/*
+	 * Trace line numbers are indexes of source lines counted from 0, as DFQ reads them.  A
+	 * method's range runs from its first statement to its last, except that for void
+	 * methods (the tests) it ends one line later, as Tarantula gives it.
+	 *
+	 * Statement ids are handed out in order, production statements first, so the ids of the
+	 * statements of a method can be computed rather than remembered.
+	 *
+	 * Each test is written to its class's source as its test case is written to the trace,
+	 * from the same random choice of methods, so that neither has to be remembered.
+	 */
+	private void writeTraceAndTests(File traceFile, File testDirectory, StringBuilder testSourceFiles) throws DFQException {
+		Random random = new Random(seed);
+		int productionMethodCount = classCount * methodsPerClass;
+		int methodsPerTest = Math.max(1, (int) Math.round(coverageDensity * productionMethodCount));
+
+		Writer out = openWriter(traceFile);
+		Writer testOut = null;
+		File testSourceFile = traceFile;
+		try {
+			out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			out.write("<tarantula xmlns=\"" + ApplicationTrace.TARANTULA_NAMESPACE + "\">\n <program>\n");
+			for (int c = 0; c < classCount; c++)
+				writeProductionClassTrace(out, c);
+			out.write(" </program>\n <test_suite>\n");
+			for (int t = 0; t < testClassCount(); t++)
+				writeTestClassTrace(out, t);
+			out.write(" </test_suite>\n");
+
+			int[] methods = new int[productionMethodCount];
+			for (int i = 0; i < methods.length; i++)
+				methods[i] = i;
+			for (int test = 0; test < testCount; test++) {
+				if (test % testsPerClass == 0) {
+					if (testOut != null)
+						closeTestClass(testOut);
+					testSourceFile = new File(testDirectory, testClassName(test / testsPerClass) + CodeClass.JAVA_CLASS_FILE_SUFFIX);
+					testOut = openWriter(testSourceFile);
+					writeClassHeader(testOut, testClassName(test / testsPerClass));
+					appendPath(testSourceFiles, testSourceFile.getAbsolutePath());
+				}
+				boolean passing = random.nextDouble() >= failureRate;
+				int firstTestStatementId = productionMethodCount * statementsPerMethod + test * STATEMENTS_PER_TEST + 1;
+				out.write(" <test_case name=\"" + testName(test, testsPerClass) + "\" passing=\"" + passing + "\">\n  ");
+				writeExecutedStatement(out, firstTestStatementId);
+				// A partial shuffle picks the methods executed by the test without repeats.
+				for (int i = 0; i < methodsPerTest; i++) {
+					int j = i + random.nextInt(methods.length - i);
+					int method = methods[j];
+					methods[j] = methods[i];
+					methods[i] = method;
+					for (int s = 0; s < statementsPerMethod; s++)
+						writeExecutedStatement(out, method * statementsPerMethod + s + 1);
+				}
+				writeExecutedStatement(out, firstTestStatementId + 1);
+				out.write("\n </test_case>\n");
+				writeTest(testOut, test, methods, methodsPerTest);
+			}
+			closeTestClass(testOut);
+			out.write("</tarantula>\n");
+			out.close();
+		} catch (IOException e) {
+			throw new CouldNotWriteToFileException("file " + traceFile + " or " + testSourceFile + ": " + e.getMessage());
+		}
+	}
+
+	private static void closeTestClass(Writer testOut) throws IOException {
+		testOut.write("}\n");
+		testOut.close();
+	}
+
+	private void writeProductionClassTrace(Writer out, int classNumber) throws IOException {
+		writeFileHeader(out, productionClassName(classNumber));
+		int linesPerMethod = statementsPerMethod + 3;
+		for (int m = 0; m < methodsPerClass; m++) {
+			int firstLine = HEADER_LINES + m * linesPerMethod + 1;
+			writeMethod(out, methodName(m) + "()I", firstLine, firstLine + statementsPerMethod - 1);
+		}
+		out.write("   </class>\n");
+		int id = classNumber * methodsPerClass * statementsPerMethod + 1;
+		for (int m = 0; m < methodsPerClass; m++) {
+			int firstLine = HEADER_LINES + m * linesPerMethod + 1;
+			for (int s = 0; s < statementsPerMethod; s++)
+				writeStatement(out, id++, firstLine + s);
+		}
+		out.write("  </file>\n");
+	}
+
+	private void writeTestClassTrace(Writer out, int testClassNumber) throws IOException {
+		writeFileHeader(out, testClassName(testClassNumber));
+		int firstTest = testClassNumber * testsPerClass;
+		int lastTest = Math.min(testCount, firstTest + testsPerClass);
+		for (int test = firstTest; test < lastTest; test++) {
+			int firstLine = HEADER_LINES + (test - firstTest) * LINES_PER_TEST + 1;
+			writeMethod(out, testName(test, testsPerClass) + "()V", firstLine, firstLine + STATEMENTS_PER_TEST);
+		}
+		out.write("   </class>\n");
+		for (int test = firstTest; test < lastTest; test++) {
+			int firstLine = HEADER_LINES + (test - firstTest) * LINES_PER_TEST + 1;
+			int id = classCount * methodsPerClass * statementsPerMethod + test * STATEMENTS_PER_TEST + 1;
+			for (int s = 0; s < STATEMENTS_PER_TEST; s++)
+				writeStatement(out, id + s, firstLine + s);
+		}
+		out.write("  </file>\n");
+	}
+
+	private static void writeFileHeader(Writer out, String className) throws IOException {
+		out.write("  <file>\n   <name>" + className + CodeClass.JAVA_CLASS_FILE_SUFFIX + "</name>\n   <class>\n    <name>" +
+				className + "</name>\n");
+	}
+
+	private static void writeMethod(Writer out, String signature, int startLine, int endLine) throws IOException {
+		out.write("    <method><signature>" + signature + "</signature><line type=\"start\">" + startLine +
+				"</line><line type=\"end\">" + endLine + "</line></method>\n");
+	}
+
+	private static void writeStatement(Writer out, int id, int line) throws IOException {
+		out.write("   <statement id=\"" + id + "\"><line>" + line + "</line></statement>\n");
+	}
+
+	private static void writeExecutedStatement(Writer out, int id) throws IOException {
+		out.write("<statement><id>" + id + "</id></statement>");
+	}
+
+
+	// Utility Methods
+
+	private static Writer openWriter(File file) throws DFQException {
+		try {
+			return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		} catch (IOException e) {
+			throw new CouldNotWriteToFileException("file " + file + ": " + e.getMessage());
+		}
+	}
+
+	private static void appendPath(StringBuilder paths, String path) {
+		if (paths.length() > 0)
+			paths.append(File.pathSeparator);
+		paths.append(path);
+	}
+
+
+	public static void main(String[] args) throws DFQException {
+		if (args.length == 0 || args.length % 2 == 0) {
+			System.err.println("Usage: SyntheticApplicationGenerator directory [-classes n] [-methods n] [-statements n] " +
+					"[-queries n] [-tests n] [-failure-rate f] [-coverage f] [-seed n]");
+			System.exit(2);
+		}
+		SyntheticApplicationGenerator generator = new SyntheticApplicationGenerator(new File(args[0]));
+		for (int i = 1; i < args.length; i += 2) {
+			String option = args[i];
+			String value = args[i + 1];
+			if (option.equals("-classes"))
+				generator.setClassCount(Integer.parseInt(value));
+			else if (option.equals("-methods"))
+				generator.setMethodsPerClass(Integer.parseInt(value));
+			else if (option.equals("-statements"))
+				generator.setStatementsPerMethod(Integer.parseInt(value));
+			else if (option.equals("-queries"))
+				generator.setQueriesPerClass(Integer.parseInt(value));
+			else if (option.equals("-tests"))
+				generator.setTestCount(Integer.parseInt(value));
+			else if (option.equals("-failure-rate"))
+				generator.setFailureRate(Double.parseDouble(value));
+			else if (option.equals("-coverage"))
+				generator.setCoverageDensity(Double.parseDouble(value));
+			else if (option.equals("-seed"))
+				generator.setSeed(Long.parseLong(value));
+			else
+				throw new IllegalArgumentException("Unknown option " + option);
+		}
+		File propertiesFile = generator.generate();
+		System.out.println("Generated " + generator.getStatementCount() + " statements; properties in " + propertiesFile);
+	}
+
+}
@@ -1,6 +1,6 @@
 package uk.ac.man.cs.img.dfq;
 
-import java.util.List;
+import java.util.Map;
 
 /*
  * @author Javid Akhter
@@ -10,22 +10,33 @@ import java.util.List;
  */
 public class TestClass extends CodeClass {
 
+	private Map<String, MethodLineRange> testMethodLineRanges;
+
 	// Constructor
 
-	public TestClass(String sourceClassPath) throws DFQException {
-		super(sourceClassPath);
+	public TestClass(Application application, String sourceClassPath) throws DFQException {
+		this(application, application.getTrace(), sourceClassPath);
+	}
+
+	public TestClass(Application application, ApplicationTrace trace, String sourceClassPath) throws DFQException {
+		super(application, trace, sourceClassPath);
 
-		ApplicationTrace trace = Application.currentApplication().getTrace();			
-		List<String> methodSignatures = trace.getTestMethodSignaturesFromTrace(this.getName());
-		for (String methodSignature: methodSignatures) {
+		testMethodLineRanges = trace.getTestMethodLineRanges(this.getName());
+		for (Map.Entry<String, MethodLineRange> method: testMethodLineRanges.entrySet()) {
+			String methodSignature = method.getKey();
 			String methodName = methodSignature.substring(0, methodSignature.indexOf('('));
 			if ("<init>".equals(methodName)) { 
 				//TODO add as a constructor
 			} else {
-				CodeMethod testMethod = new TestMethod(methodName, methodSignature, this);
-				this.getMethods().add(testMethod);
+				CodeMethod testMethod = new TestMethod(methodName, methodSignature, this, method.getValue());
+				this.addMethod(testMethod);
 			}
 		}
 	}
 
-}
\ No newline at end of file
+	@Override
+	public boolean hasSameMethodsIn(ApplicationTrace trace) throws DFQException {
+		return super.hasSameMethodsIn(trace) && trace.getTestMethodLineRanges(this.getName()).equals(this.testMethodLineRanges);
+	}
+
+}
\ No newline at end of file
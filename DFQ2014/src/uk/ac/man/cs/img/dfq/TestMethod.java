@@ -16,8 +16,12 @@ public class TestMethod extends CodeMethod {
 	public TestMethod(String name, String signature, CodeClass parentClass) throws DFQException {
 		super(name, signature, parentClass);
 	}
+
+	public TestMethod(String name, String signature, CodeClass parentClass, MethodLineRange lineRange) throws DFQException {
+		super(name, signature, parentClass, lineRange);
+	}
 	
 	public boolean testPassed() throws DFQException {
-		return Application.currentApplication().getTrace().isPassing(this);
+		return getApplication().getTrace().isPassing(this);
 	}	
-}
\ No newline at end of file
+}
\ No newline at end of file
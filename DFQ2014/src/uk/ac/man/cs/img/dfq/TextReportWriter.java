@@ -0,0 +1,38 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/*
+ * Writes a diagnostic report as a plain text letter to the application's development team.
+ */
+public class TextReportWriter extends DiagnosticReportWriter {
+
+	private int queryCount;
+
+	// Constructor
+	public TextReportWriter(Writer out) {
+		super(out);
+	}
+
+	public void startReport(String appName, SuspiciousnessMetric metric, int queryCount) throws IOException {
+		this.queryCount = queryCount;
+		out.write("Dear " + appName + " Development Team,\n\n");
+		if (queryCount == 0)
+			out.write("There are no suspicious queries on this application at present.\n\n");
+		else
+			out.write("There are " + queryCount + " suspicious queries for this application.  Details are given below:\n\n");
+	}
+
+	public void writeQuery(Query query, double score) throws IOException, DFQException {
+		out.write("\t Query at " + query.getClassName() + ", " + query.getMethodName() + ", " + startLineOf(query) +
+				" has suspiciousness score " + score + ".\n");
+	}
+
+	public void endReport() throws IOException {
+		if (queryCount > 0)
+			out.write("\n");
+		out.write("Yours sincerely,\n\nThe Automation Team");
+	}
+
+}
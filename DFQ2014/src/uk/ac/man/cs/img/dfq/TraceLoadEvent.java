@@ -0,0 +1,27 @@
+package uk.ac.man.cs.img.dfq;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * The Java Flight Recorder event for the opening of an application's trace file by its
+ * ApplicationTrace, which is a full parse when the trace is loaded into memory.
+ */
+@Name("uk.ac.man.cs.img.dfq.TraceLoad")
+@Label("Trace Load")
+@Category({ "DFQ", "Trace" })
+class TraceLoadEvent extends jdk.jfr.Event {
+
+	@Label("Trace File")
+	String path;
+
+	@Label("Reader")
+	String reader;
+
+	@Label("File Size")
+	@DataAmount
+	long bytes;
+
+}
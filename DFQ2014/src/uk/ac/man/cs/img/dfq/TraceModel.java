@@ -0,0 +1,256 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The instances of this class hold the complete contents of a Tarantula trace file in
+ * memory, indexed so that each of the questions asked by the DFQ system can be answered
+ * without returning to the trace file.  Instances are populated by TraceModelLoader.
+ */
+public class TraceModel implements TraceReader {
+
+	private Map<String, List<String>> productionMethodSignatures = new HashMap<String, List<String>>();
+	private Map<String, List<String>> testMethodSignatures = new HashMap<String, List<String>>();
+	private Map<String, Integer> methodStartLines = new HashMap<String, Integer>();
+	private Map<String, Integer> methodEndLines = new HashMap<String, Integer>();
+	private Map<String, Map<String, MethodLineRange>> productionMethodLineRanges = new LinkedHashMap<String, Map<String, MethodLineRange>>();
+	private Map<String, Map<String, MethodLineRange>> testMethodLineRanges = new LinkedHashMap<String, Map<String, MethodLineRange>>();
+
+	private StatementIndex statementIndex = new StatementIndex();
+
+	private List<String> executedTestNames = new ArrayList<String>();
+	private List<String> passingTestNames = new ArrayList<String>();
+	private List<String> failingTestNames = new ArrayList<String>();
+	private Map<String, List<String>> testResults = new HashMap<String, List<String>>();
+
+	// For each test, the indexes of the statements it executed, both in the order given in
+	// the trace and as a sorted set.  The sets are built when loading is complete.
+	private Map<String, StatementIndexList> executedStatementTraces = new HashMap<String, StatementIndexList>();
+	private Map<String, int[]> executedStatementSets = new HashMap<String, int[]>();
+
+
+	// Methods for populating the model (used by TraceModelLoader)
+
+	void addMethod(String className, String methodSignature, boolean isTestMethod, int startLine, int endLine) {
+		Map<String, List<String>> signatures = isTestMethod ? testMethodSignatures : productionMethodSignatures;
+		valuesFor(signatures, className).add(methodSignature);
+
+		Map<String, Map<String, MethodLineRange>> lineRanges = isTestMethod ? testMethodLineRanges : productionMethodLineRanges;
+		Map<String, MethodLineRange> classLineRanges = lineRanges.get(className);
+		if (classLineRanges == null) {
+			classLineRanges = new LinkedHashMap<String, MethodLineRange>();
+			lineRanges.put(className, classLineRanges);
+		}
+		if (!classLineRanges.containsKey(methodSignature))
+			classLineRanges.put(methodSignature, new MethodLineRange(startLine, endLine));
+	}
+
+	void addMethodStartLine(String methodSignature, int lineNumber) {
+		if (!methodStartLines.containsKey(methodSignature))
+			methodStartLines.put(methodSignature, lineNumber);
+	}
+
+	void addMethodEndLine(String methodSignature, int lineNumber) {
+		if (!methodEndLines.containsKey(methodSignature))
+			methodEndLines.put(methodSignature, lineNumber);
+	}
+
+	void addStatement(String statementId, int lineNumber, String className) {
+		statementIndex.define(statementId, lineNumber, className);
+	}
+
+	void addTestCase(String testName, String passing) {
+		executedTestNames.add(testName);
+		if ("true".equals(passing))
+			passingTestNames.add(testName);
+		else if ("false".equals(passing))
+			failingTestNames.add(testName);
+		valuesFor(testResults, testName).add(passing);
+		executedStatementTraceFor(testName);
+	}
+
+	void addExecutedStatement(String testName, String statementId) {
+		executedStatementTraceFor(testName).add(statementIndex.indexOf(statementId));
+	}
+
+	/*
+	 * Called once the whole trace file has been read.  Drops references to statements that
+	 * the trace file never defined, and builds the sorted set of statements for each test.
+	 */
+	void finishLoading() {
+		for (Map.Entry<String, StatementIndexList> testTrace : executedStatementTraces.entrySet()) {
+			StatementIndexList statementTrace = testTrace.getValue();
+			statementTrace.retainDefined(statementIndex);
+			executedStatementSets.put(testTrace.getKey(),
+					StatementIndex.sortedDistinct(statementTrace.indexes, statementTrace.size));
+		}
+	}
+
+	private StatementIndexList executedStatementTraceFor(String testName) {
+		StatementIndexList statementTrace = executedStatementTraces.get(testName);
+		if (statementTrace == null) {
+			statementTrace = new StatementIndexList();
+			executedStatementTraces.put(testName, statementTrace);
+		}
+		return statementTrace;
+	}
+
+	private static List<String> valuesFor(Map<String, List<String>> map, String key) {
+		List<String> values = map.get(key);
+		if (values == null) {
+			values = new ArrayList<String>();
+			map.put(key, values);
+		}
+		return values;
+	}
+
+
+	// Access to the indexes themselves (used by BinaryTraceWriter)
+
+	StatementIndex getStatementIndex() {
+		return statementIndex;
+	}
+
+	Map<String, Integer> getMethodStartLines() {
+		return Collections.unmodifiableMap(methodStartLines);
+	}
+
+	Map<String, Integer> getMethodEndLines() {
+		return Collections.unmodifiableMap(methodEndLines);
+	}
+
+	int[] getExecutedStatementTrace(String testName) {
+		StatementIndexList statementTrace = executedStatementTraces.get(testName);
+		if (statementTrace == null)
+			return new int[0];
+		return Arrays.copyOf(statementTrace.indexes, statementTrace.size);
+	}
+
+	int[] getExecutedStatementSet(String testName) {
+		int[] statementSet = executedStatementSets.get(testName);
+		if (statementSet == null)
+			return new int[0];
+		return statementSet.clone();
+	}
+
+
+	// Queries over the model
+
+	public List<String> getProductionMethodSignatures(String className) {
+		return copyOf(productionMethodSignatures.get(className));
+	}
+
+	public List<String> getTestMethodSignatures(String className) {
+		return copyOf(testMethodSignatures.get(className));
+	}
+
+	public int getMethodStartLine(String methodSignature) throws DFQException {
+		Integer startLine = methodStartLines.get(methodSignature);
+		if (startLine == null)
+			throw new CouldNotFindStartLineNumberForGivenMethodException();
+		return startLine;
+	}
+
+	public int getMethodEndLine(String methodSignature) throws DFQException {
+		Integer endLine = methodEndLines.get(methodSignature);
+		if (endLine == null)
+			throw new CouldNotFindEndLineNumberForGivenMethodException();
+		return endLine;
+	}
+
+	public Map<String, Map<String, MethodLineRange>> getProductionMethodLineRanges() {
+		return Collections.unmodifiableMap(productionMethodLineRanges);
+	}
+
+	public Map<String, Map<String, MethodLineRange>> getTestMethodLineRanges() {
+		return Collections.unmodifiableMap(testMethodLineRanges);
+	}
+
+	public List<String> getExecutedTestNames() {
+		return copyOf(executedTestNames);
+	}
+
+	public List<String> getPassingTestNames() {
+		return copyOf(passingTestNames);
+	}
+
+	public List<String> getFailingTestNames() {
+		return copyOf(failingTestNames);
+	}
+
+	public List<String> getTestResults(String testName) {
+		return copyOf(testResults.get(testName));
+	}
+
+	public List<LineNumClassPair<String>> getExecutedStatements(String testName) {
+		StatementIndexList statementTrace = executedStatementTraces.get(testName);
+		if (statementTrace == null)
+			return new ArrayList<LineNumClassPair<String>>();
+		return toStatements(statementTrace.indexes, statementTrace.size);
+	}
+
+	public List<LineNumClassPair<String>> getDistinctExecutedStatements(String testName) {
+		int[] statementSet = executedStatementSets.get(testName);
+		if (statementSet == null)
+			return new ArrayList<LineNumClassPair<String>>();
+		return toStatements(statementSet, statementSet.length);
+	}
+
+	public CoverageMatrix getCoverageMatrix() {
+		CoverageMatrix coverage = new CoverageMatrix(statementIndex.size());
+		for (int statement = 0; statement < statementIndex.size(); statement++) {
+			if (statementIndex.isDefined(statement))
+				coverage.defineStatement(statement, statementIndex.getLineNumber(statement), statementIndex.getClassName(statement));
+		}
+		for (String testName : executedTestNames)
+			coverage.addTest(testName, testResults.get(testName).get(0), executedStatementSets.get(testName));
+		coverage.finishLoading();
+		return coverage;
+	}
+
+	private List<LineNumClassPair<String>> toStatements(int[] indexes, int length) {
+		List<LineNumClassPair<String>> statements = new ArrayList<LineNumClassPair<String>>(length);
+		for (int i = 0; i < length; i++)
+			statements.add(statementIndex.getStatement(indexes[i]));
+		return statements;
+	}
+
+	private static List<String> copyOf(List<String> values) {
+		if (values == null)
+			return new ArrayList<String>();
+		return new ArrayList<String>(values);
+	}
+
+
+	/*
+	 * A growable list of statement indexes, used to hold the statements executed by a test
+	 * in the order given in the trace file.
+	 */
+	private static class StatementIndexList {
+		private int[] indexes = new int[16];
+		private int size;
+
+		void add(int index) {
+			if (size == indexes.length)
+				indexes = Arrays.copyOf(indexes, size * 2);
+			indexes[size++] = index;
+		}
+
+		void retainDefined(StatementIndex statementIndex) {
+			int retained = 0;
+			for (int i = 0; i < size; i++) {
+				if (statementIndex.isDefined(indexes[i]))
+					indexes[retained++] = indexes[i];
+			}
+			size = retained;
+			indexes = Arrays.copyOf(indexes, size);
+		}
+	}
+
+}
@@ -0,0 +1,263 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/*
+ * This class builds a TraceModel from a Tarantula trace file.  The file is read exactly
+ * once, as a stream of StAX events, so the cost of loading a trace is linear in the size
+ * of the file and no document tree is ever held in memory.
+ */
+public class TraceModelLoader {
+
+	private static final String PROGRAM_ELEMENT = "program";
+	private static final String TEST_SUITE_ELEMENT = "test_suite";
+	private static final String FILE_ELEMENT = "file";
+	private static final String CLASS_ELEMENT = "class";
+	private static final String NAME_ELEMENT = "name";
+	private static final String METHOD_ELEMENT = "method";
+	private static final String SIGNATURE_ELEMENT = "signature";
+	private static final String LINE_ELEMENT = "line";
+	private static final String STATEMENT_ELEMENT = "statement";
+	private static final String ID_ELEMENT = "id";
+	private static final String TEST_CASE_ELEMENT = "test_case";
+
+	private static final String ID_ATTRIBUTE = "id";
+	private static final String NAME_ATTRIBUTE = "name";
+	private static final String PASSING_ATTRIBUTE = "passing";
+	private static final String TYPE_ATTRIBUTE = "type";
+	private static final String START_LINE_TYPE = "start";
+	private static final String END_LINE_TYPE = "end";
+
+	private String traceFilePath;
+	private XMLStreamReader reader;
+	private TraceModel model = new TraceModel();
+
+
+	// Static Methods
+
+	public static TraceModel load(String traceFilePath) throws DFQException {
+		return new TraceModelLoader(traceFilePath).load();
+	}
+
+
+	// Constructor
+	private TraceModelLoader(String traceFilePath) {
+		this.traceFilePath = traceFilePath;
+	}
+
+	private TraceModel load() throws DFQException {
+		InputStream traceFile;
+		try {
+			traceFile = new BufferedInputStream(new FileInputStream(traceFilePath));
+		} catch (FileNotFoundException e) {
+			throw new TraceFileNotFoundException();
+		}
+
+		try {
+			reader = XMLInputFactory.newInstance().createXMLStreamReader(traceFile);
+			parseDocument();
+			reader.close();
+			model.finishLoading();
+		} catch (XMLStreamException e) {
+			throw new CouldNotParseTraceFileException(e.getMessage() + " with path \"" + traceFilePath + "\"");
+		} catch (NumberFormatException e) {
+			throw new CouldNotParseTraceFileException(e.getMessage() + " with path \"" + traceFilePath + "\"");
+		} finally {
+			closeQuietly(traceFile);
+		}
+		return model;
+	}
+
+
+	// Utility Methods for Parsing the Trace File
+
+	private void parseDocument() throws XMLStreamException {
+		Deque<String> openElements = new ArrayDeque<String>();
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				if (isTarantulaElement(FILE_ELEMENT)) {
+					parseFile(openElements.peek());
+				} else if (isTarantulaElement(TEST_CASE_ELEMENT)) {
+					parseTestCase();
+				} else {
+					openElements.push(isTarantulaElement() ? reader.getLocalName() : "");
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				openElements.pop();
+			}
+		}
+	}
+
+	private void parseFile(String parentElement) throws XMLStreamException {
+		Boolean isTestFile = null;
+		if (PROGRAM_ELEMENT.equals(parentElement))
+			isTestFile = Boolean.FALSE;
+		else if (TEST_SUITE_ELEMENT.equals(parentElement))
+			isTestFile = Boolean.TRUE;
+
+		String fileClassName = null;
+		List<String[]> fileStatements = new ArrayList<String[]>();
+		while (nextChildElement()) {
+			if (isTarantulaElement(CLASS_ELEMENT)) {
+				String className = parseClass(isTestFile);
+				if (fileClassName == null)
+					fileClassName = className;
+			} else if (isTarantulaElement(STATEMENT_ELEMENT)) {
+				String statementId = reader.getAttributeValue(null, ID_ATTRIBUTE);
+				String lineNumber = firstChildText(LINE_ELEMENT);
+				if (statementId != null && lineNumber != null)
+					fileStatements.add(new String[] { statementId, lineNumber });
+			} else {
+				skipElement();
+			}
+		}
+
+		for (String[] statement : fileStatements) {
+			model.addStatement(statement[0], parseLineNumber(statement[1]),
+					fileClassName == null ? "" : fileClassName);
+		}
+	}
+
+	private String parseClass(Boolean isTestClass) throws XMLStreamException {
+		String className = null;
+		List<String[]> methods = new ArrayList<String[]>();
+		while (nextChildElement()) {
+			if (isTarantulaElement(NAME_ELEMENT) && className == null) {
+				className = reader.getElementText();
+			} else if (isTarantulaElement(METHOD_ELEMENT)) {
+				methods.add(parseMethod());
+			} else {
+				skipElement();
+			}
+		}
+
+		for (String[] method : methods) {
+			String signature = method[0];
+			if (signature == null)
+				continue;
+			int startLine = method[1] == null ? MethodLineRange.UNDEFINED_LINE_NUMBER : parseLineNumber(method[1]);
+			int endLine = method[2] == null ? MethodLineRange.UNDEFINED_LINE_NUMBER : parseLineNumber(method[2]);
+			if (isTestClass != null && className != null)
+				model.addMethod(className, signature, isTestClass, startLine, endLine);
+			if (method[1] != null)
+				model.addMethodStartLine(signature, startLine);
+			if (method[2] != null)
+				model.addMethodEndLine(signature, endLine);
+		}
+		return className;
+	}
+
+	private String[] parseMethod() throws XMLStreamException {
+		String signature = null, startLine = null, endLine = null;
+		while (nextChildElement()) {
+			if (isTarantulaElement(SIGNATURE_ELEMENT) && signature == null) {
+				signature = reader.getElementText();
+			} else if (isTarantulaElement(LINE_ELEMENT)) {
+				String lineType = reader.getAttributeValue(null, TYPE_ATTRIBUTE);
+				String lineNumber = reader.getElementText();
+				if (START_LINE_TYPE.equals(lineType) && startLine == null)
+					startLine = lineNumber;
+				else if (END_LINE_TYPE.equals(lineType) && endLine == null)
+					endLine = lineNumber;
+			} else {
+				skipElement();
+			}
+		}
+		return new String[] { signature, startLine, endLine };
+	}
+
+	private void parseTestCase() throws XMLStreamException {
+		String testName = attributeValueOrEmpty(NAME_ATTRIBUTE);
+		model.addTestCase(testName, attributeValueOrEmpty(PASSING_ATTRIBUTE));
+
+		while (nextChildElement()) {
+			if (isTarantulaElement(STATEMENT_ELEMENT)) {
+				while (nextChildElement()) {
+					if (isTarantulaElement(ID_ELEMENT))
+						model.addExecutedStatement(testName, reader.getElementText());
+					else
+						skipElement();
+				}
+			} else {
+				skipElement();
+			}
+		}
+	}
+
+	private String firstChildText(String elementName) throws XMLStreamException {
+		String text = null;
+		while (nextChildElement()) {
+			if (isTarantulaElement(elementName) && text == null)
+				text = reader.getElementText();
+			else
+				skipElement();
+		}
+		return text;
+	}
+
+	/*
+	 * Advances the reader to the start of the next child of the current element, returning
+	 * false (and leaving the reader on the end tag of the current element) if there is none.
+	 */
+	private boolean nextChildElement() throws XMLStreamException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				return true;
+			if (event == XMLStreamConstants.END_ELEMENT)
+				return false;
+		}
+		return false;
+	}
+
+	private void skipElement() throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0 && reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+
+	private boolean isTarantulaElement() {
+		return ApplicationTrace.TARANTULA_NAMESPACE.equals(reader.getNamespaceURI());
+	}
+
+	private boolean isTarantulaElement(String localName) {
+		return isTarantulaElement() && localName.equals(reader.getLocalName());
+	}
+
+	private String attributeValueOrEmpty(String attributeName) {
+		String value = reader.getAttributeValue(null, attributeName);
+		return value == null ? "" : value;
+	}
+
+	private static int parseLineNumber(String lineNumber) {
+		return Integer.parseInt(lineNumber.trim());
+	}
+
+	private static void closeQuietly(InputStream stream) {
+		try {
+			stream.close();
+		} catch (IOException e) {
+			// Nothing useful can be done if the trace file cannot be closed
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Implementations of this interface answer the questions the DFQ system asks of a
+ * Tarantula trace file.  Results are returned in the order in which the corresponding
+ * elements appear in the trace file.
+ */
+public interface TraceReader {
+
+	public List<String> getProductionMethodSignatures(String className) throws DFQException;
+
+	public List<String> getTestMethodSignatures(String className) throws DFQException;
+
+	public int getMethodStartLine(String methodSignature) throws DFQException;
+
+	public int getMethodEndLine(String methodSignature) throws DFQException;
+
+	/*
+	 * Returns the line range of every method of every production class, keyed first by class
+	 * name and then by method signature.
+	 */
+	public Map<String, Map<String, MethodLineRange>> getProductionMethodLineRanges() throws DFQException;
+
+	/*
+	 * Returns the line range of every method of every test class, keyed first by class name
+	 * and then by method signature.
+	 */
+	public Map<String, Map<String, MethodLineRange>> getTestMethodLineRanges() throws DFQException;
+
+	public List<String> getExecutedTestNames() throws DFQException;
+
+	public List<String> getPassingTestNames() throws DFQException;
+
+	public List<String> getFailingTestNames() throws DFQException;
+
+	public List<String> getTestResults(String testName) throws DFQException;
+
+	/*
+	 * Returns the statements executed by the named test, in the order in which the trace
+	 * records them, including repeats.
+	 */
+	public List<LineNumClassPair<String>> getExecutedStatements(String testName) throws DFQException;
+
+	/*
+	 * Returns each statement executed by the named test once only.
+	 */
+	public List<LineNumClassPair<String>> getDistinctExecutedStatements(String testName) throws DFQException;
+
+	/*
+	 * Returns the statements executed by every test, as a CoverageMatrix.
+	 */
+	public CoverageMatrix getCoverageMatrix() throws DFQException;
+
+}
@@ -0,0 +1,26 @@
+package uk.ac.man.cs.img.dfq;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * The Java Flight Recorder event for the compilation of one of the queries of an
+ * XQueryRegistry.  The query is identified by the name it was registered under, which
+ * names the kind of question asked of the trace, rather than by its text.
+ */
+@Name("uk.ac.man.cs.img.dfq.XQueryCompile")
+@Label("XQuery Compile")
+@Category({ "DFQ", "Trace" })
+@Description("Compilation of an XQuery expression asked of a Tarantula trace")
+class XQueryCompileEvent extends jdk.jfr.Event {
+
+	@Label("Query Kind")
+	String queryKind;
+
+	@Label("Query Length")
+	@Description("Number of characters in the query text")
+	int queryLength;
+
+}
@@ -0,0 +1,34 @@
+package uk.ac.man.cs.img.dfq;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * The Java Flight Recorder event for the evaluation of one query against a trace by an
+ * XQueryTraceReader.  When the trace document is not kept between queries, the time
+ * includes parsing the trace file, whose size is then given.
+ */
+@Name("uk.ac.man.cs.img.dfq.XQueryEvaluate")
+@Label("XQuery Evaluate")
+@Category({ "DFQ", "Trace" })
+@Description("Evaluation of an XQuery expression against a Tarantula trace")
+class XQueryEvaluateEvent extends jdk.jfr.Event {
+
+	@Label("Query Kind")
+	String queryKind;
+
+	@Label("Argument")
+	@Description("Method signature, class name or test name the query was asked about, if any")
+	String argument;
+
+	@Label("Result Items")
+	int resultItems;
+
+	@Label("Bytes Parsed")
+	@DataAmount
+	long bytesParsed;
+
+}
@@ -0,0 +1,102 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XQueryEvaluator;
+import net.sf.saxon.s9api.XQueryExecutable;
+
+/*
+ * The instances of this class hold a set of named XQuery expressions, all compiled by a
+ * single shared Saxon Processor.  Each expression is compiled the first time it is needed
+ * and the compiled form is kept for the lifetime of the registry.  Values that vary from
+ * call to call must be passed in as external variables, rather than pasted into the text
+ * of the query, so that the compiled form can be reused.
+ *
+ * XQueryEvaluators are not thread-safe, so a new evaluator is loaded from the compiled
+ * query for each evaluation, which is cheap.  Evaluators are not kept between evaluations,
+ * since each holds on to its last context item: kept per thread, they would keep the
+ * parsed trace of an application reachable long after the application was dropped.
+ */
+public class XQueryRegistry {
+
+	private Processor processor = new Processor(false);
+	private DiagnosisMetrics metrics;
+
+	private Map<String, String> queryTexts = new ConcurrentHashMap<String, String>();
+	private Map<String, XQueryExecutable> compiledQueries = new ConcurrentHashMap<String, XQueryExecutable>();
+
+
+	// Constructors
+	public XQueryRegistry() {
+		this(new DiagnosisMetrics());
+	}
+
+	/*
+	 * Each compilation is counted, and timed as XQUERY_COMPILATION, by the given metrics.
+	 */
+	public XQueryRegistry(DiagnosisMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+
+	// Getters
+
+	public Processor getProcessor() {
+		return this.processor;
+	}
+
+
+	public void register(String queryName, String queryText) {
+		queryTexts.put(queryName, queryText);
+	}
+
+	/*
+	 * Returns a new evaluator for the named query, compiling the query if it has not been
+	 * compiled before.  The evaluator is meant for a single evaluation on the calling thread.
+	 */
+	public XQueryEvaluator getEvaluator(String queryName) throws DFQException {
+		return getCompiledQuery(queryName).load();
+	}
+
+	private XQueryExecutable getCompiledQuery(String queryName) throws DFQException {
+		XQueryExecutable executable = compiledQueries.get(queryName);
+		if (executable == null) {
+			synchronized (this) {
+				executable = compiledQueries.get(queryName);
+				if (executable == null) {
+					executable = compile(queryName);
+					compiledQueries.put(queryName, executable);
+				}
+			}
+		}
+		return executable;
+	}
+
+	private XQueryExecutable compile(String queryName) throws DFQException {
+		String queryText = queryTexts.get(queryName);
+		if (queryText == null)
+			throw new CouldNotCompileXQueryExpression("no query registered with name \"" + queryName + "\"");
+
+		XQueryCompileEvent event = new XQueryCompileEvent();
+		event.begin();
+		long start = metrics.startTimer();
+		try {
+			XQueryExecutable executable = processor.newXQueryCompiler().compile(queryText);
+			metrics.compiledQuery();
+			return executable;
+		} catch (SaxonApiException e) {
+			throw new CouldNotCompileXQueryExpression(e.getMessage() + " with query \"" + queryText + "\"");
+		} finally {
+			metrics.record(DiagnosisPhase.XQUERY_COMPILATION, start);
+			if (event.shouldCommit()) {
+				event.queryKind = queryName;
+				event.queryLength = queryText.length();
+				event.commit();
+			}
+		}
+	}
+
+}
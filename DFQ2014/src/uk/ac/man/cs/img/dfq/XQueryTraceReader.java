@@ -0,0 +1,408 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.transform.sax.SAXSource;
+
+import net.sf.saxon.om.TreeModel;
+import net.sf.saxon.s9api.Axis;
+import net.sf.saxon.s9api.DocumentBuilder;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XQueryEvaluator;
+import net.sf.saxon.s9api.XdmAtomicValue;
+import net.sf.saxon.s9api.XdmItem;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XdmSequenceIterator;
+import net.sf.saxon.s9api.XdmValue;
+
+import org.xml.sax.InputSource;
+
+/*
+ * The instances of this class answer questions about a Tarantula trace file by evaluating
+ * XQuery expressions against the file, rather than loading it into a TraceModel.
+ *
+ * The queries are compiled once, by the XQueryRegistry belonging to the reader, and take
+ * method signatures, class names and test names as external variables.
+ *
+ * The trace file is parsed into a Saxon tree the first time it is queried, and every later
+ * query is evaluated against that tree.  A limit can be placed on the size of trace file
+ * for which this is done, in which case larger files are re-parsed for every query as
+ * before.  The size of the file is used as an estimate of the size of the tree.
+ */
+public class XQueryTraceReader implements TraceReader {
+
+	public static final long NO_TREE_SIZE_LIMIT = -1;
+
+	private static final String NAMESPACE_DECLARATION = "declare namespace ns0=\"" + ApplicationTrace.TARANTULA_NAMESPACE + "\"; ";
+
+	private static final QName SIGNATURE_VARIABLE = new QName("signature");
+	private static final QName CLASS_NAME_VARIABLE = new QName("className");
+	private static final QName TEST_NAME_VARIABLE = new QName("testName");
+
+	private static final String METHOD_START_LINE_QUERY = "methodStartLine";
+	private static final String METHOD_END_LINE_QUERY = "methodEndLine";
+	private static final String PRODUCTION_METHOD_LINE_RANGES_QUERY = "productionMethodLineRanges";
+	private static final String TEST_METHOD_LINE_RANGES_QUERY = "testMethodLineRanges";
+	private static final String EXECUTED_TESTS_QUERY = "executedTests";
+	private static final String PRODUCTION_METHOD_SIGNATURES_QUERY = "productionMethodSignatures";
+	private static final String TEST_METHOD_SIGNATURES_QUERY = "testMethodSignatures";
+	private static final String TEST_RESULT_QUERY = "testResult";
+	private static final String PASSING_TESTS_QUERY = "passingTests";
+	private static final String FAILING_TESTS_QUERY = "failingTests";
+	private static final String STATEMENTS_QUERY = "statements";
+	private static final String EXECUTED_STATEMENT_IDS_QUERY = "executedStatementIds";
+
+	private String traceFilePath;
+	private long maxTreeBytes;
+	private DiagnosisMetrics metrics;
+	private XQueryRegistry queries;
+	private XdmNode traceDocument;
+	private StatementIndex statementIndex;
+
+	// Constructors
+	public XQueryTraceReader(String traceFilePath) {
+		this(traceFilePath, NO_TREE_SIZE_LIMIT);
+	}
+
+	public XQueryTraceReader(String traceFilePath, long maxTreeBytes) {
+		this(traceFilePath, maxTreeBytes, new DiagnosisMetrics());
+	}
+
+	/*
+	 * The queries compiled, the trace documents parsed and the time taken to evaluate each
+	 * query are recorded by the given metrics.
+	 */
+	public XQueryTraceReader(String traceFilePath, long maxTreeBytes, DiagnosisMetrics metrics) {
+		this.traceFilePath = traceFilePath;
+		this.maxTreeBytes = maxTreeBytes;
+		this.metrics = metrics;
+		this.queries = new XQueryRegistry(metrics);
+		registerQueries();
+	}
+
+	private void registerQueries() {
+		queries.register(METHOD_START_LINE_QUERY, NAMESPACE_DECLARATION +
+				"declare variable $signature as xs:string external; " +
+				"for $class in .//ns0:file/ns0:class " +
+				"  for $method in $class/ns0:method " +
+				"    for $line in $method/ns0:line[@type='start'] " +
+				"where $method/ns0:signature = $signature " +
+				"return <line>{$line/text()}</line> ");
+
+		queries.register(METHOD_END_LINE_QUERY, NAMESPACE_DECLARATION +
+				"declare variable $signature as xs:string external; " +
+				"for $class in .//ns0:file/ns0:class " +
+				"  for $method in $class/ns0:method " +
+				"    for $line in $method/ns0:line[@type='end'] " +
+				"where $method/ns0:signature = $signature " +
+				"return <line>{$line/text()}</line> ");
+
+		queries.register(PRODUCTION_METHOD_LINE_RANGES_QUERY, NAMESPACE_DECLARATION +
+				methodLineRangesQuery("ns0:program"));
+
+		queries.register(TEST_METHOD_LINE_RANGES_QUERY, NAMESPACE_DECLARATION +
+				methodLineRangesQuery("ns0:test_suite"));
+
+		queries.register(EXECUTED_TESTS_QUERY, NAMESPACE_DECLARATION +
+				"for $tc in .//ns0:test_case " +
+				"return <x>{data($tc/@name)}</x>");
+
+		queries.register(PRODUCTION_METHOD_SIGNATURES_QUERY, NAMESPACE_DECLARATION +
+				"declare variable $className as xs:string external; " +
+				"for $class in .//ns0:program/ns0:file/ns0:class " +
+				"  for $method in $class/ns0:method " +
+				"where $class/ns0:name = $className " +
+				"return $method/ns0:signature/text() ");
+
+		queries.register(TEST_METHOD_SIGNATURES_QUERY, NAMESPACE_DECLARATION +
+				"declare variable $className as xs:string external; " +
+				"for $class in .//ns0:test_suite/ns0:file/ns0:class " +
+				"  for $method in $class/ns0:method " +
+				"where $class/ns0:name = $className " +
+				"return $method/ns0:signature/text() ");
+
+		queries.register(TEST_RESULT_QUERY, NAMESPACE_DECLARATION +
+				"declare variable $testName as xs:string external; " +
+				"for $tc in .//ns0:test_case[@name = $testName] " +
+				"return <x>{data($tc/@passing)}</x> ");
+
+		queries.register(PASSING_TESTS_QUERY, NAMESPACE_DECLARATION +
+				"for $tc in .//ns0:test_case[@passing=\"true\"] " +
+				"return <x>{data($tc/@name)}</x> ");
+
+		queries.register(FAILING_TESTS_QUERY, NAMESPACE_DECLARATION +
+				"for $tc in .//ns0:test_case[@passing=\"false\"] " +
+				"return <x>{data($tc/@name)}</x> ");
+
+		queries.register(STATEMENTS_QUERY, NAMESPACE_DECLARATION +
+				"for $fstmt in .//ns0:file/ns0:statement " +
+				"return <res><id>{data($fstmt/@id)}</id> " +
+					"<ln>{$fstmt/ns0:line/text()}</ln> " +
+					"<cn>{$fstmt/../ns0:class/ns0:name/text()}</cn></res> ");
+
+		queries.register(EXECUTED_STATEMENT_IDS_QUERY, NAMESPACE_DECLARATION +
+				"declare variable $testName as xs:string external; " +
+				"for $tc in .//ns0:test_case[@name = $testName] " +
+				"  for $id in $tc/ns0:statement/ns0:id " +
+				"return $id/text() ");
+	}
+
+
+	private static String methodLineRangesQuery(String section) {
+		return "for $class in .//" + section + "/ns0:file/ns0:class " +
+				"  for $method in $class/ns0:method " +
+				"return <m><cn>{$class/ns0:name/text()}</cn> " +
+					"<sig>{$method/ns0:signature/text()}</sig> " +
+					"<start>{($method/ns0:line[@type='start'])[1]/text()}</start> " +
+					"<end>{($method/ns0:line[@type='end'])[1]/text()}</end></m> ";
+	}
+
+
+	// Utility Methods for Extracting Data from the XML Trace File
+
+	public int getMethodStartLine(String methodSignature) throws DFQException {
+		List<String> origStartLine = processXQuery(METHOD_START_LINE_QUERY, SIGNATURE_VARIABLE, methodSignature);
+		if (origStartLine.size() > 0) {
+			String convStartLine = origStartLine.get(0);
+			int startLineNumber = Integer.parseInt(convStartLine);
+			return startLineNumber;
+		}
+		throw new CouldNotFindStartLineNumberForGivenMethodException();
+	}
+
+	public int getMethodEndLine(String methodSignature) throws DFQException {
+		List<String> origEndLine = processXQuery(METHOD_END_LINE_QUERY, SIGNATURE_VARIABLE, methodSignature);
+		if (origEndLine.size() > 0) {
+			String convEndLine = origEndLine.get(0);
+			int endLineNumber = Integer.parseInt(convEndLine);
+			return endLineNumber;
+		}
+		throw new CouldNotFindEndLineNumberForGivenMethodException();
+	}
+
+	public Map<String, Map<String, MethodLineRange>> getProductionMethodLineRanges() throws DFQException {
+		return processXQueryForMethodLineRanges(PRODUCTION_METHOD_LINE_RANGES_QUERY);
+	}
+
+	public Map<String, Map<String, MethodLineRange>> getTestMethodLineRanges() throws DFQException {
+		return processXQueryForMethodLineRanges(TEST_METHOD_LINE_RANGES_QUERY);
+	}
+
+	public List<String> getExecutedTestNames() throws DFQException {
+		return processXQuery(EXECUTED_TESTS_QUERY, null, null);
+	}
+
+	public List<String> getProductionMethodSignatures(String className) throws DFQException {
+		return processXQuery(PRODUCTION_METHOD_SIGNATURES_QUERY, CLASS_NAME_VARIABLE, className);
+	}
+
+	public List<String> getTestMethodSignatures(String className) throws DFQException {
+		return processXQuery(TEST_METHOD_SIGNATURES_QUERY, CLASS_NAME_VARIABLE, className);
+	}
+
+	public List<String> getTestResults(String testName) throws DFQException {
+		return processXQuery(TEST_RESULT_QUERY, TEST_NAME_VARIABLE, testName);
+	}
+
+	public List<String> getPassingTestNames() throws DFQException {
+		return processXQuery(PASSING_TESTS_QUERY, null, null);
+	}
+
+	public List<String> getFailingTestNames() throws DFQException {
+		return processXQuery(FAILING_TESTS_QUERY, null, null);
+	}
+
+	/*
+	 * Rather than joining the statements executed by the test with the statements of every
+	 * file inside a single query, the statements of every file are fetched once into a
+	 * StatementIndex and the join is done by looking up each executed statement id in it.
+	 */
+	public List<LineNumClassPair<String>> getExecutedStatements(String methodName) throws DFQException {
+		int[] statementIndexes = getExecutedStatementIndexes(methodName);
+		return toStatements(statementIndexes, statementIndexes.length);
+	}
+
+	public List<LineNumClassPair<String>> getDistinctExecutedStatements(String methodName) throws DFQException {
+		int[] statementIndexes = getExecutedStatementIndexes(methodName);
+		int[] statementSet = StatementIndex.sortedDistinct(statementIndexes, statementIndexes.length);
+		return toStatements(statementSet, statementSet.length);
+	}
+
+	/*
+	 * Builds the matrix from the same queries, asked once for each distinct test name.
+	 */
+	public CoverageMatrix getCoverageMatrix() throws DFQException {
+		StatementIndex statements = getStatementIndex();
+		CoverageMatrix coverage = new CoverageMatrix(statements.size());
+		for (int statement = 0; statement < statements.size(); statement++)
+			coverage.defineStatement(statement, statements.getLineNumber(statement), statements.getClassName(statement));
+		for (String testName : new LinkedHashSet<String>(getExecutedTestNames())) {
+			List<String> testResults = getTestResults(testName);
+			int[] statementIndexes = getExecutedStatementIndexes(testName);
+			coverage.addTest(testName, testResults.isEmpty() ? null : testResults.get(0),
+					StatementIndex.sortedDistinct(statementIndexes, statementIndexes.length));
+		}
+		coverage.finishLoading();
+		return coverage;
+	}
+
+	private int[] getExecutedStatementIndexes(String methodName) throws DFQException {
+		StatementIndex statements = getStatementIndex();
+		List<String> statementIds = processXQuery(EXECUTED_STATEMENT_IDS_QUERY, TEST_NAME_VARIABLE, methodName);
+
+		int[] statementIndexes = new int[statementIds.size()];
+		int found = 0;
+		for (String statementId : statementIds) {
+			int index = statements.lookup(statementId);
+			if (index >= 0)
+				statementIndexes[found++] = index;
+		}
+		return Arrays.copyOf(statementIndexes, found);
+	}
+
+	private List<LineNumClassPair<String>> toStatements(int[] statementIndexes, int length) throws DFQException {
+		StatementIndex statements = getStatementIndex();
+		List<LineNumClassPair<String>> stmtsPair = new ArrayList<LineNumClassPair<String>>(length);
+		for (int i = 0; i < length; i++)
+			stmtsPair.add(statements.getStatement(statementIndexes[i]));
+		return stmtsPair;
+	}
+
+	private synchronized StatementIndex getStatementIndex() throws DFQException {
+		if (statementIndex == null) {
+			StatementIndex statements = new StatementIndex();
+			for (XdmItem item : evaluateXQuery(STATEMENTS_QUERY, null, null)) {
+				XdmNode res = (XdmNode) item;
+				String id = getChild(res, "id").getStringValue();
+				int lnNum = Integer.parseInt(getChild(res, "ln").getStringValue());
+				String cn = getChild(res, "cn").getStringValue();
+				statements.define(id, lnNum, cn);
+			}
+			statementIndex = statements;
+		}
+		return statementIndex;
+	}
+
+
+	// Utility Methods for Evaluating XQueries
+
+	private Map<String, Map<String, MethodLineRange>> processXQueryForMethodLineRanges(String queryName) throws DFQException {
+		Map<String, Map<String, MethodLineRange>> lineRanges = new LinkedHashMap<String, Map<String, MethodLineRange>>();
+		for (XdmItem item : evaluateXQuery(queryName, null, null)) {
+			XdmNode res = (XdmNode) item;
+			String cn = getChild(res, "cn").getStringValue();
+			String sig = getChild(res, "sig").getStringValue();
+			int start = parseOptionalLineNumber(getChild(res, "start").getStringValue());
+			int end = parseOptionalLineNumber(getChild(res, "end").getStringValue());
+
+			Map<String, MethodLineRange> classLineRanges = lineRanges.get(cn);
+			if (classLineRanges == null) {
+				classLineRanges = new LinkedHashMap<String, MethodLineRange>();
+				lineRanges.put(cn, classLineRanges);
+			}
+			if (!classLineRanges.containsKey(sig))
+				classLineRanges.put(sig, new MethodLineRange(start, end));
+		}
+		return lineRanges;
+	}
+
+	private static int parseOptionalLineNumber(String lineNumber) {
+		if (lineNumber.length() == 0)
+			return MethodLineRange.UNDEFINED_LINE_NUMBER;
+		return Integer.parseInt(lineNumber);
+	}
+
+	private static XdmNode getChild(XdmNode parent, String childName) {
+		XdmSequenceIterator iter = parent.axisIterator(Axis.CHILD, new QName(childName));
+		if (iter.hasNext()) {
+			return (XdmNode)iter.next();
+		} else {
+			return null;
+		}
+	}
+
+	private List<String> processXQuery(String queryName, QName variable, String value) throws DFQException {
+		XdmValue queryResult = evaluateXQuery(queryName, variable, value);
+
+		List<String> resultList = new ArrayList<String>();
+		for (XdmItem item : queryResult) {
+			resultList.add(item.getStringValue());
+		}
+		return resultList;
+	}
+
+	/*
+	 * Evaluates the named query against the trace file, binding the given external variable
+	 * (if any) to the given value.
+	 */
+	private XdmValue evaluateXQuery(String queryName, QName variable, String value) throws DFQException {
+		XQueryEvaluator xqev = queries.getEvaluator(queryName);
+		XQueryEvaluateEvent event = new XQueryEvaluateEvent();
+		event.begin();
+		long start = metrics.startTimer();
+		long bytesParsed = 0;
+		if (variable != null)
+			xqev.setExternalVariable(variable, new XdmAtomicValue(value));
+
+		if (canKeepTraceDocument()) {
+			xqev.setContextItem(getTraceDocument());
+		} else {
+			InputSource is = new InputSource((new File(traceFilePath).toURI().toString()));
+			SAXSource source = new SAXSource(is);
+			try {
+				xqev.setSource(source);
+				bytesParsed = new File(traceFilePath).length();
+				metrics.parsedDocument(bytesParsed);
+			} catch (SaxonApiException e) {
+				throw new CouldNotSetSourceForXQueryEvaluator(e.getMessage() + " with path \"" + traceFilePath + "\"");
+			}
+		}
+
+		XdmValue result = null;
+		try {
+			result = xqev.evaluate();
+			return result;
+		} catch (SaxonApiException e) {
+			throw new CouldNotEvaluateXQueryExpression(e.getMessage() + " with query \"" + queryName + "\"");
+		} finally {
+			metrics.record(DiagnosisPhase.XQUERY_EVALUATION, start);
+			if (event.shouldCommit()) {
+				event.queryKind = queryName;
+				event.argument = value;
+				event.resultItems = result == null ? 0 : result.size();
+				event.bytesParsed = bytesParsed;
+				event.commit();
+			}
+		}
+	}
+
+	private boolean canKeepTraceDocument() {
+		return maxTreeBytes == NO_TREE_SIZE_LIMIT || new File(traceFilePath).length() <= maxTreeBytes;
+	}
+
+	private synchronized XdmNode getTraceDocument() throws DFQException {
+		if (traceDocument == null) {
+			DocumentBuilder builder = queries.getProcessor().newDocumentBuilder();
+			builder.setTreeModel(TreeModel.TINY_TREE);
+			long start = metrics.startTimer();
+			try {
+				File traceFile = new File(traceFilePath);
+				traceDocument = builder.build(traceFile);
+				metrics.parsedDocument(traceFile.length());
+			} catch (SaxonApiException e) {
+				throw new CouldNotParseTraceFileException(e.getMessage() + " with path \"" + traceFilePath + "\"");
+			} finally {
+				metrics.record(DiagnosisPhase.TRACE_LOADING, start);
+			}
+		}
+		return traceDocument;
+	}
+
+}
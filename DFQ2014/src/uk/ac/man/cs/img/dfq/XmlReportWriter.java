@@ -0,0 +1,44 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/*
+ * Writes a diagnostic report as an XML document, giving the source text of the statements
+ * of each query.
+ */
+public class XmlReportWriter extends DiagnosticReportWriter {
+
+	// Constructor
+	public XmlReportWriter(Writer out) {
+		super(out);
+	}
+
+	public void startReport(String appName, SuspiciousnessMetric metric, int queryCount) throws IOException {
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		out.write("<report application=\"");
+		writeEscapedForMarkup(appName);
+		out.write("\" metric=\"");
+		writeEscapedForMarkup(metric.getName());
+		out.write("\" queries=\"" + queryCount + "\">\n");
+	}
+
+	public void writeQuery(Query query, double score) throws IOException, DFQException {
+		out.write(" <query class=\"");
+		writeEscapedForMarkup(query.getClassName());
+		out.write("\" method=\"");
+		writeEscapedForMarkup(query.getMethodName());
+		out.write("\" line=\"" + startLineOf(query) + "\" score=\"" + score + "\">\n");
+		for (Statement statement : query.getStatements()) {
+			out.write("  <statement line=\"" + statement.getLineNumber() + "\">");
+			writeEscapedForMarkup(statement.getStatementText());
+			out.write("</statement>\n");
+		}
+		out.write(" </query>\n");
+	}
+
+	public void endReport() throws IOException {
+		out.write("</report>\n");
+	}
+
+}
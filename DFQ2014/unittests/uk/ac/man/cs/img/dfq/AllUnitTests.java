@@ -8,8 +8,28 @@ import org.junit.runners.Suite.SuiteClasses;
 @SuiteClasses({
 
 	ApplicationUnitTest.class, 
+	ApplicationLookupUnitTest.class,
+	ApplicationReloadUnitTest.class,
+	ApplicationTraceUnitTest.class,
+	ClassLoadingUnitTest.class,
 	CodeClassUnitTest.class,
-	CodeMethodUnitTest.class
+	CodeMethodUnitTest.class,
+	CompressedBitSetUnitTest.class,
+	ConcurrentApplicationsUnitTest.class,
+	DiagnosisDaemonUnitTest.class,
+	DiagnosisMetricsUnitTest.class,
+	DiagnosticReportUnitTest.class,
+	FlightRecorderEventsUnitTest.class,
+	MappedTraceReaderUnitTest.class,
+	ModelSnapshotUnitTest.class,
+	QueryCoverageUnitTest.class,
+	SourceFileUnitTest.class,
+	SuspiciousnessEngineUnitTest.class,
+	SuspiciousnessMetricsUnitTest.class,
+	SyntheticApplicationGeneratorUnitTest.class,
+	TraceModelLoaderUnitTest.class,
+	XQueryRegistryUnitTest.class,
+	XQueryTraceReaderUnitTest.class
 
 })
 
@@ -0,0 +1,108 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Unit tests for finding the classes and methods of an application by name, signature and
+ * pattern, using the small application held in resources/testData.
+ */
+
+public class ApplicationLookupUnitTest {
+
+	Application app;
+
+	@Before
+	public void setUp() throws Exception {
+		this.app = TestApplications.smallApp();
+	}
+
+	@Test
+	public void testFindsClassesByExactName() throws DFQException {
+		assertEquals("Game", app.getClassByName("Game").getName());
+		assertEquals("GameTest", app.getClassByName("GameTest").getName());
+	}
+
+	@Test(expected = ClassWithGivenNameNotFoundException.class)
+	public void testDoesNotTreatClassNameAsPattern() throws DFQException {
+		app.getClassByName("Game.*");
+	}
+
+	@Test
+	public void testFindsClassesByPattern() {
+		List<CodeClass> classes = app.findClassesMatching("Game.*");
+
+		assertEquals(2, classes.size());
+		assertEquals("Game", classes.get(0).getName());
+		assertEquals("GameTest", classes.get(1).getName());
+		assertEquals(0, app.findClassesMatching("Player").size());
+	}
+
+	@Test
+	public void testFindsMethodsByNameAndSignature() throws DFQException {
+		CodeClass gameClass = app.getClassByName("Game");
+		CodeMethod method = gameClass.getMethodByName("setPlayerList");
+
+		assertEquals("setPlayerList([Ldemo/Player;)V", method.getSignature());
+		assertSame(method, gameClass.getMethodBySignature("setPlayerList([Ldemo/Player;)V"));
+		assertSame(method, app.getMethodBySignature("Game", "setPlayerList([Ldemo/Player;)V"));
+		assertEquals("Game", gameClass.getMethodByName("Game").getName());
+	}
+
+	@Test
+	public void testFindsMethodsByPattern() throws DFQException {
+		List<CodeMethod> methods = app.getClassByName("Game").findMethodsMatching("[gs]etPlayerList");
+
+		assertEquals(2, methods.size());
+		assertEquals("getPlayerList", methods.get(0).getName());
+		assertEquals("setPlayerList", methods.get(1).getName());
+	}
+
+	@Test(expected = MethodWithGivenSignatureNotFoundException.class)
+	public void testReportsUnknownMethodSignature() throws DFQException {
+		app.getClassByName("Game").getMethodBySignature("setPlayerList()V");
+	}
+
+	@Test
+	public void testFindsMethodsAndStatementsByLineNumber() throws DFQException {
+		CodeClass gameClass = app.getClassByName("Game");
+
+		assertEquals("setPlayerList", gameClass.getMethodContainingLine(16).getName());
+		assertEquals("getPlayerList", gameClass.getMethodContainingLine(11).getName());
+		assertNull(gameClass.getMethodContainingLine(14));
+		assertNull(gameClass.getMethodContainingLine(100));
+		assertEquals("String q = session.createQuery(\"from Player\").list();",
+				gameClass.getStatementByLineNumber(16).getStatementText());
+	}
+
+	@Test
+	public void testOffersStatementsAsMapKeyedByLineNumber() throws DFQException {
+		CodeMethod method = app.getClassByName("Game").getMethodByName("setPlayerList");
+		Map<Integer, Statement> statements = method.getStatements();
+
+		assertEquals(Arrays.asList(15, 16, 17), new ArrayList<Integer>(statements.keySet()));
+		assertSame(method.getStatementByLineNumber(16), statements.get(16));
+		assertNull(statements.get(14));
+		assertEquals("this.playerList = playerList;", statements.get(15).getStatementText());
+	}
+
+	@Test(expected = StatementWithGivenClassAndLineNumberNotFoundException.class)
+	public void testReportsLineOutsideEveryMethod() throws DFQException {
+		app.getClassByName("Game").getStatementByLineNumber(14);
+	}
+
+	@Test
+	public void testFindsTestMethodsByName() throws DFQException {
+		TestMethod test = app.getTestMethodByName("testGameResigned");
+
+		assertEquals("GameTest", test.getParentClass().getName());
+		assertFalse(test.testPassed());
+	}
+}
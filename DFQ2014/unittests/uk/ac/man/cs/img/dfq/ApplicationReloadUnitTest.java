@@ -0,0 +1,242 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Unit tests checking that a copy of the small application held in resources/testData
+ * creates again only the classes whose files have changed when it is reloaded, and then
+ * diagnoses them as a fresh load of the changed files would.  Threads diagnosing the
+ * application while it is reloaded see either the old or the new model, and a reload that
+ * fails leaves the application as it was.
+ */
+
+public class ApplicationReloadUnitTest {
+
+	private static final int READERS = 4;
+	private static final int RELOADS = 20;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File traceFile;
+	private File gameSourceFile;
+	private File propertiesFile;
+
+	@Before
+	public void copySmallApplication() throws Exception {
+		propertiesFile = TestApplications.copySmallApp(folder.getRoot());
+		traceFile = new File(folder.getRoot(), TestApplications.TRACE_FILE_NAME);
+		gameSourceFile = new File(folder.getRoot(), TestApplications.GAME_SOURCE_FILE_NAME);
+	}
+
+	/*
+	 * Gives Game a second query, or takes it away again, so that the source file changes
+	 * length.  The new source is moved into place, so a reload never reads half of it.
+	 */
+	static void toggleQueryIn(File gameSourceFile, boolean withQuery) throws Exception {
+		String source = new String(Files.readAllBytes(gameSourceFile.toPath()), StandardCharsets.UTF_8);
+		String plain = "return playerList;";
+		String queried = "return session.createQuery(\"from Game\").list();";
+		source = withQuery ? source.replace(plain, queried) : source.replace(queried, plain);
+		File edited = new File(gameSourceFile.getPath() + ".edited");
+		Files.write(edited.toPath(), source.getBytes(StandardCharsets.UTF_8));
+		Files.move(edited.toPath(), gameSourceFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void assertSameDiagnosis(Application expected, Application actual) throws DFQException {
+		for (SuspiciousnessMetric metric : SuspiciousnessMetrics.getAvailableMetrics()) {
+			List<Query> expectedQueries = expected.getSuspiciousQueries(metric, Double.NEGATIVE_INFINITY);
+			List<Query> actualQueries = actual.getSuspiciousQueries(metric, Double.NEGATIVE_INFINITY);
+			assertEquals(expectedQueries.size(), actualQueries.size());
+			for (int i = 0; i < expectedQueries.size(); i++) {
+				assertEquals(expectedQueries.get(i).getMethod().getSignature(), actualQueries.get(i).getMethod().getSignature());
+				assertEquals(expectedQueries.get(i).getStatements().get(0).getStatementText(),
+						actualQueries.get(i).getStatements().get(0).getStatementText());
+				assertEquals(expectedQueries.get(i).getSuspiciousnessScore(metric),
+						actualQueries.get(i).getSuspiciousnessScore(metric), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testUnchangedFilesAreNotReloaded() throws Exception {
+		Application app = new Application("reloadedApp", propertiesFile.getPath());
+		SuspiciousnessEngine engine = app.getSuspiciousnessEngine();
+		assertTrue(gameSourceFile.setLastModified(gameSourceFile.lastModified() + 2000));
+
+		assertEquals(Collections.emptyList(), app.reload());
+		assertSame(engine, app.getSuspiciousnessEngine());
+		assertEquals(2, app.getMetricsSnapshot().getClassesCreated());
+	}
+
+	@Test
+	public void testRecreatesOnlyChangedClass() throws Exception {
+		Application app = new Application("reloadedApp", propertiesFile.getPath());
+		app.getSuspiciousQueries();
+		CodeClass game = app.getClassByName("Game");
+		CodeClass gameTest = app.getClassByName("GameTest");
+		String source = new String(Files.readAllBytes(gameSourceFile.toPath()), StandardCharsets.UTF_8);
+		Files.write(gameSourceFile.toPath(), source.replace("return playerList;",
+				"return session.createQuery(\"from Game\").list();").getBytes(StandardCharsets.UTF_8));
+
+		assertEquals(Collections.singletonList(gameSourceFile.getPath()), app.reload());
+		assertNotSame(game, app.getClassByName("Game"));
+		assertSame(gameTest, app.getClassByName("GameTest"));
+		assertSame(app.getTestMethodByName("testGameResigned"), gameTest.getMethodByName("testGameResigned"));
+		MetricsSnapshot metrics = app.getMetricsSnapshot();
+		assertEquals(3, metrics.getClassesCreated());
+		assertEquals(1, metrics.getDocumentsParsed());
+		assertEquals(1, metrics.getLatencies(DiagnosisPhase.RELOADING).getCount());
+
+		assertSameDiagnosis(new Application("freshApp", propertiesFile.getPath()), app);
+		assertEquals(Collections.emptyList(), app.reload());
+	}
+
+	@Test
+	public void testReloadsChangedTraceKeepingClasses() throws Exception {
+		Application app = new Application("reloadedApp", propertiesFile.getPath());
+		app.getSuspiciousQueries();
+		CodeClass game = app.getClassByName("Game");
+		TestApplications.append(traceFile, "\n");
+
+		assertEquals(Collections.singletonList(traceFile.getPath()), app.reload());
+		assertSame(game, app.getClassByName("Game"));
+		assertEquals(2, app.getMetricsSnapshot().getClassesCreated());
+		assertEquals(2, app.getMetricsSnapshot().getDocumentsParsed());
+		assertSameDiagnosis(new Application("freshApp", propertiesFile.getPath()), app);
+	}
+
+	@Test
+	public void testDropsClassRemovedFromProperties() throws Exception {
+		Application app = new Application("reloadedApp", propertiesFile.getPath());
+		app.getSuspiciousQueries();
+		TestApplications.setProperty(propertiesFile, TestApplications.SOURCE_FILES_PROPERTY, "");
+
+		List<String> changedPaths = app.reload();
+		assertTrue(changedPaths.contains(propertiesFile.getPath()));
+		assertTrue(changedPaths.contains(gameSourceFile.getPath()));
+		assertTrue(app.getProductionClasses().isEmpty());
+		assertEquals(1, app.getTestClasses().size());
+		assertTrue(app.getSuspiciousQueries().isEmpty());
+	}
+
+	@Test
+	public void testReadersSeeWholeModelWhileReloading() throws Exception {
+		final Application app = new Application("reloadedApp", propertiesFile.getPath());
+		app.getSuspiciousQueries();
+		final AtomicBoolean reloading = new AtomicBoolean(true);
+		ExecutorService executor = Executors.newFixedThreadPool(READERS);
+		try {
+			List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < READERS; i++) {
+				readers.add(executor.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						int diagnoses = 0;
+						do {
+							int queryCount = app.getSuspiciousQueries(SuspiciousnessMetrics.OCHIAI, Double.NEGATIVE_INFINITY).size();
+							assertTrue("Queries ranked: " + queryCount, queryCount == 1 || queryCount == 2);
+							Map<TestMethod, List<Query>> candidates = app.identifyAllCandidateQueries();
+							assertEquals(1, candidates.size());
+							assertEquals("testGameResigned", candidates.keySet().iterator().next().getName());
+							StringWriter report = new StringWriter();
+							app.writeDiagnosticReport(report, ReportFormat.JSON, SuspiciousnessMetrics.OCHIAI, Double.NEGATIVE_INFINITY);
+							assertTrue(report.toString(), report.toString().contains("\"class\": \"Game\""));
+							diagnoses++;
+						} while (reloading.get());
+						return diagnoses;
+					}
+				}));
+			}
+			for (int i = 0; i < RELOADS; i++) {
+				toggleQueryIn(gameSourceFile, i % 2 == 0);
+				assertEquals(Collections.singletonList(gameSourceFile.getPath()), app.reload());
+			}
+			reloading.set(false);
+			for (Future<Integer> reader : readers)
+				assertTrue(reader.get() > 0);
+		} finally {
+			reloading.set(false);
+			executor.shutdown();
+		}
+		assertSameDiagnosis(new Application("freshApp", propertiesFile.getPath()), app);
+	}
+
+	@Test
+	public void testFailedReloadLeavesApplicationAsItWas() throws Exception {
+		Application app = new Application("reloadedApp", propertiesFile.getPath());
+		SuspiciousnessEngine engine = app.getSuspiciousnessEngine();
+		ApplicationTrace trace = app.getTrace();
+		CodeClass game = app.getClassByName("Game");
+		byte[] traceContent = Files.readAllBytes(traceFile.toPath());
+		toggleQueryIn(gameSourceFile, true);
+		Files.write(traceFile.toPath(), "<trace".getBytes(StandardCharsets.UTF_8));
+
+		try {
+			app.reload();
+			fail("A trace that cannot be parsed should not be reloaded");
+		} catch (DFQException e) {
+			// The application is left as it was.
+		}
+		assertSame(trace, app.getTrace());
+		assertSame(game, app.getClassByName("Game"));
+		assertSame(engine, app.getSuspiciousnessEngine());
+		assertEquals(1, app.getSuspiciousQueries().size());
+
+		// Nothing was taken as reloaded, so the next reload still finds the source file changed.
+		Files.write(traceFile.toPath(), traceContent);
+		assertEquals(Collections.singletonList(gameSourceFile.getPath()), app.reload());
+		assertNotSame(game, app.getClassByName("Game"));
+		assertSameDiagnosis(new Application("freshApp", propertiesFile.getPath()), app);
+	}
+
+	@Test
+	public void testRewritesSnapshotOnReload() throws Exception {
+		File snapshotFile = new File(folder.getRoot(), "reloadedApp.snapshot");
+		TestApplications.setProperty(propertiesFile, "dfq.snapshot.file", snapshotFile.getPath());
+		Application app = new Application("reloadedApp", propertiesFile.getPath());
+		toggleQueryIn(gameSourceFile, true);
+
+		app.reload();
+		assertEquals(2, app.getMetricsSnapshot().getLatencies(DiagnosisPhase.SNAPSHOT_WRITING).getCount());
+		Application restored = new Application("restoredApp", propertiesFile.getPath());
+		assertEquals(0, restored.getMetricsSnapshot().getDocumentsParsed());
+		assertSameDiagnosis(app, restored);
+	}
+
+	@Test
+	public void testRetriesSnapshotThatCouldNotBeWritten() throws Exception {
+		File snapshotDirectory = new File(folder.getRoot(), "snapshots");
+		File snapshotFile = new File(snapshotDirectory, "reloadedApp.snapshot");
+		TestApplications.setProperty(propertiesFile, "dfq.snapshot.file", snapshotFile.getPath());
+		Application app = new Application("reloadedApp", propertiesFile.getPath());
+		assertEquals(1, app.getMetricsSnapshot().getSnapshotWriteFailures());
+		assertTrue(snapshotDirectory.mkdir());
+
+		assertEquals(Collections.emptyList(), app.reload());
+		assertTrue(snapshotFile.isFile());
+		assertEquals(1, app.getMetricsSnapshot().getLatencies(DiagnosisPhase.SNAPSHOT_WRITING).getCount());
+		app.reload();
+		assertEquals(1, app.getMetricsSnapshot().getLatencies(DiagnosisPhase.SNAPSHOT_WRITING).getCount());
+	}
+
+}
@@ -0,0 +1,110 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Unit tests for the method line ranges an ApplicationTrace reads from the small trace
+ * file held in resources/testData, whether the trace is loaded into memory, queried with
+ * XQuery or converted to the binary format and mapped.
+ */
+
+public class ApplicationTraceUnitTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	Application app;
+	List<ApplicationTrace> traces;
+
+	@Before
+	public void setUp() throws Exception {
+		this.app = TestApplications.smallApp();
+		String binaryTraceFilePath = new File(folder.getRoot(), "smallTrace.dfqt").getPath();
+		BinaryTraceWriter.convert(TestApplications.SMALL_TRACE_FILE_PATH, binaryTraceFilePath);
+
+		this.traces = new ArrayList<ApplicationTrace>();
+		traces.add(app.getTrace());
+		traces.add(new ApplicationTrace(app, TestApplications.SMALL_TRACE_FILE_PATH, false));
+		traces.add(new ApplicationTrace(app, binaryTraceFilePath));
+	}
+
+	private static Map<String, MethodLineRange> lineRanges(Object... signaturesAndLines) {
+		Map<String, MethodLineRange> lineRanges = new LinkedHashMap<String, MethodLineRange>();
+		for (int i = 0; i < signaturesAndLines.length; i += 3)
+			lineRanges.put((String) signaturesAndLines[i],
+					new MethodLineRange((Integer) signaturesAndLines[i + 1], (Integer) signaturesAndLines[i + 2]));
+		return lineRanges;
+	}
+
+	@Test
+	public void testReadsProductionMethodLineRangesByClass() throws DFQException {
+		Map<String, MethodLineRange> expected = lineRanges(
+				"<init>([Ldemo/Player;)V", 7, 9,
+				"getPlayerList()[Ldemo/Player;", 11, 13,
+				"setPlayerList([Ldemo/Player;)V", 15, 18);
+
+		for (ApplicationTrace trace : traces) {
+			Map<String, Map<String, MethodLineRange>> lineRanges = trace.getProductionMethodLineRanges();
+			assertEquals(Arrays.asList("Game"), new ArrayList<String>(lineRanges.keySet()));
+			assertEquals(expected, lineRanges.get("Game"));
+			assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(lineRanges.get("Game").keySet()));
+			assertEquals(expected, trace.getProductionMethodLineRanges("Game"));
+		}
+	}
+
+	@Test
+	public void testReadsTestMethodLineRangesByClass() throws DFQException {
+		Map<String, MethodLineRange> expected = lineRanges(
+				"testNewGame()V", 5, 9,
+				"testGameResigned()V", 10, 14);
+
+		for (ApplicationTrace trace : traces) {
+			Map<String, Map<String, MethodLineRange>> lineRanges = trace.getTestMethodLineRanges();
+			assertEquals(Arrays.asList("GameTest"), new ArrayList<String>(lineRanges.keySet()));
+			assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(lineRanges.get("GameTest").keySet()));
+			assertEquals(expected, trace.getTestMethodLineRanges("GameTest"));
+		}
+	}
+
+	@Test
+	public void testGivesNoLineRangesForClassOfOtherKind() throws DFQException {
+		for (ApplicationTrace trace : traces) {
+			assertTrue(trace.getProductionMethodLineRanges("GameTest").isEmpty());
+			assertTrue(trace.getTestMethodLineRanges("Game").isEmpty());
+			assertTrue(trace.getProductionMethodLineRanges("NoSuchClass").isEmpty());
+		}
+	}
+
+	@Test
+	public void testReadsLineRangesOnce() throws DFQException {
+		ApplicationTrace trace = new ApplicationTrace(app, TestApplications.SMALL_TRACE_FILE_PATH, false);
+		DiagnosisMetrics metrics = app.getMetrics();
+		long evaluations = metrics.getLatencies(DiagnosisPhase.XQUERY_EVALUATION).getStatistics().getCount();
+
+		Map<String, Map<String, MethodLineRange>> lineRanges = trace.getProductionMethodLineRanges();
+		assertSame(lineRanges, trace.getProductionMethodLineRanges());
+		trace.getProductionMethodLineRanges("Game");
+		assertEquals(evaluations + 1, metrics.getLatencies(DiagnosisPhase.XQUERY_EVALUATION).getStatistics().getCount());
+	}
+
+	@Test
+	public void testAgreesWithLookupOfEachMethod() throws DFQException {
+		for (ApplicationTrace trace : traces) {
+			for (Map.Entry<String, MethodLineRange> method : trace.getProductionMethodLineRanges("Game").entrySet())
+				assertEquals(trace.getMethodLineRange(method.getKey()), method.getValue());
+		}
+	}
+
+}
@@ -0,0 +1,101 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Unit tests checking that the classes of an application come out in the same order, and
+ * that the same class and test method of each name are indexed, however many threads
+ * create them.  The application holds several copies of each of the small application's
+ * source files, each in its own directory, so every class name is shared.
+ */
+
+public class ClassLoadingUnitTest {
+
+	private static final int COPIES = 12;
+	private static final int LOADS = 5;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private List<String> sourceFilePaths = new ArrayList<String>();
+	private List<String> testSourceFilePaths = new ArrayList<String>();
+	private File propertiesFile;
+
+	@Before
+	public void copySourceFiles() throws Exception {
+		for (int i = 0; i < COPIES; i++) {
+			File directory = folder.newFolder("copy" + i);
+			sourceFilePaths.add(copy(TestApplications.GAME_SOURCE_FILE_NAME, directory));
+			testSourceFilePaths.add(copy(TestApplications.GAME_TEST_SOURCE_FILE_NAME, directory));
+		}
+		propertiesFile = TestApplications.smallAppPropertiesWith(folder.getRoot(), "copies.properties",
+				TestApplications.SOURCE_FILES_PROPERTY, String.join(File.pathSeparator, sourceFilePaths));
+		TestApplications.setProperty(propertiesFile, TestApplications.TEST_SOURCE_FILES_PROPERTY,
+				String.join(File.pathSeparator, testSourceFilePaths));
+	}
+
+	private static String copy(String fileName, File directory) throws Exception {
+		File copy = new File(directory, fileName);
+		Files.copy(new File(TestApplications.SMALL_APP_SOURCE_PATH, fileName).toPath(), copy.toPath());
+		return copy.getPath();
+	}
+
+	private static List<String> filePathsOf(List<? extends CodeClass> classes) {
+		List<String> filePaths = new ArrayList<String>();
+		for (CodeClass codeClass : classes)
+			filePaths.add(codeClass.getFilePath());
+		return filePaths;
+	}
+
+	private void assertLoadedInOrder(Application app) throws DFQException {
+		assertEquals(sourceFilePaths, filePathsOf(app.getProductionClasses()));
+		assertEquals(testSourceFilePaths, filePathsOf(app.getTestClasses()));
+		assertSame(app.getProductionClasses().get(0), app.getClassByName("Game"));
+		assertSame(app.getTestClasses().get(0), app.getClassByName("GameTest"));
+		assertSame(app.getTestClasses().get(0).getMethodByName("testGameResigned"), app.getTestMethodByName("testGameResigned"));
+		assertEquals(sourceFilePaths.get(0), app.getSuspiciousQueries().get(0).getMethod().getParentClass().getFilePath());
+	}
+
+	@Test
+	public void testLoadsClassesInOrderOnOneThread() throws Exception {
+		TestApplications.setProperty(propertiesFile, "dfq.class_loading.threads", "1");
+		assertLoadedInOrder(new Application("copies", propertiesFile.getPath()));
+	}
+
+	@Test
+	public void testLoadsClassesInOrderOnSeveralThreads() throws Exception {
+		TestApplications.setProperty(propertiesFile, "dfq.class_loading.threads", "8");
+		for (int i = 0; i < LOADS; i++)
+			assertLoadedInOrder(new Application("copies", propertiesFile.getPath()));
+	}
+
+	@Test
+	public void testLoadsClassesInOrderOnGivenExecutor() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(COPIES);
+		try {
+			for (int i = 0; i < LOADS; i++)
+				assertLoadedInOrder(new Application("copies", propertiesFile.getPath(), executor));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected = InvalidPropertyValueException.class)
+	public void testReportsThreadCountThatIsNotANumber() throws Exception {
+		TestApplications.setProperty(propertiesFile, "dfq.class_loading.threads", "many");
+		new Application("copies", propertiesFile.getPath());
+	}
+
+}
@@ -0,0 +1,106 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/*
+ * Unit tests for the CompressedBitSet class.  The set operations are checked against the
+ * same operations on TreeSets, for sets sparse enough to use array containers and dense
+ * enough to use bitmap containers.
+ */
+
+public class CompressedBitSetUnitTest {
+
+	@Test
+	public void testAddsAndFindsValues() {
+		CompressedBitSet set = new CompressedBitSet();
+		set.add(70000);
+		set.add(3);
+		set.add(3);
+		set.add(65535);
+
+		assertEquals(3, set.cardinality());
+		assertTrue(set.contains(3));
+		assertTrue(set.contains(65535));
+		assertTrue(set.contains(70000));
+		assertFalse(set.contains(4));
+		assertArrayEquals(new int[] { 3, 65535, 70000 }, set.toArray());
+	}
+
+	@Test
+	public void testEmptySet() {
+		CompressedBitSet set = new CompressedBitSet();
+
+		assertTrue(set.isEmpty());
+		assertEquals(0, set.cardinality());
+		assertEquals(0, set.and(CompressedBitSet.of(new int[] { 1 }, 1)).cardinality());
+		assertEquals(1, set.or(CompressedBitSet.of(new int[] { 1 }, 1)).cardinality());
+	}
+
+	@Test
+	public void testSparseSetOperations() {
+		checkSetOperations(new Random(1), 200, 300000);
+	}
+
+	@Test
+	public void testDenseSetOperations() {
+		checkSetOperations(new Random(2), 20000, 140000);
+	}
+
+	@Test
+	public void testMixedSetOperations() {
+		Random random = new Random(3);
+		SortedSet<Integer> sparse = randomValues(random, 3000, 200000);
+		SortedSet<Integer> dense = randomValues(random, 60000, 200000);
+		checkSetOperations(sparse, dense);
+		checkSetOperations(dense, sparse);
+	}
+
+	private static void checkSetOperations(Random random, int count, int bound) {
+		checkSetOperations(randomValues(random, count, bound), randomValues(random, count, bound));
+	}
+
+	private static void checkSetOperations(SortedSet<Integer> first, SortedSet<Integer> second) {
+		CompressedBitSet firstSet = toBitSet(first);
+		CompressedBitSet secondSet = toBitSet(second);
+
+		SortedSet<Integer> intersection = new TreeSet<Integer>(first);
+		intersection.retainAll(second);
+		SortedSet<Integer> union = new TreeSet<Integer>(first);
+		union.addAll(second);
+		SortedSet<Integer> difference = new TreeSet<Integer>(first);
+		difference.removeAll(second);
+
+		assertArrayEquals(toArray(first), firstSet.toArray());
+		assertArrayEquals(toArray(intersection), firstSet.and(secondSet).toArray());
+		assertEquals(intersection.size(), firstSet.andCardinality(secondSet));
+		assertArrayEquals(toArray(union), firstSet.or(secondSet).toArray());
+		assertArrayEquals(toArray(difference), firstSet.andNot(secondSet).toArray());
+		assertEquals(toBitSet(first), firstSet);
+	}
+
+	private static SortedSet<Integer> randomValues(Random random, int count, int bound) {
+		SortedSet<Integer> values = new TreeSet<Integer>();
+		for (int i = 0; i < count; i++)
+			values.add(random.nextInt(bound));
+		return values;
+	}
+
+	private static CompressedBitSet toBitSet(SortedSet<Integer> values) {
+		int[] sortedValues = toArray(values);
+		return CompressedBitSet.of(sortedValues, sortedValues.length);
+	}
+
+	private static int[] toArray(SortedSet<Integer> values) {
+		int[] array = new int[values.size()];
+		int i = 0;
+		for (int value : values)
+			array[i++] = value;
+		return array;
+	}
+}
@@ -0,0 +1,64 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/*
+ * Unit tests checking that separate applications can be loaded and diagnosed side by side,
+ * using the small application held in resources/testData.
+ */
+
+public class ConcurrentApplicationsUnitTest {
+
+	private static final int APPLICATION_COUNT = 4;
+
+	@Test
+	public void testKeepsEarlierApplicationWhenAnotherIsLoaded() throws Exception {
+		Application first = TestApplications.smallApp("first");
+		Application second = TestApplications.smallApp("second");
+
+		CodeClass firstGame = first.getClassByName("Game");
+		assertSame(first, firstGame.getApplication());
+		assertSame(first, first.getTrace().getApplication());
+		assertSame(first.getTestMethodByName("testGameResigned"),
+				first.getTrace().identifyAllCandidateQueries().keySet().iterator().next());
+		assertNotSame(firstGame, second.getClassByName("Game"));
+	}
+
+	@Test
+	public void testDiagnosesApplicationsOnSeparateThreads() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(APPLICATION_COUNT);
+		try {
+			List<Future<Application>> diagnoses = new ArrayList<Future<Application>>();
+			for (int i = 0; i < APPLICATION_COUNT; i++) {
+				final String appName = "smallApp" + i;
+				diagnoses.add(executor.submit(new Callable<Application>() {
+					public Application call() throws Exception {
+						Application app = new Application(appName, TestApplications.SMALL_APP_PROPERTIES_FILE_PATH, null);
+						app.getSuspiciousQueries();
+						return app;
+					}
+				}));
+			}
+
+			for (int i = 0; i < APPLICATION_COUNT; i++) {
+				Application app = diagnoses.get(i).get();
+				List<Query> suspiciousQueries = app.getSuspiciousQueries();
+				assertEquals("smallApp" + i, app.getName());
+				assertEquals(1, suspiciousQueries.size());
+				assertSame(app, suspiciousQueries.get(0).getMethod().getApplication());
+				assertEquals(0.5, suspiciousQueries.get(0).getSuspiciousnessScore(), 1e-9);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
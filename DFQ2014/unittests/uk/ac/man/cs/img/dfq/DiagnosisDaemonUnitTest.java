@@ -0,0 +1,347 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Unit tests checking the answers of a DiagnosisDaemon running in the same process about
+ * the small application held in resources/testData, the requests it refuses, and the
+ * eviction of applications from its ApplicationCache, which withdraws their metrics from
+ * JMX.
+ */
+
+public class DiagnosisDaemonUnitTest {
+
+	private static final String PROPERTIES_FILE_PATH = TestApplications.SMALL_APP_PROPERTIES_FILE_PATH;
+	private static final int REQUEST_COUNT = 8;
+	private static final int RELOADED_REQUEST_COUNT = 20;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private DiagnosisDaemon daemon;
+	private DiagnosisClient client;
+
+	@Before
+	public void startDaemon() throws Exception {
+		daemon = new DiagnosisDaemon(new ApplicationCache(2, ApplicationCache.NO_MEMORY_BUDGET));
+		daemon.start(0, REQUEST_COUNT);
+		client = new DiagnosisClient(daemon.getPort());
+	}
+
+	@After
+	public void stopDaemon() {
+		daemon.stop(0);
+	}
+
+	// Each copy of the properties file names the same application as a separate cache entry.
+	private String copyOfProperties(String name) throws Exception {
+		return TestApplications.copyOfSmallAppProperties(folder.getRoot(), name + ".properties").getPath();
+	}
+
+	private static boolean isPublished(Application application) throws Exception {
+		return ManagementFactory.getPlatformMBeanServer().isRegistered(DiagnosisMetrics.objectNameFor(application.getName()));
+	}
+
+	// Sends a request by hand, so that its Host header can be chosen, and returns the status.
+	private int statusOfRequest(String method, String pathAndQuery, String host) throws Exception {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort());
+		try {
+			OutputStream out = socket.getOutputStream();
+			out.write((method + " " + pathAndQuery + " HTTP/1.1\r\nHost: " + host
+					+ "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes("US-ASCII"));
+			out.flush();
+			String statusLine = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII")).readLine();
+			return Integer.parseInt(statusLine.split(" ")[1]);
+		} finally {
+			socket.close();
+		}
+	}
+
+	@Test
+	public void testAnswersRankingCandidatesAndReport() throws Exception {
+		String ranking = client.rank(PROPERTIES_FILE_PATH, "Tarantula", 5);
+		assertTrue(ranking, ranking.contains("\"queryCount\": 1"));
+		assertTrue(ranking, ranking.contains("\"class\": \"Game\""));
+
+		String candidates = client.candidates(PROPERTIES_FILE_PATH);
+		assertTrue(candidates, candidates.contains("\"test\": \"testGameResigned\""));
+
+		ByteArrayOutputStream report = new ByteArrayOutputStream();
+		client.report(PROPERTIES_FILE_PATH, ReportFormat.XML, "Ochiai", 0, report);
+		assertTrue(report.toString("UTF-8").startsWith("<?xml"));
+
+		String status = client.status();
+		assertTrue(status, status.contains(new File(PROPERTIES_FILE_PATH).getCanonicalPath()));
+		assertEquals(1, daemon.getCache().getCachedPaths().size());
+	}
+
+	@Test
+	public void testLoadsApplicationOnceForConcurrentRequests() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(REQUEST_COUNT);
+		try {
+			List<Future<String>> answers = new ArrayList<Future<String>>();
+			for (int i = 0; i < REQUEST_COUNT; i++) {
+				answers.add(executor.submit(new Callable<String>() {
+					public String call() throws Exception {
+						return client.rank(PROPERTIES_FILE_PATH, "Ochiai", 1);
+					}
+				}));
+			}
+			String first = answers.get(0).get();
+			for (Future<String> answer : answers)
+				assertEquals(first, answer.get());
+		} finally {
+			executor.shutdown();
+		}
+
+		Application application = daemon.getCache().get(PROPERTIES_FILE_PATH);
+		assertEquals(2, application.getMetricsSnapshot().getClassesCreated());
+		assertEquals(1, application.getMetricsSnapshot().getDocumentsParsed());
+	}
+
+	@Test
+	public void testAnswersConcurrentRequestsWhileReloading() throws Exception {
+		final String propertiesFilePath = TestApplications.copySmallApp(folder.getRoot()).getPath();
+		File gameSourceFile = new File(folder.getRoot(), TestApplications.GAME_SOURCE_FILE_NAME);
+		client.rank(propertiesFilePath, "Ochiai", 5);
+		ExecutorService executor = Executors.newFixedThreadPool(REQUEST_COUNT);
+		try {
+			List<Future<String>> answers = new ArrayList<Future<String>>();
+			for (int i = 0; i < RELOADED_REQUEST_COUNT; i++) {
+				ApplicationReloadUnitTest.toggleQueryIn(gameSourceFile, i % 2 == 0);
+				answers.add(executor.submit(new Callable<String>() {
+					public String call() throws Exception {
+						return client.rank(propertiesFilePath, "Ochiai", 5);
+					}
+				}));
+				answers.add(executor.submit(new Callable<String>() {
+					public String call() throws Exception {
+						return client.candidates(propertiesFilePath);
+					}
+				}));
+			}
+			for (int i = 0; i < answers.size(); i += 2) {
+				String ranking = answers.get(i).get();
+				assertTrue(ranking, ranking.contains("\"queryCount\": 1") || ranking.contains("\"queryCount\": 2"));
+				String candidates = answers.get(i + 1).get();
+				assertTrue(candidates, candidates.contains("\"test\": \"testGameResigned\""));
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue(client.rank(propertiesFilePath, "Ochiai", 5).contains("\"queryCount\": 1"));
+	}
+
+	@Test
+	public void testReportsBadRequests() throws Exception {
+		try {
+			client.rank(PROPERTIES_FILE_PATH, "NoSuchMetric", 1);
+			fail("An unknown metric should be rejected");
+		} catch (DiagnosisRequestFailedException e) {
+			assertEquals(400, e.getStatus());
+		}
+		try {
+			client.candidates(new File(folder.getRoot(), "missing.properties").getPath());
+			fail("A missing properties file should not be found");
+		} catch (DiagnosisRequestFailedException e) {
+			assertEquals(404, e.getStatus());
+		}
+		assertTrue(daemon.getCache().getCachedPaths().isEmpty());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsedApplications() throws Exception {
+		ApplicationCache cache = daemon.getCache();
+		String first = copyOfProperties("first");
+		String second = copyOfProperties("second");
+		String third = copyOfProperties("third");
+		Application firstApplication = cache.get(first);
+		cache.get(second);
+		assertSame(firstApplication, cache.get(first));
+		cache.get(third);
+
+		List<String> cached = cache.getCachedPaths();
+		assertEquals(2, cached.size());
+		assertEquals(new File(first).getCanonicalPath(), cached.get(0));
+		assertEquals(new File(third).getCanonicalPath(), cached.get(1));
+
+		assertTrue(cache.invalidate(first));
+		assertNotSame(firstApplication, cache.get(first));
+	}
+
+	@Test
+	public void testEvictsApplicationsBeyondMemoryBudget() throws Exception {
+		ApplicationCache cache = new ApplicationCache(ApplicationCache.DEFAULT_MAX_APPLICATIONS, 1);
+		String first = copyOfProperties("first");
+		String second = copyOfProperties("second");
+		long footprint = cache.get(first).getFootprint();
+		assertTrue(footprint > 0);
+		assertEquals(footprint, cache.getFootprint());
+
+		cache.get(second);
+		assertEquals(1, cache.getCachedPaths().size());
+		assertEquals(new File(second).getCanonicalPath(), cache.getCachedPaths().get(0));
+		cache.clear();
+		assertEquals(0, cache.getFootprint());
+	}
+
+	@Test
+	public void testWithdrawsMetricsOfEvictedAndInvalidatedApplications() throws Exception {
+		ApplicationCache cache = daemon.getCache();
+		Application first = cache.get(copyOfProperties("first"));
+		Application second = cache.get(copyOfProperties("second"));
+		assertTrue(isPublished(first));
+
+		Application third = cache.get(copyOfProperties("third"));
+		assertFalse(isPublished(first));
+		assertTrue(isPublished(second));
+		assertTrue(isPublished(third));
+
+		assertTrue(cache.invalidate(third.getPropertiesFilePath()));
+		assertFalse(isPublished(third));
+		cache.clear();
+		assertFalse(isPublished(second));
+	}
+
+	@Test
+	public void testWithdrawsMetricsOfApplicationInvalidatedWhileLoading() throws Exception {
+		ApplicationCache cache = new ApplicationCache(2, ApplicationCache.NO_MEMORY_BUDGET) {
+			protected Application load(String propertiesFilePath) throws Exception {
+				Application application = super.load(propertiesFilePath);
+				assertTrue(isPublished(application));
+				assertTrue(invalidate(propertiesFilePath));
+				return application;
+			}
+		};
+		Application application = cache.get(copyOfProperties("invalidated"));
+		assertFalse(isPublished(application));
+		assertTrue(cache.getCachedPaths().isEmpty());
+		assertEquals(0, cache.getFootprint());
+	}
+
+	@Test
+	public void testNamesApplicationsWhosePropertiesFilesShareANameApart() throws Exception {
+		ApplicationCache cache = daemon.getCache();
+		File first = TestApplications.copyOfSmallAppProperties(folder.newFolder("a"), "app.properties");
+		File second = TestApplications.copyOfSmallAppProperties(folder.newFolder("b"), "app.properties");
+		Application firstApplication = cache.get(first.getPath());
+		Application secondApplication = cache.get(second.getPath());
+
+		assertEquals(first.getCanonicalPath(), firstApplication.getName());
+		assertEquals(second.getCanonicalPath(), secondApplication.getName());
+		assertTrue(isPublished(firstApplication));
+		assertTrue(isPublished(secondApplication));
+	}
+
+	@Test
+	public void testTakesFootprintAgainAfterReload() throws Exception {
+		ApplicationCache cache = daemon.getCache();
+		String propertiesFilePath = TestApplications.copySmallApp(folder.getRoot()).getPath();
+		long footprint = cache.get(propertiesFilePath).getFootprint();
+		assertEquals(footprint, cache.getFootprint());
+
+		TestApplications.append(new File(folder.getRoot(), TestApplications.GAME_SOURCE_FILE_NAME), "// Edited\n");
+		cache.get(propertiesFilePath);
+		assertEquals(footprint + "// Edited\n".length(), cache.getFootprint());
+	}
+
+	@Test
+	public void testRefusesRequestsNotAddressedToLocalHost() throws Exception {
+		assertEquals(200, statusOfRequest("GET", "/status", "localhost:" + daemon.getPort()));
+		assertEquals(200, statusOfRequest("GET", "/status", "127.0.0.1"));
+		assertEquals(403, statusOfRequest("GET", "/status", "attacker.example:" + daemon.getPort()));
+		assertEquals(403, statusOfRequest("GET", "/status", "localhost.attacker.example"));
+		assertEquals(403, statusOfRequest("POST", "/invalidate?app=x", "attacker.example"));
+	}
+
+	@Test
+	public void testInvalidatesOnlyOnPost() throws Exception {
+		client.rank(PROPERTIES_FILE_PATH, "Ochiai", 1);
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + daemon.getPort()
+				+ "/invalidate?app=" + PROPERTIES_FILE_PATH).openConnection();
+		assertEquals(405, connection.getResponseCode());
+		assertEquals("POST", connection.getHeaderField("Allow"));
+		connection.disconnect();
+		assertEquals(1, daemon.getCache().getCachedPaths().size());
+
+		assertTrue(client.invalidate(PROPERTIES_FILE_PATH).contains("\"invalidated\": true"));
+		assertTrue(daemon.getCache().getCachedPaths().isEmpty());
+	}
+
+	@Test
+	public void testRefusesApplicationsOutsideRootDirectories() throws Exception {
+		DiagnosisDaemon rootedDaemon = new DiagnosisDaemon(new ApplicationCache(), Arrays.asList(folder.getRoot().getPath()));
+		rootedDaemon.start(0, 1);
+		try {
+			DiagnosisClient rootedClient = new DiagnosisClient(rootedDaemon.getPort());
+			try {
+				rootedClient.candidates(PROPERTIES_FILE_PATH);
+				fail("An application outside the root directories should be refused");
+			} catch (DiagnosisRequestFailedException e) {
+				assertEquals(403, e.getStatus());
+			}
+			String copy = TestApplications.copySmallApp(folder.newFolder("inside")).getPath();
+			assertTrue(rootedClient.candidates(copy).contains("\"test\": \"testGameResigned\""));
+			assertEquals(1, rootedDaemon.getCache().getCachedPaths().size());
+		} finally {
+			rootedDaemon.stop(0);
+		}
+	}
+
+	@Test
+	public void testGivesUpOnDaemonThatDoesNotAnswer() throws Exception {
+		ServerSocket silent = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		try {
+			DiagnosisClient impatient = new DiagnosisClient(silent.getLocalPort(), 1000, 200);
+			try {
+				impatient.status();
+				fail("A daemon that never answers should time out");
+			} catch (DiagnosisRequestFailedException e) {
+				assertEquals(0, e.getStatus());
+			}
+		} finally {
+			silent.close();
+		}
+	}
+
+	@Test
+	public void testSendsReportsWithTheMimeTypeOfTheirFormat() throws Exception {
+		for (ReportFormat format : ReportFormat.values()) {
+			HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + daemon.getPort()
+					+ "/report?app=" + PROPERTIES_FILE_PATH + "&format=" + format.name().toLowerCase()).openConnection();
+			try {
+				assertEquals(200, connection.getResponseCode());
+				assertEquals(format.getMimeType() + "; charset=UTF-8", connection.getContentType());
+			} finally {
+				connection.disconnect();
+			}
+		}
+		assertEquals("text/html", ReportFormat.HTML.getMimeType());
+	}
+
+}
@@ -0,0 +1,146 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Unit tests checking the counts and timings DiagnosisMetrics records while the small
+ * application held in resources/testData is loaded and diagnosed, and their publication
+ * over JMX.
+ */
+
+public class DiagnosisMetricsUnitTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCountsWorkOfLoadingAndDiagnosis() throws Exception {
+		Application app = TestApplications.smallApp("metricsApp");
+		app.getSuspiciousQueries();
+		MetricsSnapshot snapshot = app.getMetricsSnapshot();
+
+		assertEquals(2, snapshot.getClassesCreated());
+		assertEquals(1, snapshot.getDocumentsParsed());
+		assertEquals(0, snapshot.getQueriesCompiled());
+		assertTrue(snapshot.getBytesRead() > new File(TestApplications.SMALL_TRACE_FILE_PATH).length());
+		int statements = 0;
+		for (CodeMethod method : app.getAllMethods())
+			statements += method.getStatements().size();
+		assertEquals(statements, snapshot.getStatementsCreated());
+
+		assertEquals(1, snapshot.getLatencies(DiagnosisPhase.PROPERTIES_PARSING).getCount());
+		assertEquals(1, snapshot.getLatencies(DiagnosisPhase.TRACE_LOADING).getCount());
+		assertEquals(2, snapshot.getLatencies(DiagnosisPhase.SOURCE_READING).getCount());
+		assertEquals(2, snapshot.getLatencies(DiagnosisPhase.CLASS_CONSTRUCTION).getCount());
+		assertEquals(app.getAllMethods().size(), snapshot.getLatencies(DiagnosisPhase.STATEMENT_CONSTRUCTION).getCount());
+		assertEquals(1, snapshot.getLatencies(DiagnosisPhase.QUERY_INDEXING).getCount());
+		assertEquals(2, snapshot.getLatencies(DiagnosisPhase.SCORING).getCount());
+		assertEquals(0, snapshot.getLatencies(DiagnosisPhase.XQUERY_EVALUATION).getCount());
+	}
+
+	@Test
+	public void testCountsQueriesCompiledAndEvaluated() throws Exception {
+		File propertiesFile = TestApplications.smallAppPropertiesWith(folder.getRoot(), "xquery.properties",
+				"dfq.trace.load_into_memory", "false");
+
+		Application app = new Application("xqueryMetricsApp", propertiesFile.getPath());
+		app.getSuspiciousQueries();
+		MetricsSnapshot snapshot = app.getMetricsSnapshot();
+
+		assertTrue(snapshot.getQueriesCompiled() > 0);
+		assertEquals(snapshot.getQueriesCompiled(), snapshot.getLatencies(DiagnosisPhase.XQUERY_COMPILATION).getCount());
+		assertTrue(snapshot.getLatencies(DiagnosisPhase.XQUERY_EVALUATION).getCount() >= snapshot.getQueriesCompiled());
+		assertEquals(1, snapshot.getDocumentsParsed());
+	}
+
+	@Test
+	public void testPublishesLatestApplicationOfEachName() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		Application first = TestApplications.smallApp("publishedApp");
+		first.getMetrics().reset();
+		Application second = TestApplications.smallApp("publishedApp");
+
+		assertEquals(2L, server.getAttribute(DiagnosisMetrics.objectNameFor("publishedApp"), "ClassesCreated"));
+		assertEquals(2L, server.getAttribute(DiagnosisMetrics.objectNameFor("publishedApp", DiagnosisPhase.SOURCE_READING), "Count"));
+
+		first.getMetrics().unregister();
+		assertTrue(server.isRegistered(DiagnosisMetrics.objectNameFor("publishedApp")));
+		second.getMetrics().unregister();
+		assertFalse(server.isRegistered(DiagnosisMetrics.objectNameFor("publishedApp")));
+		assertFalse(server.isRegistered(DiagnosisMetrics.objectNameFor("publishedApp", DiagnosisPhase.SCORING)));
+	}
+
+	@Test
+	public void testWithdrawsMetricsOfClosedApplication() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		Application app = TestApplications.smallApp("closedApp");
+		assertTrue(server.isRegistered(DiagnosisMetrics.objectNameFor("closedApp")));
+
+		app.close();
+		assertFalse(server.isRegistered(DiagnosisMetrics.objectNameFor("closedApp")));
+		assertFalse(server.isRegistered(DiagnosisMetrics.objectNameFor("closedApp", DiagnosisPhase.SCORING)));
+		assertEquals(1, app.getSuspiciousQueries().size());
+	}
+
+	@Test
+	public void testPublishesNothingForApplicationThatFailsToLoad() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		File propertiesFile = TestApplications.smallAppPropertiesWith(folder.getRoot(), "broken.properties",
+				TestApplications.TRACE_FILE_PROPERTY, new File(folder.getRoot(), "missing.xml").getPath());
+
+		try {
+			new Application("brokenApp", propertiesFile.getPath());
+			fail("An application whose trace is missing should not load");
+		} catch (TraceFileNotFoundException e) {
+			assertFalse(server.isRegistered(DiagnosisMetrics.objectNameFor("brokenApp")));
+			assertFalse(server.isRegistered(DiagnosisMetrics.objectNameFor("brokenApp", DiagnosisPhase.PROPERTIES_PARSING)));
+		}
+	}
+
+	@Test
+	public void testCountsBytesOfMappedTraceAsOfParsedTrace() throws Exception {
+		File xmlTraceFile = new File(TestApplications.SMALL_TRACE_FILE_PATH);
+		File binaryTraceFile = new File(folder.getRoot(), "smallTrace.dfqt");
+		BinaryTraceWriter.convert(xmlTraceFile.getPath(), binaryTraceFile.getPath());
+		File xmlPropertiesFile = TestApplications.smallAppPropertiesWith(folder.getRoot(), "xml.properties",
+				TestApplications.TRACE_FILE_PROPERTY, xmlTraceFile.getAbsolutePath());
+		File binaryPropertiesFile = TestApplications.smallAppPropertiesWith(folder.getRoot(), "binary.properties",
+				TestApplications.TRACE_FILE_PROPERTY, binaryTraceFile.getAbsolutePath());
+
+		MetricsSnapshot xml = new Application("xmlApp", xmlPropertiesFile.getPath()).getMetricsSnapshot();
+		MetricsSnapshot binary = new Application("binaryApp", binaryPropertiesFile.getPath()).getMetricsSnapshot();
+		// The properties and trace files are each read once to digest them, and once more to load them.
+		assertEquals(xml.getBytesRead() - 2 * xmlPropertiesFile.length() - 2 * xmlTraceFile.length(),
+				binary.getBytesRead() - 2 * binaryPropertiesFile.length() - 2 * binaryTraceFile.length());
+		assertEquals(1, binary.getLatencies(DiagnosisPhase.TRACE_LOADING).getCount());
+	}
+
+	@Test
+	public void testPercentilesAreBucketBounds() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 99; i++)
+			histogram.record(1000);
+		histogram.record(1000000);
+		LatencyStatistics statistics = histogram.getStatistics();
+
+		assertEquals(100, statistics.getCount());
+		assertEquals(1099000, statistics.getTotalNanos());
+		assertEquals(1.0, statistics.getMaxMillis(), 1e-9);
+		assertEquals(1023 / 1e6, statistics.getPercentileMillis(0.5), 1e-12);
+		assertEquals(1023 / 1e6, statistics.getPercentileMillis(0.99), 1e-12);
+		assertEquals(1.0, statistics.getPercentileMillis(1.0), 1e-9);
+
+		histogram.reset();
+		assertEquals(0, histogram.getStatistics().getPercentileMillis(0.5), 0);
+	}
+
+}
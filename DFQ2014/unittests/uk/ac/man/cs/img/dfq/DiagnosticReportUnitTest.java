@@ -0,0 +1,113 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/*
+ * Unit tests for the diagnostic reports, using the small application held in
+ * resources/testData.  Its only query (in Game.setPlayerList, at line 16) has a Tarantula
+ * score of 0.5.
+ */
+
+public class DiagnosticReportUnitTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	Application app;
+
+	@Before
+	public void setUp() throws Exception {
+		this.app = TestApplications.smallApp();
+	}
+
+	@Test
+	public void testCreatesTextReportOfSuspiciousQueries() throws DFQException {
+		String expectedReport = "Dear smallApp Development Team,\n\n" +
+								"There are 1 suspicious queries for this application.  Details are given below:\n\n" +
+								"\t Query at Game, setPlayerList, 16 has suspiciousness score 0.5.\n\n" +
+								"Yours sincerely,\n\n" +
+								"The Automation Team";
+
+		assertEquals(expectedReport, app.getDiagnosticReport());
+	}
+
+	@Test
+	public void testCreatesTextReportWhenNoSuspiciousQueries() throws DFQException {
+		StringWriter report = new StringWriter();
+		app.writeDiagnosticReport(report, ReportFormat.TEXT, SuspiciousnessMetrics.JACCARD, 0.6);
+
+		assertEquals("Dear smallApp Development Team,\n\n" +
+					 "There are no suspicious queries on this application at present.\n\n" +
+					 "Yours sincerely,\n\n" +
+					 "The Automation Team", report.toString());
+	}
+
+	@Test
+	public void testWritesXmlReportWithQuerySource() throws Exception {
+		ByteArrayOutputStream report = new ByteArrayOutputStream();
+		app.writeDiagnosticReport(report, ReportFormat.XML, SuspiciousnessMetrics.OCHIAI, 0);
+
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(report.toByteArray()));
+		Element query = (Element) document.getElementsByTagName("query").item(0);
+		assertEquals("Ochiai", document.getDocumentElement().getAttribute("metric"));
+		assertEquals("1", document.getDocumentElement().getAttribute("queries"));
+		assertEquals("setPlayerList", query.getAttribute("method"));
+		assertEquals("16", query.getAttribute("line"));
+		assertEquals("String q = session.createQuery(\"from Player\").list();", query.getTextContent().trim());
+	}
+
+	@Test
+	public void testReplacesCharactersNotAllowedInXml() throws Exception {
+		File propertiesFile = TestApplications.copySmallApp(folder.getRoot());
+		File gameSourceFile = new File(folder.getRoot(), TestApplications.GAME_SOURCE_FILE_NAME);
+		List<String> lines = Files.readAllLines(gameSourceFile.toPath(), StandardCharsets.UTF_8);
+		lines.set(16, "\tString q = session.createQuery(\"from\u0001Player\u001B\tGame\").list();");
+		Files.write(gameSourceFile.toPath(), lines, StandardCharsets.UTF_8);
+		Application controlApp = new Application("controlApp", propertiesFile.getPath());
+
+		ByteArrayOutputStream report = new ByteArrayOutputStream();
+		controlApp.writeDiagnosticReport(report, ReportFormat.XML, SuspiciousnessMetrics.TARANTULA, 0);
+
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(report.toByteArray()));
+		assertEquals("String q = session.createQuery(\"from\uFFFDPlayer\uFFFD\tGame\").list();",
+				document.getElementsByTagName("statement").item(0).getTextContent());
+	}
+
+	@Test
+	public void testWritesJsonReportWithEscapedSource() throws DFQException {
+		StringWriter report = new StringWriter();
+		app.writeDiagnosticReport(report, ReportFormat.JSON);
+
+		assertEquals("{\"application\": \"smallApp\", \"metric\": \"Tarantula\", \"queryCount\": 1, \"queries\": [\n" +
+					 " {\"class\": \"Game\", \"method\": \"setPlayerList\", \"line\": 16, \"score\": 0.5, " +
+					 "\"statements\": [\"String q = session.createQuery(\\\"from Player\\\").list();\"]}\n" +
+					 "]}\n", report.toString());
+	}
+
+	@Test
+	public void testWritesHtmlReportWithEscapedSource() throws DFQException {
+		StringWriter report = new StringWriter();
+		app.writeDiagnosticReport(report, ReportFormat.HTML);
+
+		assertTrue(report.toString().contains("<tr><td>1</td><td>Game</td><td>setPlayerList</td><td>16</td><td>0.5</td>" +
+				"<td><pre>String q = session.createQuery(&quot;from Player&quot;).list();</pre></td></tr>"));
+		assertTrue(report.toString().endsWith("</table>\n</body>\n</html>\n"));
+	}
+}
@@ -0,0 +1,102 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Unit tests checking the Java Flight Recorder events emitted while the small application
+ * held in resources/testData is loaded and diagnosed.
+ */
+
+public class FlightRecorderEventsUnitTest {
+
+	private static final String EVENT_PREFIX = "uk.ac.man.cs.img.dfq.";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private List<RecordedEvent> recordDiagnosis(String propertiesFilePath) throws Exception {
+		Recording recording = new Recording();
+		for (String event : new String[] { "XQueryCompile", "XQueryEvaluate", "TraceLoad", "SourceFileLoad",
+				"ClassConstruction", "MethodConstruction", "Scoring" })
+			recording.enable(EVENT_PREFIX + event).withoutThreshold();
+		try {
+			recording.start();
+			Application app = new Application("recordedApp", propertiesFilePath);
+			app.getSuspiciousQueries();
+			recording.stop();
+			File recordingFile = new File(folder.getRoot(), "diagnosis.jfr");
+			recording.dump(recordingFile.toPath());
+			return RecordingFile.readAllEvents(recordingFile.toPath());
+		} finally {
+			recording.close();
+		}
+	}
+
+	private static List<RecordedEvent> eventsNamed(List<RecordedEvent> events, String name) {
+		List<RecordedEvent> named = new ArrayList<RecordedEvent>();
+		for (RecordedEvent event : events) {
+			if (event.getEventType().getName().equals(EVENT_PREFIX + name))
+				named.add(event);
+		}
+		return named;
+	}
+
+	@Test
+	public void testRecordsModelConstructionAndScoring() throws Exception {
+		List<RecordedEvent> events = recordDiagnosis(TestApplications.SMALL_APP_PROPERTIES_FILE_PATH);
+
+		List<RecordedEvent> traceLoads = eventsNamed(events, "TraceLoad");
+		assertEquals(1, traceLoads.size());
+		assertEquals("TraceModel", traceLoads.get(0).getString("reader"));
+		assertTrue(traceLoads.get(0).getLong("bytes") > 0);
+
+		assertEquals(2, eventsNamed(events, "SourceFileLoad").size());
+		List<RecordedEvent> classes = eventsNamed(events, "ClassConstruction");
+		assertEquals(2, classes.size());
+		assertEquals("Game", classes.get(0).getString("className"));
+		assertFalse(classes.get(0).getBoolean("testClass"));
+
+		int queries = 0;
+		for (RecordedEvent method : eventsNamed(events, "MethodConstruction"))
+			queries += method.getInt("queries");
+		List<RecordedEvent> scoring = eventsNamed(events, "Scoring");
+		assertEquals(1, scoring.size());
+		assertEquals("Tarantula", scoring.get(0).getString("metric"));
+		assertEquals(queries, scoring.get(0).getInt("queries"));
+		assertEquals(1, scoring.get(0).getInt("ranked"));
+		assertTrue(eventsNamed(events, "XQueryCompile").isEmpty());
+	}
+
+	@Test
+	public void testRecordsQueriesByKind() throws Exception {
+		File propertiesFile = TestApplications.smallAppPropertiesWith(folder.getRoot(), "xquery.properties",
+				"dfq.trace.load_into_memory", "false");
+
+		List<RecordedEvent> events = recordDiagnosis(propertiesFile.getPath());
+
+		List<RecordedEvent> compilations = eventsNamed(events, "XQueryCompile");
+		assertFalse(compilations.isEmpty());
+		List<String> compiledKinds = new ArrayList<String>();
+		for (RecordedEvent compilation : compilations) {
+			assertFalse(compiledKinds.contains(compilation.getString("queryKind")));
+			compiledKinds.add(compilation.getString("queryKind"));
+			assertTrue(compilation.getInt("queryLength") > 0);
+		}
+		for (RecordedEvent evaluation : eventsNamed(events, "XQueryEvaluate"))
+			assertTrue(compiledKinds.contains(evaluation.getString("queryKind")));
+		assertEquals("XQueryTraceReader", eventsNamed(events, "TraceLoad").get(0).getString("reader"));
+	}
+
+}
@@ -0,0 +1,97 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Unit tests for the MappedTraceReader class.  The small trace file held in
+ * resources/testData is converted to a temporary binary trace, and the answers read from
+ * the binary trace are compared with those given by the TraceModel it was written from.
+ */
+
+public class MappedTraceReaderUnitTest {
+
+	private static final String TRACE_FILE_PATH = "resources" + File.separator + "testData" + File.separator + "smallTrace.xml";
+
+	TraceModel model;
+	File binaryTraceFile;
+	MappedTraceReader reader;
+
+	@Before
+	public void setUp() throws Exception {
+		this.model = TraceModelLoader.load(TRACE_FILE_PATH);
+		this.binaryTraceFile = File.createTempFile("smallTrace", ".dfqt");
+		BinaryTraceWriter.write(model, binaryTraceFile.getPath());
+		this.reader = new MappedTraceReader(binaryTraceFile.getPath());
+	}
+
+	@After
+	public void tearDown() {
+		this.reader = null;
+		binaryTraceFile.delete();
+	}
+
+	@Test
+	public void testRecognisesBinaryTraceFiles() {
+		assertTrue(MappedTraceReader.isBinaryTrace(binaryTraceFile.getPath()));
+		assertFalse(MappedTraceReader.isBinaryTrace(TRACE_FILE_PATH));
+	}
+
+	@Test
+	public void testReadsMethodSignatures() {
+		assertEquals(model.getProductionMethodSignatures("Game"), reader.getProductionMethodSignatures("Game"));
+		assertEquals(model.getTestMethodSignatures("GameTest"), reader.getTestMethodSignatures("GameTest"));
+		assertEquals(0, reader.getProductionMethodSignatures("NoSuchClass").size());
+	}
+
+	@Test
+	public void testReadsMethodLineRanges() throws DFQException {
+		assertEquals(15, reader.getMethodStartLine("setPlayerList([Ldemo/Player;)V"));
+		assertEquals(18, reader.getMethodEndLine("setPlayerList([Ldemo/Player;)V"));
+		assertEquals(model.getProductionMethodLineRanges().keySet(), reader.getProductionMethodLineRanges().keySet());
+		assertEquals(model.getTestMethodLineRanges().get("GameTest").keySet(),
+				reader.getTestMethodLineRanges().get("GameTest").keySet());
+	}
+
+	@Test(expected = CouldNotFindStartLineNumberForGivenMethodException.class)
+	public void testReportsUnknownMethodSignature() throws DFQException {
+		reader.getMethodStartLine("noSuchMethod()V");
+	}
+
+	@Test
+	public void testReadsTestOutcomes() {
+		assertEquals(Arrays.asList("testNewGame", "testGameResigned"), reader.getExecutedTestNames());
+		assertEquals(Arrays.asList("testNewGame"), reader.getPassingTestNames());
+		assertEquals(Arrays.asList("testGameResigned"), reader.getFailingTestNames());
+		assertEquals(Arrays.asList("false"), reader.getTestResults("testGameResigned"));
+	}
+
+	@Test
+	public void testReadsExecutedStatements() {
+		for (String testName : model.getExecutedTestNames()) {
+			assertSameStatements(model.getExecutedStatements(testName), reader.getExecutedStatements(testName));
+			assertSameStatements(model.getDistinctExecutedStatements(testName), reader.getDistinctExecutedStatements(testName));
+		}
+		assertEquals(0, reader.getExecutedStatements("noSuchTest").size());
+	}
+
+	@Test(expected = CouldNotParseTraceFileException.class)
+	public void testReportsAttemptToMapNonBinaryFile() throws DFQException {
+		new MappedTraceReader(TRACE_FILE_PATH);
+	}
+
+	private static void assertSameStatements(List<LineNumClassPair<String>> expected, List<LineNumClassPair<String>> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getLineNum(), actual.get(i).getLineNum());
+			assertEquals(expected.get(i).getClassName(), actual.get(i).getClassName());
+		}
+	}
+}
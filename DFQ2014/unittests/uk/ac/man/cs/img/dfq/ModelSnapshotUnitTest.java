@@ -0,0 +1,114 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Unit tests checking that a copy of the small application held in resources/testData is
+ * restored from its ModelSnapshot, and loaded afresh when any file it was loaded from has
+ * changed or the snapshot cannot be read.
+ */
+
+public class ModelSnapshotUnitTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File gameSourceFile;
+	private File snapshotFile;
+
+	@Before
+	public void copySmallApplication() throws Exception {
+		File propertiesFile = TestApplications.copySmallApp(folder.getRoot());
+		gameSourceFile = new File(folder.getRoot(), TestApplications.GAME_SOURCE_FILE_NAME);
+		snapshotFile = new File(folder.getRoot(), "smallApp.snapshot");
+		TestApplications.setProperty(propertiesFile, "dfq.snapshot.file", snapshotFile.getPath());
+	}
+
+	private String propertiesFile() {
+		return new File(folder.getRoot(), TestApplications.PROPERTIES_FILE_NAME).getPath();
+	}
+
+	private static void assertSameDiagnosis(Application expected, Application actual) throws DFQException {
+		List<Query> expectedQueries = expected.getSuspiciousQueries();
+		List<Query> actualQueries = actual.getSuspiciousQueries();
+		assertEquals(expectedQueries.size(), actualQueries.size());
+		SuspiciousnessEngine expectedEngine = expected.getSuspiciousnessEngine();
+		SuspiciousnessEngine actualEngine = actual.getSuspiciousnessEngine();
+		assertEquals(expectedEngine.getTotalPassed(), actualEngine.getTotalPassed());
+		assertEquals(expectedEngine.getTotalFailed(), actualEngine.getTotalFailed());
+		for (int i = 0; i < expectedQueries.size(); i++) {
+			assertEquals(expectedQueries.get(i).getMethod().getSignature(), actualQueries.get(i).getMethod().getSignature());
+			assertEquals(expectedQueries.get(i).getStatements().get(0).getLineNumber(),
+					actualQueries.get(i).getStatements().get(0).getLineNumber());
+			assertEquals(expectedEngine.getScore(expectedQueries.get(i), SuspiciousnessMetrics.TARANTULA),
+					actualEngine.getScore(actualQueries.get(i), SuspiciousnessMetrics.TARANTULA), 0);
+		}
+	}
+
+	@Test
+	public void testRestoresSnapshotWrittenByFirstLoad() throws Exception {
+		Application written = new Application("snapshotApp", propertiesFile());
+		assertTrue(snapshotFile.isFile());
+		assertEquals(1, written.getMetricsSnapshot().getLatencies(DiagnosisPhase.SNAPSHOT_WRITING).getCount());
+
+		Application restored = new Application("snapshotApp", propertiesFile());
+		MetricsSnapshot metrics = restored.getMetricsSnapshot();
+		assertEquals(0, metrics.getDocumentsParsed());
+		assertEquals(0, metrics.getLatencies(DiagnosisPhase.SNAPSHOT_WRITING).getCount());
+		assertEquals(0, metrics.getLatencies(DiagnosisPhase.QUERY_INDEXING).getCount());
+		assertSameDiagnosis(written, restored);
+		assertEquals(2, restored.getTrace().getExecutedTests().size());
+	}
+
+	@Test
+	public void testKeepsApplicationWhoseSnapshotCannotBeWritten() throws Exception {
+		File unwritableSnapshotFile = new File(new File(folder.getRoot(), "missing"), "smallApp.snapshot");
+		TestApplications.setProperty(new File(propertiesFile()), "dfq.snapshot.file", unwritableSnapshotFile.getPath());
+
+		Application app = new Application("unsavedApp", propertiesFile());
+		assertFalse(unwritableSnapshotFile.exists());
+		MetricsSnapshot metrics = app.getMetricsSnapshot();
+		assertEquals(1, metrics.getSnapshotWriteFailures());
+		assertEquals(0, metrics.getLatencies(DiagnosisPhase.SNAPSHOT_WRITING).getCount());
+		assertSameDiagnosis(TestApplications.smallApp(), app);
+	}
+
+	@Test
+	public void testChangedSourceFileInvalidatesSnapshot() throws Exception {
+		new Application("snapshotApp", propertiesFile());
+		long writtenLength = snapshotFile.length();
+		TestApplications.append(gameSourceFile, "\n");
+
+		Application reloaded = new Application("snapshotApp", propertiesFile());
+		assertEquals(1, reloaded.getMetricsSnapshot().getDocumentsParsed());
+		assertEquals(1, reloaded.getMetricsSnapshot().getLatencies(DiagnosisPhase.SNAPSHOT_WRITING).getCount());
+		assertEquals(writtenLength, snapshotFile.length());
+		assertEquals(0, new Application("snapshotApp", propertiesFile()).getMetricsSnapshot().getDocumentsParsed());
+	}
+
+	@Test
+	public void testUnreadableSnapshotIsReplaced() throws Exception {
+		Application written = new Application("snapshotApp", propertiesFile());
+		RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw");
+		try {
+			file.setLength(snapshotFile.length() / 2);
+		} finally {
+			file.close();
+		}
+
+		Application reloaded = new Application("snapshotApp", propertiesFile());
+		assertEquals(1, reloaded.getMetricsSnapshot().getDocumentsParsed());
+		assertSameDiagnosis(written, reloaded);
+		assertEquals(0, new Application("snapshotApp", propertiesFile()).getMetricsSnapshot().getDocumentsParsed());
+	}
+
+}
@@ -0,0 +1,69 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Unit tests for the indexes relating queries to the tests executing them, using the small
+ * application held in resources/testData.  Its only query (in Game.setPlayerList) is
+ * executed by the passing test testNewGame and the failing test testGameResigned.
+ */
+
+public class QueryCoverageUnitTest {
+
+	Application app;
+	CodeMethod method;
+	Query query;
+
+	@Before
+	public void setUp() throws Exception {
+		this.app = TestApplications.smallApp();
+		this.method = app.getClassByName("Game").getMethodByName("setPlayerList");
+		this.query = method.getQueries().get(0);
+	}
+
+	@Test
+	public void testFindsQueriesExecutedByTest() throws DFQException {
+		assertEquals(Arrays.asList(query), app.getTestMethodByName("testNewGame").getExecutedQueries());
+		assertEquals(Arrays.asList(query), app.getTestMethodByName("testGameResigned").getExecutedQueries());
+	}
+
+	@Test
+	public void testFindsNoQueriesExecutedByMethodThatIsNotATest() throws DFQException {
+		assertEquals(0, method.getExecutedQueries().size());
+	}
+
+	@Test
+	public void testIdentifiesCandidateQueriesOfFailingTests() throws DFQException {
+		Map<TestMethod, List<Query>> candidateQueries = app.getTrace().identifyAllCandidateQueries();
+
+		assertEquals(1, candidateQueries.size());
+		assertEquals(Arrays.asList(query), candidateQueries.get(app.getTestMethodByName("testGameResigned")));
+	}
+
+	@Test
+	public void testRecordsTestsExecutingEachQuery() throws DFQException {
+		QueryCoverage queryCoverage = app.getQueryCoverage();
+		CoverageMatrix coverage = queryCoverage.getCoverage();
+
+		assertEquals(0, queryCoverage.indexOf(query));
+		assertEquals(coverage.getPassingTests().or(coverage.getFailingTests()), queryCoverage.getTestsExecuting(0));
+	}
+
+	@Test
+	public void testFindsExistingQueryByStartingLineNumber() throws DFQException {
+		assertSame(query, method.getQueryByStartingLineNumber(16));
+		assertEquals(query, new Query(method, Arrays.asList(method.getStatementByLineNumber(16))));
+	}
+
+	@Test(expected = QueryWithGivenLineNumberNotFoundException.class)
+	public void testCantFindQueryByLineNumberNotStartingAQuery() throws DFQException {
+		method.getQueryByStartingLineNumber(17);
+	}
+}
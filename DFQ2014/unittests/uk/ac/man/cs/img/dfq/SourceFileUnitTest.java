@@ -0,0 +1,69 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Unit tests for the SourceFile class, checking that it splits a file into the same lines
+ * as BufferedReader.readLine().
+ */
+
+public class SourceFileUnitTest {
+
+	File sourceFile;
+
+	@After
+	public void tearDown() {
+		if (sourceFile != null)
+			sourceFile.delete();
+	}
+
+	@Test
+	public void testSplitsLinesLikeBufferedReader() throws Exception {
+		checkLines("first\nsecond\r\nthird\rfourth");
+		checkLines("\t\tindented;  \n \t \nend");
+		checkLines("first\n\n\r\nlast\n");
+		checkLines("\r\n");
+		checkLines("");
+	}
+
+	@Test(expected = ClassFileNotFoundException.class)
+	public void testReportsNonExistentSourceFile() throws DFQException {
+		new SourceFile("does" + File.separator + "not" + File.separator + "Exist.java");
+	}
+
+	private void checkLines(String text) throws Exception {
+		sourceFile = File.createTempFile("SourceFile", ".java");
+		FileWriter writer = new FileWriter(sourceFile);
+		writer.write(text);
+		writer.close();
+
+		List<String> expectedLines = readLines(sourceFile);
+		SourceFile source = new SourceFile(sourceFile.getPath());
+		assertEquals(expectedLines.size(), source.getLineCount());
+		for (int i = 0; i < expectedLines.size(); i++) {
+			assertEquals(expectedLines.get(i), source.getLine(i));
+			assertEquals(expectedLines.get(i).trim(), source.getTrimmedLine(i));
+		}
+	}
+
+	private static List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		String line;
+		while ((line = reader.readLine()) != null)
+			lines.add(line);
+		reader.close();
+		return lines;
+	}
+}
@@ -0,0 +1,127 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Unit tests for the computation of suspiciousness scores, using the small application
+ * held in resources/testData.  Its only query (in Game.setPlayerList) is executed by one
+ * passing and one failing test.
+ */
+
+public class SuspiciousnessEngineUnitTest {
+
+	private static final double DELTA = 1e-9;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	Application app;
+	Query query;
+
+	@Before
+	public void setUp() throws Exception {
+		this.app = TestApplications.smallApp();
+		this.query = app.getClassByName("Game").getMethodByName("setPlayerList").getQueries().get(0);
+	}
+
+	@Test
+	public void testCountsPassingAndFailingTestsExecutingQuery() throws DFQException {
+		ExecutionCounts counts = query.getExecutionCounts();
+
+		assertEquals(1, counts.getPassed());
+		assertEquals(1, counts.getFailed());
+		assertEquals(1, counts.getTotalPassed());
+		assertEquals(1, counts.getTotalFailed());
+	}
+
+	@Test
+	public void testComputesTarantulaScoreOfQuery() throws DFQException {
+		assertEquals(0.5, query.getSuspiciousnessScore(), DELTA);
+	}
+
+	@Test
+	public void testCountsQueryOnUnexecutedLineAsNeverExecuted() throws DFQException {
+		CodeMethod method = app.getClassByName("Game").getMethodByName("getPlayerList");
+		Query unexecutedQuery = new Query(method, Arrays.asList(method.getStatementByLineNumber(13)));
+
+		assertEquals(0, unexecutedQuery.getExecutionCounts().getPassed());
+		assertEquals(0, unexecutedQuery.getExecutionCounts().getFailed());
+		assertEquals(0, unexecutedQuery.getSuspiciousnessScore(), DELTA);
+	}
+
+	@Test
+	public void testComputesScoresOfSeveralMetricsTogether() throws DFQException {
+		SuspiciousnessEngine engine = app.getSuspiciousnessEngine();
+		List<double[]> scores = engine.getScores(Arrays.asList(SuspiciousnessMetrics.OCHIAI, SuspiciousnessMetrics.DSTAR,
+				SuspiciousnessMetrics.JACCARD, SuspiciousnessMetrics.OP2));
+		int index = engine.getQueries().indexOf(query);
+
+		assertEquals(1 / Math.sqrt(2), scores.get(0)[index], DELTA);
+		assertEquals(1.0, scores.get(1)[index], DELTA);
+		assertEquals(0.5, scores.get(2)[index], DELTA);
+		assertEquals(0.5, scores.get(3)[index], DELTA);
+		assertEquals(1 / Math.sqrt(2), query.getSuspiciousnessScore(SuspiciousnessMetrics.OCHIAI), DELTA);
+	}
+
+	@Test
+	public void testFindsSuspiciousQueriesAtOrAboveThreshold() throws DFQException {
+		assertEquals(Arrays.asList(query), app.getSuspiciousQueries());
+		assertEquals(Arrays.asList(query), app.getSuspiciousQueries(SuspiciousnessMetrics.OCHIAI, 0.7));
+		assertTrue(app.getSuspiciousQueries(SuspiciousnessMetrics.JACCARD, 0.6).isEmpty());
+	}
+
+	@Test
+	public void testRanksQueriesWithEqualScoresByClassMethodAndLine() throws Exception {
+		Application app = applicationWithQueriesOnLines(8, 12, 17);
+		CodeClass game = app.getClassByName("Game");
+		Query constructorQuery = game.getMethodByName("Game").getQueryByStartingLineNumber(8);
+		Query earlierQuery = game.getMethodByName("setPlayerList").getQueryByStartingLineNumber(16);
+		Query laterQuery = game.getMethodByName("setPlayerList").getQueryByStartingLineNumber(17);
+		assertEquals(4, app.getSuspiciousnessEngine().getQueries().size());
+
+		assertEquals(Arrays.asList(constructorQuery, earlierQuery, laterQuery), app.getSuspiciousQueries());
+		assertEquals(Arrays.asList(constructorQuery, earlierQuery), app.getTopSuspiciousQueries(SuspiciousnessMetrics.TARANTULA, 2));
+		assertTrue(app.getTopSuspiciousQueries(SuspiciousnessMetrics.TARANTULA, 0).isEmpty());
+		assertTrue(app.getTopSuspiciousQueries(SuspiciousnessMetrics.TARANTULA, 2, 0.6).isEmpty());
+	}
+
+	@Test
+	public void testComputesTarantulaScoreFromCounts() {
+		assertEquals(1.0, new ExecutionCounts(0, 2, 5, 2).getTarantulaScore(), DELTA);
+		assertEquals(0.0, new ExecutionCounts(3, 0, 5, 2).getTarantulaScore(), DELTA);
+		assertEquals((1.0 / 2) / (2.0 / 4 + 1.0 / 2), new ExecutionCounts(2, 1, 4, 2).getTarantulaScore(), DELTA);
+	}
+
+	@Test
+	public void testComputesTarantulaScoreWithNoPassingOrNoFailingTests() {
+		assertEquals(1.0, new ExecutionCounts(0, 1, 0, 3).getTarantulaScore(), DELTA);
+		assertEquals(0.0, new ExecutionCounts(2, 0, 2, 0).getTarantulaScore(), DELTA);
+		assertEquals(0.0, new ExecutionCounts(0, 0, 0, 0).getTarantulaScore(), DELTA);
+	}
+
+	/*
+	 * Returns a copy of the small application in which each of the given lines of
+	 * Game.java ends with a query.  Every line keeps the number the trace records for it;
+	 * as with Statement, the numbers index the lines of the file from 0.
+	 */
+	private Application applicationWithQueriesOnLines(int... lineNumbers) throws Exception {
+		File propertiesFile = TestApplications.copySmallApp(folder.getRoot());
+		File gameSourceFile = new File(folder.getRoot(), TestApplications.GAME_SOURCE_FILE_NAME);
+		List<String> lines = Files.readAllLines(gameSourceFile.toPath(), StandardCharsets.UTF_8);
+		for (int lineNumber : lineNumbers)
+			lines.set(lineNumber, lines.get(lineNumber) + " session.createQuery(\"from Game\").list();");
+		Files.write(gameSourceFile.toPath(), lines, StandardCharsets.UTF_8);
+		return new Application("queriesApp", propertiesFile.getPath());
+	}
+}
@@ -0,0 +1,91 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/*
+ * Unit tests for the suspiciousness metrics supplied with the system, and for FailedCount,
+ * a metric the tests make available as a service in unittests/META-INF/services.  Counts
+ * are given as ExecutionCounts(passed, failed, totalPassed, totalFailed), so that
+ * ep = passed, ef = failed, np = totalPassed - passed and nf = totalFailed - failed.
+ */
+
+public class SuspiciousnessMetricsUnitTest {
+
+	private static final double DELTA = 1e-9;
+
+	/*
+	 * Scores a query by the number of failing tests executing it.
+	 */
+	public static class FailedCountMetric implements SuspiciousnessMetric {
+		public String getName() {
+			return "FailedCount";
+		}
+
+		public double score(ExecutionCounts counts) {
+			return counts.getFailed();
+		}
+	}
+
+	@Test
+	public void testComputesOchiaiScore() {
+		assertEquals(2 / Math.sqrt(4 * 3), SuspiciousnessMetrics.OCHIAI.score(new ExecutionCounts(1, 2, 5, 4)), DELTA);
+		assertEquals(0.0, SuspiciousnessMetrics.OCHIAI.score(new ExecutionCounts(0, 0, 5, 0)), DELTA);
+	}
+
+	@Test
+	public void testComputesDStarScore() {
+		assertEquals(4.0 / (1 + 2), SuspiciousnessMetrics.DSTAR.score(new ExecutionCounts(1, 2, 5, 4)), DELTA);
+		assertEquals(8.0 / (1 + 2), SuspiciousnessMetrics.dstar(3).score(new ExecutionCounts(1, 2, 5, 4)), DELTA);
+		assertEquals(Double.POSITIVE_INFINITY, SuspiciousnessMetrics.DSTAR.score(new ExecutionCounts(0, 2, 5, 2)), DELTA);
+		assertEquals(0.0, SuspiciousnessMetrics.DSTAR.score(new ExecutionCounts(0, 0, 5, 0)), DELTA);
+	}
+
+	@Test
+	public void testReturnsSameDStarForEachExponent() {
+		assertSame(SuspiciousnessMetrics.DSTAR, SuspiciousnessMetrics.dstar(2));
+		assertSame(SuspiciousnessMetrics.dstar(3), SuspiciousnessMetrics.dstar(3));
+		assertNotSame(SuspiciousnessMetrics.dstar(3), SuspiciousnessMetrics.dstar(4));
+	}
+
+	@Test
+	public void testComputesJaccardScore() {
+		assertEquals(2.0 / (2 + 2 + 1), SuspiciousnessMetrics.JACCARD.score(new ExecutionCounts(1, 2, 5, 4)), DELTA);
+		assertEquals(0.0, SuspiciousnessMetrics.JACCARD.score(new ExecutionCounts(0, 0, 5, 0)), DELTA);
+	}
+
+	@Test
+	public void testComputesOp2Score() {
+		assertEquals(2 - 1.0 / 6, SuspiciousnessMetrics.OP2.score(new ExecutionCounts(1, 2, 5, 4)), DELTA);
+		assertEquals(-3.0 / 6, SuspiciousnessMetrics.OP2.score(new ExecutionCounts(3, 0, 5, 4)), DELTA);
+	}
+
+	@Test
+	public void testComputesTarantulaScoreAsExecutionCountsDoes() {
+		ExecutionCounts counts = new ExecutionCounts(2, 1, 4, 2);
+		assertEquals(counts.getTarantulaScore(), SuspiciousnessMetrics.TARANTULA.score(counts), DELTA);
+	}
+
+	@Test
+	public void testFindsMetricsByName() throws DFQException {
+		assertSame(SuspiciousnessMetrics.OCHIAI, SuspiciousnessMetrics.forName("ochiai"));
+		assertSame(SuspiciousnessMetrics.DSTAR, SuspiciousnessMetrics.forName("DStar"));
+		assertEquals(6, SuspiciousnessMetrics.getAvailableMetrics().size());
+	}
+
+	@Test(expected = SuspiciousnessMetricNotFoundException.class)
+	public void testReportsUnknownMetric() throws DFQException {
+		SuspiciousnessMetrics.forName("Unknown");
+	}
+
+	@Test
+	public void testReturnsSameInstanceOfMetricMadeAvailableAsService() throws DFQException {
+		SuspiciousnessMetric metric = SuspiciousnessMetrics.forName("failedcount");
+		assertTrue(metric instanceof FailedCountMetric);
+		assertSame(metric, SuspiciousnessMetrics.forName("FailedCount"));
+		assertSame(SuspiciousnessMetrics.getAvailableMetrics(), SuspiciousnessMetrics.getAvailableMetrics());
+		assertSame(metric, SuspiciousnessMetrics.getAvailableMetrics().get(5));
+	}
+
+}
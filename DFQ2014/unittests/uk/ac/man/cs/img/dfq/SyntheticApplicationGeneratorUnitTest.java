@@ -0,0 +1,118 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Unit tests checking that the applications generated by SyntheticApplicationGenerator
+ * load, and have the shape they were generated with.
+ */
+
+public class SyntheticApplicationGeneratorUnitTest {
+
+	private static final Pattern CALL = Pattern.compile("new (\\w+)\\(\\)\\.(\\w+)\\(\\)");
+
+	private static final int CLASSES = 6;
+	private static final int METHODS_PER_CLASS = 4;
+	private static final int STATEMENTS_PER_METHOD = 5;
+	private static final int QUERIES_PER_CLASS = 2;
+	private static final int TESTS = 30;
+	private static final int TESTS_PER_CLASS = 8;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private SyntheticApplicationGenerator createGenerator(File directory) {
+		SyntheticApplicationGenerator generator = new SyntheticApplicationGenerator(directory);
+		generator.setClassCount(CLASSES);
+		generator.setMethodsPerClass(METHODS_PER_CLASS);
+		generator.setStatementsPerMethod(STATEMENTS_PER_METHOD);
+		generator.setQueriesPerClass(QUERIES_PER_CLASS);
+		generator.setTestCount(TESTS);
+		generator.setTestsPerClass(TESTS_PER_CLASS);
+		generator.setFailureRate(0.2);
+		generator.setCoverageDensity(0.25);
+		return generator;
+	}
+
+	@Test
+	public void testGeneratedApplicationHasGivenShape() throws Exception {
+		SyntheticApplicationGenerator generator = createGenerator(folder.newFolder("app"));
+		Application app = new Application("synthetic", generator.generate().getPath());
+
+		assertEquals(CLASSES, app.getProductionClasses().size());
+		assertEquals(4, app.getTestClasses().size());
+		CodeMethod method = app.getMethodBySignature(SyntheticApplicationGenerator.productionClassName(3), "m1()I");
+		assertEquals(STATEMENTS_PER_METHOD, method.getStatements().size());
+		assertEquals(CLASSES * QUERIES_PER_CLASS, app.getQueryCoverage().getQueryCount());
+		assertEquals("m0", app.getQueryCoverage().getQueries().get(0).getMethodName());
+		assertEquals(CLASSES * METHODS_PER_CLASS * STATEMENTS_PER_METHOD + TESTS * 2, generator.getStatementCount());
+	}
+
+	@Test
+	public void testTestsExecuteGivenProportionOfMethods() throws Exception {
+		SyntheticApplicationGenerator generator = createGenerator(folder.newFolder("app"));
+		Application app = new Application("synthetic", generator.generate().getPath());
+
+		CoverageMatrix coverage = app.getQueryCoverage().getCoverage();
+		assertEquals(TESTS, coverage.getTestCount());
+		int methodsPerTest = CLASSES * METHODS_PER_CLASS / 4;
+		for (int test = 0; test < TESTS; test++)
+			assertEquals(methodsPerTest * STATEMENTS_PER_METHOD + 2, coverage.getStatementsExecutedBy(test).toArray().length);
+		assertNotNull(app.getTestMethodByName(SyntheticApplicationGenerator.testName(TESTS - 1, TESTS_PER_CLASS)));
+	}
+
+	@Test
+	public void testTestsCallTheMethodsTheTraceRecordsThemExecuting() throws Exception {
+		SyntheticApplicationGenerator generator = createGenerator(folder.newFolder("app"));
+		Application app = new Application("synthetic", generator.generate().getPath());
+
+		for (int test = 0; test < TESTS; test++) {
+			TestMethod testMethod = app.getTestMethodByName(SyntheticApplicationGenerator.testName(test, TESTS_PER_CLASS));
+			Set<String> called = new TreeSet<String>();
+			Matcher call = CALL.matcher(testMethod.getStatements().get(testMethod.getStartLineNumber()).getStatementText());
+			while (call.find())
+				called.add(call.group(1) + "." + call.group(2));
+
+			Set<String> executed = new TreeSet<String>();
+			for (Statement statement : app.getTrace().getExecutedStatementsByMethod(testMethod.getName())) {
+				CodeMethod method = statement.getCodeMethod();
+				if (!(method instanceof TestMethod))
+					executed.add(method.getParentClass().getName() + "." + method.getName());
+			}
+			assertEquals(CLASSES * METHODS_PER_CLASS / 4, called.size());
+			assertEquals(executed, called);
+		}
+	}
+
+	@Test
+	public void testSameSeedGivesSameTrace() throws Exception {
+		SyntheticApplicationGenerator first = createGenerator(folder.newFolder("first"));
+		SyntheticApplicationGenerator second = createGenerator(folder.newFolder("second"));
+		Application firstApp = new Application("first", first.generate().getPath());
+		Application secondApp = new Application("second", second.generate().getPath());
+
+		CoverageMatrix firstCoverage = firstApp.getQueryCoverage().getCoverage();
+		CoverageMatrix secondCoverage = secondApp.getQueryCoverage().getCoverage();
+		assertArrayEquals(firstCoverage.getFailingTests().toArray(), secondCoverage.getFailingTests().toArray());
+		for (int test = 0; test < TESTS; test++)
+			assertArrayEquals(firstCoverage.getStatementsExecutedBy(test).toArray(), secondCoverage.getStatementsExecutedBy(test).toArray());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsMoreQueriesThanMethods() throws Exception {
+		SyntheticApplicationGenerator generator = createGenerator(folder.newFolder("app"));
+		generator.setQueriesPerClass(METHODS_PER_CLASS + 1);
+		generator.generate();
+	}
+
+}
@@ -0,0 +1,142 @@
+package uk.ac.man.cs.img.dfq;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/*
+ * This is a helper class for the unit tests that load the small application held in
+ * resources/testData, either from where it is or from a copy, so that the paths of its
+ * files and the boilerplate of rewriting its properties are kept in one place.
+ *
+ * The small application has one production class, Game, holding one query, and one test
+ * class, GameTest, whose test testGameResigned fails.
+ */
+
+public class TestApplications {
+
+	public static final String PROPERTIES_FILE_NAME = "smallApp.properties";
+	public static final String TRACE_FILE_NAME = "smallTrace.xml";
+	public static final String GAME_SOURCE_FILE_NAME = "Game.java";
+	public static final String GAME_TEST_SOURCE_FILE_NAME = "GameTest.java";
+
+	public static final String TEST_DATA_PATH = "resources" + File.separator + "testData";
+	public static final String SMALL_APP_PROPERTIES_FILE_PATH = TEST_DATA_PATH + File.separator + PROPERTIES_FILE_NAME;
+	public static final String SMALL_TRACE_FILE_PATH = TEST_DATA_PATH + File.separator + TRACE_FILE_NAME;
+	public static final String SMALL_APP_SOURCE_PATH = TEST_DATA_PATH + File.separator + "smallApp";
+
+	public static final String TRACE_FILE_PROPERTY = "edu.gatech.cc.aristotle.tarantula.data.tarantula_xml";
+	public static final String SOURCE_FILES_PROPERTY = "edu.gatech.cc.aristotle.tarantula.data.source_files";
+	public static final String TEST_SOURCE_FILES_PROPERTY = "edu.gatech.cc.aristotle.tarantula.data.junit.source_files";
+
+
+	// Loading the small application where it is
+
+	public static Application smallApp() throws Exception {
+		return smallApp("smallApp");
+	}
+
+	public static Application smallApp(String appName) throws Exception {
+		return new Application(appName, SMALL_APP_PROPERTIES_FILE_PATH);
+	}
+
+
+	// Copying the small application
+
+	/*
+	 * Copies the small application's trace and source files into the given directory, and
+	 * writes properties naming the copies there.  Returns the properties file.
+	 */
+	public static File copySmallApp(File directory) throws IOException {
+		File traceFile = copy(new File(SMALL_TRACE_FILE_PATH), directory);
+		File gameSourceFile = copy(new File(SMALL_APP_SOURCE_PATH, GAME_SOURCE_FILE_NAME), directory);
+		File gameTestSourceFile = copy(new File(SMALL_APP_SOURCE_PATH, GAME_TEST_SOURCE_FILE_NAME), directory);
+		Properties properties = new Properties();
+		properties.setProperty(TRACE_FILE_PROPERTY, traceFile.getPath());
+		properties.setProperty(SOURCE_FILES_PROPERTY, gameSourceFile.getPath());
+		properties.setProperty(TEST_SOURCE_FILES_PROPERTY, gameTestSourceFile.getPath());
+		File propertiesFile = new File(directory, PROPERTIES_FILE_NAME);
+		writeProperties(propertiesFile, properties);
+		return propertiesFile;
+	}
+
+	/*
+	 * Writes a copy of the small application's properties file, with the given property
+	 * set, to the named file in the given directory.  The copy still names the trace and
+	 * source files in resources/testData.
+	 */
+	public static File smallAppPropertiesWith(File directory, String fileName, String name, String value) throws IOException {
+		Properties properties = readProperties(new File(SMALL_APP_PROPERTIES_FILE_PATH));
+		if (name != null)
+			properties.setProperty(name, value);
+		File propertiesFile = new File(directory, fileName);
+		writeProperties(propertiesFile, properties);
+		return propertiesFile;
+	}
+
+	/*
+	 * Writes an unchanged copy of the small application's properties file, so that the
+	 * same application can be loaded under another path.
+	 */
+	public static File copyOfSmallAppProperties(File directory, String fileName) throws IOException {
+		return smallAppPropertiesWith(directory, fileName, null, null);
+	}
+
+
+	// Editing properties files
+
+	public static Properties readProperties(File propertiesFile) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(propertiesFile);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		return properties;
+	}
+
+	public static void writeProperties(File propertiesFile, Properties properties) throws IOException {
+		OutputStream out = new FileOutputStream(propertiesFile);
+		try {
+			properties.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+
+	public static void setProperty(File propertiesFile, String name, String value) throws IOException {
+		Properties properties = readProperties(propertiesFile);
+		properties.setProperty(name, value);
+		writeProperties(propertiesFile, properties);
+	}
+
+
+	// Editing source files
+
+	public static void append(File file, String text) throws IOException {
+		Writer out = new FileWriter(file, true);
+		try {
+			out.write(text);
+		} finally {
+			out.close();
+		}
+	}
+
+
+	// Utility methods
+
+	private static File copy(File file, File directory) throws IOException {
+		File copy = new File(directory, file.getName());
+		Files.copy(file.toPath(), copy.toPath());
+		return copy;
+	}
+
+}
@@ -0,0 +1,111 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Unit tests for the TraceModelLoader class, using the small trace file held in
+ * resources/testData.
+ */
+
+public class TraceModelLoaderUnitTest {
+
+	private static final String TRACE_FILE_PATH = "resources" + File.separator + "testData" + File.separator + "smallTrace.xml";
+
+	TraceModel model;
+
+	@Before
+	public void setUp() throws Exception {
+		this.model = TraceModelLoader.load(TRACE_FILE_PATH);
+	}
+
+	@Test
+	public void testLoadsProductionMethodSignatures() {
+		List<String> expectedSignatures = Arrays.asList(
+				"<init>([Ldemo/Player;)V", "getPlayerList()[Ldemo/Player;", "setPlayerList([Ldemo/Player;)V");
+
+		assertEquals(expectedSignatures, model.getProductionMethodSignatures("Game"));
+		assertEquals(0, model.getTestMethodSignatures("Game").size());
+	}
+
+	@Test
+	public void testLoadsTestMethodSignatures() {
+		List<String> expectedSignatures = Arrays.asList("testNewGame()V", "testGameResigned()V");
+
+		assertEquals(expectedSignatures, model.getTestMethodSignatures("GameTest"));
+		assertEquals(0, model.getProductionMethodSignatures("GameTest").size());
+	}
+
+	@Test
+	public void testLoadsMethodLineRanges() throws DFQException {
+		assertEquals(15, model.getMethodStartLine("setPlayerList([Ldemo/Player;)V"));
+		assertEquals(18, model.getMethodEndLine("setPlayerList([Ldemo/Player;)V"));
+	}
+
+	@Test(expected = CouldNotFindStartLineNumberForGivenMethodException.class)
+	public void testReportsUnknownMethodSignature() throws DFQException {
+		model.getMethodStartLine("noSuchMethod()V");
+	}
+
+	@Test
+	public void testLoadsTestOutcomes() {
+		assertEquals(Arrays.asList("testNewGame", "testGameResigned"), model.getExecutedTestNames());
+		assertEquals(Arrays.asList("testNewGame"), model.getPassingTestNames());
+		assertEquals(Arrays.asList("testGameResigned"), model.getFailingTestNames());
+		assertEquals(Arrays.asList("false"), model.getTestResults("testGameResigned"));
+	}
+
+	@Test
+	public void testLoadsExecutedStatementsInTraceOrder() {
+		List<LineNumClassPair<String>> statements = model.getExecutedStatements("testGameResigned");
+
+		assertEquals(5, statements.size());
+		assertEquals(11, statements.get(0).getLineNum());
+		assertEquals("GameTest", statements.get(0).getClassName());
+		assertEquals(8, statements.get(1).getLineNum());
+		assertEquals("Game", statements.get(1).getClassName());
+	}
+
+	@Test
+	public void testLoadsEachDistinctExecutedStatementOnce() {
+		List<LineNumClassPair<String>> statements = model.getDistinctExecutedStatements("testNewGame");
+
+		assertEquals(6, statements.size());
+		assertEquals(8, statements.get(0).getLineNum());
+		assertEquals("Game", statements.get(0).getClassName());
+		assertEquals(7, statements.get(5).getLineNum());
+		assertEquals("GameTest", statements.get(5).getClassName());
+	}
+
+	@Test
+	public void testBuildsCoverageMatrix() {
+		CoverageMatrix coverage = model.getCoverageMatrix();
+		int testNewGame = coverage.getTestNumber("testNewGame");
+		int testGameResigned = coverage.getTestNumber("testGameResigned");
+
+		assertEquals(2, coverage.getTestCount());
+		assertEquals(6, coverage.getStatementsExecutedBy(testNewGame).cardinality());
+		assertEquals(3, coverage.getStatementsExecutedBy(testNewGame)
+				.andCardinality(coverage.getStatementsExecutedBy(testGameResigned)));
+		assertTrue(coverage.getPassingTests().contains(testNewGame));
+		assertTrue(coverage.getFailingTests().contains(testGameResigned));
+		for (int statement : coverage.getStatementsExecutedBy(testGameResigned).toArray())
+			assertTrue(coverage.getTestsExecuting(statement).contains(testGameResigned));
+	}
+
+	@Test(expected = TraceFileNotFoundException.class)
+	public void testReportsNonExistentTraceFile() throws DFQException {
+		TraceModelLoader.load(TRACE_FILE_PATH + "does.not.exist");
+	}
+
+	@Test(expected = CouldNotParseTraceFileException.class)
+	public void testReportsAttemptToLoadNonXMLFileAsTrace() throws DFQException {
+		TraceModelLoader.load("resources" + File.separator + "testData" + File.separator + "notAPropertiesFile.txt");
+	}
+}
@@ -0,0 +1,92 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.XQueryEvaluator;
+import net.sf.saxon.s9api.XdmAtomicValue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * Unit tests checking that an XQueryRegistry compiles each query once, and hands out a
+ * new evaluator for each evaluation, on any thread.
+ */
+
+public class XQueryRegistryUnitTest {
+
+	private static final QName VALUE_VARIABLE = new QName("value");
+
+	XQueryRegistry registry;
+	DiagnosisMetrics metrics;
+
+	@Before
+	public void setUp() {
+		this.metrics = new DiagnosisMetrics();
+		this.registry = new XQueryRegistry(metrics);
+		registry.register("echo", "declare variable $value as xs:string external; $value");
+		registry.register("broken", "for $x in");
+	}
+
+	private String evaluate(String value) throws Exception {
+		XQueryEvaluator evaluator = registry.getEvaluator("echo");
+		evaluator.setExternalVariable(VALUE_VARIABLE, new XdmAtomicValue(value));
+		return evaluator.evaluate().itemAt(0).getStringValue();
+	}
+
+	@Test
+	public void testCompilesEachQueryOnce() throws Exception {
+		assertEquals(0, metrics.getQueriesCompiled());
+		assertEquals("first", evaluate("first"));
+		assertEquals("second", evaluate("second"));
+
+		assertEquals(1, metrics.getQueriesCompiled());
+		assertEquals(1, metrics.getLatencies(DiagnosisPhase.XQUERY_COMPILATION).getStatistics().getCount());
+	}
+
+	@Test
+	public void testGivesNewEvaluatorForEachEvaluation() throws Exception {
+		final XQueryEvaluator evaluator = registry.getEvaluator("echo");
+		assertNotSame(evaluator, registry.getEvaluator("echo"));
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			XQueryEvaluator otherEvaluator = executor.submit(new Callable<XQueryEvaluator>() {
+				public XQueryEvaluator call() throws DFQException {
+					return registry.getEvaluator("echo");
+				}
+			}).get();
+			assertNotSame(evaluator, otherEvaluator);
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, metrics.getQueriesCompiled());
+	}
+
+	@Test
+	public void testPassesValuesWithQuotesAsVariables() throws Exception {
+		String value = "say \"hello\" and 'goodbye'";
+		assertEquals(value, evaluate(value));
+	}
+
+	@Test(expected = CouldNotCompileXQueryExpression.class)
+	public void testReportsUnregisteredQuery() throws DFQException {
+		registry.getEvaluator("noSuchQuery");
+	}
+
+	@Test
+	public void testReportsQueryThatDoesNotCompile() throws DFQException {
+		try {
+			registry.getEvaluator("broken");
+			fail("A query with a syntax error should not compile");
+		} catch (CouldNotCompileXQueryExpression e) {
+			assertEquals(0, metrics.getQueriesCompiled());
+		}
+	}
+
+}
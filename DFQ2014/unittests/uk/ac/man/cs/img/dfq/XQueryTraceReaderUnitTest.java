@@ -0,0 +1,144 @@
+package uk.ac.man.cs.img.dfq;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/*
+ * Unit tests for the XQueryTraceReader class, using the small trace file held in
+ * resources/testData, and a copy of it in which a test name and a method signature
+ * hold quotes.  The trace is kept as a parsed tree unless it is larger than the limit
+ * given by dfq.trace.max_tree_bytes, in which case it is parsed again for every query.
+ */
+
+public class XQueryTraceReaderUnitTest {
+
+	private static final String QUOTED_TEST_NAME = "testGame\"Resigned'";
+	private static final String QUOTED_SIGNATURE = "setPlayerList(\"[Ldemo/Player;')V";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	DiagnosisMetrics metrics;
+	XQueryTraceReader reader;
+
+	@Before
+	public void setUp() {
+		this.metrics = new DiagnosisMetrics();
+		this.reader = new XQueryTraceReader(TestApplications.SMALL_TRACE_FILE_PATH, XQueryTraceReader.NO_TREE_SIZE_LIMIT, metrics);
+	}
+
+	private String quotedTraceFilePath() throws Exception {
+		String trace = new String(Files.readAllBytes(new File(TestApplications.SMALL_TRACE_FILE_PATH).toPath()), StandardCharsets.UTF_8);
+		trace = trace.replace("name=\"testGameResigned\"", "name=\"testGame&quot;Resigned'\"")
+				.replace("setPlayerList([Ldemo/Player;)V", "setPlayerList(\"[Ldemo/Player;')V");
+		File traceFile = new File(folder.getRoot(), "quotedTrace.xml");
+		Files.write(traceFile.toPath(), trace.getBytes(StandardCharsets.UTF_8));
+		return traceFile.getPath();
+	}
+
+	@Test
+	public void testAnswersQuestionsAboutTrace() throws DFQException {
+		assertEquals(15, reader.getMethodStartLine("setPlayerList([Ldemo/Player;)V"));
+		assertEquals(18, reader.getMethodEndLine("setPlayerList([Ldemo/Player;)V"));
+		assertEquals(Arrays.asList("testNewGame", "testGameResigned"), reader.getExecutedTestNames());
+		assertEquals(Arrays.asList("false"), reader.getTestResults("testGameResigned"));
+		assertEquals(5, reader.getExecutedStatements("testGameResigned").size());
+	}
+
+	@Test
+	public void testCompilesEachQueryOnceAcrossLookups() throws DFQException {
+		reader.getTestResults("testNewGame");
+		reader.getMethodStartLine("setPlayerList([Ldemo/Player;)V");
+		long compiled = metrics.getQueriesCompiled();
+		assertEquals(2, compiled);
+
+		reader.getTestResults("testGameResigned");
+		reader.getMethodStartLine("getPlayerList()[Ldemo/Player;");
+		reader.getMethodStartLine("setPlayerList([Ldemo/Player;)V");
+		assertEquals(compiled, metrics.getQueriesCompiled());
+		assertEquals(5, metrics.getLatencies(DiagnosisPhase.XQUERY_EVALUATION).getStatistics().getCount());
+	}
+
+	@Test
+	public void testMatchesNamesAndSignaturesHoldingQuotes() throws Exception {
+		XQueryTraceReader quotedReader = new XQueryTraceReader(quotedTraceFilePath());
+
+		assertEquals(Arrays.asList(QUOTED_TEST_NAME), quotedReader.getFailingTestNames());
+		assertEquals(Arrays.asList("false"), quotedReader.getTestResults(QUOTED_TEST_NAME));
+		assertEquals(5, quotedReader.getExecutedStatements(QUOTED_TEST_NAME).size());
+		assertEquals(15, quotedReader.getMethodStartLine(QUOTED_SIGNATURE));
+		assertEquals(18, quotedReader.getMethodEndLine(QUOTED_SIGNATURE));
+		assertTrue(quotedReader.getProductionMethodSignatures("Game").contains(QUOTED_SIGNATURE));
+	}
+
+	@Test
+	public void testKeepsParsedTreeBetweenQueries() throws DFQException {
+		reader.getExecutedTestNames();
+		reader.getTestResults("testNewGame");
+		reader.getMethodStartLine("setPlayerList([Ldemo/Player;)V");
+
+		assertEquals(1, metrics.getDocumentsParsed());
+		assertEquals(1, metrics.getLatencies(DiagnosisPhase.TRACE_LOADING).getStatistics().getCount());
+	}
+
+	@Test
+	public void testKeepsTreeOfTraceNoLargerThanLimit() throws DFQException {
+		long traceBytes = new File(TestApplications.SMALL_TRACE_FILE_PATH).length();
+		XQueryTraceReader limitedReader = new XQueryTraceReader(TestApplications.SMALL_TRACE_FILE_PATH, traceBytes, metrics);
+		limitedReader.getExecutedTestNames();
+		limitedReader.getTestResults("testNewGame");
+
+		assertEquals(1, metrics.getDocumentsParsed());
+	}
+
+	@Test
+	public void testReparsesTraceLargerThanLimitForEveryQuery() throws DFQException {
+		long traceBytes = new File(TestApplications.SMALL_TRACE_FILE_PATH).length();
+		XQueryTraceReader limitedReader = new XQueryTraceReader(TestApplications.SMALL_TRACE_FILE_PATH, traceBytes - 1, metrics);
+
+		assertEquals(reader.getExecutedTestNames(), limitedReader.getExecutedTestNames());
+		assertEquals(reader.getTestResults("testGameResigned"), limitedReader.getTestResults("testGameResigned"));
+		assertEquals(reader.getMethodEndLine("setPlayerList([Ldemo/Player;)V"),
+				limitedReader.getMethodEndLine("setPlayerList([Ldemo/Player;)V"));
+		assertEquals(1 + 3, metrics.getDocumentsParsed());
+		assertEquals(traceBytes * (1 + 3), metrics.getBytesRead());
+		assertEquals(1, metrics.getLatencies(DiagnosisPhase.TRACE_LOADING).getStatistics().getCount());
+	}
+
+	@Test
+	public void testDiagnosesApplicationWhoseTraceExceedsLimit() throws Exception {
+		File propertiesFile = TestApplications.smallAppPropertiesWith(folder.getRoot(), "limited.properties",
+				"dfq.trace.load_into_memory", "false");
+		TestApplications.setProperty(propertiesFile, "dfq.trace.max_tree_bytes", "1");
+		Application limited = new Application("limitedApp", propertiesFile.getPath());
+		Application inMemory = TestApplications.smallApp();
+
+		List<Query> expected = inMemory.getSuspiciousQueries();
+		List<Query> actual = limited.getSuspiciousQueries();
+		assertEquals(1, actual.size());
+		assertEquals(expected.get(0).getMethod().getSignature(), actual.get(0).getMethod().getSignature());
+		assertEquals(expected.get(0).getSuspiciousnessScore(), actual.get(0).getSuspiciousnessScore(), 0);
+		// Only the opening of the trace is timed as loading; no tree is ever built.
+		assertTrue(limited.getMetricsSnapshot().getDocumentsParsed() > 1);
+		assertEquals(1, limited.getMetricsSnapshot().getLatencies(DiagnosisPhase.TRACE_LOADING).getCount());
+	}
+
+	@Test(expected = InvalidPropertyValueException.class)
+	public void testReportsTreeSizeLimitThatIsNotANumber() throws Exception {
+		File propertiesFile = TestApplications.smallAppPropertiesWith(folder.getRoot(), "limited.properties",
+				"dfq.trace.load_into_memory", "false");
+		TestApplications.setProperty(propertiesFile, "dfq.trace.max_tree_bytes", "1MB");
+		new Application("limitedApp", propertiesFile.getPath());
+	}
+
+}